@@ -216,6 +216,7 @@ public class GroupDAOImpl implements GroupHandler
          preSave(group, false);
       }
       persistGroup(group);
+      invalidateGroupsOfUsers();
       if (broadcast)
       {
          postSave(group, false);
@@ -300,6 +301,8 @@ public class GroupDAOImpl implements GroupHandler
          log.info("Cannot remove group: " + plGroupName + "; ", e);
       }
 
+      invalidateGroupsOfUsers();
+
       if (broadcast)
       {
          postDelete(group);
@@ -611,6 +614,16 @@ public class GroupDAOImpl implements GroupHandler
          return Collections.emptyList();
       }
 
+      // Check in cache
+      if (getIntegrationCache() != null)
+      {
+         Collection<Group> cachedGroups = getIntegrationCache().getGtnUserGroups(getCacheNS(), user);
+         if (cachedGroups != null)
+         {
+            return new LinkedList<Group>(cachedGroups);
+         }
+      }
+
       Collection<org.picketlink.idm.api.Group> allGroups = new HashSet();
 
       try
@@ -634,6 +647,11 @@ public class GroupDAOImpl implements GroupHandler
 
       }
 
+      if (getIntegrationCache() != null)
+      {
+         getIntegrationCache().putGtnUserGroups(getCacheNS(), user, new LinkedList<Group>(exoGroups));
+      }
+
       if (log.isTraceEnabled())
       {
         Tools.logMethodOut(
@@ -1085,6 +1103,30 @@ public class GroupDAOImpl implements GroupHandler
       return service_.getIdentitySession();
    }
 
+   /**
+    * Invalidates the cached groups of a user. Must be called when a membership of the user changes.
+    *
+    * @param userName
+    */
+   void invalidateGroupsOfUser(String userName)
+   {
+      if (getIntegrationCache() != null)
+      {
+         getIntegrationCache().invalidateGtnUserGroups(getCacheNS(), userName);
+      }
+   }
+
+   /**
+    * Invalidates the cached groups of all users. Must be called when a group changes.
+    */
+   void invalidateGroupsOfUsers()
+   {
+      if (getIntegrationCache() != null)
+      {
+         getIntegrationCache().invalidateGtnUserGroups(getCacheNS());
+      }
+   }
+
    private IntegrationCache getIntegrationCache()
    {
       // TODO: refactor to remove cast. For now to avoid adding new config option and share existing cache instannce
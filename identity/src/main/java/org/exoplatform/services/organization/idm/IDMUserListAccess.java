@@ -32,6 +32,7 @@ import org.picketlink.idm.api.query.UserQueryBuilder;
 
 
 import java.io.Serializable;
+import java.util.Collections;
 import java.util.List;
 
 /*
@@ -49,9 +50,12 @@ public class IDMUserListAccess implements ListAccess<User>, Serializable
 
    private final int pageSize;
 
-   private final boolean countAll;
+   /**
+    * Number of users fetched by each query when the matching users are counted.
+    */
+   private static final int COUNT_BATCH_SIZE = 500;
 
-   private List<org.picketlink.idm.api.User> fullResults;
+   private final boolean countAll;
 
    private int size = -1;
 
@@ -80,32 +84,19 @@ public class IDMUserListAccess implements ListAccess<User>, Serializable
          );
       }
 
-      List<org.picketlink.idm.api.User> users = null;
-
-      if (fullResults == null)
-      {
-         userDAO.getOrgService().flush();
+      userDAO.getOrgService().flush();
 
-         userQueryBuilder.page(index, length);
-         UserQuery query = userQueryBuilder.sort(SortOrder.ASCENDING).createQuery();
-         users = idmService.getIdentitySession().list(query);
-      }
-      else
-      {
-         users = fullResults.subList(index, index + length);
-      }
+      List<org.picketlink.idm.api.User> users = list(index, length);
 
       User[] exoUsers = new User[users.size()];
 
       for (int i = 0; i < users.size(); i++)
       {
-         org.picketlink.idm.api.User user = users.get(i);
-
-         User gtnUser = new UserImpl(user.getId());
-         userDAO.populateUser(gtnUser, idmService.getIdentitySession());
-         exoUsers[i] = gtnUser;
+         exoUsers[i] = new UserImpl(users.get(i).getId());
       }
 
+      userDAO.populateUsers(exoUsers, idmService.getIdentitySession());
+
       if (log.isTraceEnabled())
       {
         Tools.logMethodOut(
@@ -138,20 +129,13 @@ public class IDMUserListAccess implements ListAccess<User>, Serializable
       if (size < 0)
       {
 
-         if (fullResults != null)
-         {
-            result = fullResults.size();
-         }
-         else if (countAll)
+         if (countAll)
          {
             result = idmService.getIdentitySession().getPersistenceManager().getUserCount();
          }
          else
          {
-            userQueryBuilder.page(0, 0);
-            UserQuery query = userQueryBuilder.sort(SortOrder.ASCENDING).createQuery();
-            fullResults = idmService.getIdentitySession().list(query);
-            result = fullResults.size();
+            result = count();
          }
 
          size = result;
@@ -174,4 +158,38 @@ public class IDMUserListAccess implements ListAccess<User>, Serializable
       return result;
 
    }
+
+   /**
+    * Counts the matching users batch by batch, so that only one batch of users is held in memory. The user query
+    * has neither a count nor a range-on-id criterion, so each batch is an offset page: the store skips the users of
+    * the previous batches again, and counting a large filtered result still costs one query per
+    * {@link #COUNT_BATCH_SIZE} users. The size is computed once per list access.
+    */
+   private int count() throws Exception
+   {
+      int result = 0;
+      int fetched;
+
+      do
+      {
+         fetched = list(result, COUNT_BATCH_SIZE).size();
+         result += fetched;
+      }
+      while (fetched == COUNT_BATCH_SIZE);
+
+      return result;
+   }
+
+   private List<org.picketlink.idm.api.User> list(int index, int length) throws Exception
+   {
+      // An empty page would mean no limit for the query
+      if (length <= 0)
+      {
+         return Collections.emptyList();
+      }
+
+      userQueryBuilder.page(index, length);
+      UserQuery query = userQueryBuilder.sort(SortOrder.ASCENDING).createQuery();
+      return idmService.getIdentitySession().list(query);
+   }
 }
@@ -59,6 +59,8 @@ public class IntegrationCache
 
    public static final String USER_QUERY_NODE = "GTN_USER_QUERY_LAZY_LIST";
 
+   public static final String USER_GROUPS_NODE = "GTN_USER_GROUPS";
+
    public static final String MAIN_ROOT = "NODE_GTN_ORG_SERVICE_INT_CACHE_MAIN_ROOT";
 
    public static final String NODE_OBJECT_KEY = "object";
@@ -257,6 +259,90 @@ public class IntegrationCache
 
    }
 
+   /**
+    * Store the gatein groups of a user
+    * @param ns
+    * @param userName
+    * @param groups
+    */
+   void putGtnUserGroups(String ns, String userName, Collection<org.exoplatform.services.organization.Group> groups)
+   {
+      Fqn nodeFqn = getFqn(ns, USER_GROUPS_NODE, userName);
+
+      Node ioNode = getCache().getRoot().addChild(nodeFqn);
+
+      if (ioNode != null)
+      {
+         ioNode.put(NODE_OBJECT_KEY, groups);
+         setExpiration(ioNode);
+
+         if (log.isLoggable(Level.FINER))
+         {
+
+            log.finer(this.toString() + "GateIn groups of user cached. User: " + userName + ";namespace=" + ns);
+         }
+      }
+   }
+
+   /**
+    * Retrieve the gatein groups of a user
+    * @param ns
+    * @param userName
+    * @return
+    */
+   Collection<org.exoplatform.services.organization.Group> getGtnUserGroups(String ns, String userName)
+   {
+
+      Fqn nodeFqn = getFqn(ns, USER_GROUPS_NODE, userName);
+
+      Node node = getCache().getRoot().getChild(nodeFqn);
+
+      if (node != null)
+      {
+         Collection<org.exoplatform.services.organization.Group> groups =
+            (Collection<org.exoplatform.services.organization.Group>)node.get(NODE_OBJECT_KEY);
+
+         if (log.isLoggable(Level.FINER) && groups != null)
+         {
+            log.finer(this.toString() + "GateIn groups of user found in cache. User: " + userName + ";namespace=" + ns);
+         }
+
+         return groups;
+      }
+
+      return null;
+
+   }
+
+   /**
+    * Invalidate the cached gatein groups of a user
+    * @param ns
+    * @param userName
+    */
+   void invalidateGtnUserGroups(String ns, String userName)
+   {
+      boolean success = getCache().getRoot().removeChild(getFqn(ns, USER_GROUPS_NODE, userName));
+
+      if (log.isLoggable(Level.FINER))
+      {
+         log.finer(this.toString() + "Invalidating groups of user:" + userName + ";namespace=" + ns + "; success=" + success);
+      }
+   }
+
+   /**
+    * Invalidate the cached gatein groups of all users
+    * @param ns
+    */
+   void invalidateGtnUserGroups(String ns)
+   {
+      boolean success = getCache().getRoot().removeChild(getFqn(ns, USER_GROUPS_NODE));
+
+      if (log.isLoggable(Level.FINER))
+      {
+         log.finer(this.toString() + "Invalidating groups of all users;namespace=" + ns + "; success=" + success);
+      }
+   }
+
    /**
     * Store PLIDM root group
     * @param ns
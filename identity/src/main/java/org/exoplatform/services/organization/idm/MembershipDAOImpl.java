@@ -192,6 +192,8 @@ public class MembershipDAOImpl implements MembershipHandler
 
       getIdentitySession().getRoleManager().createRole(mt.getName(), user.getUserName(), groupId);
 
+      invalidateGroupsOfUser(user.getUserName());
+
       if (broadcast)
       {
          postSave(membership, true);
@@ -275,6 +277,8 @@ public class MembershipDAOImpl implements MembershipHandler
          }
       }
 
+      invalidateGroupsOfUser(m.getUserName());
+
       if (broadcast)
       {
          postSave(m, false);
@@ -373,6 +377,8 @@ public class MembershipDAOImpl implements MembershipHandler
          }
       }
 
+      invalidateGroupsOfUser(m.getUserName());
+
       if (broadcast)
       {
          postDelete(m);
@@ -471,6 +477,8 @@ public class MembershipDAOImpl implements MembershipHandler
 
       }
 
+      invalidateGroupsOfUser(userName);
+
       //TODO: Exo UI has hardcoded casts to List
       return new LinkedList(memberships);
 
@@ -998,6 +1006,11 @@ public class MembershipDAOImpl implements MembershipHandler
       }
    }
 
+   private void invalidateGroupsOfUser(String userName)
+   {
+      ((GroupDAOImpl)orgService.getGroupHandler()).invalidateGroupsOfUser(userName);
+   }
+
    private IdentitySession getIdentitySession() throws Exception
    {
       return service_.getIdentitySession();
@@ -228,6 +228,9 @@ public class MembershipTypeDAOImpl implements MembershipTypeHandler
 
          getIdentitySession().getRoleManager().removeRoleType(mt.getName());
 
+         // Memberships of this type are removed with it
+         ((GroupDAOImpl)orgService.getGroupHandler()).invalidateGroupsOfUsers();
+
          if (broadcast)
          {
             postDelete(mt);
@@ -97,6 +97,11 @@ public class PicketLinkIDMCacheService
    @Impact(ImpactType.WRITE)
    public void invalidate(@ManagedDescription("Cache namespace") @ManagedName("namespace")String namespace)
    {
+      for (IntegrationCache cacheProvider : integrationCache)
+      {
+         cacheProvider.invalidate(namespace);
+      }
+
       for (APICacheProvider cacheProvider : apiCacheProviders)
       {
          cacheProvider.invalidate(namespace);
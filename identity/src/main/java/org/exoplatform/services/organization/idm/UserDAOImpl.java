@@ -792,8 +792,30 @@ public class UserDAOImpl implements UserHandler
    {
       orgService.flush();
 
+      populateUserAttributes(user, session.getAttributesManager());
+   }
+
+   /**
+    * Populates a page of users. The organization service is flushed once for the whole page.
+    *
+    * @param users
+    * @param session
+    * @throws Exception
+    */
+   public void populateUsers(User[] users, IdentitySession session) throws Exception
+   {
+      orgService.flush();
+
       AttributesManager am = session.getAttributesManager();
 
+      for (User user : users)
+      {
+         populateUserAttributes(user, am);
+      }
+   }
+
+   private void populateUserAttributes(User user, AttributesManager am) throws Exception
+   {
       Map<String, Attribute> attrs = null;
 
       try
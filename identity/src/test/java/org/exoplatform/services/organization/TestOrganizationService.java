@@ -19,6 +19,7 @@
 
 package org.exoplatform.services.organization;
 
+import org.exoplatform.commons.utils.ListAccess;
 import org.exoplatform.commons.utils.PageList;
 import org.exoplatform.component.test.AbstractGateInTest;
 import org.exoplatform.component.test.AbstractKernelTest;
@@ -605,12 +606,57 @@ public class TestOrganizationService extends AbstractKernelTest
    }
 
 
+   public void testFindGroupsOfUserAfterMembershipChanges() throws Exception
+   {
+      String usr = "grpusr";
+      User user = createUser(usr);
+
+      Group group1 = groupHandler_.createGroupInstance();
+      group1.setGroupName("grpcache1");
+      groupHandler_.addChild(null, group1, true);
+      Group group2 = groupHandler_.createGroupInstance();
+      group2.setGroupName("grpcache2");
+      groupHandler_.addChild(null, group2, true);
+
+      MembershipType mt = mtHandler_.createMembershipTypeInstance();
+      mt.setName("grpcachetype");
+      mtHandler_.createMembershipType(mt, true);
+
+      int initial = groupHandler_.findGroupsOfUser(usr).size();
+
+      membershipHandler_.linkMembership(user, group1, mt, true);
+      assertEquals(initial + 1, groupHandler_.findGroupsOfUser(usr).size());
+
+      membershipHandler_.linkMembership(user, group2, mt, true);
+      assertEquals(initial + 2, groupHandler_.findGroupsOfUser(usr).size());
+
+      String memId = membershipHandler_.findMembershipByUserGroupAndType(usr, group1.getId(), "grpcachetype").getId();
+      membershipHandler_.removeMembership(memId, true);
+      assertEquals(initial + 1, groupHandler_.findGroupsOfUser(usr).size());
+
+      groupHandler_.removeGroup(group2, true);
+      assertEquals(initial, groupHandler_.findGroupsOfUser(usr).size());
+
+      mtHandler_.removeMembershipType("grpcachetype", true);
+      userHandler_.removeUser(usr, true);
+      groupHandler_.removeGroup(group1, true);
+   }
+
    public void testFindUsersByGroupId() throws Exception
    {
       PageList users = userHandler_.findUsersByGroup("/users");
       assertTrue(users.getAvailable() > 0);
    }
 
+   public void testFindUsersByGroupIdListAccess() throws Exception
+   {
+      ListAccess<User> users = userHandler_.findUsersByGroupId("/users");
+      int size = users.getSize();
+      assertTrue(size > 0);
+      assertEquals(size, users.load(0, size).length);
+      assertEquals(0, users.load(0, 0).length);
+   }
+
    private static class UserProfileListener extends UserProfileEventListener
    {
 
@@ -0,0 +1,300 @@
+/**
+ * Copyright (C) 2011 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.exoplatform.portal.config;
+
+import org.exoplatform.commons.cache.future.FutureExoCache;
+import org.exoplatform.commons.cache.future.Loader;
+import org.exoplatform.portal.mop.SiteKey;
+import org.exoplatform.portal.mop.navigation.NavigationContext;
+import org.exoplatform.portal.mop.navigation.NavigationService;
+import org.exoplatform.portal.pom.config.POMSession;
+import org.exoplatform.portal.pom.config.POMSessionManager;
+import org.exoplatform.services.cache.CacheService;
+import org.exoplatform.services.cache.ExoCache;
+import org.exoplatform.services.jcr.RepositoryService;
+import org.exoplatform.services.jcr.core.ManageableRepository;
+import org.gatein.common.logging.Logger;
+import org.gatein.common.logging.LoggerFactory;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import javax.jcr.observation.EventListener;
+import javax.jcr.observation.ObservationManager;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Caches the keys of the group navigations that exist for a set of groups. The entries are keyed by the
+ * fingerprint of the sorted group ids so that all the users having the same groups share the same entry.
+ * The permissions are not cached as they depend on the memberships of each user. Like the navigation data cache,
+ * the cache is bypassed when the current session is modified.
+ *
+ * <p>The cache is only used once started, it observes the group sites in the repository and is cleared when a group site or the
+ * default navigation of a group site is added or removed, whatever the way the change is made.</p>
+ */
+public class NavigationSetCache
+{
+
+   /** . */
+   private static final Logger log = LoggerFactory.getLogger(NavigationSetCache.class);
+
+   /** . */
+   private final POMSessionManager manager;
+
+   /** . */
+   private final RepositoryService repositoryService;
+
+   /** . */
+   private final EventListener invalidator = new EventListener()
+   {
+      public void onEvent(EventIterator events)
+      {
+         while (events.hasNext())
+         {
+            if (isNavigationChange(groupSitesPath, events.nextEvent()))
+            {
+               clear();
+               return;
+            }
+         }
+      }
+   };
+
+   /** The session observing the group sites, null when the cache is not started. */
+   private volatile Session observationSession;
+
+   /** . */
+   private String groupSitesPath;
+
+   /** . */
+   protected ExoCache<Fingerprint, ArrayList<SiteKey>> cache;
+
+   /** . */
+   protected FutureExoCache<Fingerprint, ArrayList<SiteKey>, NavigationService> sets;
+
+   /** . */
+   private Loader<Fingerprint, ArrayList<SiteKey>, NavigationService> setLoader = new Loader<Fingerprint, ArrayList<SiteKey>, NavigationService>()
+   {
+      public ArrayList<SiteKey> retrieve(NavigationService navService, Fingerprint fingerprint) throws Exception
+      {
+         return load(navService, Arrays.asList(fingerprint.groupIds));
+      }
+   };
+
+   public NavigationSetCache(POMSessionManager manager, RepositoryService repositoryService, CacheService cacheService)
+   {
+      this.manager = manager;
+      this.repositoryService = repositoryService;
+      this.cache = cacheService.getCacheInstance(NavigationSetCache.class.getSimpleName());
+      this.sets = new FutureExoCache<Fingerprint, ArrayList<SiteKey>, NavigationService>(setLoader, cache);
+   }
+
+   /**
+    * Starts to observe the group sites.
+    */
+   public void start()
+   {
+      try
+      {
+         POMSession pomSession = manager.openSession();
+         try
+         {
+            groupSitesPath = pomSession.pathOf(pomSession.getWorkspace()) + "/mop:groupsites";
+         }
+         finally
+         {
+            pomSession.close();
+         }
+
+         //
+         String workspaceName = manager.getLifeCycle().getWorkspaceName();
+         ManageableRepository repo = repositoryService.getCurrentRepository();
+         observationSession = repo.getSystemSession(workspaceName);
+         ObservationManager mgr = observationSession.getWorkspace().getObservationManager();
+         mgr.addEventListener(invalidator, Event.NODE_ADDED | Event.NODE_REMOVED, groupSitesPath, true, null, null, false);
+      }
+      catch (Exception e)
+      {
+         log.error("Could not observe the group sites, the group navigation sets are not cached", e);
+         stop();
+      }
+   }
+
+   /**
+    * Stops to observe the group sites.
+    */
+   public void stop()
+   {
+      if (observationSession != null)
+      {
+         try
+         {
+            observationSession.getWorkspace().getObservationManager().removeEventListener(invalidator);
+         }
+         catch (RepositoryException ignore)
+         {
+         }
+         observationSession.logout();
+         observationSession = null;
+      }
+   }
+
+   /**
+    * Returns the keys of the existing navigations of the specified groups.
+    *
+    * @param navService the navigation service
+    * @param groupIds the group ids
+    * @return the navigation keys
+    */
+   public List<SiteKey> getGroupNavigationKeys(NavigationService navService, Collection<String> groupIds)
+   {
+      POMSession session = manager.getSession();
+      List<SiteKey> keys;
+      if (observationSession == null || (session != null && session.isModified()))
+      {
+         keys = load(navService, groupIds);
+      }
+      else
+      {
+         keys = sets.get(navService, new Fingerprint(groupIds));
+      }
+      return Collections.unmodifiableList(keys);
+   }
+
+   /**
+    * Drops all the cached sets, it must be called when a group navigation is created or destroyed.
+    */
+   public void clear()
+   {
+      cache.clearCache();
+   }
+
+   /**
+    * Returns true when the event adds or removes a group site or the default navigation of a group site.
+    *
+    * @param groupSitesPath the path of the group sites
+    * @param event the event
+    * @return true when the group navigation sets may change
+    */
+   static boolean isNavigationChange(String groupSitesPath, Event event)
+   {
+      try
+      {
+         String path = event.getPath();
+         if (!path.startsWith(groupSitesPath + "/"))
+         {
+            return false;
+         }
+         String[] names = path.substring(groupSitesPath.length() + 1).split("/");
+         return names.length == 1 || (names.length == 4
+            && "mop:rootnavigation".equals(names[1])
+            && "mop:children".equals(names[2])
+            && "mop:default".equals(names[3]));
+      }
+      catch (RepositoryException e)
+      {
+         log.debug("Could not find out the node of an event", e);
+         return true;
+      }
+   }
+
+   /**
+    * Loads the keys of the existing navigations of the specified groups without using any cache.
+    *
+    * @param navService the navigation service
+    * @param groupIds the group ids
+    * @return the navigation keys
+    */
+   static ArrayList<SiteKey> load(NavigationService navService, Collection<String> groupIds)
+   {
+      List<SiteKey> groupKeys = new ArrayList<SiteKey>(groupIds.size());
+      for (String groupId : groupIds)
+      {
+         groupKeys.add(SiteKey.group(groupId));
+      }
+
+      //
+      ArrayList<SiteKey> keys = new ArrayList<SiteKey>();
+      for (NavigationContext navigation : navService.loadNavigations(groupKeys))
+      {
+         if (navigation.getState() != null)
+         {
+            keys.add(navigation.getKey());
+         }
+      }
+      return keys;
+   }
+
+   /**
+    * The sorted group ids of a user.
+    */
+   static class Fingerprint implements Serializable
+   {
+
+      /** . */
+      private final String[] groupIds;
+
+      /** . */
+      private final int hashCode;
+
+      Fingerprint(Collection<String> groupIds)
+      {
+         String[] ids = groupIds.toArray(new String[groupIds.size()]);
+         Arrays.sort(ids);
+
+         //
+         this.groupIds = ids;
+         this.hashCode = Arrays.hashCode(ids);
+      }
+
+      @Override
+      public boolean equals(Object obj)
+      {
+         if (obj == this)
+         {
+            return true;
+         }
+         if (obj instanceof Fingerprint)
+         {
+            Fingerprint that = (Fingerprint)obj;
+            return hashCode == that.hashCode && Arrays.equals(groupIds, that.groupIds);
+         }
+         return false;
+      }
+
+      @Override
+      public int hashCode()
+      {
+         return hashCode;
+      }
+
+      @Override
+      public String toString()
+      {
+         return "Fingerprint[" + Arrays.toString(groupIds) + "]";
+      }
+   }
+}
@@ -20,6 +20,8 @@
 package org.exoplatform.portal.config;
 
 import org.exoplatform.commons.utils.IOUtil;
+import org.exoplatform.container.ExoContainer;
+import org.exoplatform.container.ExoContainerContext;
 import org.exoplatform.container.PortalContainer;
 import org.exoplatform.container.component.BaseComponentPlugin;
 import org.exoplatform.container.component.RequestLifeCycle;
@@ -28,6 +30,9 @@ import org.exoplatform.container.xml.InitParams;
 import org.exoplatform.container.xml.ValueParam;
 import org.exoplatform.portal.application.PortletPreferences;
 import org.exoplatform.portal.application.PortletPreferences.PortletPreferencesSet;
+import org.exoplatform.portal.config.model.Application;
+import org.exoplatform.portal.config.model.ApplicationState;
+import org.exoplatform.portal.config.model.ModelObject;
 import org.exoplatform.portal.config.model.NavigationFragment;
 import org.exoplatform.portal.mop.importer.ImportMode;
 import org.exoplatform.portal.mop.importer.Imported;
@@ -42,24 +47,42 @@ import org.exoplatform.portal.config.model.PageNavigation;
 import org.exoplatform.portal.config.model.PageNode;
 import org.exoplatform.portal.config.model.PortalConfig;
 import org.exoplatform.portal.config.model.Page.PageSet;
+import org.exoplatform.portal.config.model.TransientApplicationState;
 import org.exoplatform.portal.config.model.UnmarshalledObject;
 import org.exoplatform.portal.mop.description.DescriptionService;
 import org.exoplatform.portal.mop.navigation.NavigationService;
 import org.exoplatform.portal.pom.config.POMSession;
 import org.exoplatform.portal.pom.config.POMSessionManager;
+import org.exoplatform.portal.pom.data.PageData;
+import org.exoplatform.portal.pom.data.PortalData;
 import org.gatein.common.logging.Logger;
 import org.gatein.common.logging.LoggerFactory;
 import org.gatein.mop.api.workspace.Workspace;
 import org.jibx.runtime.*;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 /**
@@ -106,6 +129,17 @@ public class NewPortalConfigListener extends BaseComponentPlugin
     */
    private final boolean overrideExistingData;
 
+   /**
+    * The number of threads importing the sites (import.threads), the import is done by the calling thread when it
+    * is 1. The site creation phase is not parallel within an owner type: the portal, group and user sites are each
+    * created in sequence, by at most one thread per owner type. Only the portlet preferences, page and navigation
+    * phases import all their batches concurrently, the time of each phase is logged at the end of the phase.
+    */
+   private final int importThreads;
+
+   /** The maximum number of sites imported in the same request life cycle. */
+   private final int importBatchSize;
+
    /** . */
    private Logger log = LoggerFactory.getLogger(getClass());
 
@@ -118,7 +152,22 @@ public class NewPortalConfigListener extends BaseComponentPlugin
    /** . */
    private DescriptionService descriptionService_;
 
-   final Set<String> createdOwners = new HashSet<String>();
+   /** The parsed page templates keyed by location, a copy is handed out for each page creation. */
+   private final ConcurrentMap<String, PageData> pageTemplates = new ConcurrentHashMap<String, PageData>();
+
+   /** The parsed portal templates keyed by location, a copy is handed out for each portal creation. */
+   private final ConcurrentMap<String, PortalData> portalTemplates = new ConcurrentHashMap<String, PortalData>();
+
+   final Set<String> createdOwners = Collections.synchronizedSet(new HashSet<String>());
+
+   /** Imports the owners of the import batches. */
+   private final OwnerImporter importer = new OwnerImporter()
+   {
+      public void importOwner(ImportPhase phase, NewPortalConfig config, String owner) throws Exception
+      {
+         NewPortalConfigListener.this.importOwner(phase, config, owner);
+      }
+   };
    
    private boolean isFirstStartup = false;
 
@@ -183,6 +232,26 @@ public class NewPortalConfigListener extends BaseComponentPlugin
          overrideExistingData = false;
       }
 
+      valueParam = params.getValueParam("import.threads");
+      if (valueParam != null)
+      {
+         importThreads = Math.max(1, Integer.parseInt(valueParam.getValue().trim()));
+      }
+      else
+      {
+         importThreads = 1;
+      }
+
+      valueParam = params.getValueParam("import.batch.size");
+      if (valueParam != null)
+      {
+         importBatchSize = Math.max(1, Integer.parseInt(valueParam.getValue().trim()));
+      }
+      else
+      {
+         importBatchSize = Integer.MAX_VALUE;
+      }
+
       this.pomMgr = pomMgr;
    }
 
@@ -263,122 +332,228 @@ public class NewPortalConfigListener extends BaseComponentPlugin
       }
 
       //
-      if (isUseTryCatch)
+      final ExoContainer container = PortalContainer.getInstance();
+      ExecutorService executor = null;
+      if (importThreads > 1)
       {
-         RequestLifeCycle.begin(PortalContainer.getInstance());
-         try
+         executor = Executors.newFixedThreadPool(importThreads, new ThreadFactory()
          {
-            for (NewPortalConfig ele : configs)
+            final AtomicInteger count = new AtomicInteger();
+            public Thread newThread(final Runnable r)
             {
-               try
-               {
-                  initPortalConfigDB(ele);
-               }
-               catch (Exception e)
+               return new Thread(new Runnable()
                {
-                  log.error("NewPortalConfig error: " + e.getMessage(), e);
-               }
+                  public void run()
+                  {
+                     ExoContainerContext.setCurrentContainer(container);
+                     r.run();
+                  }
+               }, "PortalConfigImport-" + count.incrementAndGet());
             }
-            for (NewPortalConfig ele : configs)
-            {
-               try
-               {
-                  initPortletPreferencesDB(ele);
-               }
-               catch (Exception e)
-               {
-                  log.error("NewPortalConfig error: " + e.getMessage(), e);
-               }
-            }
-         }
-         finally
+         });
+      }
+
+      // The phases are imported one after the other as the pages must exist before the navigations
+      try
+      {
+         for (ImportPhase phase : ImportPhase.values())
          {
-            RequestLifeCycle.end();
+            importPhase(container, executor, phase);
          }
-         for (NewPortalConfig ele : configs)
+      }
+      finally
+      {
+         if (executor != null)
          {
-            try
-            {
-               initPageDB(ele);
-            }
-            catch (Exception e)
-            {
-               log.error("NewPortalConfig error: " + e.getMessage(), e);
-            }
+            executor.shutdown();
          }
-         RequestLifeCycle.begin(PortalContainer.getInstance());
+      }
+
+      //
+      for (NewPortalConfig ele : configs)
+      {
          try
          {
-            for (NewPortalConfig ele : configs)
-            {
-               try
-               {
-                  initPageNavigationDB(ele);
-               }
-               catch (Exception e)
-               {
-                  log.error("NewPortalConfig error: " + e.getMessage(), e);
-               }
-            }
-         }
-         finally
-         {
-            RequestLifeCycle.end();
+            ele.getPredefinedOwner().clear();
          }
-         for (NewPortalConfig ele : configs)
+         catch (Exception e)
          {
-            try
+            if (!isUseTryCatch)
             {
-               ele.getPredefinedOwner().clear();
-            }
-            catch (Exception e)
-            {
-               log.error("NewPortalConfig error: " + e.getMessage(), e);
+               throw e;
             }
+            log.error("NewPortalConfig error: " + e.getMessage(), e);
          }
       }
-      else
+      
+      //
+      touchImport();
+   }
+
+   /**
+    * Imports a phase for all the sites. The sites are partitioned in batches of the same owner type, each batch is
+    * imported in its own request life cycle, by the calling thread or by the executor when there is one. When the
+    * phase creates the sites, the batches of an owner type are imported one after the other as concurrent sessions
+    * cannot add sibling sites under the same parent node. The method returns when all the batches are done.
+    *
+    * @param container the portal container
+    * @param executor the executor or null
+    * @param phase the phase to import
+    * @throws Exception any exception when the failures are not ignored
+    */
+   private void importPhase(ExoContainer container, ExecutorService executor, ImportPhase phase) throws Exception
+   {
+      long time = System.currentTimeMillis();
+
+      // A site is always imported by a single batch
+      Map<String, List<ImportTask>> sites = new LinkedHashMap<String, List<ImportTask>>();
+      for (NewPortalConfig config : configs)
       {
-         RequestLifeCycle.begin(PortalContainer.getInstance());
-         try
+         for (String owner : config.getPredefinedOwner())
          {
-            for (NewPortalConfig ele : configs)
-            {
-               initPortalConfigDB(ele);
-            }
-            for (NewPortalConfig ele : configs)
+            String key = config.getOwnerType() + "::" + owner;
+            List<ImportTask> tasks = sites.get(key);
+            if (tasks == null)
             {
-               initPortletPreferencesDB(ele);
+               tasks = new ArrayList<ImportTask>();
+               sites.put(key, tasks);
             }
+            tasks.add(new ImportTask(config, owner));
          }
-         finally
+      }
+
+      //
+      List<ImportBatch> batches = new ArrayList<ImportBatch>();
+      ImportBatch batch = null;
+      for (List<ImportTask> tasks : sites.values())
+      {
+         String ownerType = tasks.get(0).config.getOwnerType();
+         if (batch == null || batch.sites == importBatchSize || !batch.ownerType.equals(ownerType))
          {
-            RequestLifeCycle.end();
+            batch = new ImportBatch(container, phase, ownerType, importer, isUseTryCatch);
+            batches.add(batch);
          }
-         for (NewPortalConfig ele : configs)
+         batch.tasks.addAll(tasks);
+         batch.sites++;
+      }
+
+      //
+      Map<String, List<ImportBatch>> chains = new LinkedHashMap<String, List<ImportBatch>>();
+      for (int i = 0;i < batches.size();i++)
+      {
+         String key = phase.createsSites ? batches.get(i).ownerType : Integer.toString(i);
+         List<ImportBatch> chain = chains.get(key);
+         if (chain == null)
          {
-            initPageDB(ele);
+            chain = new ArrayList<ImportBatch>();
+            chains.put(key, chain);
          }
-         RequestLifeCycle.begin(PortalContainer.getInstance());
-         try
+         chain.add(batches.get(i));
+      }
+      int failures = importBatches(executor, chains.values());
+
+      // The number of chains is the parallelism of the phase, one per owner type when the phase creates the sites
+      log.info("Imported " + phase + " of " + sites.size() + " sites in " + batches.size() + " batches and "
+         + chains.size() + " parallel chains in " + (System.currentTimeMillis() - time) + " ms with " + failures
+         + " failures");
+   }
+
+   /**
+    * Imports chains of batches, the batches of a chain are imported one after the other and the chains are imported
+    * by the executor when there is one. The first failure is rethrown, the chains not started yet are cancelled
+    * and the running ones stop after their current batch.
+    *
+    * @param executor the executor or null
+    * @param chains the chains of batches
+    * @return the number of ignored failures
+    * @throws Exception the first failure when the failures are not ignored
+    */
+   static int importBatches(ExecutorService executor, Collection<List<ImportBatch>> chains) throws Exception
+   {
+      AtomicBoolean failed = new AtomicBoolean();
+      List<ImportChain> tasks = new ArrayList<ImportChain>(chains.size());
+      for (List<ImportBatch> chain : chains)
+      {
+         tasks.add(new ImportChain(chain, failed));
+      }
+
+      //
+      int failures = 0;
+      if (executor == null)
+      {
+         for (ImportChain task : tasks)
          {
-            for (NewPortalConfig ele : configs)
-            {
-               initPageNavigationDB(ele);
-            }
+            failures += task.call();
          }
-         finally
+         return failures;
+      }
+
+      //
+      List<Future<Integer>> futures = new ArrayList<Future<Integer>>(tasks.size());
+      boolean done = false;
+      try
+      {
+         for (ImportChain task : tasks)
          {
-            RequestLifeCycle.end();
+            futures.add(executor.submit(task));
          }
-         for (NewPortalConfig ele : configs)
+         for (Future<Integer> future : futures)
          {
-            ele.getPredefinedOwner().clear();
+            failures += future.get();
          }
+         done = true;
+      }
+      catch (ExecutionException e)
+      {
+         Throwable cause = e.getCause();
+         if (cause instanceof Exception)
+         {
+            throw (Exception)cause;
+         }
+         throw (Error)cause;
+      }
+      finally
+      {
+         if (!done)
+         {
+            failed.set(true);
+            for (Future<Integer> future : futures)
+            {
+               future.cancel(false);
+            }
+         }
+      }
+      return failures;
+   }
+
+   private void importOwner(ImportPhase phase, NewPortalConfig config, String owner) throws Exception
+   {
+      switch (phase)
+      {
+         case PORTAL_CONFIG:
+            if (createPortalConfig(config, owner))
+            {
+               this.createdOwners.add(owner);
+            }
+            break;
+         case PORTLET_PREFERENCES:
+            if (!config.getOwnerType().equals(PortalConfig.USER_TYPE))
+            {
+               createPortletPreferences(config, owner);
+            }
+            break;
+         case PAGE:
+            if (this.createdOwners.contains(owner))
+            {
+               createPage(config, owner);
+            }
+            break;
+         case NAVIGATION:
+            createPageNavigation(config, owner);
+            break;
+         default:
+            throw new AssertionError();
       }
-      
-      //
-      touchImport();
    }
 
    String getDefaultPortal()
@@ -519,44 +694,51 @@ public class NewPortalConfigListener extends BaseComponentPlugin
     }
   }
 
+   /**
+    * @deprecated the sites are imported by {@link #run()}, this method is not used by the import anymore
+    */
+   @Deprecated
    public void initPortalConfigDB(NewPortalConfig config) throws Exception
    {
       for (String owner : config.getPredefinedOwner())
       {
-         if (createPortalConfig(config, owner))
-         {
-            this.createdOwners.add(owner);
-         }
+         importOwner(ImportPhase.PORTAL_CONFIG, config, owner);
       }
    }
 
+   /**
+    * @deprecated the sites are imported by {@link #run()}, this method is not used by the import anymore
+    */
+   @Deprecated
    public void initPageDB(NewPortalConfig config) throws Exception
    {
       for (String owner : config.getPredefinedOwner())
       {
-         if (this.createdOwners.contains(owner))
-         {
-            createPage(config, owner);
-         }
+         importOwner(ImportPhase.PAGE, config, owner);
       }
    }
 
+   /**
+    * @deprecated the sites are imported by {@link #run()}, this method is not used by the import anymore
+    */
+   @Deprecated
    public void initPageNavigationDB(NewPortalConfig config) throws Exception
    {
       for (String owner : config.getPredefinedOwner())
       {
-         createPageNavigation(config, owner);
+         importOwner(ImportPhase.NAVIGATION, config, owner);
       }
    }
 
+   /**
+    * @deprecated the sites are imported by {@link #run()}, this method is not used by the import anymore
+    */
+   @Deprecated
    public void initPortletPreferencesDB(NewPortalConfig config) throws Exception
    {
       for (String owner : config.getPredefinedOwner())
       {
-         if (!config.getOwnerType().equals(PortalConfig.USER_TYPE))
-         {
-            createPortletPreferences(config, owner);
-         }
+         importOwner(ImportPhase.PORTLET_PREFERENCES, config, owner);
       }
    }
 
@@ -691,27 +873,39 @@ public class NewPortalConfigListener extends BaseComponentPlugin
 
       // Get XML
       String path = "/" + ownerType + "/" + owner + "/" + fileName + ".xml";
-      String xml = getDefaultConfig(config.getTemplateLocation(), path);
+      InputStream in = getDefaultConfig(config.getTemplateLocation(), path);
+      String xml = null;
 
       //
-      if (xml == null)
+      if (in == null)
       {
          String templateName = config.getTemplateName() != null ? config.getTemplateName() :  fileName;
          path = "/" + ownerType + "/template/" + templateName + "/" + fileName + ".xml";
-         xml = getDefaultConfig(config.getTemplateLocation(), path);
-         if (xml != null)
+         InputStream template = getDefaultConfig(config.getTemplateLocation(), path);
+         if (template != null)
          {
-            xml = OWNER_PATTERN.matcher(xml).replaceAll(owner);
+            // The owner placeholder can only be replaced in the text
+            try
+            {
+               xml = OWNER_PATTERN.matcher(IOUtil.getStreamContentAsString(template)).replaceAll(owner);
+            }
+            finally
+            {
+               safeClose(template);
+            }
          }
       }
 
       //
-      if (xml != null)
+      if (in != null || xml != null)
       {
          boolean ok = false;
          try
          {
-            final UnmarshalledObject<T> o = fromXML(config.getOwnerType(), owner, xml, type);
+            final UnmarshalledObject<T> o = in != null
+               ? ModelUnmarshaller.unmarshall(type, in)
+               : ModelUnmarshaller.unmarshall(type, new StringReader(xml));
+            setOwner(ownerType, owner, o.getObject());
             ok = true;
             return o;
          }
@@ -726,6 +920,7 @@ public class NewPortalConfigListener extends BaseComponentPlugin
             {
                log.error("Could not load file: " + path);
             }
+            safeClose(in);
          }
       }
 
@@ -733,29 +928,57 @@ public class NewPortalConfigListener extends BaseComponentPlugin
       return null;
    }
 
-   private String getDefaultConfig(String location, String path) throws Exception
+   private InputStream getDefaultConfig(String location, String path)
    {
       String s = location + path;
-      String content = null;
       try
       {
          log.debug("Attempt to load file " + s);
-         content = IOUtil.getStreamContentAsString(cmanager_.getInputStream(s));
-         log.debug("Loaded file from path " + s + " with content " + content);
+         InputStream in = cmanager_.getInputStream(s);
+         log.debug("Loaded file from path " + s);
+         return in;
       }
       catch (Exception ignore)
       {
          log.debug("Could not get file " + s + " will return null instead");
+         return null;
+      }
+   }
+
+   private static void safeClose(InputStream in)
+   {
+      if (in != null)
+      {
+         try
+         {
+            in.close();
+         }
+         catch (IOException ignore)
+         {
+         }
       }
-      return content;
    }
 
    public Page createPageFromTemplate(String ownerType, String owner, String temp) throws Exception
    {
       String path = pageTemplatesLocation_ + "/" + temp + "/page.xml";
-      InputStream is = cmanager_.getInputStream(path);
-      String xml = IOUtil.getStreamContentAsString(is);
-      return fromXML(ownerType, owner, xml, Page.class).getObject();
+      PageData template = pageTemplates.get(path);
+      if (template == null)
+      {
+         InputStream in = cmanager_.getInputStream(path);
+         try
+         {
+            template = ModelUnmarshaller.unmarshall(Page.class, in).getObject().build();
+         }
+         finally
+         {
+            safeClose(in);
+         }
+         pageTemplates.put(path, template);
+      }
+      Page page = new Page(template);
+      copyTransientStates(page);
+      return page;
    }
 
    public String getTemplateConfig(String type, String name)
@@ -797,6 +1020,16 @@ public class NewPortalConfigListener extends BaseComponentPlugin
    public PortalConfig getPortalConfigFromTemplate(String siteType, String templateName)
    {
       String templatePath = getTemplateConfig(siteType, templateName);
+      String key = templatePath + "/" + siteType + "/" + templateName;
+      PortalData template = portalTemplates.get(key);
+      if (template != null)
+      {
+         PortalConfig portalConfig = new PortalConfig(template);
+         copyTransientStates(portalConfig.getPortalLayout());
+         return portalConfig;
+      }
+
+      //
       NewPortalConfig config = new NewPortalConfig(templatePath);
       config.setTemplateName(templateName);
       config.setOwnerType(siteType);
@@ -806,7 +1039,12 @@ public class NewPortalConfigListener extends BaseComponentPlugin
          result = getConfig(config, templateName, siteType, PortalConfig.class);
          if (result != null)
          {
-            return result.getObject();
+            PortalConfig portalConfig = result.getObject();
+            if (portalConfig.getPortalLayout() != null)
+            {
+               portalTemplates.put(key, portalConfig.build());
+            }
+            return portalConfig;
          }
       }
       catch (Exception e)
@@ -818,10 +1056,8 @@ public class NewPortalConfigListener extends BaseComponentPlugin
 
    // Deserializing code
 
-   private <T> UnmarshalledObject<T> fromXML(String ownerType, String owner, String xml, Class<T> clazz) throws Exception
+   private static void setOwner(String ownerType, String owner, Object o)
    {
-      UnmarshalledObject<T> obj = ModelUnmarshaller.unmarshall(clazz, xml.getBytes("UTF-8"));
-      T o = obj.getObject();
       if (o instanceof PageNavigation)
       {
          PageNavigation nav = (PageNavigation)o;
@@ -854,7 +1090,43 @@ public class NewPortalConfigListener extends BaseComponentPlugin
             //        pdcService_.create(page);
          }
       }
-      return obj;
+   }
+
+   /**
+    * The copies built from a cached template share the application states, the transient ones are mutable
+    * and are replaced by a copy.
+    *
+    * @param object the model object graph root
+    */
+   private static void copyTransientStates(ModelObject object)
+   {
+      if (object instanceof Container)
+      {
+         for (ModelObject child : ((Container)object).getChildren())
+         {
+            copyTransientStates(child);
+         }
+      }
+      else if (object instanceof Application)
+      {
+         Application<?> application = (Application<?>)object;
+         copyTransientState(application);
+      }
+   }
+
+   private static <S> void copyTransientState(Application<S> application)
+   {
+      ApplicationState<S> state = application.getState();
+      if (state instanceof TransientApplicationState)
+      {
+         TransientApplicationState<S> transientState = (TransientApplicationState<S>)state;
+         application.setState(new TransientApplicationState<S>(
+            transientState.getContentId(),
+            transientState.getContentState(),
+            transientState.getOwnerType(),
+            transientState.getOwnerId(),
+            transientState.getUniqueId()));
+      }
    }
 
    private static String fixOwnerName(String type, String owner)
@@ -982,4 +1254,186 @@ public class NewPortalConfigListener extends BaseComponentPlugin
       
       return importMode;
    }
+
+   /**
+    * The import phases in their execution order.
+    */
+   enum ImportPhase
+   {
+
+      /** The sites are created, the sites of an owner type are created by one thread at a time. */
+      PORTAL_CONFIG(true, true),
+
+      PORTLET_PREFERENCES(true, false),
+
+      /** Each page is imported in its own request life cycle. */
+      PAGE(false, false),
+
+      NAVIGATION(true, false);
+
+      /** . */
+      private final boolean lifeCycle;
+
+      /** . */
+      private final boolean createsSites;
+
+      ImportPhase(boolean lifeCycle, boolean createsSites)
+      {
+         this.lifeCycle = lifeCycle;
+         this.createsSites = createsSites;
+      }
+   }
+
+   /**
+    * Imports an owner for a phase.
+    */
+   interface OwnerImporter
+   {
+      void importOwner(ImportPhase phase, NewPortalConfig config, String owner) throws Exception;
+   }
+
+   static class ImportTask
+   {
+
+      /** . */
+      private final NewPortalConfig config;
+
+      /** . */
+      private final String owner;
+
+      ImportTask(NewPortalConfig config, String owner)
+      {
+         this.config = config;
+         this.owner = owner;
+      }
+   }
+
+   /**
+    * A batch of sites of the same owner type imported in the same request life cycle, it returns the number of
+    * ignored failures.
+    */
+   static class ImportBatch implements Callable<Integer>
+   {
+
+      /** . */
+      private static final Logger log = LoggerFactory.getLogger(NewPortalConfigListener.class);
+
+      /** . */
+      private final ExoContainer container;
+
+      /** . */
+      private final ImportPhase phase;
+
+      /** . */
+      private final String ownerType;
+
+      /** . */
+      private final OwnerImporter importer;
+
+      /** . */
+      private final boolean ignoreFailures;
+
+      /** . */
+      final List<ImportTask> tasks;
+
+      /** . */
+      int sites;
+
+      ImportBatch(ExoContainer container, ImportPhase phase, String ownerType, OwnerImporter importer,
+         boolean ignoreFailures)
+      {
+         this.container = container;
+         this.phase = phase;
+         this.ownerType = ownerType;
+         this.importer = importer;
+         this.ignoreFailures = ignoreFailures;
+         this.tasks = new ArrayList<ImportTask>();
+         this.sites = 0;
+      }
+
+      public Integer call() throws Exception
+      {
+         int failures = 0;
+         if (phase.lifeCycle)
+         {
+            RequestLifeCycle.begin(container);
+         }
+         try
+         {
+            for (ImportTask task : tasks)
+            {
+               try
+               {
+                  importer.importOwner(phase, task.config, task.owner);
+               }
+               catch (Exception e)
+               {
+                  if (!ignoreFailures)
+                  {
+                     throw e;
+                  }
+                  log.error("NewPortalConfig error: " + e.getMessage(), e);
+                  failures++;
+               }
+            }
+         }
+         finally
+         {
+            if (phase.lifeCycle)
+            {
+               RequestLifeCycle.end();
+            }
+         }
+
+         //
+         log.debug("Imported " + phase + " of " + sites + " " + ownerType + " sites");
+         return failures;
+      }
+   }
+
+   /**
+    * Batches imported one after the other, the remaining batches are skipped once an import failed.
+    */
+   private static class ImportChain implements Callable<Integer>
+   {
+
+      /** . */
+      private final List<ImportBatch> batches;
+
+      /** . */
+      private final AtomicBoolean failed;
+
+      private ImportChain(List<ImportBatch> batches, AtomicBoolean failed)
+      {
+         this.batches = batches;
+         this.failed = failed;
+      }
+
+      public Integer call() throws Exception
+      {
+         int failures = 0;
+         for (ImportBatch batch : batches)
+         {
+            if (failed.get())
+            {
+               break;
+            }
+            try
+            {
+               failures += batch.call();
+            }
+            catch (Exception e)
+            {
+               failed.set(true);
+               throw e;
+            }
+            catch (Error e)
+            {
+               failed.set(true);
+               throw e;
+            }
+         }
+         return failures;
+      }
+   }
 }
@@ -29,7 +29,9 @@ import org.exoplatform.portal.config.model.ModelObject;
 import org.exoplatform.portal.config.model.Page;
 import org.exoplatform.portal.config.model.PortalConfig;
 import org.exoplatform.portal.config.model.TransientApplicationState;
+import org.exoplatform.portal.mop.EventType;
 import org.exoplatform.portal.mop.SiteKey;
+import org.exoplatform.portal.mop.SiteType;
 import org.exoplatform.portal.mop.description.DescriptionService;
 import org.exoplatform.portal.mop.importer.ImportMode;
 import org.exoplatform.portal.mop.navigation.NavigationContext;
@@ -37,7 +39,13 @@ import org.exoplatform.portal.mop.navigation.NavigationService;
 import org.exoplatform.portal.mop.navigation.NavigationState;
 import org.exoplatform.portal.mop.user.UserNavigation;
 import org.exoplatform.portal.mop.user.UserPortalContext;
+import org.exoplatform.portal.pom.config.POMSessionManager;
 import org.exoplatform.portal.pom.data.ModelChange;
+import org.exoplatform.services.cache.CacheService;
+import org.exoplatform.services.jcr.RepositoryService;
+import org.exoplatform.services.listener.Event;
+import org.exoplatform.services.listener.Listener;
+import org.exoplatform.services.listener.ListenerService;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
 import org.exoplatform.services.organization.Group;
@@ -75,6 +83,9 @@ public class UserPortalConfigService implements Startable
    /** . */
    private final ImportMode defaultImportMode;
 
+   /** The group navigation sets, null when no cache is configured. */
+   private final NavigationSetCache navigationSets;
+
    private Log log = ExoLogger.getLogger("Portal:UserPortalConfigService");
 
    public UserPortalConfigService(
@@ -85,6 +96,21 @@ public class UserPortalConfigService implements Startable
       DescriptionService descriptionService,
       InitParams params) throws Exception
    {
+      this(userACL, storage, orgService, navService, descriptionService, null, null, null, null, params);
+   }
+
+   public UserPortalConfigService(
+      UserACL userACL,
+      DataStorage storage,
+      OrganizationService orgService,
+      NavigationService navService,
+      DescriptionService descriptionService,
+      POMSessionManager manager,
+      RepositoryService repositoryService,
+      CacheService cacheService,
+      ListenerService listenerService,
+      InitParams params) throws Exception
+   {
 
       //
       ValueParam createUserPortalParam = params == null ? null : params.getValueParam("create.user.portal");
@@ -107,6 +133,30 @@ public class UserPortalConfigService implements Startable
       this.createUserPortal = createUserPortal;
       this.destroyUserPortal = destroyUserPortal;
       this.defaultImportMode = defaultImportMode;
+
+      //
+      if (manager != null && repositoryService != null && cacheService != null && listenerService != null)
+      {
+         final NavigationSetCache navigationSets = new NavigationSetCache(manager, repositoryService, cacheService);
+         Listener<Object, SiteKey> invalidator = new Listener<Object, SiteKey>()
+         {
+            @Override
+            public void onEvent(Event<Object, SiteKey> event) throws Exception
+            {
+               if (event.getData().getType() == SiteType.GROUP)
+               {
+                  navigationSets.clear();
+               }
+            }
+         };
+         listenerService.addListener(EventType.NAVIGATION_CREATED, invalidator);
+         listenerService.addListener(EventType.NAVIGATION_DESTROYED, invalidator);
+         this.navigationSets = navigationSets;
+      }
+      else
+      {
+         this.navigationSets = null;
+      }
    }
 
    public ImportMode getDefaultImportMode()
@@ -154,6 +204,25 @@ public class UserPortalConfigService implements Startable
       return userACL_;
    }
 
+   /**
+    * Returns the keys of the navigations that exist for the specified groups. The result is shared by all the
+    * users having the same groups when a cache is configured.
+    *
+    * @param groupIds the group ids
+    * @return the navigation keys
+    */
+   public List<SiteKey> getGroupNavigationKeys(Collection<String> groupIds)
+   {
+      if (navigationSets != null)
+      {
+         return navigationSets.getGroupNavigationKeys(navService, groupIds);
+      }
+      else
+      {
+         return NavigationSetCache.load(navService, groupIds);
+      }
+   }
+
    public OrganizationService getOrganizationService()
    {
       return orgService_;
@@ -614,6 +683,12 @@ public class UserPortalConfigService implements Startable
 
    public void start()
    {
+      if (navigationSets != null)
+      {
+         navigationSets.start();
+      }
+
+      //
       try
       {
          if (newPortalConfigListener_ == null)
@@ -632,6 +707,10 @@ public class UserPortalConfigService implements Startable
 
    public void stop()
    {
+      if (navigationSets != null)
+      {
+         navigationSets.stop();
+      }
    }
 
    public String getDefaultPortal()
@@ -19,57 +19,80 @@
 
 package org.exoplatform.portal.config.model;
 
-import org.gatein.common.io.IOTools;
 import org.jibx.runtime.BindingDirectory;
 import org.jibx.runtime.IBindingFactory;
+import org.jibx.runtime.JiBXException;
 import org.jibx.runtime.impl.UnmarshallingContext;
 
-import javax.xml.namespace.QName;
-import javax.xml.stream.XMLInputFactory;
-import javax.xml.stream.XMLStreamReader;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.io.Reader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
+ * Unmarshalls the model objects and finds out the version of the document in a single parse: the namespace of
+ * the document is read from the root element before the unmarshalling context consumes it.
+ *
  * @author <a href="mailto:julien.viet@exoplatform.com">Julien Viet</a>
  */
 public class ModelUnmarshaller
 {
 
+   /** The binding factories are looked up by reflection, we keep them once resolved. */
+   private static final ConcurrentMap<Class<?>, IBindingFactory> factories = new ConcurrentHashMap<Class<?>, IBindingFactory>();
+
    public static <T> UnmarshalledObject<T> unmarshall(Class<T> type, InputStream in) throws Exception
    {
-      return unmarshall(type, IOTools.getBytes(in));
+      UnmarshallingContext uctx = createContext(type);
+      uctx.setDocument(in, null, "UTF-8", false);
+      return unmarshall(type, uctx);
+   }
+
+   public static <T> UnmarshalledObject<T> unmarshall(Class<T> type, Reader reader) throws Exception
+   {
+      UnmarshallingContext uctx = createContext(type);
+      uctx.setDocument(reader, null, false);
+      return unmarshall(type, uctx);
    }
 
    public static <T> UnmarshalledObject<T> unmarshall(Class<T> type, byte[] bytes) throws Exception
    {
-      ByteArrayInputStream baos = new ByteArrayInputStream(bytes);
+      return unmarshall(type, new ByteArrayInputStream(bytes));
+   }
 
-      //
-      IBindingFactory bfact = BindingDirectory.getFactory(type);
-      UnmarshallingContext uctx = (UnmarshallingContext)bfact.createUnmarshallingContext();
-      uctx.setDocument(baos, null, "UTF-8", false);
-      T obj = type.cast(uctx.unmarshalElement());
+   private static UnmarshallingContext createContext(Class<?> type) throws JiBXException
+   {
+      IBindingFactory bfact = factories.get(type);
+      if (bfact == null)
+      {
+         bfact = BindingDirectory.getFactory(type);
+         factories.putIfAbsent(type, bfact);
+      }
+      return (UnmarshallingContext)bfact.createUnmarshallingContext();
+   }
 
-      // Find out version
-      XMLInputFactory factory = XMLInputFactory.newInstance();
-      baos.reset();
-      XMLStreamReader reader = factory.createXMLStreamReader(baos);
-      Version version = Version.UNKNOWN;
-      while (reader.hasNext())
+   private static <T> UnmarshalledObject<T> unmarshall(Class<T> type, UnmarshallingContext uctx) throws JiBXException
+   {
+      // Find out version on the root element, the document is parsed without namespace processing
+      // so the namespace declarations are seen as plain attributes
+      uctx.toStart();
+      String name = uctx.getName();
+      int index = name.indexOf(':');
+      String xmlns = index == -1 ? "xmlns" : "xmlns:" + name.substring(0, index);
+      String uri = "";
+      for (int i = 0;i < uctx.getAttributeCount();i++)
       {
-         int next = reader.next();
-         if (next == XMLStreamReader.START_ELEMENT)
+         if (xmlns.equals(uctx.getAttributeName(i)))
          {
-            QName name = reader.getName();
-            String uri = name.getNamespaceURI();
-            if (uri != null)
-            {
-               version = Version.forURI(uri);
-            }
+            uri = uctx.getAttributeValue(i);
             break;
          }
       }
+      Version version = Version.forURI(uri);
+
+      //
+      T obj = type.cast(uctx.unmarshalElement());
 
       //
       return new UnmarshalledObject<T>(version, obj);
@@ -27,6 +27,9 @@ import org.gatein.mop.api.workspace.Site;
 import org.gatein.mop.api.workspace.Workspace;
 
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import static org.exoplatform.portal.mop.navigation.Utils.objectType;
 
@@ -38,17 +41,35 @@ import static org.exoplatform.portal.mop.navigation.Utils.objectType;
 abstract class DataCache
 {
 
-   protected abstract void removeNodes(Collection<String> keys);
+   protected abstract void removeSnapshot(String rootId);
 
-   protected abstract NodeData getNode(POMSession session, String key);
+   protected abstract NavigationSnapshot getSnapshot(POMSession session, String rootId);
 
    protected abstract NavigationData getNavigation(POMSession session, SiteKey key);
 
+   /**
+    * Returns the cached navigation without loading it.
+    *
+    * @param key the navigation key
+    * @return the cached navigation or null
+    */
+   protected abstract NavigationData peekNavigation(SiteKey key);
+
+   protected abstract Map<SiteKey, NavigationData> getNavigations(POMSession session, Collection<SiteKey> keys);
+
    protected abstract void removeNavigation(SiteKey key);
 
    protected abstract void clear();
 
-   final NodeData getNodeData(POMSession session, String nodeId)
+   /**
+    * Returns the data of a node, the nodes of a navigation are cached together in a snapshot of the navigation.
+    *
+    * @param session the session
+    * @param rootId the id of the navigation root node
+    * @param nodeId the node id
+    * @return the node data or null
+    */
+   final NodeData getNodeData(POMSession session, String rootId, String nodeId)
    {
       NodeData data;
       if (session.isModified())
@@ -57,7 +78,8 @@ abstract class DataCache
       }
       else
       {
-         data = getNode(session, nodeId);
+         NavigationSnapshot snapshot = getSnapshot(session, rootId);
+         data = snapshot != null ? snapshot.get(nodeId) : null;
       }
       return data;
    }
@@ -78,9 +100,25 @@ abstract class DataCache
       return data;
    }
 
-   final void removeNodeData(POMSession session, Collection<String> ids)
+   final Map<SiteKey, NavigationData> getNavigationData(POMSession session, Collection<SiteKey> keys)
+   {
+      Map<SiteKey, NavigationData> data;
+      if (session.isModified())
+      {
+         data = loadNavigations(session, keys);
+      }
+      else
+      {
+         data = getNavigations(session, keys);
+      }
+
+      //
+      return data;
+   }
+
+   final void removeNodeData(POMSession session, String rootId)
    {
-      removeNodes(ids);
+      removeSnapshot(rootId);
    }
 
    final void removeNavigationData(POMSession session, SiteKey key)
@@ -88,6 +126,34 @@ abstract class DataCache
       removeNavigation(key);
    }
 
+   /**
+    * Removes the navigation of a site and the snapshot of its nodes, the other navigations remain in the cache.
+    *
+    * @param key the site key
+    */
+   final void removeSiteData(SiteKey key)
+   {
+      NavigationData navigation = peekNavigation(key);
+      removeNavigation(key);
+      if (navigation != null && navigation.rootId != null)
+      {
+         removeSnapshot(navigation.rootId);
+      }
+   }
+
+   protected final NavigationSnapshot loadSnapshot(POMSession session, String rootId)
+   {
+      Navigation root = session.findObjectById(ObjectType.NAVIGATION, rootId);
+      if (root != null)
+      {
+         return NavigationSnapshot.create(root);
+      }
+      else
+      {
+         return null;
+      }
+   }
+
    protected final NodeData loadNode(POMSession session, String nodeId)
    {
       Navigation navigation = session.findObjectById(ObjectType.NAVIGATION, nodeId);
@@ -101,10 +167,94 @@ abstract class DataCache
       }
    }
 
+   /**
+    * Loads in a single traversal the data of a node and of its descendants down to the specified depth, a negative
+    * depth loads the whole subtree. The loaded data are not cached, they are added to the <code>nodes</code> map.
+    *
+    * @param session the session
+    * @param nodeId the node id
+    * @param depth the depth
+    * @param nodes the map receiving the node data
+    */
+   protected final void loadNodes(POMSession session, String nodeId, int depth, Map<String, NodeData> nodes)
+   {
+      Navigation navigation = session.findObjectById(ObjectType.NAVIGATION, nodeId);
+      if (navigation != null)
+      {
+         collect(navigation, depth, nodes);
+      }
+   }
+
+   /**
+    * Loads in a single traversal the data of a node and of its siblings as the siblings of a node are usually
+    * visited together. The loaded data are not cached, they are added to the <code>nodes</code> map.
+    *
+    * @param session the session
+    * @param nodeId the node id
+    * @param nodes the map receiving the node data
+    */
+   protected final void loadSiblings(POMSession session, String nodeId, Map<String, NodeData> nodes)
+   {
+      Navigation navigation = session.findObjectById(ObjectType.NAVIGATION, nodeId);
+      if (navigation != null)
+      {
+         Navigation parent = navigation.getParent();
+         List<Navigation> siblings = parent != null ? parent.getChildren() : null;
+         if (siblings != null)
+         {
+            for (Navigation sibling : siblings)
+            {
+               nodes.put(sibling.getObjectId(), new NodeData(sibling));
+            }
+         }
+         else
+         {
+            nodes.put(nodeId, new NodeData(navigation));
+         }
+      }
+   }
+
+   private static void collect(Navigation navigation, int depth, Map<String, NodeData> nodes)
+   {
+      nodes.put(navigation.getObjectId(), new NodeData(navigation));
+      if (depth != 0)
+      {
+         List<Navigation> children = navigation.getChildren();
+         if (children != null)
+         {
+            for (Navigation child : children)
+            {
+               collect(child, depth - 1, nodes);
+            }
+         }
+      }
+   }
 
    protected final  NavigationData loadNavigation(POMSession session, SiteKey key)
+   {
+      return loadNavigation(session.getWorkspace(), key);
+   }
+
+   /**
+    * Load several navigations with the same session, the returned map preserves the order of the keys.
+    *
+    * @param session the session
+    * @param keys the navigation keys
+    * @return the navigations
+    */
+   protected final Map<SiteKey, NavigationData> loadNavigations(POMSession session, Collection<SiteKey> keys)
    {
       Workspace workspace = session.getWorkspace();
+      Map<SiteKey, NavigationData> navigations = new LinkedHashMap<SiteKey, NavigationData>();
+      for (SiteKey key : keys)
+      {
+         navigations.put(key, loadNavigation(workspace, key));
+      }
+      return navigations;
+   }
+
+   private NavigationData loadNavigation(Workspace workspace, SiteKey key)
+   {
       ObjectType<Site> objectType = objectType(key.getType());
       Site site = workspace.getSite(objectType, key.getName());
       if (site != null)
@@ -28,7 +28,12 @@ import org.exoplatform.services.cache.CacheService;
 import org.exoplatform.services.cache.ExoCache;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * An implementation using the cache service.
@@ -56,7 +61,7 @@ public class ExoDataCache extends DataCache
          }
          else
          {
-            return loadNode(session, (String)key);
+            return loadSnapshot(session, (String)key);
          }
       }
    };
@@ -68,18 +73,15 @@ public class ExoDataCache extends DataCache
    }
 
    @Override
-   protected void removeNodes(Collection<String> keys)
+   protected void removeSnapshot(String rootId)
    {
-      for (String key : keys)
-      {
-         cache.remove(ScopedKey.create(key));
-      }
+      cache.remove(ScopedKey.create(rootId));
    }
 
    @Override
-   protected NodeData getNode(POMSession session, String key)
+   protected NavigationSnapshot getSnapshot(POMSession session, String rootId)
    {
-      return (NodeData)objects.get(session, ScopedKey.create(key));
+      return (NavigationSnapshot)objects.get(session, ScopedKey.create(rootId));
    }
 
    @Override
@@ -94,6 +96,43 @@ public class ExoDataCache extends DataCache
       return (NavigationData)objects.get(session, ScopedKey.create(key));
    }
 
+   @Override
+   protected NavigationData peekNavigation(SiteKey key)
+   {
+      return (NavigationData)cache.get(ScopedKey.create(key));
+   }
+
+   @Override
+   protected Map<SiteKey, NavigationData> getNavigations(POMSession session, Collection<SiteKey> keys)
+   {
+      Map<SiteKey, NavigationData> result = new LinkedHashMap<SiteKey, NavigationData>();
+      List<SiteKey> missing = new ArrayList<SiteKey>();
+      for (SiteKey key : keys)
+      {
+         NavigationData navigation = (NavigationData)cache.get(ScopedKey.create(key));
+         if (navigation == null)
+         {
+            missing.add(key);
+         }
+         result.put(key, navigation);
+      }
+
+      // Load all the missing navigations and put them in the cache at once
+      if (missing.size() > 0)
+      {
+         Map<ScopedKey<?>, Serializable> loaded = new HashMap<ScopedKey<?>, Serializable>();
+         for (Map.Entry<SiteKey, NavigationData> entry : loadNavigations(session, missing).entrySet())
+         {
+            loaded.put(ScopedKey.create(entry.getKey()), entry.getValue());
+            result.put(entry.getKey(), entry.getValue());
+         }
+         cache.putMap(loaded);
+      }
+
+      //
+      return result;
+   }
+
    @Override
    protected void clear()
    {
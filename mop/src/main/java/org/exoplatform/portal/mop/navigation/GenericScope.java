@@ -267,6 +267,9 @@ public class GenericScope
    public static class Tree implements Scope
    {
 
+      /** The height of the tree, the service uses it to prefetch the nodes in scope. */
+      final int height;
+
       /** . */
       private final Visitor visitor;
 
@@ -278,6 +281,7 @@ public class GenericScope
        */
       public Tree(final int height)
       {
+         this.height = height;
          this.visitor = new Visitor()
          {
             public VisitMode enter(int depth, String id, String name, NodeState state)
@@ -19,7 +19,11 @@
 
 package org.exoplatform.portal.mop.navigation;
 
+import org.chromattic.ext.format.BaseEncodingObjectFormatter;
+import org.exoplatform.portal.mop.SiteKey;
 import org.exoplatform.portal.mop.SiteType;
+import org.gatein.common.logging.Logger;
+import org.gatein.common.logging.LoggerFactory;
 
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
@@ -34,6 +38,12 @@ import javax.jcr.observation.ObservationManager;
 class InvalidationBridge
 {
 
+   /** . */
+   private static final Logger log = LoggerFactory.getLogger(InvalidationBridge.class);
+
+   /** The formatter of the site node names. */
+   private static final BaseEncodingObjectFormatter formatter = new BaseEncodingObjectFormatter();
+
    /** . */
    private final DataCache cache;
 
@@ -116,8 +126,49 @@ class InvalidationBridge
 
       public void onEvent(EventIterator events)
       {
-         // We clear the cache when a site is removed in order to remove all the related navigations
-         cache.clear();
+         // We remove the navigation of each removed site, the whole cache is cleared when a site cannot be found out
+         while (events.hasNext())
+         {
+            Event event = events.nextEvent();
+            SiteKey key = null;
+            try
+            {
+               key = getSiteKey(event.getPath());
+            }
+            catch (Exception e)
+            {
+               log.debug("Could not find out the site of a removed node", e);
+            }
+            if (key != null)
+            {
+               cache.removeSiteData(key);
+            }
+            else
+            {
+               cache.clear();
+               return;
+            }
+         }
+      }
+
+      /**
+       * Returns the key of a site from the path of its node, the node name is the site name encoded
+       * with the <code>mop</code> prefix.
+       *
+       * @param path the site node path
+       * @return the site key or null
+       */
+      private SiteKey getSiteKey(String path)
+      {
+         String name = path.substring(path.lastIndexOf('/') + 1);
+         if (name.startsWith("mop:"))
+         {
+            return new SiteKey(type, formatter.decodeNodeName(null, name.substring(4)));
+         }
+         else
+         {
+            return null;
+         }
       }
    }
 }
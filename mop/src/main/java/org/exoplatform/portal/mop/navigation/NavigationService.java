@@ -21,6 +21,9 @@ package org.exoplatform.portal.mop.navigation;
 
 import org.exoplatform.portal.mop.SiteKey;
 
+import java.util.Collection;
+import java.util.List;
+
 /**
  * <p>The navigation service takes care of managing the various portal navigations and their nodes. In order to manage
  * an efficient loading of the nodes, a {@link Scope} is used to describe the set of nodes that should be retrieved
@@ -47,6 +50,16 @@ public interface NavigationService
     */
    NavigationContext loadNavigation(SiteKey key) throws NullPointerException, NavigationServiceException;
 
+   /**
+    * Find and returns several navigations at once, the navigations that do not exist are skipped.
+    *
+    * @param keys the navigation keys
+    * @return the matching navigations in the order of the keys
+    * @throws NullPointerException if the keys or any key is null
+    * @throws NavigationServiceException anything that would prevent the operation to succeed
+    */
+   List<NavigationContext> loadNavigations(Collection<SiteKey> keys) throws NullPointerException, NavigationServiceException;
+
    /**
     * Create, update a navigation. When the navigation state is not null, the navigation
     * will be created or updated depending on whether or not the navigation already exists.
@@ -39,9 +39,10 @@ import org.gatein.mop.api.workspace.Workspace;
 import org.gatein.mop.api.workspace.link.PageLink;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -93,6 +94,33 @@ public class NavigationServiceImpl implements NavigationService
       return data != null && data != NavigationData.EMPTY ? new NavigationContext(data) : null;
    }
 
+   public List<NavigationContext> loadNavigations(Collection<SiteKey> keys)
+   {
+      if (keys == null)
+      {
+         throw new NullPointerException();
+      }
+      for (SiteKey key : keys)
+      {
+         if (key == null)
+         {
+            throw new NullPointerException();
+         }
+      }
+
+      //
+      POMSession session = manager.getSession();
+      List<NavigationContext> navigations = new ArrayList<NavigationContext>(keys.size());
+      for (NavigationData data : dataCache.getNavigationData(session, keys).values())
+      {
+         if (data != null && data != NavigationData.EMPTY)
+         {
+            navigations.add(new NavigationContext(data));
+         }
+      }
+      return navigations;
+   }
+
    public void saveNavigation(NavigationContext navigation) throws NullPointerException, NavigationServiceException
    {
       if (navigation == null)
@@ -173,7 +201,7 @@ public class NavigationServiceImpl implements NavigationService
          String rootId = navigation.data.rootId;
          if (rootId != null)
          {
-            dataCache.removeNodes(Collections.singleton(rootId));
+            dataCache.removeSnapshot(rootId);
          }
 
          // Destroy nav
@@ -209,7 +237,7 @@ public class NavigationServiceImpl implements NavigationService
       if (navigation.data.rootId != null)
       {
          POMSession session = manager.getSession();
-         NodeData data = dataCache.getNodeData(session, nodeId);
+         NodeData data = dataCache.getNodeData(session, nodeId, nodeId);
          if (data != null)
          {
             NodeContext<N> context = new NodeContext<N>(model, data);
@@ -240,8 +268,15 @@ public class NavigationServiceImpl implements NavigationService
          visitor = root.tree;
       }
 
+      // The height of a tree scope applied to the root tells how deep the update will go
+      int depth = 0;
+      if (scope instanceof GenericScope.Tree && root == root.tree.root)
+      {
+         depth = ((GenericScope.Tree)scope).height;
+      }
+
       //
-      updateTree(root.tree, visitor, listener);
+      updateTree(root.tree, visitor, depth, listener);
    }
 
    public <N> void saveNode(NodeContext<N> context, NodeChangeListener<NodeContext<N>> listener) throws NullPointerException, NavigationServiceException
@@ -266,7 +301,7 @@ public class NavigationServiceImpl implements NavigationService
       rebaseTree(context.tree, visitor, listener);
    }
 
-   private <N> void updateTree(TreeContext<N> tree, Scope.Visitor visitor, NodeChangeListener<NodeContext<N>> listener) throws NullPointerException, IllegalArgumentException, NavigationServiceException
+   private <N> void updateTree(TreeContext<N> tree, Scope.Visitor visitor, int depth, NodeChangeListener<NodeContext<N>> listener) throws NullPointerException, IllegalArgumentException, NavigationServiceException
    {
       if (tree.hasChanges())
       {
@@ -275,12 +310,19 @@ public class NavigationServiceImpl implements NavigationService
 
       //
       POMSession session = manager.getSession();
-      NodeData data = dataCache.getNodeData(session, tree.root.data.id);
+      NodeData data = dataCache.getNodeData(session, tree.root.data.id, tree.root.data.id);
       if (data == null)
       {
          throw new NavigationServiceException(NavigationError.UPDATE_CONCURRENTLY_REMOVED_NODE);
       }
 
+      //
+      NodeDataUpdateAdapter adapter = NodeDataUpdateAdapter.create(dataCache, session, tree.root.data.id);
+      if (depth != 0)
+      {
+         adapter.prefetch(depth);
+      }
+
       // Switch to edit mode
       tree.editMode = true;
 
@@ -292,7 +334,7 @@ public class NavigationServiceImpl implements NavigationService
             tree,
             NodeContextUpdateAdapter.<N>create(),
             data,
-            NodeDataUpdateAdapter.create(dataCache, session),
+            adapter,
             listener,
             visitor);
       }
@@ -313,7 +355,7 @@ public class NavigationServiceImpl implements NavigationService
       POMSession session = manager.getSession();
 
       //
-      NodeData data = dataCache.getNodeData(session, tree.root.data.id);
+      NodeData data = dataCache.getNodeData(session, tree.root.data.id, tree.root.data.id);
       if (data == null)
       {
          throw new NavigationServiceException(NavigationError.UPDATE_CONCURRENTLY_REMOVED_NODE);
@@ -361,15 +403,18 @@ public class NavigationServiceImpl implements NavigationService
          listener,
          rebased);
 
-      //
-      dataCache.removeNodeData(session, persister.toEvict);
+      // The nodes of the navigation are cached together
+      if (persister.toEvict.size() > 0)
+      {
+         dataCache.removeNodeData(session, tree.root.data.id);
+      }
    }
 
    private <N> void rebaseTree(TreeContext<N> tree, Scope.Visitor visitor, NodeChangeListener<NodeContext<N>> listener) throws NavigationServiceException
    {
       if (!tree.hasChanges())
       {
-         updateTree(tree, visitor, listener);
+         updateTree(tree, visitor, 0, listener);
       }
       else
       {
@@ -389,7 +434,8 @@ public class NavigationServiceImpl implements NavigationService
    private <N> TreeContext<N> rebase(TreeContext<N> tree, Scope.Visitor visitor) throws NavigationServiceException
    {
       POMSession session = manager.getSession();
-      NodeData data = dataCache.getNodeData(session, tree.root.getId());
+      String rootId = tree.root.getId();
+      NodeData data = dataCache.getNodeData(session, rootId, rootId);
       if (data == null)
       {
          throw new NavigationServiceException(NavigationError.UPDATE_CONCURRENTLY_REMOVED_NODE);
@@ -403,7 +449,7 @@ public class NavigationServiceImpl implements NavigationService
          rebased,
          NodeContextUpdateAdapter.<N>create(),
          data,
-         NodeDataUpdateAdapter.create(dataCache, session),
+         NodeDataUpdateAdapter.create(dataCache, session, rootId),
          null,
          visitor);
 
@@ -482,9 +528,9 @@ public class NavigationServiceImpl implements NavigationService
    private static class NodeDataUpdateAdapter implements TreeUpdateAdapter<NodeData>
    {
 
-      static NodeDataUpdateAdapter create(DataCache dataCache, POMSession session)
+      static NodeDataUpdateAdapter create(DataCache dataCache, POMSession session, String rootId)
       {
-         return new NodeDataUpdateAdapter(dataCache, session);
+         return new NodeDataUpdateAdapter(dataCache, session, rootId);
       }
 
       /** . */
@@ -493,10 +539,52 @@ public class NavigationServiceImpl implements NavigationService
       /** . */
       private final POMSession session;
 
-      private NodeDataUpdateAdapter(DataCache dataCache, POMSession session)
+      /** . */
+      private final String rootId;
+
+      /** The data loaded for this update when the session is modified and the cache is bypassed, null otherwise. */
+      private final Map<String, NodeData> loaded;
+
+      private NodeDataUpdateAdapter(DataCache dataCache, POMSession session, String rootId)
       {
          this.dataCache = dataCache;
          this.session = session;
+         this.rootId = rootId;
+         this.loaded = session.isModified() ? new HashMap<String, NodeData>() : null;
+      }
+
+      /**
+       * Loads in a single traversal the nodes of the navigation down to the specified depth, it only matters when the
+       * cache is bypassed as otherwise the nodes are obtained from the navigation snapshot.
+       *
+       * @param depth the depth
+       */
+      void prefetch(int depth)
+      {
+         if (loaded != null)
+         {
+            dataCache.loadNodes(session, rootId, depth, loaded);
+         }
+      }
+
+      private NodeData getNodeData(String nodeId)
+      {
+         if (loaded == null)
+         {
+            return dataCache.getNodeData(session, rootId, nodeId);
+         }
+         NodeData data = loaded.get(nodeId);
+         if (data == null && !loaded.containsKey(nodeId))
+         {
+            // Load the whole level at once since the siblings are likely to be visited next
+            dataCache.loadSiblings(session, nodeId, loaded);
+            data = loaded.get(nodeId);
+            if (data == null)
+            {
+               loaded.put(nodeId, null);
+            }
+         }
+         return data;
       }
 
       public String getHandle(NodeData node)
@@ -511,7 +599,7 @@ public class NavigationServiceImpl implements NavigationService
 
       public NodeData getDescendant(NodeData node, String handle)
       {
-         NodeData data = dataCache.getNodeData(session, handle);
+         NodeData data = getNodeData(handle);
          NodeData current = data;
          while (current != null)
          {
@@ -523,7 +611,7 @@ public class NavigationServiceImpl implements NavigationService
             {
                if (current.parentId != null)
                {
-                  current = dataCache.getNodeData(session, current.parentId);
+                  current = getNodeData(current.parentId);
                }
                else
                {
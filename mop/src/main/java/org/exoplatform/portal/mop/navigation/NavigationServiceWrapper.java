@@ -36,6 +36,8 @@ import org.picocontainer.Startable;
 
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
+import java.util.Collection;
+import java.util.List;
 
 /**
  * @author <a href="mailto:julien.viet@exoplatform.com">Julien Viet</a>
@@ -101,6 +103,11 @@ public class NavigationServiceWrapper implements NavigationService, Startable
       return service.loadNavigation(key);
    }
 
+   public List<NavigationContext> loadNavigations(Collection<SiteKey> keys)
+   {
+      return service.loadNavigations(keys);
+   }
+
    public void saveNavigation(NavigationContext navigation) throws NullPointerException, NavigationServiceException
    {
       boolean created = navigation.data == null;
@@ -0,0 +1,308 @@
+/*
+ * Copyright (C) 2011 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.exoplatform.portal.mop.navigation;
+
+import org.exoplatform.portal.mop.Visibility;
+import org.gatein.mop.api.workspace.Navigation;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable snapshot of all the nodes of a navigation cached as a single value. The nodes are flattened
+ * in arrays indexed by the node index and every string (ids, names, labels, icons and page references)
+ * is stored once in a shared string table. The node data are built from the snapshot on demand and share
+ * its strings.
+ */
+class NavigationSnapshot implements Serializable
+{
+
+   /** The index of a null string or a null visibility. */
+   private static final int NULL = -1;
+
+   /** . */
+   private static final Visibility[] VISIBILITIES = Visibility.values();
+
+   /** The shared string table. */
+   private final String[] strings;
+
+   /** The id of each node. */
+   private final int[] ids;
+
+   /** The parent id of each node, the parent of the root node is not part of the snapshot. */
+   private final int[] parentIds;
+
+   /** The name of each node. */
+   private final int[] names;
+
+   /** The children of the node i are the node indexes from childOffsets[i] to childOffsets[i + 1] of children. */
+   private final int[] childOffsets;
+
+   /** . */
+   private final int[] children;
+
+   /** . */
+   private final int[] labels;
+
+   /** . */
+   private final int[] icons;
+
+   /** . */
+   private final int[] pageRefs;
+
+   /** . */
+   private final long[] startPublicationTimes;
+
+   /** . */
+   private final long[] endPublicationTimes;
+
+   /** . */
+   private final byte[] visibilities;
+
+   /** The node indexes sorted by id for the id lookups. */
+   private final int[] sorted;
+
+   /**
+    * Creates the snapshot of a navigation.
+    *
+    * @param root the root node of the navigation
+    * @return the snapshot
+    */
+   static NavigationSnapshot create(Navigation root)
+   {
+      List<NodeData> nodes = new ArrayList<NodeData>();
+      collect(root, nodes);
+      return new NavigationSnapshot(nodes);
+   }
+
+   private static void collect(Navigation navigation, List<NodeData> nodes)
+   {
+      nodes.add(new NodeData(navigation));
+      List<Navigation> children = navigation.getChildren();
+      if (children != null)
+      {
+         for (Navigation child : children)
+         {
+            collect(child, nodes);
+         }
+      }
+   }
+
+   /**
+    * Creates a snapshot from the node data of a navigation, the first node is the root node.
+    *
+    * @param nodes the nodes
+    * @throws IllegalArgumentException if a child of a node is not part of the nodes
+    */
+   NavigationSnapshot(List<NodeData> nodes) throws IllegalArgumentException
+   {
+      int size = nodes.size();
+
+      //
+      Map<String, Integer> indexes = new HashMap<String, Integer>(size * 2);
+      int childCount = 0;
+      for (int i = 0;i < size;i++)
+      {
+         NodeData node = nodes.get(i);
+         indexes.put(node.id, i);
+         childCount += node.children.length;
+      }
+
+      //
+      StringTable table = new StringTable();
+      this.ids = new int[size];
+      this.parentIds = new int[size];
+      this.names = new int[size];
+      this.childOffsets = new int[size + 1];
+      this.children = new int[childCount];
+      this.labels = new int[size];
+      this.icons = new int[size];
+      this.pageRefs = new int[size];
+      this.startPublicationTimes = new long[size];
+      this.endPublicationTimes = new long[size];
+      this.visibilities = new byte[size];
+
+      //
+      int offset = 0;
+      for (int i = 0;i < size;i++)
+      {
+         NodeData node = nodes.get(i);
+         NodeState state = node.state;
+         ids[i] = table.add(node.id);
+         parentIds[i] = table.add(node.parentId);
+         names[i] = table.add(node.name);
+         childOffsets[i] = offset;
+         for (String childId : node.children)
+         {
+            Integer child = indexes.get(childId);
+            if (child == null)
+            {
+               throw new IllegalArgumentException("The child " + childId + " of the node " + node.id + " is missing");
+            }
+            children[offset++] = child;
+         }
+         labels[i] = table.add(state.getLabel());
+         icons[i] = table.add(state.getIcon());
+         pageRefs[i] = table.add(state.getPageRef());
+         startPublicationTimes[i] = state.getStartPublicationTime();
+         endPublicationTimes[i] = state.getEndPublicationTime();
+         visibilities[i] = state.getVisibility() != null ? (byte)state.getVisibility().ordinal() : NULL;
+      }
+      childOffsets[size] = offset;
+
+      //
+      this.strings = table.toArray();
+
+      //
+      Integer[] sorted = new Integer[size];
+      for (int i = 0;i < size;i++)
+      {
+         sorted[i] = i;
+      }
+      Arrays.sort(sorted, new Comparator<Integer>()
+      {
+         public int compare(Integer o1, Integer o2)
+         {
+            return strings[ids[o1]].compareTo(strings[ids[o2]]);
+         }
+      });
+      this.sorted = new int[size];
+      for (int i = 0;i < size;i++)
+      {
+         this.sorted[i] = sorted[i];
+      }
+   }
+
+   /**
+    * Returns the number of nodes.
+    *
+    * @return the number of nodes
+    */
+   int getSize()
+   {
+      return ids.length;
+   }
+
+   /**
+    * Returns the data of a node of the navigation.
+    *
+    * @param id the node id
+    * @return the node data or null if the node is not part of the navigation
+    */
+   NodeData get(String id)
+   {
+      int low = 0;
+      int high = sorted.length - 1;
+      while (low <= high)
+      {
+         int middle = (low + high) >>> 1;
+         int index = sorted[middle];
+         int cmp = strings[ids[index]].compareTo(id);
+         if (cmp < 0)
+         {
+            low = middle + 1;
+         }
+         else if (cmp > 0)
+         {
+            high = middle - 1;
+         }
+         else
+         {
+            return get(index);
+         }
+      }
+      return null;
+   }
+
+   private NodeData get(int index)
+   {
+      int from = childOffsets[index];
+      int to = childOffsets[index + 1];
+      String[] childIds;
+      if (from < to)
+      {
+         childIds = new String[to - from];
+         for (int i = from;i < to;i++)
+         {
+            childIds[i - from] = strings[ids[children[i]]];
+         }
+      }
+      else
+      {
+         childIds = Utils.EMPTY_STRING_ARRAY;
+      }
+
+      //
+      NodeState state = new NodeState(
+         string(labels[index]),
+         string(icons[index]),
+         startPublicationTimes[index],
+         endPublicationTimes[index],
+         visibilities[index] != NULL ? VISIBILITIES[visibilities[index]] : null,
+         string(pageRefs[index]));
+
+      //
+      return new NodeData(string(parentIds[index]), strings[ids[index]], string(names[index]), state, childIds);
+   }
+
+   private String string(int index)
+   {
+      return index != NULL ? strings[index] : null;
+   }
+
+   /**
+    * Assigns an index to each distinct string.
+    */
+   private static class StringTable
+   {
+
+      /** . */
+      private final Map<String, Integer> indexes = new HashMap<String, Integer>();
+
+      /** . */
+      private final List<String> strings = new ArrayList<String>();
+
+      int add(String s)
+      {
+         if (s == null)
+         {
+            return NULL;
+         }
+         Integer index = indexes.get(s);
+         if (index == null)
+         {
+            index = strings.size();
+            indexes.put(s, index);
+            strings.add(s);
+         }
+         return index;
+      }
+
+      String[] toArray()
+      {
+         return strings.toArray(new String[strings.size()]);
+      }
+   }
+}
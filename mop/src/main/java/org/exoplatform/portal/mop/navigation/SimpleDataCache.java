@@ -23,7 +23,10 @@ import org.exoplatform.commons.serialization.MarshalledObject;
 import org.exoplatform.portal.mop.SiteKey;
 import org.exoplatform.portal.pom.config.POMSession;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -39,35 +42,32 @@ public class SimpleDataCache extends DataCache
    protected Map<MarshalledObject<SiteKey>, MarshalledObject<NavigationData>> navigations;
 
    /** . */
-   protected Map<MarshalledObject<String>, MarshalledObject<NodeData>> nodes;
+   protected Map<MarshalledObject<String>, MarshalledObject<NavigationSnapshot>> snapshots;
 
    public SimpleDataCache()
    {
       this.navigations = new ConcurrentHashMap<MarshalledObject<SiteKey>, MarshalledObject<NavigationData>>();
-      this.nodes = new ConcurrentHashMap<MarshalledObject<String>, MarshalledObject<NodeData>>();
+      this.snapshots = new ConcurrentHashMap<MarshalledObject<String>, MarshalledObject<NavigationSnapshot>>();
    }
 
    @Override
-   protected void removeNodes(Collection<String> keys)
+   protected void removeSnapshot(String rootId)
    {
-      for (String key : keys)
-      {
-         nodes.remove(MarshalledObject.marshall(key));
-      }
+      snapshots.remove(MarshalledObject.marshall(rootId));
    }
 
    @Override
-   protected NodeData getNode(POMSession session, String key)
+   protected NavigationSnapshot getSnapshot(POMSession session, String rootId)
    {
-      MarshalledObject<String> marshalledKey = MarshalledObject.marshall(key);
-      MarshalledObject<NodeData> marshalledNode = nodes.get(marshalledKey);
-      if (marshalledNode == null)
+      MarshalledObject<String> marshalledKey = MarshalledObject.marshall(rootId);
+      MarshalledObject<NavigationSnapshot> marshalledSnapshot = snapshots.get(marshalledKey);
+      if (marshalledSnapshot == null)
       {
-         NodeData node = loadNode(session, key);
-         if (node != null)
+         NavigationSnapshot snapshot = loadSnapshot(session, rootId);
+         if (snapshot != null)
          {
-            nodes.put(marshalledKey, MarshalledObject.marshall(node));
-            return node;
+            snapshots.put(marshalledKey, MarshalledObject.marshall(snapshot));
+            return snapshot;
          }
          else
          {
@@ -76,7 +76,7 @@ public class SimpleDataCache extends DataCache
       }
       else
       {
-         return marshalledNode.unmarshall();
+         return marshalledSnapshot.unmarshall();
       }
    }
 
@@ -110,10 +110,46 @@ public class SimpleDataCache extends DataCache
       }
    }
 
+   @Override
+   protected NavigationData peekNavigation(SiteKey key)
+   {
+      MarshalledObject<NavigationData> marshalledNavigation = navigations.get(MarshalledObject.marshall(key));
+      return marshalledNavigation != null ? marshalledNavigation.unmarshall() : null;
+   }
+
+   @Override
+   protected Map<SiteKey, NavigationData> getNavigations(POMSession session, Collection<SiteKey> keys)
+   {
+      Map<SiteKey, NavigationData> result = new LinkedHashMap<SiteKey, NavigationData>();
+      List<SiteKey> missing = new ArrayList<SiteKey>();
+      for (SiteKey key : keys)
+      {
+         MarshalledObject<NavigationData> marshalledNavigation = navigations.get(MarshalledObject.marshall(key));
+         if (marshalledNavigation == null)
+         {
+            missing.add(key);
+         }
+         result.put(key, marshalledNavigation != null ? marshalledNavigation.unmarshall() : null);
+      }
+
+      //
+      if (missing.size() > 0)
+      {
+         for (Map.Entry<SiteKey, NavigationData> entry : loadNavigations(session, missing).entrySet())
+         {
+            navigations.put(MarshalledObject.marshall(entry.getKey()), MarshalledObject.marshall(entry.getValue()));
+            result.put(entry.getKey(), entry.getValue());
+         }
+      }
+
+      //
+      return result;
+   }
+
    @Override
    protected void clear()
    {
       navigations.clear();
-      nodes.clear();
+      snapshots.clear();
    }
 }
@@ -143,20 +143,27 @@ public class UserPortalImpl implements UserPortal
             }
 
             //
+            List<String> groupIds = new ArrayList<String>(groups.size());
             for (Object group : groups)
             {
                Group m = (Group)group;
                String groupId = m.getId().trim();
                if (!groupId.equals(service.getUserACL().getGuestsGroup()))
                {
-                  NavigationContext groupNavigation = service.getNavigationService().loadNavigation(SiteKey.group(groupId));
-                  if (groupNavigation != null && groupNavigation.getState() != null)
-                  {
-                     navigations.add(new UserNavigation(
-                        this,
-                        groupNavigation,
-                        service.getUserACL().hasEditPermissionOnNavigation(groupNavigation.getKey())));
-                  }
+                  groupIds.add(groupId);
+               }
+            }
+
+            // Only the groups having a navigation are loaded, the set is shared by the users having the same groups
+            List<SiteKey> groupKeys = service.getGroupNavigationKeys(groupIds);
+            for (NavigationContext groupNavigation : service.getNavigationService().loadNavigations(groupKeys))
+            {
+               if (groupNavigation.getState() != null)
+               {
+                  navigations.add(new UserNavigation(
+                     this,
+                     groupNavigation,
+                     service.getUserACL().hasEditPermissionOnNavigation(groupNavigation.getKey())));
                }
             }
 
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2011 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.exoplatform.portal.config;
+
+import org.exoplatform.component.test.AbstractGateInTest;
+import org.exoplatform.portal.config.NewPortalConfigListener.ImportBatch;
+import org.exoplatform.portal.config.NewPortalConfigListener.ImportPhase;
+import org.exoplatform.portal.config.NewPortalConfigListener.ImportTask;
+import org.exoplatform.portal.config.NewPortalConfigListener.OwnerImporter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Tests the scheduling of the import batches of {@link NewPortalConfigListener}.
+ */
+public class TestImportBatches extends AbstractGateInTest
+{
+
+   /** . */
+   private final List<String> imported = Collections.synchronizedList(new ArrayList<String>());
+
+   /** . */
+   private final Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+
+   /** . */
+   private final Set<String> failing = new HashSet<String>();
+
+   /** . */
+   private final OwnerImporter importer = new OwnerImporter()
+   {
+      public void importOwner(ImportPhase phase, NewPortalConfig config, String owner) throws Exception
+      {
+         threads.add(Thread.currentThread());
+         if (failing.contains(owner))
+         {
+            throw new Exception(owner);
+         }
+         imported.add(owner);
+      }
+   };
+
+   public void testSequentialImport() throws Exception
+   {
+      List<List<ImportBatch>> chains = Arrays.asList(
+         Arrays.asList(batch(false, "a", "b"), batch(false, "c")),
+         Arrays.asList(batch(false, "d")));
+
+      //
+      assertEquals(0, NewPortalConfigListener.importBatches(null, chains));
+      assertEquals(Arrays.asList("a", "b", "c", "d"), imported);
+      assertEquals(Collections.singleton(Thread.currentThread()), threads);
+   }
+
+   public void testPooledImport() throws Exception
+   {
+      List<List<ImportBatch>> chains = Arrays.asList(
+         Arrays.asList(batch(false, "a"), batch(false, "b"), batch(false, "c")),
+         Arrays.asList(batch(false, "d")));
+
+      //
+      ExecutorService executor = Executors.newFixedThreadPool(2);
+      try
+      {
+         assertEquals(0, NewPortalConfigListener.importBatches(executor, chains));
+      }
+      finally
+      {
+         executor.shutdown();
+      }
+
+      // The batches of a chain are imported in order
+      assertEquals(new HashSet<String>(Arrays.asList("a", "b", "c", "d")), new HashSet<String>(imported));
+      List<String> chain = new ArrayList<String>(imported);
+      chain.remove("d");
+      assertEquals(Arrays.asList("a", "b", "c"), chain);
+      assertFalse(threads.contains(Thread.currentThread()));
+   }
+
+   public void testFailurePropagation() throws Exception
+   {
+      failing.add("b");
+      List<List<ImportBatch>> chains = Arrays.asList(
+         Arrays.asList(batch(false, "a", "b", "c"), batch(false, "d")),
+         Arrays.asList(batch(false, "e")));
+
+      //
+      ExecutorService executor = Executors.newSingleThreadExecutor();
+      try
+      {
+         NewPortalConfigListener.importBatches(executor, chains);
+         fail();
+      }
+      catch (Exception e)
+      {
+         assertEquals("b", e.getMessage());
+      }
+      finally
+      {
+         executor.shutdown();
+      }
+
+      // Nothing is imported after the failure
+      assertEquals(Arrays.asList("a"), imported);
+   }
+
+   public void testSequentialFailurePropagation() throws Exception
+   {
+      failing.add("a");
+      List<List<ImportBatch>> chains = Arrays.asList(
+         Arrays.asList(batch(false, "a")),
+         Arrays.asList(batch(false, "b")));
+
+      //
+      try
+      {
+         NewPortalConfigListener.importBatches(null, chains);
+         fail();
+      }
+      catch (Exception e)
+      {
+         assertEquals("a", e.getMessage());
+      }
+      assertEquals(Collections.<String>emptyList(), imported);
+   }
+
+   public void testIgnoredFailures() throws Exception
+   {
+      failing.add("b");
+      failing.add("d");
+      List<List<ImportBatch>> chains = Arrays.asList(
+         Arrays.asList(batch(true, "a", "b", "c")),
+         Arrays.asList(batch(true, "d"), batch(true, "e")));
+
+      //
+      ExecutorService executor = Executors.newFixedThreadPool(2);
+      try
+      {
+         assertEquals(2, NewPortalConfigListener.importBatches(executor, chains));
+      }
+      finally
+      {
+         executor.shutdown();
+      }
+      assertEquals(new HashSet<String>(Arrays.asList("a", "c", "e")), new HashSet<String>(imported));
+   }
+
+   private ImportBatch batch(boolean ignoreFailures, String... owners)
+   {
+      ImportBatch batch = new ImportBatch(null, ImportPhase.PAGE, PortalConfig.PORTAL_TYPE, importer, ignoreFailures);
+      for (String owner : owners)
+      {
+         batch.tasks.add(new ImportTask(new NewPortalConfig(), owner));
+         batch.sites++;
+      }
+      return batch;
+   }
+}
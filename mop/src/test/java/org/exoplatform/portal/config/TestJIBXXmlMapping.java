@@ -44,6 +44,7 @@ import org.jibx.runtime.IMarshallingContext;
 import org.jibx.runtime.IUnmarshallingContext;
 
 import java.io.FileInputStream;
+import java.io.FileReader;
 import java.io.FileOutputStream;
 import java.util.ArrayList;
 import java.util.Locale;
@@ -154,6 +155,13 @@ public class TestJIBXXmlMapping extends AbstractGateInTest
       // Add test for user-prefs when supported...
    }
 
+   public void testUnmarshallFromReader() throws Exception
+   {
+      UnmarshalledObject<PageNavigation> obj = ModelUnmarshaller.unmarshall(PageNavigation.class, new FileReader("src/test/resources/jibx/extended-navigation.xml"));
+      assertEquals(Version.V_1_2, obj.getVersion());
+      assertNotNull(obj.getObject());
+   }
+
    public void testSimpleNavigationMapping() throws Exception
    {
       UnmarshalledObject<PageNavigation> obj = ModelUnmarshaller.unmarshall(PageNavigation.class, new FileInputStream("src/test/resources/jibx/simple-navigation.xml"));;
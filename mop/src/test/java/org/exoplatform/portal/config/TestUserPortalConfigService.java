@@ -53,6 +53,8 @@ import org.exoplatform.services.organization.UserHandler;
 import org.exoplatform.services.security.Authenticator;
 import org.exoplatform.services.security.ConversationState;
 import org.gatein.common.util.Tools;
+import org.gatein.mop.api.workspace.ObjectType;
+import org.gatein.mop.api.workspace.Workspace;
 
 import java.util.Arrays;
 import java.util.Collections;
@@ -293,6 +295,51 @@ public class TestUserPortalConfigService extends AbstractConfigTest
       }.execute("root");
    }
 
+   public void testGroupNavigationKeys()
+   {
+      new UnitTest()
+      {
+         public void execute() throws Exception
+         {
+            List<SiteKey> expectedKeys = Arrays.asList(
+               SiteKey.group("/platform/administrators"),
+               SiteKey.group("/platform/users"));
+            List<SiteKey> keys = userPortalConfigSer_.getGroupNavigationKeys(
+               Arrays.asList("/platform/users", "/organization", "/platform/administrators"));
+            assertEquals(expectedKeys, keys);
+
+            // Same groups in another order share the same set
+            keys = userPortalConfigSer_.getGroupNavigationKeys(
+               Arrays.asList("/platform/administrators", "/platform/users", "/organization"));
+            assertEquals(expectedKeys, keys);
+         }
+      }.execute("root");
+   }
+
+   public void testGroupNavigationKeysInvalidation()
+   {
+      new UnitTest()
+      {
+         public void execute() throws Exception
+         {
+            List<String> groupIds = Arrays.asList("/platform/users", "/navigation_set_invalidation");
+            Workspace workspace = mgr.getSession().getWorkspace();
+            workspace.addSite(ObjectType.GROUP_SITE, "/navigation_set_invalidation").getRootNavigation().addChild("default");
+            saveMOP();
+            assertEquals(
+               Arrays.asList(SiteKey.group("/navigation_set_invalidation"), SiteKey.group("/platform/users")),
+               userPortalConfigSer_.getGroupNavigationKeys(groupIds));
+
+            // The site is removed without going through the navigation service
+            workspace.getSite(ObjectType.GROUP_SITE, "/navigation_set_invalidation").destroy();
+            saveMOP();
+            assertEquals(
+               Arrays.asList(SiteKey.group("/platform/users")),
+               userPortalConfigSer_.getGroupNavigationKeys(groupIds));
+         }
+      }.execute("root");
+   }
+
    public void testCreateUserPortalConfig()
    {
       new UnitTest()
@@ -638,6 +685,30 @@ public class TestUserPortalConfigService extends AbstractConfigTest
       }.execute(null);
    }
 
+   public void testCreateFromCachedTemplate()
+   {
+      new UnitTest()
+      {
+         public void execute() throws Exception
+         {
+            Page first = userPortalConfigSer_.createPageTemplate("dashboard", "portal", "test");
+            Page second = userPortalConfigSer_.createPageTemplate("dashboard", "group", "/platform/users");
+            assertNotSame(first, second);
+            assertEquals("portal", first.getOwnerType());
+            assertEquals("test", first.getOwnerId());
+            assertEquals("group", second.getOwnerType());
+            assertEquals("/platform/users", second.getOwnerId());
+
+            //
+            Application<Portlet> firstApp = (Application<Portlet>)first.getChildren().get(0);
+            Application<Portlet> secondApp = (Application<Portlet>)second.getChildren().get(0);
+            assertNotSame(firstApp, secondApp);
+            assertNotSame(firstApp.getState(), secondApp.getState());
+            assertEquals(storage_.getId(firstApp.getState()), storage_.getId(secondApp.getState()));
+         }
+      }.execute(null);
+   }
+
    public void testOverwriteUserLayout()
    {
       new UnitTest()
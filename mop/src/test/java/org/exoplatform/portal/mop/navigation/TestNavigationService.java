@@ -30,7 +30,9 @@ import org.gatein.mop.core.api.MOPService;
 
 import javax.jcr.NodeIterator;
 import javax.jcr.Session;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * @author <a href="mailto:julien.viet@exoplatform.com">Julien Viet</a>
@@ -44,6 +46,25 @@ public class TestNavigationService extends AbstractTestNavigationService
       assertNull(service.loadNavigation(SiteKey.portal("non_existing")));
    }
 
+   public void testLoadNavigations() throws Exception
+   {
+      List<SiteKey> keys = Arrays.asList(
+         SiteKey.portal("non_existing"),
+         SiteKey.portal("classic"),
+         SiteKey.user("non_existing"));
+
+      //
+      List<NavigationContext> navigations = service.loadNavigations(keys);
+      assertEquals(1, navigations.size());
+      assertEquals(SiteKey.portal("classic"), navigations.get(0).getKey());
+      assertEquals(service.loadNavigation(SiteKey.portal("classic")).data.rootId, navigations.get(0).data.rootId);
+
+      // Served from the cache the second time
+      navigations = service.loadNavigations(keys);
+      assertEquals(1, navigations.size());
+      assertEquals(SiteKey.portal("classic"), navigations.get(0).getKey());
+   }
+
    public void testLoadSingleScope() throws Exception
    {
       NavigationContext nav = service.loadNavigation(SiteKey.portal("classic"));
@@ -1672,6 +1672,40 @@ public class TestNavigationServiceSave extends AbstractTestNavigationService
       assertNotNull(root.getChild("foo"));
    }
 
+   public void testPrefetchWithPendingChanges() throws Exception
+   {
+      MOPService mop = mgr.getPOMService();
+      Site portal = mop.getModel().getWorkspace().addSite(ObjectType.PORTAL_SITE, "prefetch_with_pending_changes");
+      Navigation def = portal.getRootNavigation().addChild("default");
+      Navigation a = def.addChild("a");
+      a.addChild("b").addChild("c");
+      a.addChild("d");
+      def.addChild("e");
+
+      //
+      sync(true);
+
+      // Make the cache bypassed
+      mop.getModel().getWorkspace().addSite(ObjectType.PORTAL_SITE, "prefetch_with_pending_changes_2");
+      assertTrue(mgr.getSession().isModified());
+
+      //
+      NavigationContext nav = service.loadNavigation(SiteKey.portal("prefetch_with_pending_changes"));
+      Node root = service.loadNode(Node.MODEL, nav, Scope.GRANDCHILDREN, null).getNode();
+      assertEquals(2, root.getSize());
+      Node aNode = root.getChild("a");
+      assertEquals(2, aNode.getSize());
+      assertNull(aNode.getChild("b").getChildren());
+      assertEquals(1, aNode.getChild("b").getNodeCount());
+      assertEquals(0, root.getChild("e").getSize());
+
+      // Expand beyond the prefetched depth
+      root.update(service, Scope.ALL);
+      Node c = root.getChild("a").getChild("b").getChild("c");
+      assertNotNull(c);
+      assertEquals(0, c.getSize());
+   }
+
    public void testAtomic() throws Exception
    {
       MOPService mop = mgr.getPOMService();
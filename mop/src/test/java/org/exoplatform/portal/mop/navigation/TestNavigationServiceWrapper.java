@@ -19,15 +19,20 @@
 
 package org.exoplatform.portal.mop.navigation;
 
+import org.exoplatform.commons.scope.ScopedKey;
 import org.exoplatform.container.PortalContainer;
 import org.exoplatform.portal.mop.EventType;
 import org.exoplatform.portal.mop.SiteKey;
 import org.exoplatform.portal.pom.config.POMSessionManager;
+import org.exoplatform.services.cache.CacheService;
+import org.exoplatform.services.cache.ExoCache;
 import org.exoplatform.services.listener.Event;
 import org.exoplatform.services.listener.Listener;
 import org.exoplatform.services.listener.ListenerService;
 import org.gatein.mop.api.workspace.ObjectType;
+import org.gatein.mop.api.workspace.Workspace;
 
+import java.io.Serializable;
 import java.util.LinkedList;
 
 /**
@@ -46,6 +51,9 @@ public class TestNavigationServiceWrapper extends AbstractTestNavigationService
    /** . */
    private POMSessionManager mgr;
 
+   /** . */
+   private CacheService cacheService;
+
    @Override
    protected void setUp() throws Exception
    {
@@ -58,6 +66,7 @@ public class TestNavigationServiceWrapper extends AbstractTestNavigationService
       listenerService = (ListenerService)container.getComponentInstanceOfType(ListenerService.class);
       navigationService = (NavigationService)container.getComponentInstanceOfType(NavigationService.class);
       mgr = (POMSessionManager)container.getComponentInstanceOfType(POMSessionManager.class);
+      cacheService = (CacheService)container.getComponentInstanceOfType(CacheService.class);
    }
 
    public void testNotification() throws NavigationServiceException
@@ -181,4 +190,37 @@ public class TestNavigationServiceWrapper extends AbstractTestNavigationService
       }
       end();
    }
+
+   public void testCacheInvalidationScopedToSite() throws Exception
+   {
+      SiteKey removed = SiteKey.group("/wrapper_scoped_invalidation/removed");
+      SiteKey kept = SiteKey.group("/wrapper_scoped_invalidation/kept");
+
+      //
+      begin();
+      Workspace workspace = mgr.getPOMService().getModel().getWorkspace();
+      workspace.addSite(ObjectType.GROUP_SITE, removed.getName()).getRootNavigation().addChild("default");
+      workspace.addSite(ObjectType.GROUP_SITE, kept.getName()).getRootNavigation().addChild("default");
+      end(true);
+
+      //
+      begin();
+      assertNotNull(navigationService.loadNavigation(removed));
+      assertNotNull(navigationService.loadNavigation(kept));
+      end();
+
+      //
+      begin();
+      mgr.getPOMService().getModel().getWorkspace().getSite(ObjectType.GROUP_SITE, removed.getName()).destroy();
+      end(true);
+
+      // Only the navigation of the removed site is evicted
+      ExoCache<Serializable, Serializable> cache = cacheService.getCacheInstance(NavigationService.class.getSimpleName());
+      begin();
+      assertNull(cache.get(ScopedKey.create(removed)));
+      assertNotNull(cache.get(ScopedKey.create(kept)));
+      assertNull(navigationService.loadNavigation(removed));
+      assertNotNull(navigationService.loadNavigation(kept));
+      end();
+   }
 }
@@ -49,6 +49,52 @@ public class TestSerialization extends AbstractGateInTest
       assertEquals(copy.state, data.state);
    }
 
+   public void testNavigationSnapshotSerialization() throws Exception
+   {
+      NodeState state = new NodeState.Builder().pageRef("page").icon("icon").label("label").build();
+      NavigationSnapshot snapshot = new NavigationSnapshot(Arrays.asList(
+         new NodeData("site", "root", "default", NodeState.INITIAL, new String[]{"b", "a"}),
+         new NodeData("root", "b", "foo", state, new String[0]),
+         new NodeData("root", "a", "bar", state, new String[]{"c"}),
+         new NodeData("a", "c", "juu", NodeState.INITIAL, new String[0])));
+      NavigationSnapshot copy = IOTools.clone(snapshot);
+      assertEquals(4, copy.getSize());
+
+      //
+      NodeData root = copy.get("root");
+      assertEquals("site", root.parentId);
+      assertEquals("default", root.name);
+      assertEquals(NodeState.INITIAL, root.state);
+      assertEquals(Arrays.asList("b", "a"), Arrays.asList(root.children));
+
+      //
+      NodeData a = copy.get("a");
+      assertEquals("root", a.parentId);
+      assertEquals("bar", a.name);
+      assertEquals(state, a.state);
+      assertEquals(Arrays.asList("c"), Arrays.asList(a.children));
+
+      //
+      NodeData c = copy.get("c");
+      assertEquals("a", c.parentId);
+      assertEquals(0, c.children.length);
+
+      //
+      assertNull(copy.get("d"));
+   }
+
+   public void testNavigationSnapshotMissingChild() throws Exception
+   {
+      try
+      {
+         new NavigationSnapshot(Arrays.asList(new NodeData(null, "root", "default", NodeState.INITIAL, new String[]{"a"})));
+         fail();
+      }
+      catch (IllegalArgumentException expected)
+      {
+      }
+   }
+
    public void testNavigationStateSerialization() throws Exception
    {
       NavigationState state = new NavigationState(5);
@@ -99,6 +99,20 @@ public abstract class ActivityEntity implements NamedEntity {
   public abstract String getBody();
   public abstract void setBody(String body);
 
+  /**
+   * Title processed when the activity is saved, null until it is computed.
+   */
+  @Property(name = "soc:processedTitle")
+  public abstract String getProcessedTitle();
+  public abstract void setProcessedTitle(String processedTitle);
+
+  /**
+   * Body processed when the activity is saved.
+   */
+  @Property(name = "soc:processedBody")
+  public abstract String getProcessedBody();
+  public abstract void setProcessedBody(String processedBody);
+
   @Property(name = "soc:bodyId")
   public abstract String getBodyId();
   public abstract void setBodyId(String bodyId);
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2003-2011 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.exoplatform.social.core.chromattic.entity;
+
+import java.util.Map;
+
+import org.chromattic.api.annotations.Create;
+import org.chromattic.api.annotations.DefaultValue;
+import org.chromattic.api.annotations.FormattedBy;
+import org.chromattic.api.annotations.NamingPrefix;
+import org.chromattic.api.annotations.OneToMany;
+import org.chromattic.api.annotations.Path;
+import org.chromattic.api.annotations.PrimaryType;
+import org.chromattic.api.annotations.Property;
+import org.chromattic.ext.format.BaseEncodingObjectFormatter;
+
+/**
+ * Materialized activity feed of an identity : the newest activities of its connections, of its spaces and its own
+ * ones. The refs are read ordered by a query on their posted time. At most {@link #CAPACITY} refs are kept, the
+ * older activities are trimmed from the feed but still counted.
+ */
+@PrimaryType(name = "soc:activityfeed")
+@FormattedBy(BaseEncodingObjectFormatter.class)
+@NamingPrefix("soc")
+public abstract class ActivityFeedEntity implements IndexNumber {
+
+  /**
+   * The maximum number of refs kept in a feed.
+   */
+  public static final int CAPACITY = 1000;
+
+  @Path
+  public abstract String getPath();
+
+  /**
+   * Number of activities of the feed, the trimmed ones included.
+   */
+  @Property(name = "soc:number")
+  @DefaultValue({"0"})
+  public abstract Integer getNumber();
+  public abstract void setNumber(Integer number);
+
+  /**
+   * Number of refs kept in the feed.
+   */
+  @Property(name = "soc:refNumber")
+  @DefaultValue({"0"})
+  public abstract Integer getRefNumber();
+  public abstract void setRefNumber(Integer refNumber);
+
+  /**
+   * Posted time of the newest trimmed activity, null when the feed was never trimmed. The activities posted at this
+   * time or before may be missing from the refs.
+   */
+  @Property(name = "soc:trimmedTime")
+  public abstract Long getTrimmedTime();
+  public abstract void setTrimmedTime(Long trimmedTime);
+
+  /**
+   * Number of activities of the connections of the identity, the trimmed ones included.
+   */
+  @Property(name = "soc:connectionsNumber")
+  @DefaultValue({"0"})
+  public abstract Integer getConnectionsNumber();
+  public abstract void setConnectionsNumber(Integer connectionsNumber);
+
+  /**
+   * Number of activities of the spaces of the identity, the trimmed ones included.
+   */
+  @Property(name = "soc:spacesNumber")
+  @DefaultValue({"0"})
+  public abstract Integer getSpacesNumber();
+  public abstract void setSpacesNumber(Integer spacesNumber);
+
+  /**
+   * Number of activities matched on the identity itself in the feeds : the ones posted by a user or the ones of the
+   * stream of the other identities. Null when the feed was built before it was counted.
+   */
+  @Property(name = "soc:ownNumber")
+  public abstract Integer getOwnNumber();
+  public abstract void setOwnNumber(Integer ownNumber);
+
+  @OneToMany
+  public abstract Map<String, ActivityRef> getRefs();
+
+  @Create
+  public abstract ActivityRef newRef();
+
+  public void inc() {
+    setNumber(getNumber() + 1);
+  }
+
+  public void desc() {
+    setNumber(getNumber() - 1);
+  }
+
+  public void incRef() {
+    setRefNumber(getRefNumber() + 1);
+  }
+
+  public void descRef() {
+    setRefNumber(getRefNumber() - 1);
+  }
+
+  /**
+   * Adds a ref to the activity.
+   *
+   * @param activityId the activity id
+   * @param postedTime the activity posted time
+   * @return the created ref or null if the activity is already in the feed
+   */
+  public ActivityRef append(String activityId, Long postedTime) {
+
+    if (getRefs().containsKey(activityId)) {
+      return null;
+    }
+
+    ActivityRef ref = newRef();
+    getRefs().put(activityId, ref);
+    ref.setPostedTime(postedTime);
+    incRef();
+    inc();
+
+    return ref;
+
+  }
+
+  /**
+   * Records that the activities posted at the given time or before may be missing from the refs. The number of
+   * activities is left unchanged.
+   *
+   * @param postedTime the posted time of the trimmed activity
+   */
+  public void trim(Long postedTime) {
+
+    Long trimmedTime = getTrimmedTime();
+    if (trimmedTime == null || trimmedTime < postedTime) {
+      setTrimmedTime(postedTime);
+    }
+
+  }
+
+  /**
+   * Whether an activity posted at the given time may have been trimmed from the refs.
+   *
+   * @param postedTime the posted time
+   * @return true if the activity may be missing from the refs
+   */
+  public boolean isTrimmed(Long postedTime) {
+
+    Long trimmedTime = getTrimmedTime();
+    return trimmedTime != null && postedTime <= trimmedTime;
+
+  }
+
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2003-2011 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.exoplatform.social.core.chromattic.entity;
+
+import org.chromattic.api.annotations.DefaultValue;
+import org.chromattic.api.annotations.ManyToOne;
+import org.chromattic.api.annotations.Name;
+import org.chromattic.api.annotations.PrimaryType;
+import org.chromattic.api.annotations.Property;
+import org.exoplatform.social.core.storage.query.PropertyLiteralExpression;
+
+/**
+ * Entry of an {@link ActivityFeedEntity}, named by the id of the referenced activity.
+ */
+@PrimaryType(name = "soc:activityref")
+public abstract class ActivityRef implements NamedEntity {
+
+  @Name
+  public abstract String getName();
+
+  @Property(name = "soc:postedTime")
+  public abstract Long getPostedTime();
+  public abstract void setPostedTime(Long postedTime);
+  public static final PropertyLiteralExpression<Long> postedTime =
+      new PropertyLiteralExpression<Long>(Long.class, "soc:postedTime");
+
+  /**
+   * Whether the activity is matched on a connection of the feed owner.
+   */
+  @Property(name = "soc:connection")
+  @DefaultValue("false")
+  public abstract Boolean isConnection();
+  public abstract void setConnection(Boolean connection);
+  public static final PropertyLiteralExpression<Boolean> connection =
+      new PropertyLiteralExpression<Boolean>(Boolean.class, "soc:connection");
+
+  /**
+   * Whether the activity is matched on a space of the feed owner.
+   */
+  @Property(name = "soc:space")
+  @DefaultValue("false")
+  public abstract Boolean isSpace();
+  public abstract void setSpace(Boolean space);
+  public static final PropertyLiteralExpression<Boolean> space =
+      new PropertyLiteralExpression<Boolean>(Boolean.class, "soc:space");
+
+  @ManyToOne
+  public abstract ActivityFeedEntity getFeed();
+
+}
@@ -69,6 +69,12 @@ public abstract class IdentityEntity {
   public abstract ActivityListEntity getActivityList();
   public abstract void setActivityList(ActivityListEntity activityListEntity);
 
+  @MappedBy("soc:feed")
+  @OneToOne
+  @Owner
+  public abstract ActivityFeedEntity getFeed();
+  public abstract void setFeed(ActivityFeedEntity feed);
+
   @MappedBy("soc:sender")
   @OneToOne
   @Owner
@@ -125,4 +131,7 @@ public abstract class IdentityEntity {
 
   @Create
   public abstract RelationshipEntity createRelationship();
+
+  @Create
+  public abstract ActivityFeedEntity createFeed();
 }
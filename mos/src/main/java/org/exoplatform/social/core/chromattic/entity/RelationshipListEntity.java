@@ -26,6 +26,7 @@ import org.chromattic.api.annotations.Name;
 import org.chromattic.api.annotations.NamingPrefix;
 import org.chromattic.api.annotations.OneToMany;
 import org.chromattic.api.annotations.PrimaryType;
+import org.chromattic.api.annotations.Property;
 import org.chromattic.ext.format.BaseEncodingObjectFormatter;
 
 /**
@@ -48,4 +49,41 @@ public abstract class RelationshipListEntity {
 
   @ManyToOne
   public abstract IdentityEntity getParent();
+
+  /**
+   * Number of relationships of the list. It is set when the identity is created, null for the lists created before
+   * it was counted until they are repaired.
+   */
+  @Property(name = "soc:number")
+  public abstract Integer getNumber();
+  public abstract void setNumber(Integer number);
+
+  public void inc() {
+    Integer number = getNumber();
+    if (number != null) {
+      setNumber(number + 1);
+    }
+  }
+
+  public void desc() {
+    Integer number = getNumber();
+    if (number != null) {
+      setNumber(number - 1);
+    }
+  }
+
+  /**
+   * Reading the count doesn't modify the list, a missing counter is computed until it is repaired.
+   */
+  public int count() {
+
+    Integer number = getNumber();
+
+    if (number == null) {
+      return getRelationships().size();
+    }
+
+    return number;
+
+  }
 }
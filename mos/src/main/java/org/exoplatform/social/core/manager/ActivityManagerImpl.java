@@ -23,7 +23,6 @@ import java.util.List;
 
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.Validate;
-import org.exoplatform.commons.utils.ListAccess;
 import org.exoplatform.container.PortalContainer;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
@@ -308,14 +307,7 @@ public class ActivityManagerImpl implements ActivityManager {
   public List<ExoSocialActivity> getActivitiesOfConnections(Identity ownerIdentity,
                                                             int offset, int limit) throws ActivityStorageException {
     validateStartLimit(offset, limit);
-    List<Identity> connectionList = null;
-    try {
-      ListAccess<Identity> connectionsWithListAccess = identityManager.getConnectionsWithListAccess(ownerIdentity);
-      connectionList = Arrays.asList(connectionsWithListAccess.load(0, connectionsWithListAccess.getSize()));
-    } catch (Exception e) {
-      LOG.error("Failed to getActivitiesOfIdentities of: " + ownerIdentity.getRemoteId(), e);
-    }
-    return activityStorage.getActivitiesOfIdentities(connectionList, offset, limit);
+    return activityStorage.getActivitiesOfConnections(ownerIdentity, offset, limit);
   }
 
 
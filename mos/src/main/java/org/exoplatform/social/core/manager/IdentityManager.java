@@ -16,6 +16,7 @@
  */
 package org.exoplatform.social.core.manager;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.exoplatform.commons.utils.ListAccess;
@@ -283,6 +284,17 @@ public interface IdentityManager {
    */
   Identity getIdentity(String providerId, String remoteId, boolean loadProfile);
 
+  /**
+   * Gets the identities of several remote ids at once, without going through the identity provider.
+   * The profiles of the identities are not loaded.
+   *
+   * @param providerId the provider id
+   * @param remoteIds the remote ids
+   * @return the identities, in the order of the remote ids; the remote ids without identity are skipped
+   * @since 1.2.2
+   */
+  List<Identity> getIdentitiesByRemoteIds(String providerId, Collection<String> remoteIds);
+
   /**
    * Gets the number of indentities.
    * 
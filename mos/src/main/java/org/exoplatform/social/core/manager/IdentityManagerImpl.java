@@ -17,6 +17,7 @@
 package org.exoplatform.social.core.manager;
 
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -281,6 +282,13 @@ public class IdentityManagerImpl implements IdentityManager {
     return getOrCreateIdentity(providerId, remoteId, loadProfile);
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  public List<Identity> getIdentitiesByRemoteIds(String providerId, Collection<String> remoteIds) {
+    return this.getIdentityStorage().findIdentities(providerId, remoteIds);
+  }
+
   /**
    * {@inheritDoc}
    */
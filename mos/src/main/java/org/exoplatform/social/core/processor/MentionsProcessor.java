@@ -16,6 +16,12 @@
  */
 package org.exoplatform.social.core.processor;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -25,6 +31,9 @@ import org.exoplatform.container.xml.InitParams;
 import org.exoplatform.portal.webui.util.Util;
 import org.exoplatform.social.core.BaseActivityProcessorPlugin;
 import org.exoplatform.social.core.activity.model.ExoSocialActivity;
+import org.exoplatform.social.core.identity.model.Identity;
+import org.exoplatform.social.core.identity.provider.OrganizationIdentityProvider;
+import org.exoplatform.social.core.manager.IdentityManager;
 import org.exoplatform.social.core.service.LinkProvider;
 
 /**
@@ -34,7 +43,9 @@ import org.exoplatform.social.core.service.LinkProvider;
  */
 public class MentionsProcessor extends BaseActivityProcessorPlugin {
 
+  private static final Pattern MENTION_PATTERN = Pattern.compile("@([^\\s]+)");
 
+  private IdentityManager identityManager;
 
   public MentionsProcessor(InitParams params) {
     super(params);
@@ -43,44 +54,96 @@ public class MentionsProcessor extends BaseActivityProcessorPlugin {
 
   public void processActivity(ExoSocialActivity activity) {
     if (activity != null) {
-    activity.setTitle(substituteUsernames(activity.getTitle()));
-    activity.setBody(substituteUsernames(activity.getBody()));
+      String title = activity.getTitle();
+      String body = activity.getBody();
+
+      //
+      Set<String> usernames = new HashSet<String>();
+      collectUsernames(title, usernames);
+      collectUsernames(body, usernames);
+      if (usernames.isEmpty()) {
+        return;
+      }
+
+      //
+      Map<String, String> links = resolveLinks(usernames);
+      activity.setTitle(substituteUsernames(title, links));
+      activity.setBody(substituteUsernames(body, links));
+    }
+  }
+
+  /*
+   * Collects the usernames of the @username expressions of the message
+   */
+  private void collectUsernames(String message, Set<String> usernames) {
+    if (message == null || message.indexOf('@') < 0) {
+      return;
+    }
+    Matcher matcher = MENTION_PATTERN.matcher(message);
+    while (matcher.find()) {
+      usernames.add(matcher.group(1));
+    }
+  }
+
+  /*
+   * Resolves all the known usernames at once and renders their profile links. The usernames without identity yet
+   * go through the identity provider, the unknown and deleted ones are left as they are
+   */
+  private Map<String, String> resolveLinks(Set<String> usernames) {
+    String portalOwner = null;
+    try{
+      portalOwner = Util.getPortalRequestContext().getPortalOwner();
+    } catch (Exception e){
+      //default value for testing and social
+      portalOwner = LinkProvider.DEFAULT_PORTAL_OWNER;
     }
+
+    //
+    IdentityManager identityManager = getIdentityManager();
+    List<Identity> identities = new ArrayList<Identity>();
+    Set<String> misses = new HashSet<String>(usernames);
+    for (Identity identity : identityManager.getIdentitiesByRemoteIds(OrganizationIdentityProvider.NAME, usernames)) {
+      misses.remove(identity.getRemoteId());
+      if (!identity.isDeleted()) {
+        identities.add(identity);
+      }
+    }
+    identityManager.getIdentityStorage().loadProfiles(identities);
+
+    // The users who never logged in have no identity yet
+    for (String username : misses) {
+      Identity identity = identityManager.getOrCreateIdentity(OrganizationIdentityProvider.NAME, username, true);
+      if (identity != null) {
+        identities.add(identity);
+      }
+    }
+
+    //
+    Map<String, String> links = new HashMap<String, String>();
+    for (Identity identity : identities) {
+      links.put(identity.getRemoteId(), LinkProvider.getProfileLink(identity, portalOwner));
+    }
+    return links;
   }
 
   /*
    * Substitute @username expressions by full user profile link
    */
-  private String substituteUsernames(String message) {
-    if (message == null) {
-      return null;
+  private String substituteUsernames(String message, Map<String, String> links) {
+    if (message == null || message.indexOf('@') < 0) {
+      return message;
     }
 
-    Pattern pattern = Pattern.compile("@([^\\s]+)|@([^\\s]+)$");
-    Matcher matcher = pattern.matcher(message);
+    Matcher matcher = MENTION_PATTERN.matcher(message);
 
     // Replace all occurrences of pattern in input
     StringBuffer buf = new StringBuffer();
     while (matcher.find()) {
-      // Get the match result
-      String replaceStr = matcher.group().substring(1);
-
-      String portalOwner = null;
-      try{
-        portalOwner = Util.getPortalRequestContext().getPortalOwner();
-      } catch (Exception e){
-        //default value for testing and social
-        portalOwner = LinkProvider.DEFAULT_PORTAL_OWNER;
-      }
-
-      // Convert to uppercase
-      ExoContainer container = ExoContainerContext.getCurrentContainer();
-      LinkProvider lp = (LinkProvider) container.getComponentInstanceOfType(LinkProvider.class);
-      replaceStr = lp.getProfileLink(replaceStr, portalOwner);
+      String replaceStr = links.get(matcher.group(1));
 
       // Insert replacement
       if(replaceStr != null){
-        matcher.appendReplacement(buf, replaceStr);
+        matcher.appendReplacement(buf, Matcher.quoteReplacement(replaceStr));
       }
 
     }
@@ -89,5 +152,12 @@ public class MentionsProcessor extends BaseActivityProcessorPlugin {
 
   }
 
+  private IdentityManager getIdentityManager() {
+    if (identityManager == null) {
+      ExoContainer container = ExoContainerContext.getCurrentContainer();
+      identityManager = (IdentityManager) container.getComponentInstanceOfType(IdentityManager.class);
+    }
+    return identityManager;
+  }
 
 }
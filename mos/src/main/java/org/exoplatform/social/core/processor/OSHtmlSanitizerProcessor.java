@@ -19,10 +19,11 @@ package org.exoplatform.social.core.processor;
 import org.exoplatform.container.PortalContainer;
 import org.exoplatform.container.xml.InitParams;
 import org.exoplatform.social.common.xmlprocessor.XMLProcessor;
+import org.exoplatform.social.core.ActivityWriteProcessor;
 import org.exoplatform.social.core.BaseActivityProcessorPlugin;
 import org.exoplatform.social.core.activity.model.ExoSocialActivity;
 
-public class OSHtmlSanitizerProcessor extends BaseActivityProcessorPlugin {
+public class OSHtmlSanitizerProcessor extends BaseActivityProcessorPlugin implements ActivityWriteProcessor {
 
   private XMLProcessor xmlProcessor;
 
@@ -21,6 +21,7 @@ import java.util.Map;
 import org.exoplatform.container.xml.InitParams;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
+import org.exoplatform.social.core.ActivityWriteProcessor;
 import org.exoplatform.social.core.BaseActivityProcessorPlugin;
 import org.exoplatform.social.core.activity.model.ExoSocialActivity;
 
@@ -33,7 +34,7 @@ import org.exoplatform.social.core.activity.model.ExoSocialActivity;
  * 10:59:09 AM
  */
 
-public class TemplateParamsProcessor extends BaseActivityProcessorPlugin {
+public class TemplateParamsProcessor extends BaseActivityProcessorPlugin implements ActivityWriteProcessor {
   private static final Log LOG = ExoLogger.getLogger(TemplateParamsProcessor.class);
   public TemplateParamsProcessor(InitParams params) {
     super(params);
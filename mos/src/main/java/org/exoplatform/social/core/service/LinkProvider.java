@@ -16,6 +16,7 @@
  */
 package org.exoplatform.social.core.service;
 
+import org.apache.commons.lang.StringEscapeUtils;
 import org.apache.commons.lang.Validate;
 import org.exoplatform.container.PortalContainer;
 import org.exoplatform.container.xml.InitParams;
@@ -122,9 +123,22 @@ public class LinkProvider {
    */
   public static String getProfileLink(final String username, final String portalOwner) {
     Identity identity = getIdentityManager().getOrCreateIdentity(OrganizationIdentityProvider.NAME, username, true);
+    return getProfileLink(identity, portalOwner);
+  }
+
+  /**
+   * Returns tag <a> with a link to profile of an already loaded identity on portalName.
+   * The uri and the full name are escaped, so that the link is safe to insert in sanitized content.
+   *
+   * @param identity the identity with its profile loaded
+   * @param portalOwner
+   * @return tag <a> with a link to profile of the identity on portalName
+   * @since 1.2.2
+   */
+  public static String getProfileLink(final Identity identity, final String portalOwner) {
     Validate.notNull(identity, "Identity must not be null.");
-    return "<a href=\"" + buildProfileUri(identity.getRemoteId(), null, portalOwner)
-    + "\" target=\"_parent\">" + identity.getProfile().getFullName() + "</a>";
+    return "<a href=\"" + StringEscapeUtils.escapeHtml(buildProfileUri(identity.getRemoteId(), null, portalOwner))
+    + "\" target=\"_parent\">" + StringEscapeUtils.escapeHtml(identity.getProfile().getFullName()) + "</a>";
   }
 
   /**
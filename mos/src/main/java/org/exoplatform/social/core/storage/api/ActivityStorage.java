@@ -22,6 +22,7 @@ import org.exoplatform.social.core.activity.model.ExoSocialActivity;
 import org.exoplatform.social.core.identity.model.Identity;
 import org.exoplatform.social.core.storage.ActivityStorageException;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.SortedSet;
 
@@ -54,6 +55,14 @@ public interface ActivityStorage {
    */
   public ExoSocialActivity getActivity(String activityId) throws ActivityStorageException;
 
+  /**
+   * Load several activities by their ids.
+   *
+   * @param activityIds the ids of the activities
+   * @return the activities, in the order of the ids; the ids which don't exist are skipped
+   */
+  public List<ExoSocialActivity> getActivities(Collection<String> activityIds) throws ActivityStorageException;
+
   /**
    * Gets all the activities by identity.
    *
@@ -22,6 +22,7 @@ import org.exoplatform.social.core.identity.model.Profile;
 import org.exoplatform.social.core.profile.ProfileFilter;
 import org.exoplatform.social.core.storage.IdentityStorageException;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -73,6 +74,16 @@ public interface IdentityStorage {
    */
   public Profile loadProfile(Profile profile) throws IdentityStorageException;
 
+  /**
+   * Load the profiles of several identities at once and set them on the identities.
+   *
+   * @param identities the identities
+   * @return the profiles, in the order of the identities
+   * @throws IdentityStorageException
+   * @since 1.2.2
+   */
+  public List<Profile> loadProfiles(Collection<Identity> identities) throws IdentityStorageException;
+
   /**
    * Gets the identity by remote id.
    *
@@ -83,6 +94,28 @@ public interface IdentityStorage {
    */
   public Identity findIdentity(final String providerId, final String remoteId) throws IdentityStorageException;
 
+  /**
+   * Gets the identities of several remote ids at once, without loading their profiles.
+   *
+   * @param providerId the identity provider
+   * @param remoteIds  the ids
+   * @return the identities, in the order of the remote ids; the remote ids without identity are skipped
+   * @throws IdentityStorageException
+   * @since 1.2.2
+   */
+  public List<Identity> findIdentities(final String providerId, final Collection<String> remoteIds)
+      throws IdentityStorageException;
+
+  /**
+   * Gets the identities of several ids at once, without loading their profiles.
+   *
+   * @param nodeIds the ids
+   * @return the identities, in the order of the ids; the ids without identity are skipped
+   * @throws IdentityStorageException
+   * @since 1.2.2
+   */
+  public List<Identity> findIdentitiesById(final Collection<String> nodeIds) throws IdentityStorageException;
+
   /**
    * Saves profile.
    *
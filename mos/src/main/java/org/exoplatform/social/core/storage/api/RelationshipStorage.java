@@ -212,6 +212,15 @@ public interface RelationshipStorage {
    */
   public List<Identity> getConnections(Identity identity) throws RelationshipStorageException;
 
+  /**
+   * Gets the ids of the connections with the identity, without loading them.
+   *
+   * @param identity
+   * @return the ids of the connections
+   * @throws RelationshipStorageException
+   */
+  public List<String> getConnectionIds(Identity identity) throws RelationshipStorageException;
+
   /**
    * Gets count of connection with the identity.
    *
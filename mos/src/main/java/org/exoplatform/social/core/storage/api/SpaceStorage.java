@@ -314,6 +314,16 @@ public interface SpaceStorage {
    */
   public List<Space> getAccessibleSpaces(String userId) throws SpaceStorageException;
 
+  /**
+   * Gets the identity ids of the spaces of a user which that user has the "member" role or edit permission.
+   * The spaces are not loaded.
+   *
+   * @param userId the userId
+   * @return the identity ids of the accessible spaces
+   * @throws SpaceStorageException
+   */
+  public List<String> getAccessibleSpacesIdentityIds(String userId) throws SpaceStorageException;
+
   /**
    * Gets the spaces of a user which that user has "member" role or edit permission with offset, limit.
    *
@@ -43,24 +43,51 @@ public enum CacheType {
   RELATIONSHIP_FROM_IDENTITY("RelationshipFromIdentityCache"),
   RELATIONSHIPS_COUNT("RelationshipsCountCache"),
   RELATIONSHIPS("RelationshipsCache"),
+  CONNECTIONS("ConnectionsCache"),
 
   //
   ACTIVITY("ActivityCache"),
   ACTIVITIES_COUNT("ActivitiesCountCache"),
   ACTIVITIES("ActivitiesCache"),
+  ACTIVITIES_GENERATION("ActivitiesGenerationCache"),
 
   //
   SPACE("SpaceCache"),
   SPACE_REF("SpaceRefCache"),
   SPACES_COUNT("SpacesCountCache"),
-  SPACES("SpacesCache")
+  SPACES("SpacesCache"),
+  SPACES_IDS("SpacesIdsCache")
 
   ;
 
+  /**
+   * The maximum time in milliseconds a lookup waits for the loading of the same value by another thread.
+   */
+  public static final long WAIT_TIMEOUT = 10000;
+
+  /**
+   * The time in milliseconds a cached lookup which did not find anything stays valid.
+   */
+  public static final long NOT_FOUND_TIMEOUT = 60000;
+
   private final String name;
 
+  private final FutureCacheStatistics statistics;
+
   private CacheType(final String name) {
     this.name = name;
+    this.statistics = new FutureCacheStatistics();
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return the statistics shared by the future caches of this type
+   */
+  public FutureCacheStatistics getStatistics() {
+    return statistics;
   }
 
   public <K extends CacheKey, V extends Serializable> ExoCache<K, V> getFromService(CacheService service) {
@@ -70,7 +97,11 @@ public enum CacheType {
   public <K extends CacheKey, V extends Serializable> FutureExoCache<K, V, ServiceContext<V>> createFutureCache(
       ExoCache<K, V> cache) {
 
-    return new FutureExoCache<K, V, ServiceContext<V>>(new CacheLoader<K, V>(), cache);
+    FutureExoCache<K, V, ServiceContext<V>> futureCache =
+        new FutureExoCache<K, V, ServiceContext<V>>(new CacheLoader<K, V>(), cache, statistics);
+    futureCache.setWaitTimeout(WAIT_TIMEOUT);
+    futureCache.setNotFoundTimeout(NOT_FOUND_TIMEOUT);
+    return futureCache;
 
   }
 
@@ -23,7 +23,6 @@ import org.exoplatform.social.core.activity.model.ExoSocialActivity;
 import org.exoplatform.social.core.identity.model.Identity;
 import org.exoplatform.social.core.storage.ActivityStorageException;
 import org.exoplatform.social.core.storage.cache.model.data.ListActivitiesData;
-import org.exoplatform.social.core.storage.cache.model.data.ListIdentitiesData;
 import org.exoplatform.social.core.storage.cache.model.key.ActivityType;
 import org.exoplatform.social.core.storage.cache.model.key.ListActivitiesKey;
 import org.exoplatform.social.core.storage.impl.ActivityStorageImpl;
@@ -31,13 +30,25 @@ import org.exoplatform.social.core.storage.api.ActivityStorage;
 import org.exoplatform.social.core.storage.cache.loader.ServiceContext;
 import org.exoplatform.social.core.storage.cache.model.data.ActivityData;
 import org.exoplatform.social.core.storage.cache.model.data.IntegerData;
+import org.exoplatform.social.core.storage.cache.model.data.StringData;
 import org.exoplatform.social.core.storage.cache.model.key.ActivityCountKey;
 import org.exoplatform.social.core.storage.cache.model.key.ActivityKey;
+import org.exoplatform.social.core.storage.cache.model.key.CacheKey;
 import org.exoplatform.social.core.storage.cache.model.key.IdentityKey;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.SortedSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * @author <a href="mailto:alain.defrance@exoplatform.com">Alain Defrance</a>
@@ -53,6 +64,13 @@ public class CachedActivityStorage implements ActivityStorage {
   private final FutureExoCache<ActivityCountKey, IntegerData, ServiceContext<IntegerData>> activitiesCountCache;
   private final FutureExoCache<ListActivitiesKey, ListActivitiesData, ServiceContext<ListActivitiesData>> activitiesCache;
 
+  // The generation of the streams of each identity is part of the list and count keys
+  private final ExoCache<IdentityKey, StringData> exoActivitiesGenerationCache;
+
+  // The list and count keys read on this node under the current generation of each identity
+  private final ConcurrentMap<IdentityKey, Set<CacheKey>> generationKeys =
+      new ConcurrentHashMap<IdentityKey, Set<CacheKey>>();
+
   private final ActivityStorageImpl storage;
 
   /**
@@ -63,12 +81,11 @@ public class CachedActivityStorage implements ActivityStorage {
    */
   private List<ExoSocialActivity> buildActivities(ListActivitiesData data) {
 
-    List<ExoSocialActivity> activities = new ArrayList<ExoSocialActivity>();
+    List<String> ids = new ArrayList<String>();
     for (ActivityKey k : data.getIds()) {
-      ExoSocialActivity a = getActivity(k.getId());
-      activities.add(a);
+      ids.add(k.getId());
     }
-    return activities;
+    return getActivities(ids);
 
   }
 
@@ -90,6 +107,61 @@ public class CachedActivityStorage implements ActivityStorage {
 
   }
 
+  /**
+   * Gets the generation of the feed of an identity, a new one is created when there is none yet. The lists and counts
+   * of the streams of the identity are keyed by it.
+   *
+   * @param identity identity
+   * @return generation
+   */
+  private String getGeneration(Identity identity) {
+
+    IdentityKey key = new IdentityKey(identity);
+    StringData generation = exoActivitiesGenerationCache.get(key);
+    if (generation == null) {
+      generation = new StringData(UUID.randomUUID().toString());
+      exoActivitiesGenerationCache.put(key, generation);
+    }
+    return generation.build();
+
+  }
+
+  /**
+   * Records a list or count key of the streams of an identity, it is removed from this node when the generation of
+   * the identity is renewed. The index is bounded by the size of the list cache, the keys which are not recorded
+   * are just left to expire.
+   *
+   * @param identityKey the identity owning the stream
+   * @param key the list or count key
+   */
+  private void index(IdentityKey identityKey, CacheKey key) {
+
+    Set<CacheKey> keys = generationKeys.get(identityKey);
+    if (keys == null) {
+      int maxSize = exoActivitiesCache.getMaxSize();
+      if (maxSize > 0 && generationKeys.size() >= maxSize) {
+        return;
+      }
+      keys = Collections.newSetFromMap(new ConcurrentHashMap<CacheKey, Boolean>());
+      Set<CacheKey> phantom = generationKeys.putIfAbsent(identityKey, keys);
+      if (phantom != null) {
+        keys = phantom;
+      }
+    }
+    keys.add(key);
+
+  }
+
+  private IntegerData getCount(ServiceContext<IntegerData> context, ActivityCountKey key) {
+    index(key.getKey(), key);
+    return activitiesCountCache.get(context, key);
+  }
+
+  private ListActivitiesData getList(ServiceContext<ListActivitiesData> context, ListActivitiesKey key) {
+    index(key.getKey().getKey(), key);
+    return activitiesCache.get(context, key);
+  }
+
   public CachedActivityStorage(final ActivityStorageImpl storage, final SocialStorageCacheService cacheService) {
 
     //
@@ -100,6 +172,7 @@ public class CachedActivityStorage implements ActivityStorage {
     this.exoActivityCache = cacheService.getActivityCache();
     this.exoActivitiesCountCache = cacheService.getActivitiesCountCache();
     this.exoActivitiesCache = cacheService.getActivitiesCache();
+    this.exoActivitiesGenerationCache = cacheService.getActivitiesGenerationCache();
 
     //
     this.activityCache = CacheType.ACTIVITY.createFutureCache(exoActivityCache);
@@ -130,6 +203,52 @@ public class CachedActivityStorage implements ActivityStorage {
 
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  public List<ExoSocialActivity> getActivities(final Collection<String> activityIds) throws ActivityStorageException {
+
+    // Collect the misses
+    final Set<String> missing = new LinkedHashSet<String>();
+    for (String activityId : activityIds) {
+      if (exoActivityCache.get(new ActivityKey(activityId)) == null) {
+        missing.add(activityId);
+      }
+    }
+
+    // The first miss going through the future cache loads all of them at once
+    final Map<String, ExoSocialActivity> loaded = new HashMap<String, ExoSocialActivity>();
+    List<ExoSocialActivity> activities = new ArrayList<ExoSocialActivity>(activityIds.size());
+    for (final String activityId : activityIds) {
+      ActivityData data = activityCache.get(
+          new ServiceContext<ActivityData>() {
+            public ActivityData execute() {
+              if (missing.contains(activityId)) {
+                for (ExoSocialActivity a : storage.getActivities(missing)) {
+                  loaded.put(a.getId(), a);
+                }
+                missing.clear();
+              }
+              else if (!loaded.containsKey(activityId)) {
+                for (ExoSocialActivity a : storage.getActivities(Collections.singletonList(activityId))) {
+                  loaded.put(a.getId(), a);
+                }
+              }
+              ExoSocialActivity got = loaded.get(activityId);
+              return (got != null ? new ActivityData(got) : null);
+            }
+          },
+          new ActivityKey(activityId));
+
+      // The activities which don't exist anymore are skipped
+      if (data != null) {
+        activities.add(data.build());
+      }
+    }
+    return activities;
+
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -143,11 +262,11 @@ public class CachedActivityStorage implements ActivityStorage {
   public List<ExoSocialActivity> getUserActivities(final Identity owner, final long offset, final long limit) throws ActivityStorageException {
 
     //
-    ActivityCountKey key = new ActivityCountKey(new IdentityKey(owner), ActivityType.USER);
+    ActivityCountKey key = new ActivityCountKey(new IdentityKey(owner), getGeneration(owner), null, ActivityType.USER);
     ListActivitiesKey listKey = new ListActivitiesKey(key, offset, limit);
 
     //
-    ListActivitiesData keys = activitiesCache.get(
+    ListActivitiesData keys = getList(
         new ServiceContext<ListActivitiesData>() {
           public ListActivitiesData execute() {
             List<ExoSocialActivity> got = storage.getUserActivities(owner, offset, limit);
@@ -183,12 +302,18 @@ public class CachedActivityStorage implements ActivityStorage {
   public ExoSocialActivity saveActivity(final Identity owner, final ExoSocialActivity activity) throws ActivityStorageException {
 
     //
+    boolean created = activity.getId() == null;
     ExoSocialActivity a = storage.saveActivity(owner, activity);
 
     //
     ActivityKey key = new ActivityKey(a.getId());
-    exoActivityCache.put(key, new ActivityData(getActivity(a.getId())));
-    invalidate();
+    exoActivityCache.remove(key);
+    ExoSocialActivity saved = getActivity(a.getId());
+
+    // The lists only contain ids, an update doesn't change them
+    if (created) {
+      invalidate(saved, storage.getFeedOwnerIds(saved.getId()));
+    }
 
     //
     return a;
@@ -208,12 +333,16 @@ public class CachedActivityStorage implements ActivityStorage {
   public void deleteActivity(final String activityId) throws ActivityStorageException {
 
     //
+    ExoSocialActivity deleted = getActivity(activityId);
+    Set<String> feedOwnerIds = storage.getFeedOwnerIds(activityId);
     storage.deleteActivity(activityId);
 
     //
     ActivityKey key = new ActivityKey(activityId);
     exoActivityCache.remove(key);
-    invalidate();
+    if (!deleted.isComment()) {
+      invalidate(deleted, feedOwnerIds);
+    }
 
   }
 
@@ -238,25 +367,8 @@ public class CachedActivityStorage implements ActivityStorage {
    */
   public List<ExoSocialActivity> getActivitiesOfIdentities(final List<Identity> connectionList, final long offset, final long limit) throws ActivityStorageException {
 
-    //
-    List<IdentityKey> keyskeys = new ArrayList<IdentityKey>();
-    for (Identity i : connectionList) {
-      keyskeys.add(new IdentityKey(i));
-    }
-    ListActivitiesKey listKey = new ListActivitiesKey(new ListIdentitiesData(keyskeys), 0, limit);
-
-    //
-    ListActivitiesData keys = activitiesCache.get(
-        new ServiceContext<ListActivitiesData>() {
-          public ListActivitiesData execute() {
-            List<ExoSocialActivity> got = storage.getActivitiesOfIdentities(connectionList, offset, limit);
-            return buildIds(got);
-          }
-        },
-        listKey);
-
-    //
-    return buildActivities(keys);
+    // An arbitrary list of identities has no feed to key it by, only its activities are cached
+    return storage.getActivitiesOfIdentities(connectionList, offset, limit);
 
   }
 
@@ -273,10 +385,10 @@ public class CachedActivityStorage implements ActivityStorage {
   public int getNumberOfUserActivities(final Identity owner) throws ActivityStorageException {
 
     //
-    ActivityCountKey key = new ActivityCountKey(new IdentityKey(owner), ActivityType.USER);
+    ActivityCountKey key = new ActivityCountKey(new IdentityKey(owner), getGeneration(owner), null, ActivityType.USER);
 
     //
-    return activitiesCountCache.get(
+    return getCount(
         new ServiceContext<IntegerData>() {
           public IntegerData execute() {
             return new IntegerData(storage.getNumberOfUserActivities(owner));
@@ -294,10 +406,11 @@ public class CachedActivityStorage implements ActivityStorage {
 
     //
     ActivityCountKey key =
-        new ActivityCountKey(new IdentityKey(ownerIdentity), baseActivity.getId(), ActivityType.NEWER_USER);
+        new ActivityCountKey(new IdentityKey(ownerIdentity), getGeneration(ownerIdentity),
+            baseActivity.getId(), ActivityType.NEWER_USER);
 
     //
-    return activitiesCountCache.get(
+    return getCount(
         new ServiceContext<IntegerData>() {
           public IntegerData execute() {
             return new IntegerData(storage.getNumberOfNewerOnUserActivities(ownerIdentity, baseActivity));
@@ -314,11 +427,12 @@ public class CachedActivityStorage implements ActivityStorage {
   public List<ExoSocialActivity> getNewerOnUserActivities(final Identity ownerIdentity, final ExoSocialActivity baseActivity, final int limit) {
 
     //
-    ActivityCountKey key = new ActivityCountKey(new IdentityKey(ownerIdentity), ActivityType.NEWER_USER);
+    ActivityCountKey key = new ActivityCountKey(new IdentityKey(ownerIdentity), getGeneration(ownerIdentity),
+        null, ActivityType.NEWER_USER);
     ListActivitiesKey listKey = new ListActivitiesKey(key, 0, limit);
 
     //
-    ListActivitiesData keys = activitiesCache.get(
+    ListActivitiesData keys = getList(
         new ServiceContext<ListActivitiesData>() {
           public ListActivitiesData execute() {
             List<ExoSocialActivity> got = storage.getNewerOnUserActivities(ownerIdentity, baseActivity, limit);
@@ -339,10 +453,11 @@ public class CachedActivityStorage implements ActivityStorage {
 
     //
     ActivityCountKey key =
-        new ActivityCountKey(new IdentityKey(ownerIdentity), baseActivity.getId(), ActivityType.OLDER_USER);
+        new ActivityCountKey(new IdentityKey(ownerIdentity), getGeneration(ownerIdentity),
+            baseActivity.getId(), ActivityType.OLDER_USER);
 
     //
-    return activitiesCountCache.get(
+    return getCount(
         new ServiceContext<IntegerData>() {
           public IntegerData execute() {
             return new IntegerData(storage.getNumberOfOlderOnUserActivities(ownerIdentity, baseActivity));
@@ -359,11 +474,12 @@ public class CachedActivityStorage implements ActivityStorage {
   public List<ExoSocialActivity> getOlderOnUserActivities(final Identity ownerIdentity, final ExoSocialActivity baseActivity, final int limit) {
 
     //
-    ActivityCountKey key = new ActivityCountKey(new IdentityKey(ownerIdentity), baseActivity.getId(), ActivityType.OLDER_USER);
+    ActivityCountKey key = new ActivityCountKey(new IdentityKey(ownerIdentity), getGeneration(ownerIdentity),
+        baseActivity.getId(), ActivityType.OLDER_USER);
     ListActivitiesKey listKey = new ListActivitiesKey(key, 0, limit);
 
     //
-    ListActivitiesData keys = activitiesCache.get(
+    ListActivitiesData keys = getList(
         new ServiceContext<ListActivitiesData>() {
           public ListActivitiesData execute() {
             List<ExoSocialActivity> got = storage.getOlderOnUserActivities(ownerIdentity, baseActivity, limit);
@@ -383,11 +499,12 @@ public class CachedActivityStorage implements ActivityStorage {
   public List<ExoSocialActivity> getActivityFeed(final Identity ownerIdentity, final int offset, final int limit) {
 
     //
-    ActivityCountKey key = new ActivityCountKey(new IdentityKey(ownerIdentity), ActivityType.FEED);
+    ActivityCountKey key = new ActivityCountKey(new IdentityKey(ownerIdentity), getGeneration(ownerIdentity),
+        null, ActivityType.FEED);
     ListActivitiesKey listKey = new ListActivitiesKey(key, offset, limit);
 
     //
-    ListActivitiesData keys = activitiesCache.get(
+    ListActivitiesData keys = getList(
         new ServiceContext<ListActivitiesData>() {
           public ListActivitiesData execute() {
             List<ExoSocialActivity> got = storage.getActivityFeed(ownerIdentity, offset, limit);
@@ -408,10 +525,10 @@ public class CachedActivityStorage implements ActivityStorage {
 
     //
     ActivityCountKey key =
-        new ActivityCountKey(new IdentityKey(ownerIdentity), ActivityType.FEED);
+        new ActivityCountKey(new IdentityKey(ownerIdentity), getGeneration(ownerIdentity), null, ActivityType.FEED);
 
     //
-    return activitiesCountCache.get(
+    return getCount(
         new ServiceContext<IntegerData>() {
           public IntegerData execute() {
             return new IntegerData(storage.getNumberOfActivitesOnActivityFeed(ownerIdentity));
@@ -429,10 +546,11 @@ public class CachedActivityStorage implements ActivityStorage {
 
     //
     ActivityCountKey key =
-        new ActivityCountKey(new IdentityKey(ownerIdentity), baseActivity.getId(), ActivityType.NEWER_FEED);
+        new ActivityCountKey(new IdentityKey(ownerIdentity), getGeneration(ownerIdentity),
+            baseActivity.getId(), ActivityType.NEWER_FEED);
 
     //
-    return activitiesCountCache.get(
+    return getCount(
         new ServiceContext<IntegerData>() {
           public IntegerData execute() {
             return new IntegerData(storage.getNumberOfNewerOnActivityFeed(ownerIdentity, baseActivity));
@@ -449,11 +567,12 @@ public class CachedActivityStorage implements ActivityStorage {
   public List<ExoSocialActivity> getNewerOnActivityFeed(final Identity ownerIdentity, final ExoSocialActivity baseActivity, final int limit) {
 
     //
-    ActivityCountKey key = new ActivityCountKey(new IdentityKey(ownerIdentity), baseActivity.getId(), ActivityType.NEWER_FEED);
+    ActivityCountKey key = new ActivityCountKey(new IdentityKey(ownerIdentity), getGeneration(ownerIdentity),
+        baseActivity.getId(), ActivityType.NEWER_FEED);
     ListActivitiesKey listKey = new ListActivitiesKey(key, 0, limit);
 
     //
-    ListActivitiesData keys = activitiesCache.get(
+    ListActivitiesData keys = getList(
         new ServiceContext<ListActivitiesData>() {
           public ListActivitiesData execute() {
             List<ExoSocialActivity> got = storage.getNewerOnActivityFeed(ownerIdentity, baseActivity, limit);
@@ -474,10 +593,11 @@ public class CachedActivityStorage implements ActivityStorage {
 
     //
     ActivityCountKey key =
-        new ActivityCountKey(new IdentityKey(ownerIdentity), baseActivity.getId(), ActivityType.OLDER_FEED);
+        new ActivityCountKey(new IdentityKey(ownerIdentity), getGeneration(ownerIdentity),
+            baseActivity.getId(), ActivityType.OLDER_FEED);
 
     //
-    return activitiesCountCache.get(
+    return getCount(
         new ServiceContext<IntegerData>() {
           public IntegerData execute() {
             return new IntegerData(storage.getNumberOfOlderOnActivityFeed(ownerIdentity, baseActivity));
@@ -494,11 +614,12 @@ public class CachedActivityStorage implements ActivityStorage {
   public List<ExoSocialActivity> getOlderOnActivityFeed(final Identity ownerIdentity, final ExoSocialActivity baseActivity, final int limit) {
 
     //
-    ActivityCountKey key = new ActivityCountKey(new IdentityKey(ownerIdentity), baseActivity.getId(), ActivityType.OLDER_FEED);
+    ActivityCountKey key = new ActivityCountKey(new IdentityKey(ownerIdentity), getGeneration(ownerIdentity),
+        baseActivity.getId(), ActivityType.OLDER_FEED);
     ListActivitiesKey listKey = new ListActivitiesKey(key, 0, limit);
 
     //
-    ListActivitiesData keys = activitiesCache.get(
+    ListActivitiesData keys = getList(
         new ServiceContext<ListActivitiesData>() {
           public ListActivitiesData execute() {
             List<ExoSocialActivity> got = storage.getOlderOnActivityFeed(ownerIdentity, baseActivity, limit);
@@ -518,11 +639,12 @@ public class CachedActivityStorage implements ActivityStorage {
   public List<ExoSocialActivity> getActivitiesOfConnections(final Identity ownerIdentity, final int offset, final int limit) {
 
     //
-    ActivityCountKey key = new ActivityCountKey(new IdentityKey(ownerIdentity), ActivityType.CONNECTION);
+    ActivityCountKey key = new ActivityCountKey(new IdentityKey(ownerIdentity), getGeneration(ownerIdentity),
+        null, ActivityType.CONNECTION);
     ListActivitiesKey listKey = new ListActivitiesKey(key, offset, limit);
 
     //
-    ListActivitiesData keys = activitiesCache.get(
+    ListActivitiesData keys = getList(
         new ServiceContext<ListActivitiesData>() {
           public ListActivitiesData execute() {
             List<ExoSocialActivity> got = storage.getActivitiesOfConnections(ownerIdentity, offset, limit);
@@ -543,10 +665,11 @@ public class CachedActivityStorage implements ActivityStorage {
 
     //
     ActivityCountKey key =
-        new ActivityCountKey(new IdentityKey(ownerIdentity), ActivityType.CONNECTION);
+        new ActivityCountKey(new IdentityKey(ownerIdentity), getGeneration(ownerIdentity),
+            null, ActivityType.CONNECTION);
 
     //
-    return activitiesCountCache.get(
+    return getCount(
         new ServiceContext<IntegerData>() {
           public IntegerData execute() {
             return new IntegerData(storage.getNumberOfActivitiesOfConnections(ownerIdentity));
@@ -571,10 +694,11 @@ public class CachedActivityStorage implements ActivityStorage {
 
     //
     ActivityCountKey key =
-        new ActivityCountKey(new IdentityKey(ownerIdentity), baseActivity.getId(), ActivityType.NEWER_CONNECTION);
+        new ActivityCountKey(new IdentityKey(ownerIdentity), getGeneration(ownerIdentity),
+            baseActivity.getId(), ActivityType.NEWER_CONNECTION);
 
     //
-    return activitiesCountCache.get(
+    return getCount(
         new ServiceContext<IntegerData>() {
           public IntegerData execute() {
             return new IntegerData(storage.getNumberOfNewerOnActivitiesOfConnections(ownerIdentity, baseActivity));
@@ -591,11 +715,12 @@ public class CachedActivityStorage implements ActivityStorage {
   public List<ExoSocialActivity> getNewerOnActivitiesOfConnections(final Identity ownerIdentity, final ExoSocialActivity baseActivity, final long limit) {
 
     //
-    ActivityCountKey key = new ActivityCountKey(new IdentityKey(ownerIdentity), baseActivity.getId(), ActivityType.NEWER_CONNECTION);
+    ActivityCountKey key = new ActivityCountKey(new IdentityKey(ownerIdentity), getGeneration(ownerIdentity),
+        baseActivity.getId(), ActivityType.NEWER_CONNECTION);
     ListActivitiesKey listKey = new ListActivitiesKey(key, 0, limit);
 
     //
-    ListActivitiesData keys = activitiesCache.get(
+    ListActivitiesData keys = getList(
         new ServiceContext<ListActivitiesData>() {
           public ListActivitiesData execute() {
             List<ExoSocialActivity> got = storage.getNewerOnActivitiesOfConnections(ownerIdentity, baseActivity, limit);
@@ -616,10 +741,11 @@ public class CachedActivityStorage implements ActivityStorage {
 
     //
     ActivityCountKey key =
-        new ActivityCountKey(new IdentityKey(ownerIdentity), baseActivity.getId(), ActivityType.OLDER_CONNECTION);
+        new ActivityCountKey(new IdentityKey(ownerIdentity), getGeneration(ownerIdentity),
+            baseActivity.getId(), ActivityType.OLDER_CONNECTION);
 
     //
-    return activitiesCountCache.get(
+    return getCount(
         new ServiceContext<IntegerData>() {
           public IntegerData execute() {
             return new IntegerData(storage.getNumberOfOlderOnActivitiesOfConnections(ownerIdentity, baseActivity));
@@ -636,11 +762,12 @@ public class CachedActivityStorage implements ActivityStorage {
   public List<ExoSocialActivity> getOlderOnActivitiesOfConnections(final Identity ownerIdentity, final ExoSocialActivity baseActivity, final int limit) {
 
     //
-    ActivityCountKey key = new ActivityCountKey(new IdentityKey(ownerIdentity), baseActivity.getId(), ActivityType.OLDER_CONNECTION);
+    ActivityCountKey key = new ActivityCountKey(new IdentityKey(ownerIdentity), getGeneration(ownerIdentity),
+        baseActivity.getId(), ActivityType.OLDER_CONNECTION);
     ListActivitiesKey listKey = new ListActivitiesKey(key, 0, limit);
 
     //
-    ListActivitiesData keys = activitiesCache.get(
+    ListActivitiesData keys = getList(
         new ServiceContext<ListActivitiesData>() {
           public ListActivitiesData execute() {
             List<ExoSocialActivity> got = storage.getOlderOnActivitiesOfConnections(ownerIdentity, baseActivity, limit);
@@ -660,11 +787,12 @@ public class CachedActivityStorage implements ActivityStorage {
   public List<ExoSocialActivity> getUserSpacesActivities(final Identity ownerIdentity, final int offset, final int limit) {
 
     //
-    ActivityCountKey key = new ActivityCountKey(new IdentityKey(ownerIdentity), ActivityType.SPACE);
+    ActivityCountKey key = new ActivityCountKey(new IdentityKey(ownerIdentity), getGeneration(ownerIdentity),
+        null, ActivityType.SPACE);
     ListActivitiesKey listKey = new ListActivitiesKey(key, offset, limit);
 
     //
-    ListActivitiesData keys = activitiesCache.get(
+    ListActivitiesData keys = getList(
         new ServiceContext<ListActivitiesData>() {
           public ListActivitiesData execute() {
             List<ExoSocialActivity> got = storage.getUserSpacesActivities(ownerIdentity, offset, limit);
@@ -685,10 +813,10 @@ public class CachedActivityStorage implements ActivityStorage {
 
     //
     ActivityCountKey key =
-        new ActivityCountKey(new IdentityKey(ownerIdentity), ActivityType.SPACE);
+        new ActivityCountKey(new IdentityKey(ownerIdentity), getGeneration(ownerIdentity), null, ActivityType.SPACE);
 
     //
-    return activitiesCountCache.get(
+    return getCount(
         new ServiceContext<IntegerData>() {
           public IntegerData execute() {
             return new IntegerData(storage.getNumberOfUserSpacesActivities(ownerIdentity));
@@ -706,10 +834,11 @@ public class CachedActivityStorage implements ActivityStorage {
 
     //
     ActivityCountKey key =
-        new ActivityCountKey(new IdentityKey(ownerIdentity), baseActivity.getId(), ActivityType.NEWER_SPACE);
+        new ActivityCountKey(new IdentityKey(ownerIdentity), getGeneration(ownerIdentity),
+            baseActivity.getId(), ActivityType.NEWER_SPACE);
 
     //
-    return activitiesCountCache.get(
+    return getCount(
         new ServiceContext<IntegerData>() {
           public IntegerData execute() {
             return new IntegerData(storage.getNumberOfNewerOnUserSpacesActivities(ownerIdentity, baseActivity));
@@ -726,11 +855,12 @@ public class CachedActivityStorage implements ActivityStorage {
   public List<ExoSocialActivity> getNewerOnUserSpacesActivities(final Identity ownerIdentity, final ExoSocialActivity baseActivity, final int limit) {
 
     //
-    ActivityCountKey key = new ActivityCountKey(new IdentityKey(ownerIdentity), baseActivity.getId(), ActivityType.NEWER_SPACE);
+    ActivityCountKey key = new ActivityCountKey(new IdentityKey(ownerIdentity), getGeneration(ownerIdentity),
+        baseActivity.getId(), ActivityType.NEWER_SPACE);
     ListActivitiesKey listKey = new ListActivitiesKey(key, 0, limit);
 
     //
-    ListActivitiesData keys = activitiesCache.get(
+    ListActivitiesData keys = getList(
         new ServiceContext<ListActivitiesData>() {
           public ListActivitiesData execute() {
             List<ExoSocialActivity> got = storage.getNewerOnUserSpacesActivities(ownerIdentity, baseActivity, limit);
@@ -751,10 +881,11 @@ public class CachedActivityStorage implements ActivityStorage {
 
     //
     ActivityCountKey key =
-        new ActivityCountKey(new IdentityKey(ownerIdentity), baseActivity.getId(), ActivityType.OLDER_SPACE);
+        new ActivityCountKey(new IdentityKey(ownerIdentity), getGeneration(ownerIdentity),
+            baseActivity.getId(), ActivityType.OLDER_SPACE);
 
     //
-    return activitiesCountCache.get(
+    return getCount(
         new ServiceContext<IntegerData>() {
           public IntegerData execute() {
             return new IntegerData(storage.getNumberOfOlderOnUserSpacesActivities(ownerIdentity, baseActivity));
@@ -771,11 +902,12 @@ public class CachedActivityStorage implements ActivityStorage {
   public List<ExoSocialActivity> getOlderOnUserSpacesActivities(final Identity ownerIdentity, final ExoSocialActivity baseActivity, final int limit) {
 
     //
-    ActivityCountKey key = new ActivityCountKey(new IdentityKey(ownerIdentity), baseActivity.getId(), ActivityType.OLDER_SPACE);
+    ActivityCountKey key = new ActivityCountKey(new IdentityKey(ownerIdentity), getGeneration(ownerIdentity),
+        baseActivity.getId(), ActivityType.OLDER_SPACE);
     ListActivitiesKey listKey = new ListActivitiesKey(key, 0, limit);
 
     //
-    ListActivitiesData keys = activitiesCache.get(
+    ListActivitiesData keys = getList(
         new ServiceContext<ListActivitiesData>() {
           public ListActivitiesData execute() {
             List<ExoSocialActivity> got = storage.getOlderOnUserSpacesActivities(ownerIdentity, baseActivity, limit);
@@ -852,9 +984,66 @@ public class CachedActivityStorage implements ActivityStorage {
 
   }
 
+  /**
+   * Discards the cached lists and counts which depend on an activity added to or removed from a stream. The
+   * generation of the feeds of the impacted identities is renewed so that no node of the cluster reads their
+   * previous entries again, even the ones still being loaded. The previous entries read on this node are removed,
+   * the other ones are left to expire.
+   *
+   * @param activity the created or deleted activity
+   * @param feedOwnerIds the identities whose feed contains the activity
+   */
+  private void invalidate(final ExoSocialActivity activity, final Set<String> feedOwnerIds) {
+
+    //
+    Set<String> identityIds = new HashSet<String>(feedOwnerIds);
+    identityIds.add(activity.getStreamId());
+    identityIds.add(activity.getUserId());
+
+    //
+    for (String identityId : identityIds) {
+      renewGeneration(new Identity(identityId));
+    }
+
+  }
+
+  private void renewGeneration(Identity identity) {
+
+    //
+    IdentityKey key = new IdentityKey(identity);
+    exoActivitiesGenerationCache.put(key, new StringData(UUID.randomUUID().toString()));
+
+    //
+    Set<CacheKey> keys = generationKeys.remove(key);
+    if (keys != null) {
+      for (CacheKey k : keys) {
+        if (k instanceof ListActivitiesKey) {
+          exoActivitiesCache.remove(k);
+        }
+        else {
+          exoActivitiesCountCache.remove(k);
+        }
+      }
+    }
+
+  }
+
+  /**
+   * Discards the cached lists and counts of the streams of the identities, when their connections changed.
+   *
+   * @param identities the identities
+   */
+  public void invalidateFeeds(final Identity... identities) {
+    for (Identity identity : identities) {
+      renewGeneration(identity);
+    }
+  }
+
   public void invalidate() {
     exoActivitiesCountCache.clearCache();
     exoActivitiesCache.clearCache();
+    exoActivitiesGenerationCache.clearCache();
+    generationKeys.clear();
   }
   
 }
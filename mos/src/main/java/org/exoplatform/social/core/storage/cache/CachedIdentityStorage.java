@@ -20,6 +20,7 @@ package org.exoplatform.social.core.storage.cache;
 import org.exoplatform.services.cache.ExoCache;
 import org.exoplatform.social.core.identity.model.Identity;
 import org.exoplatform.social.core.identity.model.Profile;
+import org.exoplatform.social.core.identity.provider.SpaceIdentityProvider;
 import org.exoplatform.social.core.profile.ProfileFilter;
 import org.exoplatform.social.core.storage.IdentityStorageException;
 import org.exoplatform.social.core.storage.cache.model.data.ListIdentitiesData;
@@ -28,14 +29,25 @@ import org.exoplatform.social.core.storage.impl.IdentityStorageImpl;
 import org.exoplatform.social.core.storage.api.IdentityStorage;
 import org.exoplatform.social.core.storage.cache.loader.ServiceContext;
 import org.exoplatform.social.core.storage.cache.model.data.IdentityData;
+import org.exoplatform.social.core.storage.cache.model.data.IdsData;
 import org.exoplatform.social.core.storage.cache.model.data.IntegerData;
 import org.exoplatform.social.core.storage.cache.model.data.ProfileData;
+import org.exoplatform.social.core.storage.cache.model.data.SpaceData;
 import org.exoplatform.social.core.storage.cache.model.key.IdentityCompositeKey;
 import org.exoplatform.social.core.storage.cache.model.key.IdentityFilterKey;
 import org.exoplatform.social.core.storage.cache.model.key.IdentityKey;
+import org.exoplatform.social.core.storage.cache.model.key.NotFoundKey;
+import org.exoplatform.social.core.storage.cache.model.key.SpaceFilterKey;
+import org.exoplatform.social.core.storage.cache.model.key.SpaceKey;
+import org.exoplatform.social.core.storage.cache.model.key.SpaceRefKey;
+import org.exoplatform.social.core.storage.cache.model.key.SpaceType;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Cache support for IdentityStorage.
@@ -50,6 +62,9 @@ public class CachedIdentityStorage implements IdentityStorage {
   private final ExoCache<IdentityKey, ProfileData> exoProfileCache;
   private final ExoCache<IdentityFilterKey, IntegerData> exoIdentitiesCountCache;
   private final ExoCache<ListIdentitiesKey, ListIdentitiesData> exoIdentitiesCache;
+  private final ExoCache<SpaceFilterKey, IdsData> exoSpacesIdsCache;
+  private final ExoCache<SpaceKey, SpaceData> exoSpaceCache;
+  private final ExoCache<SpaceRefKey, SpaceKey> exoRefSpaceCache;
 
   private final FutureExoCache<IdentityKey, IdentityData, ServiceContext<IdentityData>> identityCache;
   private final FutureExoCache<IdentityCompositeKey, IdentityKey, ServiceContext<IdentityKey>> identityIndexCache;
@@ -69,14 +84,28 @@ public class CachedIdentityStorage implements IdentityStorage {
 
     List<Identity> identities = new ArrayList<Identity>();
     for (IdentityKey k : data.getIds()) {
-      Identity gotIdentity = findIdentityById(k.getId());
-      gotIdentity.setProfile(loadProfile(gotIdentity.getProfile()));
-      identities.add(gotIdentity);
+      identities.add(findIdentityWithoutProfile(k.getId()));
     }
+    loadProfiles(identities);
     return identities;
 
   }
 
+  private Identity findIdentityWithoutProfile(final String nodeId) {
+
+    IdentityKey key = new IdentityKey(new Identity(nodeId));
+    return identityCache.get(
+        new ServiceContext<IdentityData>() {
+
+          public IdentityData execute() {
+            return new IdentityData(storage.findIdentityById(nodeId));
+          }
+        },
+        key)
+        .build();
+
+  }
+
   /**
    * Build the ids from the identitiy list.
    *
@@ -96,6 +125,44 @@ public class CachedIdentityStorage implements IdentityStorage {
 
   }
 
+  /**
+   * Removes the cached accessible spaces ids impacted by the creation or the removal of an identity.
+   * A user only impacts its own ids, a space impacts the ids of its members and managers.
+   *
+   * @param providerId the provider of the identity
+   * @param remoteId the remote id of the identity
+   */
+  private void invalidateSpacesIds(String providerId, String remoteId) {
+
+    //
+    if (remoteId == null) {
+      exoSpacesIdsCache.clearCache();
+      return;
+    }
+    if (!SpaceIdentityProvider.NAME.equals(providerId)) {
+      exoSpacesIdsCache.remove(new SpaceFilterKey(remoteId, null, SpaceType.ACCESSIBLE));
+      return;
+    }
+
+    // The users of a space which isn't cached are unknown
+    SpaceKey spaceKey = exoRefSpaceCache.get(new SpaceRefKey(null, remoteId));
+    SpaceData space = (spaceKey != null ? exoSpaceCache.get(spaceKey) : null);
+    if (space == null) {
+      exoSpacesIdsCache.clearCache();
+      return;
+    }
+
+    //
+    for (String[] userIds : new String[][] {space.getMembers(), space.getManagers()}) {
+      if (userIds != null) {
+        for (String userId : userIds) {
+          exoSpacesIdsCache.remove(new SpaceFilterKey(userId, null, SpaceType.ACCESSIBLE));
+        }
+      }
+    }
+
+  }
+
   public CachedIdentityStorage(final IdentityStorageImpl storage, final SocialStorageCacheService cacheService) {
 
     //
@@ -108,6 +175,9 @@ public class CachedIdentityStorage implements IdentityStorage {
     this.exoProfileCache = cacheService.getProfileCache();
     this.exoIdentitiesCountCache = cacheService.getCountIdentitiesCache();
     this.exoIdentitiesCache = cacheService.getIdentitiesCache();
+    this.exoSpacesIdsCache = cacheService.getSpacesIdsCache();
+    this.exoSpaceCache = cacheService.getSpaceCache();
+    this.exoRefSpaceCache = cacheService.getSpaceRefCache();
 
     //
     this.identityCache = CacheType.IDENTITY.createFutureCache(exoIdentityCache);
@@ -124,13 +194,20 @@ public class CachedIdentityStorage implements IdentityStorage {
   public void saveIdentity(final Identity identity) throws IdentityStorageException {
 
     //
+    boolean created = (identity.getId() == null);
     storage.saveIdentity(identity);
 
     //
     IdentityKey key = new IdentityKey(new Identity(identity.getId()));
     exoIdentityCache.put(key, new IdentityData(identity));
+    exoIdentityIndexCache.remove(new IdentityCompositeKey(identity.getProviderId(), identity.getRemoteId()));
     exoIdentitiesCountCache.clearCache();
     exoIdentitiesCache.clearCache();
+
+    // The accessible spaces ids only change when an identity appears
+    if (created) {
+      invalidateSpacesIds(identity.getProviderId(), identity.getRemoteId());
+    }
   }
 
   /**
@@ -153,16 +230,7 @@ public class CachedIdentityStorage implements IdentityStorage {
    */
   public Identity findIdentityById(final String nodeId) throws IdentityStorageException {
 
-    IdentityKey key = new IdentityKey(new Identity(nodeId));
-    Identity i = identityCache.get(
-        new ServiceContext<IdentityData>() {
-
-          public IdentityData execute() {
-            return new IdentityData(storage.findIdentityById(nodeId));
-          }
-        },
-        key)
-        .build();
+    Identity i = findIdentityWithoutProfile(nodeId);
 
     //
     if (i != null) {
@@ -191,6 +259,12 @@ public class CachedIdentityStorage implements IdentityStorage {
     exoProfileCache.remove(key);
     exoIdentitiesCountCache.clearCache();
     exoIdentitiesCache.clearCache();
+    if (data != null) {
+      invalidateSpacesIds(data.getProviderId(), data.getRemoteId());
+    }
+    else {
+      invalidateSpacesIds(identity.getProviderId(), identity.getRemoteId());
+    }
 
   }
 
@@ -212,6 +286,52 @@ public class CachedIdentityStorage implements IdentityStorage {
 
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  public List<Profile> loadProfiles(final Collection<Identity> identities) throws IdentityStorageException {
+
+    FutureCacheStatistics statistics = profileCache.getStatistics();
+    Profile[] profiles = new Profile[identities.size()];
+    List<Identity> misses = new ArrayList<Identity>();
+    List<Integer> missIndexes = new ArrayList<Integer>();
+
+    //
+    int i = 0;
+    for (Identity identity : identities) {
+      ProfileData data = exoProfileCache.get(new IdentityKey(new Identity(identity.getId())));
+      if (data != null) {
+        statistics.hit();
+        profiles[i] = data.build();
+        identity.setProfile(profiles[i]);
+      }
+      else {
+        statistics.miss();
+        misses.add(identity);
+        missIndexes.add(i);
+      }
+      ++i;
+    }
+
+    // Load all the misses in one storage call
+    if (misses.size() > 0) {
+      long start = System.currentTimeMillis();
+      List<Profile> loaded = storage.loadProfiles(misses);
+      statistics.load(System.currentTimeMillis() - start);
+
+      for (int j = 0; j < loaded.size(); ++j) {
+        Identity identity = misses.get(j);
+        ProfileData data = new ProfileData(loaded.get(j));
+        exoProfileCache.put(new IdentityKey(new Identity(identity.getId())), data);
+        profiles[missIndexes.get(j)] = data.build();
+        identity.setProfile(profiles[missIndexes.get(j)]);
+      }
+    }
+
+    return Arrays.asList(profiles);
+
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -226,7 +346,7 @@ public class CachedIdentityStorage implements IdentityStorage {
 
           public IdentityKey execute() {
             Identity i = storage.findIdentity(providerId, remoteId);
-            if (i == null) return null;
+            if (i == null) return IdentityKey.notFound();
             IdentityKey key = new IdentityKey(i);
             exoIdentityCache.put(key, new IdentityData(i));
             return key;
@@ -235,7 +355,7 @@ public class CachedIdentityStorage implements IdentityStorage {
         key);
     
     //
-    if (k != null) {
+    if (k != null && !(k instanceof NotFoundKey)) {
       return findIdentityById(k.getId());
     }
     else {
@@ -243,6 +363,64 @@ public class CachedIdentityStorage implements IdentityStorage {
     }
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  public List<Identity> findIdentitiesById(final Collection<String> nodeIds) throws IdentityStorageException {
+
+    List<Identity> identities = new ArrayList<Identity>();
+    for (String nodeId : nodeIds) {
+      Identity identity = findIdentityWithoutProfile(nodeId);
+      if (identity != null) {
+        identities.add(identity);
+      }
+    }
+    return identities;
+
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public List<Identity> findIdentities(final String providerId, final Collection<String> remoteIds)
+      throws IdentityStorageException {
+
+    // The not found markers are looked up again, they may have expired
+    Map<String, Identity> found = new HashMap<String, Identity>();
+    List<String> misses = new ArrayList<String>();
+    for (String remoteId : remoteIds) {
+      IdentityKey key = exoIdentityIndexCache.get(new IdentityCompositeKey(providerId, remoteId));
+      IdentityData data = (key != null && !(key instanceof NotFoundKey) ? exoIdentityCache.get(key) : null);
+      if (data != null) {
+        found.put(remoteId, data.build());
+      }
+      else {
+        misses.add(remoteId);
+      }
+    }
+
+    // Load all the misses in one storage call
+    if (misses.size() > 0) {
+      for (Identity identity : storage.findIdentities(providerId, misses)) {
+        IdentityKey key = new IdentityKey(identity);
+        exoIdentityCache.put(key, new IdentityData(identity));
+        exoIdentityIndexCache.put(new IdentityCompositeKey(providerId, identity.getRemoteId()), key);
+        found.put(identity.getRemoteId(), identity);
+      }
+    }
+
+    //
+    List<Identity> identities = new ArrayList<Identity>();
+    for (String remoteId : remoteIds) {
+      Identity identity = found.get(remoteId);
+      if (identity != null) {
+        identities.add(identity);
+      }
+    }
+    return identities;
+
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -25,6 +25,7 @@ import org.exoplatform.social.core.relationship.model.Relationship;
 import org.exoplatform.social.core.storage.RelationshipStorageException;
 import org.exoplatform.social.core.storage.api.IdentityStorage;
 import org.exoplatform.social.core.storage.cache.model.data.IdentityData;
+import org.exoplatform.social.core.storage.cache.model.data.IdsData;
 import org.exoplatform.social.core.storage.cache.model.data.ListIdentitiesData;
 import org.exoplatform.social.core.storage.cache.model.key.*;
 import org.exoplatform.social.core.storage.impl.RelationshipStorageImpl;
@@ -49,12 +50,14 @@ public class CachedRelationshipStorage implements RelationshipStorage {
   private final ExoCache<RelationshipIdentityKey, RelationshipKey> exoRelationshipByIdentityCache;
   private final ExoCache<RelationshipCountKey, IntegerData> exoRelationshipCountCache;
   private final ExoCache<ListRelationshipsKey, ListIdentitiesData> exoRelationshipsCache;
+  private final ExoCache<IdentityKey, IdsData> exoConnectionsCache;
 
   //
   private final FutureExoCache<RelationshipKey, RelationshipData, ServiceContext<RelationshipData>> relationshipCache;
   private final FutureExoCache<RelationshipIdentityKey, RelationshipKey, ServiceContext<RelationshipKey>> relationshipCacheIdentity;
   private final FutureExoCache<RelationshipCountKey, IntegerData, ServiceContext<IntegerData>> relationshipsCount;
   private final FutureExoCache<ListRelationshipsKey, ListIdentitiesData, ServiceContext<ListIdentitiesData>> relationshipsCache;
+  private final FutureExoCache<IdentityKey, IdsData, ServiceContext<IdsData>> connectionsCache;
 
   //
   private final ExoCache<IdentityKey, IdentityData> exoIdentityCache;
@@ -64,9 +67,6 @@ public class CachedRelationshipStorage implements RelationshipStorage {
   private final IdentityStorage identityStorage;
   private CachedActivityStorage cachedActivityStorage;
 
-  //
-  private static final RelationshipKey RELATIONSHIP_NOT_FOUND = new RelationshipKey(null);
-
 
   /**
    * Build the identity list from the caches Ids.
@@ -102,6 +102,38 @@ public class CachedRelationshipStorage implements RelationshipStorage {
     return new ListIdentitiesData(data);
 
   }
+  /**
+   * Build the identity list from the ids, the profiles of the page are loaded at once.
+   *
+   * @param ids ids
+   * @return identities
+   */
+  private List<Identity> buildIdentities(List<String> ids) {
+
+    List<Identity> identities = identityStorage.findIdentitiesById(ids);
+    identityStorage.loadProfiles(identities);
+    return identities;
+
+  }
+
+  /**
+   * Get the ids of the connections from the cache.
+   *
+   * @param identity identity
+   * @return ids
+   */
+  private IdsData getConnectionsData(final Identity identity) {
+
+    return connectionsCache.get(
+        new ServiceContext<IdsData>() {
+          public IdsData execute() {
+            return new IdsData(storage.getConnectionIds(identity));
+          }
+        },
+        new IdentityKey(identity));
+
+  }
+
   public CachedActivityStorage getCachedActivityStorage() {
     if (cachedActivityStorage == null) {
       cachedActivityStorage = (CachedActivityStorage)
@@ -122,12 +154,14 @@ public class CachedRelationshipStorage implements RelationshipStorage {
     this.exoRelationshipByIdentityCache = cacheService.getRelationshipCacheByIdentity();
     this.exoRelationshipCountCache = cacheService.getRelationshipsCount();
     this.exoRelationshipsCache = cacheService.getRelationshipsCache();
+    this.exoConnectionsCache = cacheService.getConnectionsCache();
 
     //
     this.relationshipCache = CacheType.RELATIONSHIP.createFutureCache(exoRelationshipCache);
     this.relationshipCacheIdentity = CacheType.RELATIONSHIP_FROM_IDENTITY.createFutureCache(exoRelationshipByIdentityCache);
     this.relationshipsCount = CacheType.RELATIONSHIPS_COUNT.createFutureCache(exoRelationshipCountCache);
     this.relationshipsCache = CacheType.RELATIONSHIPS.createFutureCache(exoRelationshipsCache);
+    this.connectionsCache = CacheType.CONNECTIONS.createFutureCache(exoConnectionsCache);
 
     //
     this.exoIdentityCache = cacheService.getIdentityCache();
@@ -150,7 +184,9 @@ public class CachedRelationshipStorage implements RelationshipStorage {
     exoRelationshipByIdentityCache.put(identityKey2, key);
     exoRelationshipsCache.clearCache();
     exoRelationshipCountCache.clearCache();
-    getCachedActivityStorage().invalidate();
+    exoConnectionsCache.remove(new IdentityKey(r.getSender()));
+    exoConnectionsCache.remove(new IdentityKey(r.getReceiver()));
+    getCachedActivityStorage().invalidateFeeds(r.getSender(), r.getReceiver());
 
     return r;
 
@@ -164,8 +200,15 @@ public class CachedRelationshipStorage implements RelationshipStorage {
     storage.removeRelationship(relationship);
 
     exoRelationshipCache.remove(new RelationshipKey(relationship.getId()));
+    exoRelationshipByIdentityCache.remove(
+        new RelationshipIdentityKey(relationship.getSender().getId(), relationship.getReceiver().getId()));
+    exoRelationshipByIdentityCache.remove(
+        new RelationshipIdentityKey(relationship.getReceiver().getId(), relationship.getSender().getId()));
     exoRelationshipsCache.clearCache();
     exoRelationshipCountCache.clearCache();
+    exoConnectionsCache.remove(new IdentityKey(relationship.getSender()));
+    exoConnectionsCache.remove(new IdentityKey(relationship.getReceiver()));
+    getCachedActivityStorage().invalidateFeeds(relationship.getSender(), relationship.getReceiver());
     
   }
 
@@ -246,8 +289,7 @@ public class CachedRelationshipStorage implements RelationshipStorage {
               return k;
             }
             else {
-              exoRelationshipByIdentityCache.put(key, RELATIONSHIP_NOT_FOUND);
-              return RELATIONSHIP_NOT_FOUND;
+              return RelationshipKey.notFound();
             }
           }
         },
@@ -255,7 +297,7 @@ public class CachedRelationshipStorage implements RelationshipStorage {
     );
 
     //
-    if (gotKey != null && !gotKey.equals(RELATIONSHIP_NOT_FOUND)) {
+    if (gotKey != null && !(gotKey instanceof NotFoundKey)) {
       return getRelationship(gotKey.getId());
     }
     else {
@@ -412,19 +454,12 @@ public class CachedRelationshipStorage implements RelationshipStorage {
       throws RelationshipStorageException {
 
     //
-    IdentityKey key = new IdentityKey(identity);
-    ListRelationshipsKey<IdentityKey> listKey = new ListRelationshipsKey<IdentityKey>(key, RelationshipType.CONNECTION, offset, limit);
-    ListIdentitiesData keys = relationshipsCache.get(
-        new ServiceContext<ListIdentitiesData>() {
-          public ListIdentitiesData execute() {
-            List<Identity> got = storage.getConnections(identity, offset, limit);
-            return buildIds(got);
-          }
-        },
-        listKey);
+    List<String> ids = getConnectionsData(identity).build();
 
     //
-    return buildRelationships(keys);
+    int from = (int) Math.min(offset, ids.size());
+    int to = (limit > 0 ? (int) Math.min(from + limit, ids.size()) : ids.size());
+    return buildIdentities(ids.subList(from, to));
 
   }
 
@@ -432,28 +467,21 @@ public class CachedRelationshipStorage implements RelationshipStorage {
    * {@inheritDoc}
    */
   public List<Identity> getConnections(final Identity identity) throws RelationshipStorageException {
-    return storage.getConnections(identity);
+    return buildIdentities(getConnectionsData(identity).build());
   }
 
   /**
    * {@inheritDoc}
    */
-  public int getConnectionsCount(final Identity identity) throws RelationshipStorageException {
-
-    //
-    IdentityKey iKey = new IdentityKey(identity);
-    RelationshipCountKey<IdentityKey> key = new RelationshipCountKey<IdentityKey>(iKey, RelationshipType.CONNECTION);
-
-    //
-    return relationshipsCount.get(
-        new ServiceContext<IntegerData>() {
-          public IntegerData execute() {
-            return new IntegerData(storage.getConnectionsCount(identity));
-          }
-        },
-        key)
-        .build();
+  public List<String> getConnectionIds(final Identity identity) throws RelationshipStorageException {
+    return getConnectionsData(identity).build();
+  }
 
+  /**
+   * {@inheritDoc}
+   */
+  public int getConnectionsCount(final Identity identity) throws RelationshipStorageException {
+    return getConnectionsData(identity).size();
   }
 
   public List<Identity> getConnectionsByFilter(final Identity existingIdentity,
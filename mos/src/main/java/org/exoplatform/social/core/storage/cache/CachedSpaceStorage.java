@@ -18,12 +18,16 @@
 package org.exoplatform.social.core.storage.cache;
 
 import org.exoplatform.services.cache.ExoCache;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
 import org.exoplatform.social.core.space.SpaceFilter;
 import org.exoplatform.social.core.space.model.Space;
 import org.exoplatform.social.core.storage.SpaceStorageException;
+import org.exoplatform.social.core.storage.cache.model.data.IdsData;
 import org.exoplatform.social.core.storage.cache.model.data.IntegerData;
 import org.exoplatform.social.core.storage.cache.model.data.ListSpacesData;
 import org.exoplatform.social.core.storage.cache.model.key.ListSpacesKey;
+import org.exoplatform.social.core.storage.cache.model.key.NotFoundKey;
 import org.exoplatform.social.core.storage.cache.model.key.SpaceFilterKey;
 import org.exoplatform.social.core.storage.cache.model.key.SpaceType;
 import org.exoplatform.social.core.storage.impl.SpaceStorageImpl;
@@ -32,9 +36,13 @@ import org.exoplatform.social.core.storage.cache.loader.ServiceContext;
 import org.exoplatform.social.core.storage.cache.model.data.SpaceData;
 import org.exoplatform.social.core.storage.cache.model.key.SpaceKey;
 import org.exoplatform.social.core.storage.cache.model.key.SpaceRefKey;
+import org.exoplatform.social.core.storage.cache.selector.SpaceListSelector;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * @author <a href="mailto:alain.defrance@exoplatform.com">Alain Defrance</a>
@@ -42,15 +50,20 @@ import java.util.List;
  */
 public class CachedSpaceStorage implements SpaceStorage {
 
+  /** Logger */
+  private static final Log LOG = ExoLogger.getLogger(CachedSpaceStorage.class);
+
   private final ExoCache<SpaceKey, SpaceData> exoSpaceCache;
   private final ExoCache<SpaceRefKey, SpaceKey> exoRefSpaceCache;
   private final ExoCache<SpaceFilterKey, IntegerData> exoSpacesCountCache;
   private final ExoCache<ListSpacesKey, ListSpacesData> exoSpacesCache;
+  private final ExoCache<SpaceFilterKey, IdsData> exoSpacesIdsCache;
 
   private final FutureExoCache<SpaceKey, SpaceData, ServiceContext<SpaceData>> spaceCache;
   private final FutureExoCache<SpaceRefKey, SpaceKey, ServiceContext<SpaceKey>> spaceRefCache;
   private final FutureExoCache<SpaceFilterKey, IntegerData, ServiceContext<IntegerData>> spacesCountCache;
   private final FutureExoCache<ListSpacesKey, ListSpacesData, ServiceContext<ListSpacesData>> spacesCache;
+  private final FutureExoCache<SpaceFilterKey, IdsData, ServiceContext<IdsData>> spacesIdsCache;
 
   private final SpaceStorageImpl storage;
 
@@ -97,11 +110,13 @@ public class CachedSpaceStorage implements SpaceStorage {
     this.exoRefSpaceCache = cacheService.getSpaceRefCache();
     this.exoSpacesCountCache = cacheService.getSpacesCountCache();
     this.exoSpacesCache = cacheService.getSpacesCache();
+    this.exoSpacesIdsCache = cacheService.getSpacesIdsCache();
 
     this.spaceCache = CacheType.SPACE.createFutureCache(exoSpaceCache);
     this.spaceRefCache = CacheType.SPACE_REF.createFutureCache(exoRefSpaceCache);
     this.spacesCountCache = CacheType.SPACES_COUNT.createFutureCache(exoSpacesCountCache);
     this.spacesCache = CacheType.SPACES.createFutureCache(exoSpacesCache);
+    this.spacesIdsCache = CacheType.SPACES_IDS.createFutureCache(exoSpacesIdsCache);
 
   }
 
@@ -131,14 +146,14 @@ public class CachedSpaceStorage implements SpaceStorage {
               return key;
             }
             else {
-              return null;
+              return SpaceKey.notFound();
             }
           }
         },
         refKey);
 
     //
-    if (key != null) {
+    if (key != null && !(key instanceof NotFoundKey)) {
       return getSpaceById(key.getId());
     }
     else {
@@ -147,22 +162,76 @@ public class CachedSpaceStorage implements SpaceStorage {
 
   }
 
+  /**
+   * Removes the cached space lists and counts of the users, and the public lists and the lists of all the spaces
+   * when the space itself changed.
+   *
+   * @param userIds the users whose space lists changed
+   * @param spaceChanged true if the space was created, removed or its searched attributes changed
+   */
+  private void invalidateSpaceLists(Set<String> userIds, boolean spaceChanged) {
+
+    SpaceListSelector selector = new SpaceListSelector(userIds, spaceChanged);
+    try {
+      exoSpacesCountCache.select(selector);
+      selector.removeSelected(exoSpacesCountCache);
+      exoSpacesCache.select(selector);
+      selector.removeSelected(exoSpacesCache);
+      exoSpacesIdsCache.select(selector);
+      selector.removeSelected(exoSpacesIdsCache);
+    }
+    catch (Exception e) {
+      LOG.error("Could not select the space lists to invalidate, clearing them", e);
+      exoSpacesCountCache.clearCache();
+      exoSpacesCache.clearCache();
+      exoSpacesIdsCache.clearCache();
+    }
+
+  }
+
+  private void addUsers(Set<String> userIds, String[] users) {
+    if (users != null) {
+      userIds.addAll(Arrays.asList(users));
+    }
+  }
+
+  private boolean isSearchChanged(SpaceData removed, Space space) {
+    return !equals(removed.getPrettyName(), space.getPrettyName())
+        || !equals(removed.getDisplayName(), space.getDisplayName())
+        || !equals(removed.getDescription(), space.getDescription());
+  }
+
+  private boolean equals(String s1, String s2) {
+    return s1 == null ? s2 == null : s1.equals(s2);
+  }
+
   /**
    * {@inheritDoc}
    */
   public void saveSpace(final Space space, final boolean isNew) throws SpaceStorageException {
 
     //
-    storage.saveSpace(space, isNew);
+    Set<String> updatedUsers = new HashSet<String>();
+    storage.saveSpace(space, isNew, updatedUsers);
 
     //
     SpaceData removed = exoSpaceCache.remove(new SpaceKey(space.getId()));
-    exoSpacesCountCache.clearCache();
-    exoSpacesCache.clearCache();
+    boolean spaceChanged = isNew || removed == null || isSearchChanged(removed, space);
+    if (spaceChanged) {
+      // The filtered lists of all the users of the space may change
+      addUsers(updatedUsers, space.getMembers());
+      addUsers(updatedUsers, space.getManagers());
+      addUsers(updatedUsers, space.getPendingUsers());
+      addUsers(updatedUsers, space.getInvitedUsers());
+    }
+    invalidateSpaceLists(updatedUsers, spaceChanged);
     if (removed != null) {
       cleanRef(removed);
     }
 
+    // The new names of the space may have been looked up and not found before
+    cleanRef(new SpaceData(space));
+
   }
 
   /**
@@ -171,12 +240,19 @@ public class CachedSpaceStorage implements SpaceStorage {
   public void deleteSpace(final String id) throws SpaceStorageException {
 
     //
+    Space space = getSpaceById(id);
     storage.deleteSpace(id);
 
     //
     SpaceData removed = exoSpaceCache.remove(new SpaceKey(id));
-    exoSpacesCountCache.clearCache();
-    exoSpacesCache.clearCache();
+    Set<String> userIds = new HashSet<String>();
+    if (space != null) {
+      addUsers(userIds, space.getMembers());
+      addUsers(userIds, space.getManagers());
+      addUsers(userIds, space.getPendingUsers());
+      addUsers(userIds, space.getInvitedUsers());
+    }
+    invalidateSpaceLists(userIds, true);
     if (removed != null) {
       cleanRef(removed);
     }
@@ -618,6 +694,26 @@ public class CachedSpaceStorage implements SpaceStorage {
     return storage.getAccessibleSpaces(userId);
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  public List<String> getAccessibleSpacesIdentityIds(final String userId) throws SpaceStorageException {
+
+    //
+    SpaceFilterKey key = new SpaceFilterKey(userId, null, SpaceType.ACCESSIBLE);
+
+    //
+    return spacesIdsCache.get(
+        new ServiceContext<IdsData>() {
+          public IdsData execute() {
+            return new IdsData(storage.getAccessibleSpacesIdentityIds(userId));
+          }
+        },
+        key)
+        .build();
+
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -897,14 +993,14 @@ public class CachedSpaceStorage implements SpaceStorage {
               return key;
             }
             else {
-              return null;
+              return SpaceKey.notFound();
             }
           }
         },
         refKey);
 
     //
-    if (key != null) {
+    if (key != null && !(key instanceof NotFoundKey)) {
       return getSpaceById(key.getId());
     }
     else {
@@ -932,14 +1028,14 @@ public class CachedSpaceStorage implements SpaceStorage {
               return key;
             }
             else {
-              return null;
+              return SpaceKey.notFound();
             }
           }
         },
         refKey);
 
     //
-    if (key != null) {
+    if (key != null && !(key instanceof NotFoundKey)) {
       return getSpaceById(key.getId());
     }
     else {
@@ -967,14 +1063,14 @@ public class CachedSpaceStorage implements SpaceStorage {
               return key;
             }
             else {
-              return null;
+              return SpaceKey.notFound();
             }
           }
         },
         refKey);
 
     //
-    if (key != null) {
+    if (key != null && !(key instanceof NotFoundKey)) {
       return getSpaceById(key.getId());
     }
     else {
@@ -29,7 +29,11 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 
 /**
@@ -47,6 +51,11 @@ import java.util.concurrent.FutureTask;
  * <p>The {@link Loader} interface provides a source to retrieve objects to put in the cache. The goal to maintain
  * this interface is to decouple the cache from the object source.</p>
  *
+ * <p>A thread waiting for a resource loaded by another thread waits at most the wait timeout, after that
+ * a single waiting thread loads the resource again and the other ones wait for this second loading. The hits,
+ * misses, coalesced waits and loading times are recorded in the {@link FutureCacheStatistics} of the cache, which
+ * can be shared by several caches.</p>
+ *
  * @author <a href="mailto:julien.viet@exoplatform.com">Julien Viet</a>
  * @version $Revision$
  * @param <K> the key type parameter
@@ -60,15 +69,42 @@ public abstract class FutureCache<K, V, C>
    private final Loader<K, V, C> loader;
 
    /** . */
-   private final ConcurrentMap<K, FutureTask<V>> futureEntries;
+   private final ConcurrentMap<K, LoadTask> futureEntries;
+
+   /** . */
+   private final FutureCacheStatistics statistics;
+
+   /** The maximum time in milliseconds a thread waits for a resource loaded by another thread, 0 means no limit. */
+   private volatile long waitTimeout;
 
    /** . */
    private final Logger log = LoggerFactory.getLogger(FutureCache.class);
 
    public FutureCache(Loader<K, V, C> loader)
+   {
+      this(loader, new FutureCacheStatistics());
+   }
+
+   public FutureCache(Loader<K, V, C> loader, FutureCacheStatistics statistics)
    {
       this.loader = loader;
-      this.futureEntries = new ConcurrentHashMap<K, FutureTask<V>>();
+      this.futureEntries = new ConcurrentHashMap<K, LoadTask>();
+      this.statistics = statistics;
+   }
+
+   public FutureCacheStatistics getStatistics()
+   {
+      return statistics;
+   }
+
+   public long getWaitTimeout()
+   {
+      return waitTimeout;
+   }
+
+   public void setWaitTimeout(long waitTimeout)
+   {
+      this.waitTimeout = waitTimeout;
    }
 
    /**
@@ -101,83 +137,189 @@ public abstract class FutureCache<K, V, C>
    {
       // First we try a simple cache get
       V value = get(key);
+      if (value != null)
+      {
+         statistics.hit();
+         return value;
+      }
 
       // If it does not succeed then we go through a process that will avoid to load
       // the same resource concurrently
-      if (value == null)
+      statistics.miss();
+      LoadTask future = new LoadTask(context, key);
+      LoadTask phantom = futureEntries.putIfAbsent(key, future);
+
+      //
+      try
       {
-         // Create our future
-         FutureTask<V> future = new FutureTask<V>(new Callable<V>()
+         if (phantom == null)
          {
-            public V call() throws Exception
-            {
-               // Retrieve the value from the loader
-               V value = loader.retrieve(context, key);
-
-               //
-               if (value != null)
-               {
-                  // Cache it, it is made available to other threads (unless someone removes it)
-                  put(key, value);
-
-                  // Return value
-                  return value;
-               }
-               else
-               {
-                  return null;
-               }
-            }
-         });
-
-         // This boolean means we inserted in the local
-         boolean inserted = true;
+            future.run();
+            return future.get();
+         }
 
-         //
+         // Use the value that is being loaded by another thread
+         statistics.coalescedWait();
+         long timeout = waitTimeout;
+         if (timeout <= 0)
+         {
+            return phantom.get();
+         }
          try
          {
-            FutureTask<V> phantom = futureEntries.putIfAbsent(key, future);
-
-            // Use the value that could have been inserted by another thread
-            if (phantom != null)
-            {
-               future = phantom;
-               inserted = false;
-            }
-            else
+            return phantom.get(timeout, TimeUnit.MILLISECONDS);
+         }
+         catch (TimeoutException e)
+         {
+            // Do not pile up behind a slow loading, the first waiter to give up loads the resource again
+            statistics.waitTimeout();
+            if (futureEntries.replace(key, phantom, future))
             {
+               log.debug("Waited more than " + timeout + "ms for resource " + key + ", loading it again");
                future.run();
+               return future.get();
             }
 
-            // Returns the value
-            value = future.get();
-         }
-         catch (ExecutionException e)
-         {
-            if (e.getCause() != null)
+            // Another waiter is loading it again, otherwise the loading is done and the value is in the cache
+            LoadTask reload = futureEntries.get(key);
+            if (reload == null)
             {
-               throw new UndeclaredThrowableException(e.getCause());
+               return get(key);
             }
-            else
+            try
             {
-               log.error("Computing of resource " + key + " threw an exception", e.getCause());
+               return reload.get(timeout, TimeUnit.MILLISECONDS);
+            }
+            catch (TimeoutException again)
+            {
+               // The loading again is slow too, load the resource without sharing it
+               statistics.waitTimeout();
+               log.debug("Waited more than " + timeout + "ms for the reloading of resource " + key + ", loading it");
+               future.run();
+               return future.get();
             }
          }
-         catch (Exception e)
-         {
-            log.error("Retrieval of resource " + key + " threw an exception", e);
-         }
-         finally
+      }
+      catch (ExecutionException e)
+      {
+         throw unwrap(key, e);
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+         log.error("Retrieval of resource " + key + " was interrupted", e);
+      }
+
+      //
+      return null;
+   }
+
+   /**
+    * Perform a cache lookup for the specified key within the specified context, the value is loaded by the
+    * executor when it is not in the cache. Loadings of the same key are shared with the {@link #get(Object, Object)}
+    * method. The context must not depend on the state of the calling thread.
+    *
+    * @param context the context in which the resource is accessed
+    * @param key the key identifying the resource
+    * @param executor the executor loading the resource
+    * @return the future value
+    */
+   public final Future<V> getAsync(final C context, final K key, final Executor executor)
+   {
+      final V value = get(key);
+      if (value != null)
+      {
+         statistics.hit();
+         FutureTask<V> done = new FutureTask<V>(new Callable<V>()
          {
-            // Clean up the per key map but only if our insertion succeeded and with our future
-            if (inserted)
+            public V call() throws Exception
             {
-               futureEntries.remove(key, future);
+               return value;
             }
-         }
+         });
+         done.run();
+         return done;
       }
 
       //
-      return value;
+      statistics.miss();
+      LoadTask future = new LoadTask(context, key);
+      LoadTask phantom = futureEntries.putIfAbsent(key, future);
+      if (phantom != null)
+      {
+         statistics.coalescedWait();
+         return phantom;
+      }
+      executor.execute(future);
+      return future;
+   }
+
+   private RuntimeException unwrap(K key, ExecutionException e)
+   {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException)
+      {
+         return (RuntimeException)cause;
+      }
+      if (cause instanceof Error)
+      {
+         throw (Error)cause;
+      }
+      if (cause == null)
+      {
+         log.error("Computing of resource " + key + " threw an exception", e);
+      }
+      return new UndeclaredThrowableException(cause);
+   }
+
+   /**
+    * The loading of a resource, it is removed from the pending loadings once done.
+    */
+   private class LoadTask extends FutureTask<V>
+   {
+
+      /** . */
+      private final K key;
+
+      private LoadTask(final C context, final K key)
+      {
+         super(new Callable<V>()
+         {
+            public V call() throws Exception
+            {
+               // Retrieve the value from the loader
+               long start = System.currentTimeMillis();
+               V value;
+               try
+               {
+                  value = loader.retrieve(context, key);
+               }
+               catch (Exception e)
+               {
+                  statistics.failure();
+                  throw e;
+               }
+               statistics.load(System.currentTimeMillis() - start);
+
+               //
+               if (value != null)
+               {
+                  // Cache it, it is made available to other threads (unless someone removes it)
+                  put(key, value);
+               }
+
+               // Return value
+               return value;
+            }
+         });
+         this.key = key;
+      }
+
+      @Override
+      protected void done()
+      {
+         // Clean up the per key map but only with our future
+         futureEntries.remove(key, this);
+      }
    }
 }
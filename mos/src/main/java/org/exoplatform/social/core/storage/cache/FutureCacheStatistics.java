@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2003-2011 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.exoplatform.social.core.storage.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the lookups done through a {@link FutureCache}, each future cache has its own counters.
+ *
+ * @version $Revision$
+ */
+public class FutureCacheStatistics {
+
+  private final AtomicLong hits = new AtomicLong();
+
+  private final AtomicLong misses = new AtomicLong();
+
+  private final AtomicLong coalescedWaits = new AtomicLong();
+
+  private final AtomicLong waitTimeouts = new AtomicLong();
+
+  private final AtomicLong loads = new AtomicLong();
+
+  private final AtomicLong failures = new AtomicLong();
+
+  private final AtomicLong loadTime = new AtomicLong();
+
+  void hit() {
+    hits.incrementAndGet();
+  }
+
+  void miss() {
+    misses.incrementAndGet();
+  }
+
+  void coalescedWait() {
+    coalescedWaits.incrementAndGet();
+  }
+
+  void waitTimeout() {
+    waitTimeouts.incrementAndGet();
+  }
+
+  void load(long time) {
+    loads.incrementAndGet();
+    loadTime.addAndGet(time);
+  }
+
+  void failure() {
+    failures.incrementAndGet();
+  }
+
+  /**
+   * @return the number of lookups found in the cache
+   */
+  public long getHits() {
+    return hits.get();
+  }
+
+  /**
+   * @return the number of lookups not found in the cache
+   */
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * @return the number of misses which waited for the loading of another thread
+   */
+  public long getCoalescedWaits() {
+    return coalescedWaits.get();
+  }
+
+  /**
+   * @return the number of coalesced waits which timed out and loaded the value by themselves
+   */
+  public long getWaitTimeouts() {
+    return waitTimeouts.get();
+  }
+
+  /**
+   * @return the number of successful loadings
+   */
+  public long getLoads() {
+    return loads.get();
+  }
+
+  /**
+   * @return the number of loadings which threw an exception
+   */
+  public long getFailures() {
+    return failures.get();
+  }
+
+  /**
+   * @return the total time in milliseconds spent by the successful loadings
+   */
+  public long getLoadTime() {
+    return loadTime.get();
+  }
+
+  /**
+   * @return the average time in milliseconds of a successful loading
+   */
+  public long getAverageLoadTime() {
+    long count = loads.get();
+    return count == 0 ? 0 : loadTime.get() / count;
+  }
+
+  /**
+   * Resets all the counters.
+   */
+  public void reset() {
+    hits.set(0);
+    misses.set(0);
+    coalescedWaits.set(0);
+    waitTimeouts.set(0);
+    loads.set(0);
+    failures.set(0);
+    loadTime.set(0);
+  }
+
+  @Override
+  public String toString() {
+    return "FutureCacheStatistics[hits=" + getHits() + ",misses=" + getMisses() + ",coalescedWaits=" + getCoalescedWaits()
+        + ",waitTimeouts=" + getWaitTimeouts() + ",loads=" + getLoads() + ",failures=" + getFailures()
+        + ",averageLoadTime=" + getAverageLoadTime() + "]";
+  }
+
+}
@@ -21,6 +21,7 @@ package org.exoplatform.social.core.storage.cache;
 
 import org.exoplatform.commons.cache.future.Loader;
 import org.exoplatform.services.cache.ExoCache;
+import org.exoplatform.social.core.storage.cache.model.key.NotFoundKey;
 
 import java.io.Serializable;
 
@@ -34,6 +35,9 @@ public class FutureExoCache<K extends Serializable, V, C> extends FutureCache<K,
    /** . */
    private final ExoCache<K, V> cache;
 
+   /** The time in milliseconds a {@link NotFoundKey} stays valid, 0 means until it is invalidated. */
+   private volatile long notFoundTimeout;
+
    public FutureExoCache(Loader<K, V, C> loader, ExoCache<K, V> cache)
    {
       super(loader);
@@ -42,6 +46,14 @@ public class FutureExoCache<K extends Serializable, V, C> extends FutureCache<K,
       this.cache = cache;
    }
 
+   public FutureExoCache(Loader<K, V, C> loader, ExoCache<K, V> cache, FutureCacheStatistics statistics)
+   {
+      super(loader, statistics);
+
+      //
+      this.cache = cache;
+   }
+
    public void clear()
    {
       cache.clearCache();
@@ -52,10 +64,30 @@ public class FutureExoCache<K extends Serializable, V, C> extends FutureCache<K,
       cache.remove(key);
    }
 
+   public long getNotFoundTimeout()
+   {
+      return notFoundTimeout;
+   }
+
+   public void setNotFoundTimeout(long notFoundTimeout)
+   {
+      this.notFoundTimeout = notFoundTimeout;
+   }
+
    @Override
    protected V get(K key)
    {
-      return cache.get(key);
+      V value = cache.get(key);
+
+      // An expired not found marker is a miss, the lookup is done again
+      long timeout = notFoundTimeout;
+      if (timeout > 0 && value instanceof NotFoundKey
+         && System.currentTimeMillis() - ((NotFoundKey)value).getCreationTime() > timeout)
+      {
+         cache.remove(key);
+         return null;
+      }
+      return value;
    }
 
    @Override
@@ -17,10 +17,18 @@
 
 package org.exoplatform.social.core.storage.cache;
 
+import org.exoplatform.management.annotations.Impact;
+import org.exoplatform.management.annotations.ImpactType;
+import org.exoplatform.management.annotations.Managed;
+import org.exoplatform.management.annotations.ManagedDescription;
+import org.exoplatform.management.annotations.ManagedName;
+import org.exoplatform.management.jmx.annotations.NameTemplate;
+import org.exoplatform.management.jmx.annotations.Property;
 import org.exoplatform.services.cache.CacheService;
 import org.exoplatform.services.cache.ExoCache;
 import org.exoplatform.social.core.storage.cache.model.data.ActivityData;
 import org.exoplatform.social.core.storage.cache.model.data.IdentityData;
+import org.exoplatform.social.core.storage.cache.model.data.IdsData;
 import org.exoplatform.social.core.storage.cache.model.data.IntegerData;
 import org.exoplatform.social.core.storage.cache.model.data.ListActivitiesData;
 import org.exoplatform.social.core.storage.cache.model.data.ListIdentitiesData;
@@ -28,6 +36,7 @@ import org.exoplatform.social.core.storage.cache.model.data.ListSpacesData;
 import org.exoplatform.social.core.storage.cache.model.data.ProfileData;
 import org.exoplatform.social.core.storage.cache.model.data.RelationshipData;
 import org.exoplatform.social.core.storage.cache.model.data.SpaceData;
+import org.exoplatform.social.core.storage.cache.model.data.StringData;
 import org.exoplatform.social.core.storage.cache.model.key.ActivityCountKey;
 import org.exoplatform.social.core.storage.cache.model.key.ActivityKey;
 import org.exoplatform.social.core.storage.cache.model.key.IdentityCompositeKey;
@@ -48,6 +57,12 @@ import org.exoplatform.social.core.storage.cache.model.key.SpaceRefKey;
  * @author <a href="mailto:alain.defrance@exoplatform.com">Alain Defrance</a>
  * @version $Revision$
  */
+@Managed
+@ManagedDescription("Social storage cache service")
+@NameTemplate({
+  @Property(key = "name", value = "socialstoragecache"),
+  @Property(key = "service", value = "SocialStorageCacheService")
+})
 public class SocialStorageCacheService {
 
   // IdentityStorage
@@ -62,17 +77,20 @@ public class SocialStorageCacheService {
   private final ExoCache<RelationshipIdentityKey, RelationshipKey> relationshipCacheByIdentity;
   private final ExoCache<RelationshipCountKey, IntegerData> relationshipsCount;
   private final ExoCache<ListRelationshipsKey, ListIdentitiesData> relationshipsCache;
+  private final ExoCache<IdentityKey, IdsData> connectionsCache;
 
   // ActivityStorage
   private final ExoCache<ActivityKey, ActivityData> activityCache;
   private final ExoCache<ActivityCountKey, IntegerData> activitiesCountCache;
   private final ExoCache<ListActivitiesKey, ListActivitiesData> activitiesCache;
+  private final ExoCache<IdentityKey, StringData> activitiesGenerationCache;
 
   // SpaceStorage
   private final ExoCache<SpaceKey, SpaceData> spaceCache;
   private final ExoCache<SpaceRefKey, SpaceKey> spaceRefCache;
   private final ExoCache<SpaceFilterKey, IntegerData> spacesCountCache;
   private final ExoCache<ListSpacesKey, ListSpacesData> spacesCache;
+  private final ExoCache<SpaceFilterKey, IdsData> spacesIdsCache;
 
   public SocialStorageCacheService(CacheService cacheService) {
     
@@ -86,15 +104,18 @@ public class SocialStorageCacheService {
     this.relationshipCacheByIdentity = CacheType.RELATIONSHIP_FROM_IDENTITY.getFromService(cacheService);
     this.relationshipsCount = CacheType.RELATIONSHIPS_COUNT.getFromService(cacheService);
     this.relationshipsCache = CacheType.RELATIONSHIPS.getFromService(cacheService);
+    this.connectionsCache = CacheType.CONNECTIONS.getFromService(cacheService);
 
     this.activityCache = CacheType.ACTIVITY.getFromService(cacheService);
     this.activitiesCountCache = CacheType.ACTIVITIES_COUNT.getFromService(cacheService);
     this.activitiesCache = CacheType.ACTIVITIES.getFromService(cacheService);
+    this.activitiesGenerationCache = CacheType.ACTIVITIES_GENERATION.getFromService(cacheService);
 
     this.spaceCache = CacheType.SPACE.getFromService(cacheService);
     this.spaceRefCache = CacheType.SPACE_REF.getFromService(cacheService);
     this.spacesCountCache = CacheType.SPACES_COUNT.getFromService(cacheService);
     this.spacesCache = CacheType.SPACES.getFromService(cacheService);
+    this.spacesIdsCache = CacheType.SPACES_IDS.getFromService(cacheService);
 
   }
 
@@ -134,6 +155,10 @@ public class SocialStorageCacheService {
     return relationshipsCache;
   }
 
+  public ExoCache<IdentityKey, IdsData> getConnectionsCache() {
+    return connectionsCache;
+  }
+
   public ExoCache<ActivityKey, ActivityData> getActivityCache() {
     return activityCache;
   }
@@ -146,6 +171,10 @@ public class SocialStorageCacheService {
     return activitiesCache;
   }
 
+  public ExoCache<IdentityKey, StringData> getActivitiesGenerationCache() {
+    return activitiesGenerationCache;
+  }
+
   public ExoCache<SpaceKey, SpaceData> getSpaceCache() {
     return spaceCache;
   }
@@ -161,4 +190,54 @@ public class SocialStorageCacheService {
   public ExoCache<ListSpacesKey, ListSpacesData> getSpacesCache() {
     return spacesCache;
   }
+
+  public ExoCache<SpaceFilterKey, IdsData> getSpacesIdsCache() {
+    return spacesIdsCache;
+  }
+
+  /**
+   * Gets the lookup statistics of the future caches of a type.
+   *
+   * @param name the cache name, like ActivitiesCache, or the cache type, like ACTIVITIES
+   * @return the statistics, null if there is no such cache
+   */
+  @Managed
+  @ManagedDescription("Lookup statistics of a cache")
+  public String getStatistics(@ManagedDescription("Cache name") @ManagedName("name") String name) {
+    CacheType type = findType(name);
+    return type != null ? type.getStatistics().toString() : null;
+  }
+
+  /**
+   * Gets the lookup statistics of the future caches of all the types.
+   *
+   * @return the statistics, one line per cache name
+   */
+  @Managed
+  @ManagedDescription("Lookup statistics of all the caches")
+  public String getAllStatistics() {
+    StringBuilder sb = new StringBuilder();
+    for (CacheType type : CacheType.values()) {
+      sb.append(type.getName()).append(": ").append(type.getStatistics()).append('\n');
+    }
+    return sb.toString();
+  }
+
+  @Managed
+  @ManagedDescription("Reset the lookup statistics of all the caches")
+  @Impact(ImpactType.WRITE)
+  public void resetStatistics() {
+    for (CacheType type : CacheType.values()) {
+      type.getStatistics().reset();
+    }
+  }
+
+  private CacheType findType(String name) {
+    for (CacheType type : CacheType.values()) {
+      if (type.getName().equals(name) || type.name().equals(name)) {
+        return type;
+      }
+    }
+    return null;
+  }
 }
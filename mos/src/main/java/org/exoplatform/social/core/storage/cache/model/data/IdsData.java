@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2003-2011 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.exoplatform.social.core.storage.cache.model.data;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable compact id list.
+ */
+public class IdsData implements CacheData<List<String>> {
+
+  private final String[] ids;
+
+  public IdsData(final List<String> ids) {
+    this.ids = ids.toArray(new String[ids.size()]);
+  }
+
+  public List<String> build() {
+    return Collections.unmodifiableList(Arrays.asList(ids));
+  }
+
+  public int size() {
+    return ids.length;
+  }
+
+}
@@ -28,6 +28,8 @@ public class ActivityCountKey extends MultitenantCacheKey {
 
   private IdentityKey key;
 
+  private String generation;
+
   private String baseId;
 
   private ActivityType type;
@@ -43,6 +45,36 @@ public class ActivityCountKey extends MultitenantCacheKey {
     this.type = type;
   }
 
+  /**
+   * @param key the identity owning the stream
+   * @param generation the generation of the streams of the identity, a new one discards the previous keys
+   * @param baseId the base activity of a newer or older count, null otherwise
+   * @param type the type of the stream
+   */
+  public ActivityCountKey(final IdentityKey key, final String generation, final String baseId,
+                          final ActivityType type) {
+    this.key = key;
+    this.generation = generation;
+    this.baseId = baseId;
+    this.type = type;
+  }
+
+  public IdentityKey getKey() {
+    return key;
+  }
+
+  public String getGeneration() {
+    return generation;
+  }
+
+  public String getBaseId() {
+    return baseId;
+  }
+
+  public ActivityType getType() {
+    return type;
+  }
+
   @Override
   public boolean equals(final Object o) {
     if (this == o) {
@@ -60,6 +92,9 @@ public class ActivityCountKey extends MultitenantCacheKey {
     if (baseId != null ? !baseId.equals(that.baseId) : that.baseId != null) {
       return false;
     }
+    if (generation != null ? !generation.equals(that.generation) : that.generation != null) {
+      return false;
+    }
     if (key != null ? !key.equals(that.key) : that.key != null) {
       return false;
     }
@@ -74,6 +109,7 @@ public class ActivityCountKey extends MultitenantCacheKey {
   public int hashCode() {
     int result = super.hashCode();
     result = 31 * result + (key != null ? key.hashCode() : 0);
+    result = 31 * result + (generation != null ? generation.hashCode() : 0);
     result = 31 * result + (baseId != null ? baseId.hashCode() : 0);
     result = 31 * result + (type != null ? type.hashCode() : 0);
     return result;
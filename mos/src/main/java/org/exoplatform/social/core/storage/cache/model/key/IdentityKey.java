@@ -65,4 +65,28 @@ public class IdentityKey extends MultitenantCacheKey {
     return result;
   }
 
+  /**
+   * Creates a marker of a lookup which did not find any identity.
+   *
+   * @return the marker
+   */
+  public static IdentityKey notFound() {
+    return new NotFound();
+  }
+
+  private static class NotFound extends IdentityKey implements NotFoundKey {
+
+    private final long creationTime;
+
+    private NotFound() {
+      super(new Identity((String) null));
+      this.creationTime = System.currentTimeMillis();
+    }
+
+    public long getCreationTime() {
+      return creationTime;
+    }
+
+  }
+
 }
@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2003-2011 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.exoplatform.social.core.storage.cache.model.key;
+
+/**
+ * Marker of a cached lookup which did not find anything. It is cached as the value of the lookup so the
+ * storage is not queried again until the marker is invalidated or expires.
+ *
+ * @version $Revision$
+ */
+public interface NotFoundKey extends CacheKey {
+
+  /**
+   * @return the time in milliseconds the marker was created
+   */
+  long getCreationTime();
+
+}
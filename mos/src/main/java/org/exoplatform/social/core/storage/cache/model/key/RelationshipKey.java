@@ -63,4 +63,28 @@ public class RelationshipKey extends MultitenantCacheKey {
     return result;
   }
 
+  /**
+   * Creates a marker of a lookup which did not find any relationship.
+   *
+   * @return the marker
+   */
+  public static RelationshipKey notFound() {
+    return new NotFound();
+  }
+
+  private static class NotFound extends RelationshipKey implements NotFoundKey {
+
+    private final long creationTime;
+
+    private NotFound() {
+      super(null);
+      this.creationTime = System.currentTimeMillis();
+    }
+
+    public long getCreationTime() {
+      return creationTime;
+    }
+
+  }
+
 }
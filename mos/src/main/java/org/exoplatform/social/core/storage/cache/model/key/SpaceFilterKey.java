@@ -42,6 +42,14 @@ public class SpaceFilterKey extends MultitenantCacheKey {
     this.type = type;
   }
 
+  public String getUserId() {
+    return userId;
+  }
+
+  public SpaceType getType() {
+    return type;
+  }
+
   @Override
   public boolean equals(final Object o) {
     if (this == o) {
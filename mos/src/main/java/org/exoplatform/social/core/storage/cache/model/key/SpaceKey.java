@@ -58,4 +58,28 @@ public class SpaceKey extends MultitenantCacheKey {
     return id != null ? id.hashCode() : 0;
   }
   
+  /**
+   * Creates a marker of a lookup which did not find any space.
+   *
+   * @return the marker
+   */
+  public static SpaceKey notFound() {
+    return new NotFound();
+  }
+
+  private static class NotFound extends SpaceKey implements NotFoundKey {
+
+    private final long creationTime;
+
+    private NotFound() {
+      super(null);
+      this.creationTime = System.currentTimeMillis();
+    }
+
+    public long getCreationTime() {
+      return creationTime;
+    }
+
+  }
+
 }
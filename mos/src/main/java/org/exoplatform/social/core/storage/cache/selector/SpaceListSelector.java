@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2003-2011 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.exoplatform.social.core.storage.cache.selector;
+
+import org.exoplatform.services.cache.CachedObjectSelector;
+import org.exoplatform.services.cache.ExoCache;
+import org.exoplatform.services.cache.ObjectCacheInfo;
+import org.exoplatform.social.core.storage.cache.model.key.CacheKey;
+import org.exoplatform.social.core.storage.cache.model.key.ListSpacesKey;
+import org.exoplatform.social.core.storage.cache.model.key.SpaceFilterKey;
+import org.exoplatform.social.core.storage.cache.model.key.SpaceType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Selects the cached space lists and counts impacted by the save of a space.
+ * All the lists of the users whose memberships changed are selected, including their public lists. The public
+ * lists of the other users and the lists of all the spaces are only selected when the space itself was created,
+ * removed or changed.
+ *
+ * @version $Revision$
+ */
+public class SpaceListSelector implements CachedObjectSelector<CacheKey, Object> {
+
+  private final Set<String> userIds;
+
+  private final boolean spaceChanged;
+
+  private final List<CacheKey> selected;
+
+  public SpaceListSelector(final Set<String> userIds, final boolean spaceChanged) {
+    this.userIds = userIds;
+    this.spaceChanged = spaceChanged;
+    this.selected = new ArrayList<CacheKey>();
+  }
+
+  public boolean select(final CacheKey key, final ObjectCacheInfo<? extends Object> ocinfo) {
+
+    SpaceFilterKey filterKey;
+    if (key instanceof ListSpacesKey) {
+      filterKey = ((ListSpacesKey) key).getKey();
+    }
+    else if (key instanceof SpaceFilterKey) {
+      filterKey = (SpaceFilterKey) key;
+    }
+    else {
+      return false;
+    }
+
+    //
+    if (filterKey != null && filterKey.getUserId() != null && userIds.contains(filterKey.getUserId())) {
+      return true;
+    }
+    if (filterKey == null || filterKey.getUserId() == null || filterKey.getType() == SpaceType.PUBLIC
+        || filterKey.getType() == SpaceType.ALL) {
+      return spaceChanged;
+    }
+    return false;
+
+  }
+
+  public void onSelect(final ExoCache<? extends CacheKey, ? extends Object> cache, final CacheKey key,
+                       final ObjectCacheInfo<? extends Object> ocinfo) throws Exception {
+    selected.add(key);
+  }
+
+  /**
+   * Removes the selected entries from the cache.
+   *
+   * @param cache the cache which was selected
+   */
+  public void removeSelected(final ExoCache<? extends CacheKey, ? extends Object> cache) {
+    for (CacheKey key : selected) {
+      cache.remove(key);
+    }
+    selected.clear();
+  }
+
+}
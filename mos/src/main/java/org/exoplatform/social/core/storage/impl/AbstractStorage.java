@@ -17,16 +17,38 @@
 
 package org.exoplatform.social.core.storage.impl;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
 
 import org.chromattic.api.ChromatticSession;
+import org.chromattic.api.query.Query;
+import org.chromattic.api.query.QueryResult;
 import org.exoplatform.commons.chromattic.ChromatticManager;
 import org.exoplatform.container.PortalContainer;
 import org.exoplatform.social.common.lifecycle.SocialChromatticLifeCycle;
+import org.exoplatform.social.core.chromattic.entity.ActivityEntity;
+import org.exoplatform.social.core.chromattic.entity.ActivityFeedEntity;
+import org.exoplatform.social.core.chromattic.entity.ActivityRef;
+import org.exoplatform.social.core.chromattic.entity.IdentityEntity;
+import org.exoplatform.social.core.chromattic.entity.ProviderEntity;
 import org.exoplatform.social.core.chromattic.entity.ProviderRootEntity;
+import org.exoplatform.social.core.chromattic.entity.RelationshipEntity;
+import org.exoplatform.social.core.chromattic.entity.SpaceListEntity;
 import org.exoplatform.social.core.chromattic.entity.SpaceRootEntity;
+import org.exoplatform.social.core.identity.provider.OrganizationIdentityProvider;
+import org.exoplatform.social.core.identity.provider.SpaceIdentityProvider;
 import org.exoplatform.social.core.storage.cache.CachedActivityStorage;
 import org.exoplatform.social.core.storage.exception.NodeNotFoundException;
+import org.exoplatform.social.core.storage.query.JCRProperties;
+import org.exoplatform.social.core.storage.query.Order;
+import org.exoplatform.social.core.storage.query.QueryTemplate;
+import org.exoplatform.social.core.storage.query.WhereExpression;
 
 /**
  * @author <a href="mailto:alain.defrance@exoplatform.com">Alain Defrance</a>
@@ -50,6 +72,10 @@ public abstract class AbstractStorage {
   protected static final String SENDER = "sender";
   protected static final String RECEIVER = "receiver";
 
+  //
+  private static final QueryTemplate OLDEST_REFS = new QueryTemplate(
+      JCRProperties.path.getName() + " LIKE ? ORDER BY " + ActivityRef.postedTime.getName() + " " + Order.ASC);
+
   private CachedActivityStorage cachedActivityStorage;
 
   protected AbstractStorage() {
@@ -123,6 +149,440 @@ public abstract class AbstractStorage {
     getSession().remove(getSession().findById(clazz, nodeId));
   }
 
+  /**
+   * Builds again the materialized activity feed of the identity from its own activities, the ones of its connections
+   * and the ones of its spaces, and counts them. Only the {@link ActivityFeedEntity#CAPACITY} newest activities are
+   * kept. It runs the query over all the feed identities, so it is only used to repair the feeds, the changes of
+   * connections and spaces are merged in the feeds with {@link #_mergeIntoFeed(IdentityEntity, IdentityEntity, List)}
+   * and {@link #_removeFromFeed(IdentityEntity, IdentityEntity, List)}.
+   *
+   * @param identityEntity the identity entity
+   */
+  protected void _buildFeed(final IdentityEntity identityEntity) {
+
+    ActivityFeedEntity feedEntity = identityEntity.getFeed();
+    if (feedEntity != null) {
+      getSession().remove(feedEntity);
+    }
+    feedEntity = identityEntity.createFeed();
+    identityEntity.setFeed(feedEntity);
+
+    //
+    List<IdentityEntity> connections = new ArrayList<IdentityEntity>();
+    for (RelationshipEntity relationshipEntity : identityEntity.getRelationship().getRelationships().values()) {
+      connections.add(relationshipEntity.getTo());
+    }
+
+    //
+    List<IdentityEntity> spaces = new ArrayList<IdentityEntity>();
+    Set<String> spaceNames = new HashSet<String>();
+    if (OrganizationIdentityProvider.NAME.equals(identityEntity.getProviderId())) {
+      ProviderEntity spaceProvider = getProviderRoot().getProviders().get(SpaceIdentityProvider.NAME);
+      if (spaceProvider != null) {
+        SpaceListEntity[] spaceLists = {identityEntity.getSpaces(), identityEntity.getManagerSpaces()};
+        for (SpaceListEntity spaceList : spaceLists) {
+          for (String spaceName : spaceList.getRefs().keySet()) {
+            IdentityEntity spaceIdentity = spaceProvider.getIdentities().get(spaceName);
+            if (spaceIdentity != null && spaceNames.add(spaceName)) {
+              spaces.add(spaceIdentity);
+            }
+          }
+        }
+      }
+    }
+
+    // Same shape as the activity feed query of the activity storage
+    List<IdentityEntity> identities = new ArrayList<IdentityEntity>();
+    identities.add(identityEntity);
+    identities.addAll(connections);
+    identities.addAll(spaces);
+
+    //
+    Query<ActivityEntity> query = getActivitiesQuery(identities);
+    QueryResult<ActivityEntity> results = query.objects(0L, (long) ActivityFeedEntity.CAPACITY);
+    Long oldest = null;
+    while (results.hasNext()) {
+      ActivityEntity current = results.next();
+      _markRef(identityEntity, feedEntity.append(current.getId(), current.getPostedTime()), current, null);
+      oldest = current.getPostedTime();
+    }
+
+    // The older activities are only counted
+    if (feedEntity.getRefNumber() == ActivityFeedEntity.CAPACITY) {
+      feedEntity.setNumber(query.objects().size());
+      feedEntity.trim(oldest);
+    }
+
+    // Then kept up to date when the activities are created and deleted
+    feedEntity.setOwnNumber(getActivitiesQuery(Collections.singletonList(identityEntity)).objects().size());
+    if (connections.size() > 0) {
+      feedEntity.setConnectionsNumber(getActivitiesQuery(connections).objects().size());
+    }
+    if (spaces.size() > 0) {
+      feedEntity.setSpacesNumber(getActivitiesQuery(spaces).objects().size());
+    }
+
+  }
+
+  /**
+   * Gets the newest activities matched on the identity in the activity feeds, at most
+   * {@link ActivityFeedEntity#CAPACITY} of them, newest first. They are the activities posted by a user or the ones
+   * of the stream of the other identities.
+   *
+   * @param identityEntity the identity entity
+   * @return the activities
+   */
+  protected List<ActivityEntity> _getFeedActivities(final IdentityEntity identityEntity) {
+
+    List<ActivityEntity> activities = new ArrayList<ActivityEntity>();
+    QueryResult<ActivityEntity> results = getActivitiesQuery(Collections.singletonList(identityEntity))
+        .objects(0L, (long) ActivityFeedEntity.CAPACITY);
+    while (results.hasNext()) {
+      activities.add(results.next());
+    }
+
+    return activities;
+
+  }
+
+  /**
+   * Gets the number of activities matched on the identity in the activity feeds. It is kept by the feed of the
+   * identity, the identities created before it was are counted once with a query.
+   *
+   * @param identityEntity the identity entity
+   * @return the number of activities
+   */
+  protected int _getFeedActivityNumber(final IdentityEntity identityEntity) {
+
+    ActivityFeedEntity feedEntity = identityEntity.getFeed();
+    if (feedEntity != null && feedEntity.getOwnNumber() != null) {
+      return feedEntity.getOwnNumber();
+    }
+
+    //
+    int number = getActivitiesQuery(Collections.singletonList(identityEntity)).objects().size();
+    if (feedEntity != null) {
+      feedEntity.setOwnNumber(number);
+    }
+    return number;
+
+  }
+
+  /**
+   * Merges in the feed of the owner the activities of an identity which just became one of its connections or
+   * spaces, their refs are marked as matched on it. The activities older than the kept refs are only counted, as if
+   * none of them was already in the feed.
+   *
+   * @param ownerEntity the feed owner
+   * @param identityEntity the new connection or space
+   * @param activities the activities of the identity given by {@link #_getFeedActivities(IdentityEntity)}
+   */
+  protected void _mergeIntoFeed(final IdentityEntity ownerEntity, final IdentityEntity identityEntity,
+                                final List<ActivityEntity> activities) {
+
+    // Not built, read from the query over the feed identities
+    ActivityFeedEntity feedEntity = ownerEntity.getFeed();
+    if (feedEntity == null) {
+      return;
+    }
+
+    //
+    List<ActivityRef> merged = new ArrayList<ActivityRef>();
+    int kept = 0;
+    for (ActivityEntity activityEntity : activities) {
+      if (feedEntity.isTrimmed(activityEntity.getPostedTime())) {
+        break;
+      }
+      ActivityRef ref = feedEntity.append(activityEntity.getId(), activityEntity.getPostedTime());
+      if (ref != null) {
+        merged.add(ref);
+      }
+      else {
+        ref = feedEntity.getRefs().get(activityEntity.getId());
+      }
+      if (SpaceIdentityProvider.NAME.equals(identityEntity.getProviderId())) {
+        ref.setSpace(true);
+      }
+      else {
+        ref.setConnection(true);
+      }
+      ++kept;
+    }
+
+    // The activities which were not loaded are older than the loaded ones
+    if (activities.size() == ActivityFeedEntity.CAPACITY) {
+      feedEntity.trim(activities.get(activities.size() - 1).getPostedTime());
+    }
+
+    //
+    int number = _getFeedActivityNumber(identityEntity);
+    feedEntity.setNumber(feedEntity.getNumber() + number - kept);
+    updateFeedNumber(feedEntity, identityEntity, number);
+
+    //
+    trimFeed(feedEntity, merged);
+
+  }
+
+  /**
+   * Removes from the feed of the owner the activities of an identity which is not one of its connections or spaces
+   * anymore. The activities still matched on another identity of the feed are kept and marked again. The activities
+   * older than the kept refs are only counted, as if none of them was matched on another identity.
+   *
+   * @param ownerEntity the feed owner
+   * @param identityEntity the removed connection or space
+   * @param activities the activities of the identity given by {@link #_getFeedActivities(IdentityEntity)}
+   */
+  protected void _removeFromFeed(final IdentityEntity ownerEntity, final IdentityEntity identityEntity,
+                                 final List<ActivityEntity> activities) {
+
+    ActivityFeedEntity feedEntity = ownerEntity.getFeed();
+    if (feedEntity == null) {
+      return;
+    }
+
+    //
+    int kept = 0;
+    for (ActivityEntity activityEntity : activities) {
+      if (feedEntity.isTrimmed(activityEntity.getPostedTime())) {
+        break;
+      }
+      ActivityRef ref = feedEntity.getRefs().get(activityEntity.getId());
+      if (ref != null) {
+        if (isInFeed(ownerEntity, activityEntity, identityEntity)) {
+          _markRef(ownerEntity, ref, activityEntity, identityEntity);
+        }
+        else {
+          getSession().remove(ref);
+          feedEntity.descRef();
+          feedEntity.desc();
+        }
+      }
+      ++kept;
+    }
+
+    //
+    int number = _getFeedActivityNumber(identityEntity);
+    feedEntity.setNumber(feedEntity.getNumber() - number + kept);
+    updateFeedNumber(feedEntity, identityEntity, -number);
+
+  }
+
+  /**
+   * Adds an activity to a built feed. When the feed is full, the oldest ref is trimmed.
+   *
+   * @param feedEntity the feed
+   * @param activityId the activity id
+   * @param postedTime the activity posted time
+   * @return the created ref, null if the activity is older than the kept ones or already in the feed
+   */
+  protected ActivityRef _addToFeed(final ActivityFeedEntity feedEntity, final String activityId,
+                                   final Long postedTime) {
+
+    if (feedEntity.getRefNumber() >= ActivityFeedEntity.CAPACITY) {
+      QueryResult<ActivityRef> oldest = getOldestRefs(feedEntity, 1);
+      if (oldest.hasNext()) {
+        ActivityRef ref = oldest.next();
+        if (ref.getPostedTime() >= postedTime) {
+          // Older than the kept activities, only counted
+          feedEntity.trim(postedTime);
+          feedEntity.inc();
+          return null;
+        }
+        feedEntity.trim(ref.getPostedTime());
+        getSession().remove(ref);
+        feedEntity.descRef();
+      }
+    }
+
+    return feedEntity.append(activityId, postedTime);
+
+  }
+
+  /**
+   * Marks the ref of an activity in the feed of the owner as matched or not on one of its connections and on one of
+   * its spaces. They are the refs counted by the connections and spaces numbers of the feed.
+   *
+   * @param ownerEntity the feed owner
+   * @param ref the ref of the activity, nothing is done when null
+   * @param activityEntity the activity
+   * @param excludedEntity the connection or space being removed from the feed, null if none
+   */
+  protected void _markRef(final IdentityEntity ownerEntity, final ActivityRef ref, final ActivityEntity activityEntity,
+                          final IdentityEntity excludedEntity) {
+
+    if (ref == null) {
+      return;
+    }
+
+    // Organization identities are matched on the poster, the other ones on the stream
+    IdentityEntity posterEntity = activityEntity.getPosterIdentity();
+    IdentityEntity streamEntity = activityEntity.getIdentity();
+    boolean posterMatched = OrganizationIdentityProvider.NAME.equals(posterEntity.getProviderId())
+        && !isSame(posterEntity, excludedEntity);
+    boolean streamMatched = !OrganizationIdentityProvider.NAME.equals(streamEntity.getProviderId())
+        && !isSame(streamEntity, excludedEntity);
+
+    //
+    ref.setConnection((posterMatched && isConnection(ownerEntity, posterEntity))
+        || (streamMatched && isConnection(ownerEntity, streamEntity)));
+    ref.setSpace(streamMatched && isSpace(ownerEntity, streamEntity));
+
+  }
+
+  /**
+   * Trims the oldest refs of a feed which went over its capacity. The saved refs aren't ordered, so the oldest ones are
+   * either the oldest saved ones, which are queried, or the ones just added.
+   */
+  private void trimFeed(ActivityFeedEntity feedEntity, List<ActivityRef> added) {
+
+    int over = feedEntity.getRefNumber() - ActivityFeedEntity.CAPACITY;
+    if (over <= 0) {
+      return;
+    }
+
+    //
+    List<ActivityRef> candidates = new ArrayList<ActivityRef>(added);
+    QueryResult<ActivityRef> oldest = getOldestRefs(feedEntity, over);
+    while (oldest.hasNext()) {
+      candidates.add(oldest.next());
+    }
+    Collections.sort(candidates, new Comparator<ActivityRef>() {
+      public int compare(ActivityRef ref1, ActivityRef ref2) {
+        return ref1.getPostedTime().compareTo(ref2.getPostedTime());
+      }
+    });
+
+    //
+    for (ActivityRef ref : candidates.subList(0, Math.min(over, candidates.size()))) {
+      feedEntity.trim(ref.getPostedTime());
+      getSession().remove(ref);
+      feedEntity.descRef();
+    }
+
+  }
+
+  private QueryResult<ActivityRef> getOldestRefs(ActivityFeedEntity feedEntity, int limit) {
+
+    String statement = OLDEST_REFS.bind(feedEntity.getPath() + StorageUtils.SLASH_STR + StorageUtils.PERCENT_STR);
+
+    return getSession().createQueryBuilder(ActivityRef.class).where(statement).get().objects(0L, (long) limit);
+
+  }
+
+  /**
+   * Updates the number of activities of connections or of spaces of the feed, depending on the identity.
+   */
+  private void updateFeedNumber(ActivityFeedEntity feedEntity, IdentityEntity identityEntity, int delta) {
+
+    if (SpaceIdentityProvider.NAME.equals(identityEntity.getProviderId())) {
+      feedEntity.setSpacesNumber(feedEntity.getSpacesNumber() + delta);
+    }
+    else {
+      feedEntity.setConnectionsNumber(feedEntity.getConnectionsNumber() + delta);
+    }
+
+  }
+
+  /**
+   * Whether the activity is matched on an identity of the feed of the owner, other than the excluded one.
+   */
+  private boolean isInFeed(IdentityEntity ownerEntity, ActivityEntity activityEntity, IdentityEntity excludedEntity) {
+
+    // Organization identities are matched on the poster, the other ones on the stream
+    IdentityEntity posterEntity = activityEntity.getPosterIdentity();
+    if (OrganizationIdentityProvider.NAME.equals(posterEntity.getProviderId())
+        && !isSame(posterEntity, excludedEntity)
+        && isFeedIdentity(ownerEntity, posterEntity)) {
+      return true;
+    }
+
+    IdentityEntity streamEntity = activityEntity.getIdentity();
+    return !OrganizationIdentityProvider.NAME.equals(streamEntity.getProviderId())
+        && !isSame(streamEntity, excludedEntity)
+        && isFeedIdentity(ownerEntity, streamEntity);
+
+  }
+
+  /**
+   * Whether the identity is the owner of the feed, one of its connections or one of its spaces.
+   */
+  private boolean isFeedIdentity(IdentityEntity ownerEntity, IdentityEntity identityEntity) {
+
+    return isSame(ownerEntity, identityEntity)
+        || isConnection(ownerEntity, identityEntity)
+        || isSpace(ownerEntity, identityEntity);
+
+  }
+
+  /**
+   * Whether the identity is one of the connections of the owner.
+   */
+  private boolean isConnection(IdentityEntity ownerEntity, IdentityEntity identityEntity) {
+
+    RelationshipEntity relationshipEntity =
+        ownerEntity.getRelationship().getRelationships().get(identityEntity.getRemoteId());
+    return relationshipEntity != null && isSame(relationshipEntity.getTo(), identityEntity);
+
+  }
+
+  /**
+   * Whether the identity is one of the spaces of the owner.
+   */
+  private boolean isSpace(IdentityEntity ownerEntity, IdentityEntity identityEntity) {
+
+    if (OrganizationIdentityProvider.NAME.equals(ownerEntity.getProviderId())
+        && SpaceIdentityProvider.NAME.equals(identityEntity.getProviderId())) {
+      String spaceName = identityEntity.getRemoteId();
+      return ownerEntity.getSpaces().getRefs().containsKey(spaceName)
+          || ownerEntity.getManagerSpaces().getRefs().containsKey(spaceName);
+    }
+
+    return false;
+
+  }
+
+  private boolean isSame(IdentityEntity identityEntity, IdentityEntity otherEntity) {
+    return otherEntity != null && identityEntity.getId().equals(otherEntity.getId());
+  }
+
+  /**
+   * Gets the activities of the identities, newest first.
+   */
+  private Query<ActivityEntity> getActivitiesQuery(List<IdentityEntity> identities) {
+
+    WhereExpression whereExpression = new WhereExpression();
+    whereExpression.startGroup();
+    boolean first = true;
+    for (IdentityEntity current : identities) {
+      if (first) {
+        first = false;
+      }
+      else {
+        whereExpression.or();
+      }
+      appendFeedIdentity(whereExpression, current);
+    }
+    whereExpression.endGroup();
+    whereExpression.and().equals(ActivityEntity.isComment, Boolean.FALSE);
+    whereExpression.orderBy(ActivityEntity.postedTime, Order.DESC);
+
+    return getSession().createQueryBuilder(ActivityEntity.class).where(whereExpression.toString()).get();
+
+  }
+
+  private void appendFeedIdentity(WhereExpression whereExpression, IdentityEntity identityEntity) {
+
+    // Organization identities are matched on the poster, the other ones on the stream
+    if (OrganizationIdentityProvider.NAME.equals(identityEntity.getProviderId())) {
+      whereExpression.equals(ActivityEntity.poster, identityEntity.getId());
+    }
+    else {
+      whereExpression.equals(ActivityEntity.identity, identityEntity.getId());
+    }
+
+  }
+
   protected boolean isJcrProperty(String name) {
     return !name.startsWith(NS_JCR);
   }
@@ -24,29 +24,37 @@ import org.chromattic.api.query.QueryResult;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
 import org.exoplatform.social.core.ActivityProcessor;
+import org.exoplatform.social.core.ActivityWriteProcessor;
 import org.exoplatform.social.core.activity.model.ActivityStream;
 import org.exoplatform.social.core.activity.model.ActivityStreamImpl;
 import org.exoplatform.social.core.activity.model.ExoSocialActivity;
 import org.exoplatform.social.core.activity.model.ExoSocialActivityImpl;
 import org.exoplatform.social.core.chromattic.entity.ActivityDayEntity;
 import org.exoplatform.social.core.chromattic.entity.ActivityEntity;
+import org.exoplatform.social.core.chromattic.entity.ActivityFeedEntity;
 import org.exoplatform.social.core.chromattic.entity.ActivityListEntity;
 import org.exoplatform.social.core.chromattic.entity.ActivityParameters;
+import org.exoplatform.social.core.chromattic.entity.ActivityRef;
 import org.exoplatform.social.core.chromattic.entity.IdentityEntity;
+import org.exoplatform.social.core.chromattic.entity.ProviderEntity;
+import org.exoplatform.social.core.chromattic.entity.RelationshipEntity;
+import org.exoplatform.social.core.chromattic.entity.SpaceEntity;
 import org.exoplatform.social.core.chromattic.utils.ActivityIterator;
 import org.exoplatform.social.core.chromattic.utils.ActivityList;
 import org.exoplatform.social.core.identity.model.Identity;
 import org.exoplatform.social.core.identity.provider.OrganizationIdentityProvider;
 import org.exoplatform.social.core.identity.provider.SpaceIdentityProvider;
 import org.exoplatform.social.core.service.LinkProvider;
-import org.exoplatform.social.core.space.model.Space;
 import org.exoplatform.social.core.storage.ActivityStorageException;
 import org.exoplatform.social.core.storage.api.ActivityStorage;
 import org.exoplatform.social.core.storage.api.IdentityStorage;
 import org.exoplatform.social.core.storage.api.RelationshipStorage;
 import org.exoplatform.social.core.storage.api.SpaceStorage;
 import org.exoplatform.social.core.storage.exception.NodeNotFoundException;
+import org.exoplatform.social.core.storage.query.JCRProperties;
 import org.exoplatform.social.core.storage.query.Order;
+import org.exoplatform.social.core.storage.query.PropertyLiteralExpression;
+import org.exoplatform.social.core.storage.query.QueryTemplate;
 import org.exoplatform.social.core.storage.query.WhereExpression;
 
 import java.util.ArrayList;
@@ -54,9 +62,12 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
@@ -69,6 +80,17 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
   /** Logger */
   private static final Log LOG = ExoLogger.getLogger(ActivityStorageImpl.class);
 
+  /**
+   * The maximum number of activities loaded by a single query.
+   */
+  private static final int LOAD_CHUNK_SIZE = 50;
+
+  //
+  private static final RefsQueries ALL_REFS = new RefsQueries(null);
+  private static final RefsQueries CONNECTION_REFS = new RefsQueries(ActivityRef.connection);
+  private static final RefsQueries SPACE_REFS = new RefsQueries(ActivityRef.space);
+  private static final String ORDER_BY_POSTED_TIME = "ORDER BY " + ActivityRef.postedTime.getName() + " ";
+
   private ActivityStorage activityStorage;
 
   private final SortedSet<ActivityProcessor> activityProcessors;
@@ -121,6 +143,16 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
     activityEntity.setPostedTime(activityMillis);
     activityEntity.setPosterIdentity(posterIdentityEntity);
 
+    // Fan out to the already built feeds
+    for (IdentityEntity feedOwnerEntity : getFeedOwners(identityEntity, posterIdentityEntity)) {
+      ActivityFeedEntity feedEntity = feedOwnerEntity.getFeed();
+      if (feedEntity != null) {
+        ActivityRef ref = _addToFeed(feedEntity, activityEntity.getId(), activityMillis);
+        _markRef(feedOwnerEntity, ref, activityEntity, null);
+      }
+    }
+    updateFeedCounters(identityEntity, posterIdentityEntity, 1);
+
     // Fill activity model
     activity.setId(activityEntity.getId());
     activity.setStreamOwner(identityEntity.getRemoteId());
@@ -163,9 +195,47 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
 
     //
     fillStream(activityEntity, activity);
+
+    //
+    fillProcessed(activityEntity);
     
   }
 
+  /**
+   * Runs the write processors on the title and body of the entity and stores the result with it.
+   */
+  private void fillProcessed(ActivityEntity activityEntity) {
+
+    ExoSocialActivity processed = processOnWrite(activityEntity);
+
+    activityEntity.setProcessedTitle(processed.getTitle());
+    activityEntity.setProcessedBody(processed.getBody());
+
+  }
+
+  /**
+   * Runs the write processors on the title and body of the entity, the entity itself is left untouched.
+   */
+  private ExoSocialActivity processOnWrite(ActivityEntity activityEntity) {
+
+    ExoSocialActivity processed = new ExoSocialActivityImpl();
+    processed.setTitle(activityEntity.getTitle());
+    processed.setBody(activityEntity.getBody());
+
+    ActivityParameters params = activityEntity.getParams();
+    if (params != null) {
+      processed.setTemplateParams(new HashMap<String, String>(params.getParams()));
+    }
+    else {
+      processed.setTemplateParams(new HashMap<String, String>());
+    }
+
+    processActivity(processed, true);
+
+    return processed;
+
+  }
+
   private void fillActivityFromEntity(ActivityEntity activityEntity, ExoSocialActivity activity) {
 
     //
@@ -229,18 +299,373 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
 
   }
 
-    private List<Identity> getSpacesId(Identity ownerIdentity) {
+  private List<Identity> getSpacesId(Identity ownerIdentity) {
+
+    List<Identity> identitiesId = new ArrayList<Identity>();
+    for (String id : spaceStorage.getAccessibleSpacesIdentityIds(ownerIdentity.getRemoteId())) {
+      Identity identity = new Identity(id);
+      identity.setProviderId(SpaceIdentityProvider.NAME);
+      identitiesId.add(identity);
+    }
+
+    return identitiesId;
+
+  }
+
+  private List<Identity> getConnectionsId(Identity ownerIdentity) {
 
+    // Only the ids are needed by the queries, the connected users are not loaded
     List<Identity> identitiesId = new ArrayList<Identity>();
-    List<Space> spaces = spaceStorage.getAccessibleSpaces(ownerIdentity.getRemoteId());
-    for (Space space : spaces) {
-      identitiesId.add(identityStorage.findIdentity(SpaceIdentityProvider.NAME, space.getPrettyName()));
+    for (String id : relationshipStorage.getConnectionIds(ownerIdentity)) {
+      Identity identity = new Identity(id);
+      identity.setProviderId(OrganizationIdentityProvider.NAME);
+      identitiesId.add(identity);
     }
 
     return identitiesId;
 
   }
 
+  private List<Identity> getFeedIdentities(Identity ownerIdentity) {
+
+    List<Identity> identities = new ArrayList<Identity>();
+
+    identities.addAll(getConnectionsId(ownerIdentity));
+    identities.addAll(getSpacesId(ownerIdentity));
+    identities.add(ownerIdentity);
+
+    return identities;
+
+  }
+
+  /**
+   * Gets the identities whose feed contains the activities posted by posterEntity in the stream of ownerEntity.
+   * Must stay consistent with {@link #getActivitiesOfIdentitiesQuery(List, TimestampType)} applied on
+   * {@link #getFeedIdentities(Identity)}.
+   */
+  private List<IdentityEntity> getFeedOwners(IdentityEntity ownerEntity, IdentityEntity posterEntity) {
+
+    Set<String> identityIds = new HashSet<String>();
+    List<IdentityEntity> owners = new ArrayList<IdentityEntity>();
+
+    // Organization identities are matched on the poster
+    if (OrganizationIdentityProvider.NAME.equals(posterEntity.getProviderId())) {
+      addFeedOwners(owners, identityIds, posterEntity);
+    }
+
+    // Other identities are matched on the stream owner
+    if (!OrganizationIdentityProvider.NAME.equals(ownerEntity.getProviderId())) {
+      addFeedOwners(owners, identityIds, ownerEntity);
+    }
+
+    // Feeds of the space members
+    for (IdentityEntity identityEntity : getSpaceMembers(ownerEntity)) {
+      addFeedOwner(owners, identityIds, identityEntity);
+    }
+
+    return owners;
+
+  }
+
+  /**
+   * Gets the members and the managers of the space, empty when the identity is not a space.
+   */
+  private List<IdentityEntity> getSpaceMembers(IdentityEntity spaceIdentityEntity) {
+
+    Set<String> identityIds = new HashSet<String>();
+    List<IdentityEntity> members = new ArrayList<IdentityEntity>();
+
+    if (SpaceIdentityProvider.NAME.equals(spaceIdentityEntity.getProviderId())) {
+      SpaceEntity spaceEntity = getSpaceRoot().getSpaces().get(spaceIdentityEntity.getRemoteId());
+      ProviderEntity providerEntity = getProviderRoot().getProviders().get(OrganizationIdentityProvider.NAME);
+      if (spaceEntity != null && providerEntity != null) {
+        for (String[] userNames : new String[][]{spaceEntity.getMembersId(), spaceEntity.getManagerMembersId()}) {
+          if (userNames != null) {
+            for (String userName : userNames) {
+              addFeedOwner(members, identityIds, providerEntity.getIdentities().get(userName));
+            }
+          }
+        }
+      }
+    }
+
+    return members;
+
+  }
+
+  private void addFeedOwners(List<IdentityEntity> owners, Set<String> identityIds, IdentityEntity identityEntity) {
+
+    addFeedOwner(owners, identityIds, identityEntity);
+    addConnections(owners, identityIds, identityEntity);
+
+  }
+
+  private void addConnections(List<IdentityEntity> owners, Set<String> identityIds, IdentityEntity identityEntity) {
+
+    for (RelationshipEntity relationshipEntity : identityEntity.getRelationship().getRelationships().values()) {
+      addFeedOwner(owners, identityIds, relationshipEntity.getTo());
+    }
+
+  }
+
+  private void addFeedOwner(List<IdentityEntity> owners, Set<String> identityIds, IdentityEntity identityEntity) {
+
+    if (identityEntity != null && identityIds.add(identityEntity.getId())) {
+      owners.add(identityEntity);
+    }
+
+  }
+
+  /**
+   * Gets the built feeds which contain the activities posted by posterEntity in the stream of ownerEntity.
+   */
+  private List<ActivityFeedEntity> getFeedsOf(IdentityEntity ownerEntity, IdentityEntity posterEntity) {
+
+    List<ActivityFeedEntity> feeds = new ArrayList<ActivityFeedEntity>();
+    for (IdentityEntity identityEntity : getFeedOwners(ownerEntity, posterEntity)) {
+      ActivityFeedEntity feedEntity = identityEntity.getFeed();
+      if (feedEntity != null) {
+        feeds.add(feedEntity);
+      }
+    }
+
+    return feeds;
+
+  }
+
+  /**
+   * Gets the feed of the identity, null when it is not built yet. The feeds are only built on the write path.
+   */
+  private ActivityFeedEntity _findFeed(Identity ownerIdentity) {
+
+    try {
+      return _findById(IdentityEntity.class, ownerIdentity.getId()).getFeed();
+    }
+    catch (NodeNotFoundException e) {
+      throw new ActivityStorageException(ActivityStorageException.Type.FAILED_TO_GET_ACTIVITY, e.getMessage(), e);
+    }
+
+  }
+
+  /**
+   * Gets the refs of the feed in the time range, ordered by posted time.
+   */
+  private Query<ActivityRef> getRefsQuery(ActivityFeedEntity feedEntity, TimestampType type, Order order) {
+    return getRefsQuery(feedEntity, null, type, order);
+  }
+
+  /**
+   * Gets the refs of the feed of the given kind in the time range, ordered by posted time.
+   *
+   * @param kind {@link ActivityRef#connection} or {@link ActivityRef#space}, null for all the refs
+   */
+  private Query<ActivityRef> getRefsQuery(ActivityFeedEntity feedEntity, PropertyLiteralExpression<Boolean> kind,
+                                          TimestampType type, Order order) {
+
+    RefsQueries queries = getRefsQueries(kind);
+    String path = feedEntity.getPath() + StorageUtils.SLASH_STR + StorageUtils.PERCENT_STR;
+
+    String statement;
+    if (type == null) {
+      statement = queries.all.bind(path);
+    }
+    else {
+      switch (type) {
+        case NEWER:
+          statement = queries.newer.bind(path, type.get());
+          break;
+        case OLDER:
+          statement = queries.older.bind(path, type.get());
+          break;
+        default:
+          throw new AssertionError();
+      }
+    }
+
+    return getSession().createQueryBuilder(ActivityRef.class).where(statement + ORDER_BY_POSTED_TIME + order).get();
+
+  }
+
+  /**
+   * Whether the activities of the feed in the time range may have been trimmed from it.
+   */
+  private boolean isTrimmed(ActivityFeedEntity feedEntity, TimestampType type) {
+
+    if (feedEntity.getTrimmedTime() == null) {
+      return false;
+    }
+
+    // The newer activities are all kept as long as the base activity is
+    return type != TimestampType.NEWER || feedEntity.isTrimmed(type.get());
+
+  }
+
+  private List<ExoSocialActivity> getActivitiesOfFeed(Identity ownerIdentity, TimestampType type, long offset,
+                                                      long limit) {
+
+    ActivityFeedEntity feedEntity = _findFeed(ownerIdentity);
+
+    // Not built yet, queried from the connections and the spaces
+    if (feedEntity == null) {
+      return getActivitiesOfIdentities(getFeedIdentities(ownerIdentity), type, offset, limit);
+    }
+
+    //
+    QueryResult<ActivityRef> refs = getRefsQuery(feedEntity, type, Order.DESC).objects(offset, limit);
+    List<String> activityIds = new ArrayList<String>();
+    while (refs.hasNext()) {
+      activityIds.add(refs.next().getName());
+    }
+
+    // The end of the page may have been trimmed
+    if ((limit == 0 || activityIds.size() < limit) && isTrimmed(feedEntity, type)) {
+      return getActivitiesOfIdentities(getFeedIdentities(ownerIdentity), type, offset, limit);
+    }
+
+    // The refs of the activities removed with their stream are skipped
+    return getStorage().getActivities(activityIds);
+
+  }
+
+  private int getNumberOfActivitiesOfFeed(Identity ownerIdentity, TimestampType type) {
+
+    ActivityFeedEntity feedEntity = _findFeed(ownerIdentity);
+
+    // Not built yet, queried from the connections and the spaces
+    if (feedEntity == null) {
+      return getActivitiesOfIdentitiesQuery(getFeedIdentities(ownerIdentity), type).objects().size();
+    }
+
+    //
+    return getNumberOfRefs(ownerIdentity, feedEntity, null, feedEntity.getNumber(), type);
+
+  }
+
+  /**
+   * Counts the activities of the given kind of a built feed from its counters, and its refs in the time range, at
+   * most {@link ActivityFeedEntity#CAPACITY} of them. Only the time ranges which reach the trimmed time of the feed,
+   * whose activities may be missing from the refs, are counted with a query over the identities of the kind.
+   *
+   * @param kind {@link ActivityRef#connection} or {@link ActivityRef#space}, null for all the refs
+   * @param number the number of activities of the kind, the trimmed ones included
+   */
+  private int getNumberOfRefs(Identity ownerIdentity, ActivityFeedEntity feedEntity,
+                              PropertyLiteralExpression<Boolean> kind, int number, TimestampType type) {
+
+    if (type == null) {
+      return number;
+    }
+
+    //
+    Long postedTime = type.get();
+    if (feedEntity.isTrimmed(postedTime)) {
+      List<Identity> identities;
+      if (kind == ActivityRef.connection) {
+        identities = getConnectionsId(ownerIdentity);
+      }
+      else if (kind == ActivityRef.space) {
+        identities = getSpacesId(ownerIdentity);
+      }
+      else {
+        identities = getFeedIdentities(ownerIdentity);
+      }
+      if (identities.size() == 0) {
+        return 0;
+      }
+      return getActivitiesOfIdentitiesQuery(identities, type).objects().size();
+    }
+
+    // All the activities posted after the trimmed time have a ref
+    if (type == TimestampType.NEWER) {
+      return getRefsQuery(feedEntity, kind, type, Order.DESC).objects().size();
+    }
+    return number - getRefsFromQuery(feedEntity, kind, postedTime).objects().size();
+
+  }
+
+  /**
+   * Gets the refs of the feed of the given kind posted at the given time or after.
+   */
+  private Query<ActivityRef> getRefsFromQuery(ActivityFeedEntity feedEntity, PropertyLiteralExpression<Boolean> kind,
+                                              Long postedTime) {
+
+    String path = feedEntity.getPath() + StorageUtils.SLASH_STR + StorageUtils.PERCENT_STR;
+    String statement = getRefsQueries(kind).from.bind(path, postedTime);
+
+    return getSession().createQueryBuilder(ActivityRef.class).where(statement).get();
+
+  }
+
+  /**
+   * Updates the numbers of own activities, of activities of connections and of spaces of the built feeds, for an
+   * activity posted by posterEntity in the stream of ownerEntity. Must stay consistent with
+   * {@link #getActivitiesOfIdentitiesQuery(List, TimestampType)} applied on the connections and on the spaces.
+   */
+  private void updateFeedCounters(IdentityEntity ownerEntity, IdentityEntity posterEntity, int delta) {
+
+    // Organization identities are matched on the poster, the other ones on the stream owner
+    Set<String> identityIds = new HashSet<String>();
+    List<IdentityEntity> connections = new ArrayList<IdentityEntity>();
+    if (OrganizationIdentityProvider.NAME.equals(posterEntity.getProviderId())) {
+      updateOwnNumber(posterEntity, delta);
+      addConnections(connections, identityIds, posterEntity);
+    }
+    if (!OrganizationIdentityProvider.NAME.equals(ownerEntity.getProviderId())) {
+      updateOwnNumber(ownerEntity, delta);
+      addConnections(connections, identityIds, ownerEntity);
+    }
+    for (IdentityEntity identityEntity : connections) {
+      ActivityFeedEntity feedEntity = identityEntity.getFeed();
+      if (feedEntity != null) {
+        feedEntity.setConnectionsNumber(feedEntity.getConnectionsNumber() + delta);
+      }
+    }
+
+    //
+    for (IdentityEntity identityEntity : getSpaceMembers(ownerEntity)) {
+      ActivityFeedEntity feedEntity = identityEntity.getFeed();
+      if (feedEntity != null) {
+        feedEntity.setSpacesNumber(feedEntity.getSpacesNumber() + delta);
+      }
+    }
+
+  }
+
+  private void updateOwnNumber(IdentityEntity identityEntity, int delta) {
+
+    // Counted on demand when the feed was built before
+    ActivityFeedEntity feedEntity = identityEntity.getFeed();
+    if (feedEntity != null && feedEntity.getOwnNumber() != null) {
+      feedEntity.setOwnNumber(feedEntity.getOwnNumber() + delta);
+    }
+
+  }
+
+  private ExoSocialActivity buildActivity(ActivityEntity activityEntity) {
+
+    ExoSocialActivity activity = new ExoSocialActivityImpl();
+
+    //
+    activity.setId(activityEntity.getId());
+    fillActivityFromEntity(activityEntity, activity);
+
+    // Activities saved before the write processing was stored are processed in memory, reading doesn't save
+    if (activityEntity.getProcessedTitle() == null && activityEntity.getTitle() != null) {
+      ExoSocialActivity processed = processOnWrite(activityEntity);
+      activity.setTitle(processed.getTitle());
+      activity.setBody(processed.getBody());
+    }
+    else {
+      activity.setTitle(activityEntity.getProcessedTitle());
+      activity.setBody(activityEntity.getProcessedBody());
+    }
+    processActivity(activity, false);
+
+    //
+    return activity;
+
+  }
+
   private static Comparator<ActivityProcessor> processorComparator() {
     return new Comparator<ActivityProcessor>() {
 
@@ -253,11 +678,20 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
     };
   }
 
-  private void processActivity(ExoSocialActivity existingActivity) {
+  /**
+   * Runs either the write processors, when the activity is saved, or the other ones, when it is loaded.
+   * Each phase runs its processors in the order of their priorities, the read processors working on the
+   * stored result of the write ones.
+   */
+  private void processActivity(ExoSocialActivity existingActivity, boolean onWrite) {
     Iterator<ActivityProcessor> it = activityProcessors.iterator();
     while (it.hasNext()) {
+      ActivityProcessor processor = it.next();
+      if (processor instanceof ActivityWriteProcessor != onWrite) {
+        continue;
+      }
       try {
-        it.next().processActivity(existingActivity);
+        processor.processActivity(existingActivity);
       } catch (Exception e) {
         LOG.warn("activity processing failed " + e.getMessage());
       }
@@ -281,21 +715,94 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
 
       //
       ActivityEntity activityEntity = _findById(ActivityEntity.class, activityId);
-      ExoSocialActivity activity = new ExoSocialActivityImpl();
+      return buildActivity(activityEntity);
 
-      //
-      activity.setId(activityEntity.getId());
-      fillActivityFromEntity(activityEntity, activity);
+    }
+    catch (NodeNotFoundException e) {
+      throw new ActivityStorageException(ActivityStorageException.Type.FAILED_TO_GET_ACTIVITY, e.getMessage(), e);
+    }
+  }
 
-      processActivity(activity);
+  /**
+   * {@inheritDoc}
+   */
+  public List<ExoSocialActivity> getActivities(Collection<String> activityIds) throws ActivityStorageException {
 
-      //
-      return activity;
+    List<ExoSocialActivity> activities = new ArrayList<ExoSocialActivity>(activityIds.size());
+    if (activityIds.isEmpty()) {
+      return activities;
+    }
 
+    // Loaded by chunks of ids, each one with a single query
+    Map<String, ActivityEntity> entities = new HashMap<String, ActivityEntity>();
+    List<String> chunk = new ArrayList<String>(LOAD_CHUNK_SIZE);
+    for (String activityId : new LinkedHashSet<String>(activityIds)) {
+      chunk.add(activityId);
+      if (chunk.size() == LOAD_CHUNK_SIZE) {
+        loadActivities(chunk, entities);
+        chunk.clear();
+      }
     }
-    catch (NodeNotFoundException e) {
-      throw new ActivityStorageException(ActivityStorageException.Type.FAILED_TO_GET_ACTIVITY, e.getMessage(), e);
+    loadActivities(chunk, entities);
+
+    // Ordered like the ids, the ones which don't exist anymore are skipped
+    for (String activityId : activityIds) {
+      ActivityEntity activityEntity = entities.get(activityId);
+      if (activityEntity != null) {
+        activities.add(buildActivity(activityEntity));
+      }
+      else {
+        LOG.debug(String.format("Activity %s not found", activityId));
+      }
     }
+
+    return activities;
+
+  }
+
+  /**
+   * Loads the activities of the ids with a single query. The activities which are not saved yet aren't returned by
+   * the query, they are looked up by id.
+   */
+  private void loadActivities(List<String> activityIds, Map<String, ActivityEntity> entities) {
+
+    if (activityIds.isEmpty()) {
+      return;
+    }
+
+    //
+    QueryBuilder<ActivityEntity> builder = getSession().createQueryBuilder(ActivityEntity.class);
+    WhereExpression whereExpression = new WhereExpression();
+
+    boolean first = true;
+    for (String activityId : activityIds) {
+      if (first) {
+        first = false;
+      }
+      else {
+        whereExpression.or();
+      }
+      whereExpression.equals(JCRProperties.id, activityId);
+    }
+
+    QueryResult<ActivityEntity> results = builder.where(whereExpression.toString()).get().objects();
+    while (results.hasNext()) {
+      ActivityEntity current = results.next();
+      entities.put(current.getId(), current);
+    }
+
+    //
+    for (String activityId : activityIds) {
+      if (!entities.containsKey(activityId)) {
+        try {
+          entities.put(activityId, _findById(ActivityEntity.class, activityId));
+        }
+        catch (NodeNotFoundException e) {
+          // Doesn't exist anymore
+        }
+      }
+    }
+
   }
 
   /**
@@ -313,7 +820,7 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
   public List<ExoSocialActivity> getUserActivities(Identity owner, long offset, long limit)
       throws ActivityStorageException {
 
-    List<ExoSocialActivity> activities = new ArrayList<ExoSocialActivity>();
+    List<String> activityIds = new ArrayList<String>();
     int nb = 0;
 
     try {
@@ -329,10 +836,10 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
         ActivityEntity current = it.next();
 
         //
-        activities.add(getStorage().getActivity(current.getId()));
+        activityIds.add(current.getId());
 
         if (++nb == limit) {
-          return activities;
+          break;
         }
 
       }
@@ -342,7 +849,7 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
       throw new ActivityStorageException(ActivityStorageException.Type.FAILED_TO_GET_ACTIVITY, e.getMessage());
     }
 
-    return activities;
+    return getStorage().getActivities(activityIds);
   }
   
   /**
@@ -366,6 +873,7 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
       commentEntity.setPosterIdentity(_findById(IdentityEntity.class, comment.getUserId()));
       commentEntity.setComment(Boolean.TRUE);
       commentEntity.setPostedTime(commentMillis);
+      fillProcessed(commentEntity);
       comment.setId(commentEntity.getId());
 
       //
@@ -477,6 +985,22 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
       activity.setUserId(activityEntity.getIdentity().getId());
       activity.setId(activityEntity.getId());
 
+      //
+      if (dayEntity != null) { // False when activity is a comment
+        for (ActivityFeedEntity feedEntity : getFeedsOf(activityEntity.getIdentity(), activityEntity.getPosterIdentity())) {
+          ActivityRef ref = feedEntity.getRefs().get(activityId);
+          if (ref != null) {
+            getSession().remove(ref);
+            feedEntity.descRef();
+            feedEntity.desc();
+          }
+          else if (feedEntity.isTrimmed(activityEntity.getPostedTime())) {
+            feedEntity.desc();
+          }
+        }
+        updateFeedCounters(activityEntity.getIdentity(), activityEntity.getPosterIdentity(), -1);
+      }
+
       //
       _removeById(ActivityEntity.class, activityId);
 
@@ -534,13 +1058,13 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
 
     QueryResult<ActivityEntity> results = getActivitiesOfIdentitiesQuery(connectionList, type).objects(offset, limit);
 
-    List<ExoSocialActivity> activities =  new ArrayList<ExoSocialActivity>();
+    List<String> activityIds = new ArrayList<String>();
 
     while(results.hasNext()) {
-      activities.add(getStorage().getActivity(results.next().getId()));
+      activityIds.add(results.next().getId());
     }
 
-    return activities;
+    return getStorage().getActivities(activityIds);
   }
 
   /**
@@ -655,7 +1179,7 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
   public List<ExoSocialActivity> getNewerOnUserActivities(Identity ownerIdentity, ExoSocialActivity baseActivity,
                                                           int limit) {
 
-    List<ExoSocialActivity> activities = new ArrayList<ExoSocialActivity>();
+    List<String> activityIds = new ArrayList<String>();
     int nb = 0;
 
     try {
@@ -669,20 +1193,18 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
 
       for (ActivityEntity current : new ActivityList(identity.getActivityList())) {
 
-        ExoSocialActivity a = getStorage().getActivity(current.getId());
-
-        if (targetTimestamp >= a.getPostedTime() || nb == limit) {
-          return activities;
+        if (targetTimestamp >= current.getPostedTime() || nb == limit) {
+          break;
         }
         else {
-          activities.add(a);
+          activityIds.add(current.getId());
         }
 
         //
         ++nb;
       }
 
-      return activities;
+      return getStorage().getActivities(activityIds);
 
     }
     catch (NodeNotFoundException e) {
@@ -724,7 +1246,7 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
   public List<ExoSocialActivity> getOlderOnUserActivities(Identity ownerIdentity, ExoSocialActivity baseActivity,
                                                           int limit) {
 
-    List<ExoSocialActivity> activities = new ArrayList<ExoSocialActivity>();
+    List<String> activityIds = new ArrayList<String>();
     int nb = 0;
 
     //
@@ -740,11 +1262,11 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
 
       //
       while(it.hasNext()) {
-        activities.add(getStorage().getActivity(it.next().getId()));
+        activityIds.add(it.next().getId());
         ++nb;
 
         if (nb >= limit) {
-          return activities;
+          break;
         }
       }
 
@@ -755,7 +1277,7 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
           e.getMessage());
     }
 
-    return activities;
+    return getStorage().getActivities(activityIds);
   }
 
   /**
@@ -763,15 +1285,8 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
    */
   public List<ExoSocialActivity> getActivityFeed(Identity ownerIdentity, int offset, int limit) {
 
-    //
-    List<Identity> identities = new ArrayList<Identity>();
+    return getActivitiesOfFeed(ownerIdentity, null, offset, limit);
 
-    identities.addAll(relationshipStorage.getConnections(ownerIdentity));
-    identities.addAll(getSpacesId(ownerIdentity));
-    identities.add(ownerIdentity);
-
-    //
-    return getActivitiesOfIdentities(identities, offset, limit);
   }
 
   /**
@@ -779,15 +1294,7 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
    */
   public int getNumberOfActivitesOnActivityFeed(Identity ownerIdentity) {
 
-    //
-    List<Identity> identities = new ArrayList<Identity>();
-
-    identities.addAll(relationshipStorage.getConnections(ownerIdentity));
-    identities.addAll(getSpacesId(ownerIdentity));
-    identities.add(ownerIdentity);
-
-    //
-    return getActivitiesOfIdentitiesQuery(identities, null).objects().size();
+    return getNumberOfActivitiesOfFeed(ownerIdentity, null);
 
   }
 
@@ -796,16 +1303,7 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
    */
   public int getNumberOfNewerOnActivityFeed(Identity ownerIdentity, ExoSocialActivity baseActivity) {
 
-    //
-    List<Identity> identities = new ArrayList<Identity>();
-
-    identities.addAll(relationshipStorage.getConnections(ownerIdentity));
-    identities.addAll(getSpacesId(ownerIdentity));
-    identities.add(ownerIdentity);
-
-    //
-    return getActivitiesOfIdentitiesQuery(identities, TimestampType.NEWER.from(baseActivity.getPostedTime()))
-        .objects().size();
+    return getNumberOfActivitiesOfFeed(ownerIdentity, TimestampType.NEWER.from(baseActivity.getPostedTime()));
 
   }
 
@@ -814,15 +1312,8 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
    */
   public List<ExoSocialActivity> getNewerOnActivityFeed(Identity ownerIdentity, ExoSocialActivity baseActivity,
                                                          int limit) {
-    //
-    List<Identity> identities = new ArrayList<Identity>();
 
-    identities.addAll(relationshipStorage.getConnections(ownerIdentity));
-    identities.addAll(getSpacesId(ownerIdentity));
-    identities.add(ownerIdentity);
-
-    //
-    return getActivitiesOfIdentities(identities, TimestampType.NEWER.from(baseActivity.getPostedTime()), 0, limit);
+    return getActivitiesOfFeed(ownerIdentity, TimestampType.NEWER.from(baseActivity.getPostedTime()), 0, limit);
 
   }
 
@@ -831,16 +1322,7 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
    */
   public int getNumberOfOlderOnActivityFeed(Identity ownerIdentity, ExoSocialActivity baseActivity) {
 
-    //
-    List<Identity> identities = new ArrayList<Identity>();
-
-    identities.addAll(relationshipStorage.getConnections(ownerIdentity));
-    identities.addAll(getSpacesId(ownerIdentity));
-    identities.add(ownerIdentity);
-
-    //
-    return getActivitiesOfIdentitiesQuery(identities, TimestampType.OLDER.from(baseActivity.getPostedTime()))
-        .objects().size();
+    return getNumberOfActivitiesOfFeed(ownerIdentity, TimestampType.OLDER.from(baseActivity.getPostedTime()));
 
   }
 
@@ -849,15 +1331,9 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
    */
   public List<ExoSocialActivity> getOlderOnActivityFeed(Identity ownerIdentity, ExoSocialActivity baseActivity,
                                                          int limit) {
-    //
-    List<Identity> identities = new ArrayList<Identity>();
 
-    identities.addAll(relationshipStorage.getConnections(ownerIdentity));
-    identities.addAll(getSpacesId(ownerIdentity));
-    identities.add(ownerIdentity);
+    return getActivitiesOfFeed(ownerIdentity, TimestampType.OLDER.from(baseActivity.getPostedTime()), 0, limit);
 
-    //
-    return getActivitiesOfIdentities(identities, TimestampType.OLDER.from(baseActivity.getPostedTime()), 0, limit);
   }
 
   /**
@@ -865,7 +1341,7 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
    */
   public List<ExoSocialActivity> getActivitiesOfConnections(Identity ownerIdentity, int offset, int limit) {
 
-    List<Identity> connections = relationshipStorage.getConnections(ownerIdentity);
+    List<Identity> connections = getConnectionsId(ownerIdentity);
     return getActivitiesOfIdentities(connections, offset, limit);
 
   }
@@ -875,37 +1351,24 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
    */
   public int getNumberOfActivitiesOfConnections(Identity ownerIdentity) {
 
-    //
-
-    List<Identity> connectionList = relationshipStorage.getConnections(ownerIdentity);
-
-    if (connectionList.size() == 0) {
-      return 0;
-    }
-
-    QueryBuilder<ActivityEntity> builder = getSession().createQueryBuilder(ActivityEntity.class);
-    WhereExpression whereExpression = new WhereExpression();
-
-    boolean first = true;
+    return countActivitiesOfConnections(ownerIdentity, null);
 
-    for (Identity currentIdentity : connectionList) {
+  }
 
-      if (first) {
-        first = false;
-      }
-      else {
-        whereExpression.or();
-      }
+  private int countActivitiesOfConnections(Identity ownerIdentity, TimestampType type) {
 
-      whereExpression.equals(ActivityEntity.identity, currentIdentity.getId());
+    ActivityFeedEntity feedEntity = _findFeed(ownerIdentity);
+    if (feedEntity != null) {
+      return getNumberOfRefs(ownerIdentity, feedEntity, ActivityRef.connection, feedEntity.getConnectionsNumber(),
+          type);
     }
 
-    whereExpression.and().equals(ActivityEntity.isComment, Boolean.FALSE);
-    whereExpression.orderBy(ActivityEntity.postedTime, Order.DESC);
-
-    QueryResult<ActivityEntity> results = builder.where(whereExpression.toString()).get().objects();
-
-    return results.size();
+    // Not built yet, queried from the connections
+    List<Identity> connectionList = getConnectionsId(ownerIdentity);
+    if (connectionList.size() == 0) {
+      return 0;
+    }
+    return getActivitiesOfIdentitiesQuery(connectionList, type).objects().size();
 
   }
 
@@ -924,17 +1387,7 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
    */
   public int getNumberOfNewerOnActivitiesOfConnections(Identity ownerIdentity, ExoSocialActivity baseActivity) {
 
-    //
-    List<Identity> connectionList = relationshipStorage.getConnections(ownerIdentity);
-
-    //
-    if (connectionList.size() == 0) {
-      return 0;
-    }
-
-    //
-    return getActivitiesOfIdentitiesQuery(connectionList, TimestampType.NEWER.from(baseActivity.getPostedTime()))
-        .objects().size();
+    return countActivitiesOfConnections(ownerIdentity, TimestampType.NEWER.from(baseActivity.getPostedTime()));
     
   }
 
@@ -945,7 +1398,7 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
       Identity ownerIdentity, ExoSocialActivity baseActivity, long limit) {
 
     //
-    List<Identity> connectionList = relationshipStorage.getConnections(ownerIdentity);
+    List<Identity> connectionList = getConnectionsId(ownerIdentity);
 
     //
     return getActivitiesOfIdentities(connectionList, TimestampType.NEWER.from(baseActivity.getPostedTime()), 0, limit);
@@ -957,17 +1410,7 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
    */
   public int getNumberOfOlderOnActivitiesOfConnections(Identity ownerIdentity, ExoSocialActivity baseActivity) {
 
-    //
-    List<Identity> connectionList = relationshipStorage.getConnections(ownerIdentity);
-
-    //
-    if (connectionList.size() == 0) {
-      return 0;
-    }
-
-    //
-    return getActivitiesOfIdentitiesQuery(connectionList, TimestampType.OLDER.from(baseActivity.getPostedTime()))
-        .objects().size();
+    return countActivitiesOfConnections(ownerIdentity, TimestampType.OLDER.from(baseActivity.getPostedTime()));
     
   }
 
@@ -978,7 +1421,7 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
                                                                   ExoSocialActivity baseActivity, int limit) {
 
     //
-    List<Identity> connectionList = relationshipStorage.getConnections(ownerIdentity);
+    List<Identity> connectionList = getConnectionsId(ownerIdentity);
 
     //
     return getActivitiesOfIdentities(connectionList, TimestampType.OLDER.from(baseActivity.getPostedTime()), 0, limit);
@@ -1003,16 +1446,23 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
    */
   public int getNumberOfUserSpacesActivities(Identity ownerIdentity) {
 
-    //
-    List<Identity> spaceList = getSpacesId(ownerIdentity);
+    return countUserSpacesActivities(ownerIdentity, null);
 
-    //
+  }
+
+  private int countUserSpacesActivities(Identity ownerIdentity, TimestampType type) {
+
+    ActivityFeedEntity feedEntity = _findFeed(ownerIdentity);
+    if (feedEntity != null) {
+      return getNumberOfRefs(ownerIdentity, feedEntity, ActivityRef.space, feedEntity.getSpacesNumber(), type);
+    }
+
+    // Not built yet, queried from the spaces
+    List<Identity> spaceList = getSpacesId(ownerIdentity);
     if (spaceList.size() == 0) {
       return 0;
     }
-
-    //
-    return getActivitiesOfIdentitiesQuery(spaceList, null).objects().size();
+    return getActivitiesOfIdentitiesQuery(spaceList, type).objects().size();
 
   }
 
@@ -1021,17 +1471,7 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
    */
   public int getNumberOfNewerOnUserSpacesActivities(Identity ownerIdentity, ExoSocialActivity baseActivity) {
 
-    //
-    List<Identity> spaceList = getSpacesId(ownerIdentity);
-
-    //
-    if (spaceList.size() == 0) {
-      return 0;
-    }
-
-    //
-    return getActivitiesOfIdentitiesQuery(spaceList, TimestampType.NEWER.from(baseActivity.getPostedTime()))
-        .objects().size();
+    return countUserSpacesActivities(ownerIdentity, TimestampType.NEWER.from(baseActivity.getPostedTime()));
 
   }
 
@@ -1054,17 +1494,7 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
    */
   public int getNumberOfOlderOnUserSpacesActivities(Identity ownerIdentity, ExoSocialActivity baseActivity) {
 
-    //
-    List<Identity> spaceList = getSpacesId(ownerIdentity);
-
-    //
-    if (spaceList.size() == 0) {
-      return 0;
-    }
-
-    //
-    return getActivitiesOfIdentitiesQuery(spaceList, TimestampType.OLDER.from(baseActivity.getPostedTime()))
-        .objects().size();
+    return countUserSpacesActivities(ownerIdentity, TimestampType.OLDER.from(baseActivity.getPostedTime()));
 
   }
 
@@ -1087,19 +1517,12 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
    */
   public List<ExoSocialActivity> getComments(ExoSocialActivity existingActivity, int offset, int limit) {
 
-    List<ExoSocialActivity> activities = new ArrayList<ExoSocialActivity>();
-
     //
     List<String> commentIds = Arrays.asList(getStorage().getActivity(existingActivity.getId()).getReplyToId());
 
     //
     limit = (limit > commentIds.size() ? commentIds.size() : limit);
-    for(String commentId : commentIds.subList(offset, limit)) {
-      activities.add(getStorage().getActivity(commentId));
-    }
-
-    //
-    return activities;
+    return getStorage().getActivities(commentIds.subList(offset, limit));
   }
 
   /**
@@ -1125,8 +1548,6 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
   public List<ExoSocialActivity> getNewerComments(ExoSocialActivity existingActivity, ExoSocialActivity baseComment,
                                            int limit) {
 
-    List<ExoSocialActivity> activities = new ArrayList<ExoSocialActivity>();
-
     //
     List<String> commentIds = Arrays.asList(getStorage().getActivity(existingActivity.getId()).getReplyToId());
     int baseIndex = commentIds.indexOf(baseComment.getId());
@@ -1135,12 +1556,7 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
     }
 
     //
-    for(String commentId : commentIds.subList(0, baseIndex)) {
-      activities.add(getStorage().getActivity(commentId));
-    }
-
-    //
-    return activities;
+    return getStorage().getActivities(commentIds.subList(0, baseIndex));
 
   }
 
@@ -1162,19 +1578,12 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
   public List<ExoSocialActivity> getOlderComments(ExoSocialActivity existingActivity, ExoSocialActivity baseComment,
                                            int limit) {
 
-    List<ExoSocialActivity> activities = new ArrayList<ExoSocialActivity>();
-
     //
     List<String> commentIds = Arrays.asList(getStorage().getActivity(existingActivity.getId()).getReplyToId());
     int baseIndex = commentIds.indexOf(baseComment.getId());
 
     //
-    for(String commentId : commentIds.subList(baseIndex + 1, limit)) {
-      activities.add(getStorage().getActivity(commentId));
-    }
-
-    //
-    return activities;
+    return getStorage().getActivities(commentIds.subList(baseIndex + 1, limit));
 
   }
 
@@ -1208,6 +1617,69 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
 
   }
 
+  /**
+   * Rebuilds the feeds of all the identities, which corrects their counters and drops the refs to the activities
+   * removed with their stream. The identities are processed and saved by chunks, it is intended to be run from a
+   * scheduled job.
+   *
+   * @param chunkSize the number of feeds saved at once
+   * @return the number of rebuilt feeds
+   */
+  public int repairFeeds(int chunkSize) {
+
+    int repaired = 0;
+
+    for (ProviderEntity providerEntity : getProviderRoot().getProviders().values()) {
+      for (IdentityEntity identityEntity : providerEntity.getIdentities().values()) {
+        if (identityEntity.getFeed() != null) {
+          _buildFeed(identityEntity);
+          if (++repaired % chunkSize == 0) {
+            getSession().save();
+          }
+        }
+      }
+    }
+
+    getSession().save();
+
+    //
+    LOG.info(String.format("%s activity feeds repaired", repaired));
+
+    return repaired;
+
+  }
+
+  /**
+   * Gets the ids of the identities whose activity feed contains the activity, whether the feed is built or not.
+   *
+   * @param activityId the activity id
+   * @return the identity ids, empty for a comment
+   * @throws ActivityStorageException if the activity doesn't exist
+   */
+  public Set<String> getFeedOwnerIds(String activityId) throws ActivityStorageException {
+
+    try {
+
+      ActivityEntity activityEntity = _findById(ActivityEntity.class, activityId);
+      Set<String> identityIds = new HashSet<String>();
+
+      //
+      if (activityEntity.getDay() != null) { // False when activity is a comment
+        for (IdentityEntity identityEntity : getFeedOwners(activityEntity.getIdentity(), activityEntity.getPosterIdentity())) {
+          identityIds.add(identityEntity.getId());
+        }
+      }
+
+      //
+      return identityIds;
+
+    }
+    catch (NodeNotFoundException e) {
+      throw new ActivityStorageException(ActivityStorageException.Type.FAILED_TO_GET_ACTIVITY, e.getMessage(), e);
+    }
+
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -1215,4 +1687,40 @@ public class ActivityStorageImpl extends AbstractStorage implements ActivityStor
     this.activityStorage = storage;
   }
 
+  private static RefsQueries getRefsQueries(PropertyLiteralExpression<Boolean> kind) {
+    if (kind == ActivityRef.connection) {
+      return CONNECTION_REFS;
+    }
+    if (kind == ActivityRef.space) {
+      return SPACE_REFS;
+    }
+    return ALL_REFS;
+  }
+
+  /**
+   * The queries of the refs of a feed, restricted to a kind of refs or not. The feed path and the posted time are
+   * bound at each call.
+   */
+  private static class RefsQueries {
+
+    private final QueryTemplate all;
+
+    private final QueryTemplate newer;
+
+    private final QueryTemplate older;
+
+    private final QueryTemplate from;
+
+    private RefsQueries(PropertyLiteralExpression<Boolean> kind) {
+      String refs = JCRProperties.path.getName() + " LIKE ? "
+          + (kind != null ? "AND " + kind.getName() + " = 'true' " : "");
+      String postedTime = "AND " + ActivityRef.postedTime.getName();
+      this.all = new QueryTemplate(refs);
+      this.newer = new QueryTemplate(refs + postedTime + " > ? ");
+      this.older = new QueryTemplate(refs + postedTime + " < ? ");
+      this.from = new QueryTemplate(refs + postedTime + " >= ? ");
+    }
+
+  }
+
 }
\ No newline at end of file
@@ -22,12 +22,16 @@ import org.chromattic.api.query.QueryBuilder;
 import org.chromattic.api.query.QueryResult;
 import org.chromattic.ext.ntdef.NTFile;
 import org.chromattic.ext.ntdef.Resource;
+import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.container.xml.ValueParam;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
+import org.exoplatform.social.core.chromattic.entity.ActivityFeedEntity;
 import org.exoplatform.social.core.chromattic.entity.IdentityEntity;
 import org.exoplatform.social.core.chromattic.entity.ProfileEntity;
 import org.exoplatform.social.core.chromattic.entity.ProfileXpEntity;
 import org.exoplatform.social.core.chromattic.entity.ProviderEntity;
+import org.exoplatform.social.core.chromattic.entity.RelationshipListEntity;
 import org.exoplatform.social.core.identity.model.Identity;
 import org.exoplatform.social.core.identity.model.Profile;
 import org.exoplatform.social.core.model.AvatarAttachment;
@@ -40,6 +44,7 @@ import org.exoplatform.social.core.storage.exception.NodeNotFoundException;
 import org.exoplatform.social.core.storage.query.JCRProperties;
 import org.exoplatform.social.core.storage.query.Order;
 import org.exoplatform.social.core.storage.query.QueryFunction;
+import org.exoplatform.social.core.storage.query.QueryTemplate;
 import org.exoplatform.social.core.storage.query.WhereExpression;
 
 import javax.jcr.PropertyType;
@@ -49,9 +54,12 @@ import javax.jcr.nodetype.NodeType;
 import javax.jcr.nodetype.NodeTypeManager;
 import javax.jcr.nodetype.PropertyDefinition;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * IdentityStorage implementation.
@@ -64,8 +72,32 @@ public class IdentityStorageImpl extends AbstractStorage implements IdentityStor
   /** Logger */
   private static final Log LOG = ExoLogger.getLogger(IdentityStorageImpl.class);
 
+  /** Enables the in memory profile search index */
+  public static final String PROFILE_SEARCH_INDEX_PARAM = "profile-search-index";
+
+  /** The maximum number of profiles loaded by a single query */
+  private static final int LOAD_CHUNK_SIZE = 50;
+
+  //
+  private static final QueryTemplate PROFILES_OF_PROVIDER = new QueryTemplate(
+      JCRProperties.path.getName() + " LIKE ? ");
+  private static final QueryTemplate PROFILES_BY_FIRST_CHARACTER = new QueryTemplate(
+      JCRProperties.path.getName() + " LIKE ? AND " + QueryFunction.LOWER + "("
+      + ProfileEntity.firstName.getName() + ") LIKE ? ");
+
   private IdentityStorage identityStorage;
 
+  private ProfileSearchIndex searchIndex;
+
+  private final Object searchIndexLoading = new Object();
+
+  public IdentityStorageImpl(final InitParams params) {
+    ValueParam param = (params != null ? params.getValueParam(PROFILE_SEARCH_INDEX_PARAM) : null);
+    if (param != null && Boolean.parseBoolean(param.getValue())) {
+      searchIndex = new ProfileSearchIndex();
+    }
+  }
+
   static enum PropNs {
 
     VOID("void"),
@@ -150,6 +182,87 @@ public class IdentityStorageImpl extends AbstractStorage implements IdentityStor
     return (identityStorage != null ? identityStorage : this);
   }
 
+  private String getVoidProperty(ProfileEntity profileEntity, String key) {
+    List<String> values = profileEntity.getProperty(PropNs.VOID.nameOf(key));
+    return (values != null && values.size() > 0 ? values.get(0) : null);
+  }
+
+  private void indexProfile(ProfileEntity profileEntity) {
+    IdentityEntity identityEntity = profileEntity.getIdentity();
+    searchIndex.put(
+        identityEntity.getProviderId(),
+        identityEntity.getId(),
+        getVoidProperty(profileEntity, Profile.FULL_NAME),
+        getVoidProperty(profileEntity, Profile.FIRST_NAME),
+        getVoidProperty(profileEntity, Profile.POSITION),
+        getVoidProperty(profileEntity, Profile.GENDER)
+    );
+  }
+
+  private void loadSearchIndex(String providerId) {
+
+    if (searchIndex.isLoaded(providerId)) {
+      return;
+    }
+
+    // Only one thread loads the index, the other searches wait for it
+    synchronized (searchIndexLoading) {
+
+      if (searchIndex.isLoaded(providerId)) {
+        return;
+      }
+
+      QueryBuilder<ProfileEntity> builder = getSession().createQueryBuilder(ProfileEntity.class);
+      String statement = PROFILES_OF_PROVIDER.bind(getProfilesPath(providerId));
+
+      searchIndex.startLoading();
+      try {
+        QueryResult<ProfileEntity> results = builder.where(statement).get().objects();
+        while (results.hasNext()) {
+          ProfileEntity profileEntity = results.next();
+          IdentityEntity identityEntity = profileEntity.getIdentity();
+          searchIndex.load(
+              identityEntity.getProviderId(),
+              identityEntity.getId(),
+              getVoidProperty(profileEntity, Profile.FULL_NAME),
+              getVoidProperty(profileEntity, Profile.FIRST_NAME),
+              getVoidProperty(profileEntity, Profile.POSITION),
+              getVoidProperty(profileEntity, Profile.GENDER)
+          );
+        }
+        searchIndex.setLoaded(providerId);
+      }
+      finally {
+        searchIndex.stopLoading();
+      }
+
+    }
+
+    //
+    LOG.debug(String.format("Profile search index loaded for provider %s", providerId));
+  }
+
+  private String getProfilesPath(String providerId) {
+    return getProviderRoot().getProviders().get(providerId).getPath() + StorageUtils.SLASH_STR + StorageUtils.PERCENT_STR;
+  }
+
+  private List<Identity> createIdentitiesFromIds(final List<String> ids) {
+
+    // The identities missing from the storage were deleted on another node, they are removed from the index
+    List<Identity> listIdentity = getStorage().findIdentitiesById(ids);
+    if (listIdentity.size() < ids.size()) {
+      Set<String> stale = new HashSet<String>(ids);
+      for (Identity identity : listIdentity) {
+        stale.remove(identity.getId());
+      }
+      for (String id : stale) {
+        searchIndex.remove(id);
+      }
+    }
+    getStorage().loadProfiles(listIdentity);
+    return listIdentity;
+  }
+
   /*
    * Internal
    */
@@ -171,6 +284,18 @@ public class IdentityStorageImpl extends AbstractStorage implements IdentityStor
     identityEntity.setDeleted(identity.isDeleted());
     identity.setId(identityEntity.getId());
 
+    // Without connections nor spaces yet, the feed starts empty
+    ActivityFeedEntity feedEntity = identityEntity.createFeed();
+    identityEntity.setFeed(feedEntity);
+    feedEntity.setOwnNumber(0);
+
+    // And so do the relationship lists
+    RelationshipListEntity[] lists = {identityEntity.getRelationship(), identityEntity.getSender(),
+        identityEntity.getReceiver(), identityEntity.getIgnore(), identityEntity.getIgnored()};
+    for (RelationshipListEntity list : lists) {
+      list.setNumber(0);
+    }
+
     //
     getSession().save();
 
@@ -237,12 +362,17 @@ public class IdentityStorageImpl extends AbstractStorage implements IdentityStor
     identity.setProviderId(identityEntity.getProviderId());
     identity.setRemoteId(identityEntity.getRemoteId());
 
-    //
+    // The feed counters including the removed stream are corrected by ActivityStorageImpl.repairFeeds()
     getSession().remove(identityEntity);
 
     //
     getSession().save();
 
+    //
+    if (searchIndex != null) {
+      searchIndex.remove(identity.getId());
+    }
+
     //
     LOG.debug(String.format(
         "Identity %s:%s (%s) deleted",
@@ -385,6 +515,11 @@ public class IdentityStorageImpl extends AbstractStorage implements IdentityStor
 
     getSession().save();
 
+    //
+    if (searchIndex != null) {
+      indexProfile(profileEntity);
+    }
+
     //
     LOG.debug(String.format(
         "Profile '%s' for %s:%s (%s) saved",
@@ -420,6 +555,53 @@ public class IdentityStorageImpl extends AbstractStorage implements IdentityStor
     return identity;
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  public List<Identity> findIdentitiesById(final Collection<String> nodeIds) throws IdentityStorageException {
+
+    List<Identity> identities = new ArrayList<Identity>();
+    for (String nodeId : nodeIds) {
+      Identity identity = findIdentityById(nodeId);
+      if (identity != null) {
+        identities.add(identity);
+      }
+    }
+    return identities;
+
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public List<Identity> findIdentities(final String providerId, final Collection<String> remoteIds)
+      throws IdentityStorageException {
+
+    List<Identity> identities = new ArrayList<Identity>();
+    ProviderEntity providerEntity = getProviderRoot().getProviders().get(providerId);
+    if (providerEntity == null) {
+      return identities;
+    }
+
+    // The provider node is resolved once for the whole batch
+    Map<String, IdentityEntity> identityEntities = providerEntity.getIdentities();
+    for (String remoteId : remoteIds) {
+      IdentityEntity identityEntity = identityEntities.get(remoteId);
+      if (identityEntity == null) {
+        LOG.debug("The node " + providerId + "/" + remoteId + " doesn't be found");
+        continue;
+      }
+
+      Identity identity = new Identity(providerId, remoteId);
+      identity.setDeleted(identityEntity.isDeleted());
+      identity.setId(identityEntity.getId());
+      identities.add(identity);
+    }
+
+    return identities;
+
+  }
+
   protected IdentityEntity _findIdentityEntity(final String providerId, final String remoteId)
       throws NodeNotFoundException {
 
@@ -445,9 +627,14 @@ public class IdentityStorageImpl extends AbstractStorage implements IdentityStor
 
   private Identity createIdentityFromEntity(final IdentityEntity identityEntity) {
 
-    //
-    return getStorage().findIdentityById(identityEntity.getId());
-    
+    // The profile is loaded by the caller
+    Identity identity = new Identity(identityEntity.getId());
+    identity.setDeleted(identityEntity.isDeleted());
+    identity.setRemoteId(identityEntity.getRemoteId());
+    identity.setProviderId(identityEntity.getProviderId());
+
+    return identity;
+
   }
 
   private void populateProfile(final Profile profile, final ProfileEntity profileEntity) {
@@ -601,6 +788,79 @@ public class IdentityStorageImpl extends AbstractStorage implements IdentityStor
    * {@inheritDoc}
    */
   public Profile loadProfile(Profile profile) throws IdentityStorageException {
+    return loadOrCreateProfile(profile);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public List<Profile> loadProfiles(final Collection<Identity> identities) throws IdentityStorageException {
+
+    // The profile nodes are loaded by chunks of one query
+    Map<String, ProfileEntity> entities = new HashMap<String, ProfileEntity>();
+    List<String> chunk = new ArrayList<String>(LOAD_CHUNK_SIZE);
+    for (Identity identity : identities) {
+      chunk.add(identity.getId());
+      if (chunk.size() == LOAD_CHUNK_SIZE) {
+        loadProfileEntities(chunk, entities);
+        chunk.clear();
+      }
+    }
+    loadProfileEntities(chunk, entities);
+
+    //
+    List<Profile> profiles = new ArrayList<Profile>();
+    for (Identity identity : identities) {
+      Profile profile = new Profile(identity);
+      ProfileEntity profileEntity = entities.get(identity.getId());
+      if (profileEntity != null) {
+        populateProfile(profile, profileEntity);
+        profile.clearHasChanged();
+      }
+      else {
+        // Not saved yet or really missing, only the identities without profile node get one
+        profile = loadOrCreateProfile(profile);
+      }
+      identity.setProfile(profile);
+      profiles.add(profile);
+    }
+    return profiles;
+  }
+
+  /**
+   * Loads the profile nodes of the identity ids with a single query, keyed by identity id. The profiles which are
+   * not saved yet aren't returned by the query.
+   */
+  private void loadProfileEntities(List<String> identityIds, Map<String, ProfileEntity> entities) {
+
+    if (identityIds.isEmpty()) {
+      return;
+    }
+
+    //
+    QueryBuilder<ProfileEntity> builder = getSession().createQueryBuilder(ProfileEntity.class);
+    WhereExpression whereExpression = new WhereExpression();
+
+    boolean first = true;
+    for (String identityId : identityIds) {
+      if (first) {
+        first = false;
+      }
+      else {
+        whereExpression.or();
+      }
+      whereExpression.equals(ProfileEntity.parentId, identityId);
+    }
+
+    QueryResult<ProfileEntity> results = builder.where(whereExpression.toString()).get().objects();
+    while (results.hasNext()) {
+      ProfileEntity current = results.next();
+      entities.put(current.getParentId(), current);
+    }
+
+  }
+
+  private Profile loadOrCreateProfile(Profile profile) throws IdentityStorageException {
     try {
       profile = _loadProfile(profile);
     }
@@ -683,6 +943,12 @@ public class IdentityStorageImpl extends AbstractStorage implements IdentityStor
       offset = 0;
     }
 
+    //
+    if (searchIndex != null) {
+      loadSearchIndex(providerId);
+      return createIdentitiesFromIds(searchIndex.search(providerId, profileFilter, offset, limit));
+    }
+
     String inputName = profileFilter.getName().replace(StorageUtils.ASTERISK_STR, StorageUtils.PERCENT_STR);
     StorageUtils.processUsernameSearchPattern(inputName.trim());
     List<Identity> excludedIdentityList = profileFilter.getExcludedIdentityList();
@@ -703,13 +969,10 @@ public class IdentityStorageImpl extends AbstractStorage implements IdentityStor
     while (results.hasNext()) {
 
       ProfileEntity profileEntity = results.next();
-
-      Identity identity = createIdentityFromEntity(profileEntity.getIdentity());
-      Profile profile = getStorage().loadProfile(new Profile(identity));
-      identity.setProfile(profile);
-      listIdentity.add(identity);
+      listIdentity.add(createIdentityFromEntity(profileEntity.getIdentity()));
 
     }
+    getStorage().loadProfiles(listIdentity);
 
     return listIdentity;
   }
@@ -720,6 +983,12 @@ public class IdentityStorageImpl extends AbstractStorage implements IdentityStor
   public int getIdentitiesByProfileFilterCount(final String providerId, final ProfileFilter profileFilter)
       throws IdentityStorageException {
 
+    //
+    if (searchIndex != null) {
+      loadSearchIndex(providerId);
+      return searchIndex.count(providerId, profileFilter);
+    }
+
     List<Identity> excludedIdentityList = profileFilter.getExcludedIdentityList();
 
     QueryBuilder<ProfileEntity> builder = getSession().createQueryBuilder(ProfileEntity.class);
@@ -743,19 +1012,32 @@ public class IdentityStorageImpl extends AbstractStorage implements IdentityStor
   public int getIdentitiesByFirstCharacterOfNameCount(final String providerId, final ProfileFilter profileFilter)
       throws IdentityStorageException {
 
+    //
+    if (searchIndex != null) {
+      loadSearchIndex(providerId);
+      return searchIndex.countByFirstCharacter(providerId, profileFilter);
+    }
+
     List<Identity> excludedIdentityList = profileFilter.getExcludedIdentityList();
+    String firstCharacter = Character.toString(profileFilter.getFirstCharacterOfName()).toLowerCase() + StorageUtils.PERCENT_STR;
 
     QueryBuilder<ProfileEntity> builder = getSession().createQueryBuilder(ProfileEntity.class);
+
+    if (excludedIdentityList == null || excludedIdentityList.isEmpty()) {
+      builder.where(PROFILES_BY_FIRST_CHARACTER.bind(getProfilesPath(providerId), firstCharacter));
+      return builder.get().objects().size();
+    }
+
     WhereExpression whereExpression = new WhereExpression();
 
     whereExpression
-        .like(JCRProperties.path, getProviderRoot().getProviders().get(providerId).getPath() + StorageUtils.SLASH_STR + StorageUtils.PERCENT_STR);
+        .like(JCRProperties.path, getProfilesPath(providerId));
 
     StorageUtils.applyExcludes(whereExpression, excludedIdentityList);
 
     whereExpression.and().like(
         whereExpression.callFunction(QueryFunction.LOWER, ProfileEntity.firstName),
-        Character.toString(profileFilter.getFirstCharacterOfName()).toLowerCase() + StorageUtils.PERCENT_STR
+        firstCharacter
     );
 
     builder.where(whereExpression.toString());
@@ -770,6 +1052,12 @@ public class IdentityStorageImpl extends AbstractStorage implements IdentityStor
   public List<Identity> getIdentitiesByFirstCharacterOfName(final String providerId, final ProfileFilter profileFilter,
       long offset, long limit, boolean forceLoadOrReloadProfile) throws IdentityStorageException {
 
+    //
+    if (searchIndex != null) {
+      loadSearchIndex(providerId);
+      return createIdentitiesFromIds(searchIndex.searchByFirstCharacter(providerId, profileFilter, offset, limit));
+    }
+
     List<Identity> excludedIdentityList = profileFilter.getExcludedIdentityList();
     List<Identity> listIdentity = new ArrayList<Identity>();
 
@@ -791,13 +1079,10 @@ public class IdentityStorageImpl extends AbstractStorage implements IdentityStor
     while (results.hasNext()) {
 
       ProfileEntity profileEntity = results.next();
-
-      Identity identity = createIdentityFromEntity(profileEntity.getIdentity());
-      Profile profile = getStorage().loadProfile(new Profile(identity));
-      identity.setProfile(profile);
-      listIdentity.add(identity);
+      listIdentity.add(createIdentityFromEntity(profileEntity.getIdentity()));
 
     }
+    getStorage().loadProfiles(listIdentity);
 
     return listIdentity;
 
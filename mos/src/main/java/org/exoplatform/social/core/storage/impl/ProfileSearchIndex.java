@@ -0,0 +1,632 @@
+/*
+ * Copyright (C) 2003-2011 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.exoplatform.social.core.storage.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.exoplatform.social.core.identity.model.Identity;
+import org.exoplatform.social.core.profile.ProfileFilter;
+
+/**
+ * In memory index of the searchable profile fields (full name, first name, position and gender).
+ *
+ * It answers the profile filter and first character searches of {@link IdentityStorageImpl} with the same matching
+ * rules as the JCR queries : the full name is searched with trigram postings, the first name with one bucket per
+ * first character, and the results are the identity ids ordered by full name.
+ *
+ * The index is local to the node, it is filled lazily per provider and updated when a profile is saved or an
+ * identity deleted on this node. While a provider is loading, the profiles saved or removed on this node take
+ * precedence over the loaded ones.
+ */
+public class ProfileSearchIndex {
+
+  static final int GRAM_LENGTH = 3;
+
+  private static final char ANY = '%';
+  private static final char ONE = '_';
+
+  private static final Comparator<Entry> BY_FULL_NAME = new Comparator<Entry>() {
+    public int compare(final Entry e1, final Entry e2) {
+      int result = e1.fullName.compareTo(e2.fullName);
+      return (result != 0 ? result : e1.identityId.compareTo(e2.identityId));
+    }
+  };
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+  private final Map<String, ProviderIndex> providers = new HashMap<String, ProviderIndex>();
+
+  private final Set<String> loadedProviders = new HashSet<String>();
+
+  private final Set<String> removedWhileLoading = new HashSet<String>();
+
+  private boolean loading;
+
+  /**
+   * Indexes or re-indexes the profile of an identity.
+   *
+   * @param providerId the identity provider
+   * @param identityId the identity id
+   * @param fullName the full name, may be null
+   * @param firstName the first name, may be null
+   * @param position the position, may be null
+   * @param gender the gender, may be null
+   */
+  public void put(String providerId, String identityId, String fullName, String firstName, String position,
+                  String gender) {
+    put(new Entry(providerId, identityId, fullName, firstName, position, gender), true);
+  }
+
+  /**
+   * Indexes the profile of an identity read by a provider loading, unless it has been saved or removed since the
+   * loading started.
+   *
+   * @param providerId the identity provider
+   * @param identityId the identity id
+   * @param fullName the full name, may be null
+   * @param firstName the first name, may be null
+   * @param position the position, may be null
+   * @param gender the gender, may be null
+   */
+  public void load(String providerId, String identityId, String fullName, String firstName, String position,
+                   String gender) {
+    put(new Entry(providerId, identityId, fullName, firstName, position, gender), false);
+  }
+
+  private void put(Entry entry, boolean replace) {
+
+    if (entry.providerId == null || entry.identityId == null) {
+      throw new IllegalArgumentException();
+    }
+
+    String providerId = entry.providerId;
+    String identityId = entry.identityId;
+
+    lock.writeLock().lock();
+    try {
+      if (!replace && (entries.containsKey(identityId) || removedWhileLoading.contains(identityId))) {
+        return;
+      }
+
+      Entry previous = entries.put(identityId, entry);
+      if (previous != null) {
+        providers.get(previous.providerId).remove(previous);
+      }
+
+      ProviderIndex providerIndex = providers.get(providerId);
+      if (providerIndex == null) {
+        providerIndex = new ProviderIndex();
+        providers.put(providerId, providerIndex);
+      }
+      providerIndex.add(entry);
+    }
+    finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Removes the profile of an identity from the index.
+   *
+   * @param identityId the identity id
+   */
+  public void remove(String identityId) {
+
+    lock.writeLock().lock();
+    try {
+      Entry previous = entries.remove(identityId);
+      if (previous != null) {
+        providers.get(previous.providerId).remove(previous);
+      }
+      if (loading) {
+        removedWhileLoading.add(identityId);
+      }
+    }
+    finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Tells if every profile of the provider has been indexed.
+   *
+   * @param providerId the identity provider
+   * @return true when the provider is loaded
+   */
+  public boolean isLoaded(String providerId) {
+
+    lock.readLock().lock();
+    try {
+      return loadedProviders.contains(providerId);
+    }
+    finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Starts the loading of a provider, the identities removed from now on are not indexed by {@link #load}.
+   */
+  public void startLoading() {
+
+    lock.writeLock().lock();
+    try {
+      loading = true;
+      removedWhileLoading.clear();
+    }
+    finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Ends the loading of a provider, whether it succeeded or not.
+   */
+  public void stopLoading() {
+
+    lock.writeLock().lock();
+    try {
+      loading = false;
+      removedWhileLoading.clear();
+    }
+    finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Marks the provider as loaded once all its profiles have been indexed.
+   *
+   * @param providerId the identity provider
+   */
+  public void setLoaded(String providerId) {
+
+    lock.writeLock().lock();
+    try {
+      loadedProviders.add(providerId);
+    }
+    finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Drops the whole index, the providers will be loaded again on the next search.
+   */
+  public void clear() {
+
+    lock.writeLock().lock();
+    try {
+      entries.clear();
+      providers.clear();
+      loadedProviders.clear();
+    }
+    finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Searches the identities matching the profile filter, ordered by full name.
+   *
+   * @param providerId the identity provider
+   * @param profileFilter the filter
+   * @param offset the first result
+   * @param limit the maximum number of results
+   * @return the identity ids
+   */
+  public List<String> search(String providerId, ProfileFilter profileFilter, long offset, long limit) {
+
+    Query query = new Query(profileFilter);
+    List<String> ids = new ArrayList<String>();
+
+    lock.readLock().lock();
+    try {
+      ProviderIndex providerIndex = providers.get(providerId);
+      if (providerIndex == null) {
+        return ids;
+      }
+
+      for (Entry entry : query.candidates(providerIndex)) {
+        if (query.matches(entry) && offset-- <= 0) {
+          ids.add(entry.identityId);
+          if (ids.size() >= limit) {
+            break;
+          }
+        }
+      }
+    }
+    finally {
+      lock.readLock().unlock();
+    }
+
+    return ids;
+  }
+
+  /**
+   * Counts the identities matching the profile filter.
+   *
+   * @param providerId the identity provider
+   * @param profileFilter the filter
+   * @return the number of identities
+   */
+  public int count(String providerId, ProfileFilter profileFilter) {
+
+    Query query = new Query(profileFilter);
+    int count = 0;
+
+    lock.readLock().lock();
+    try {
+      ProviderIndex providerIndex = providers.get(providerId);
+      if (providerIndex == null) {
+        return 0;
+      }
+
+      for (Entry entry : query.candidates(providerIndex)) {
+        if (query.matches(entry)) {
+          ++count;
+        }
+      }
+    }
+    finally {
+      lock.readLock().unlock();
+    }
+
+    return count;
+  }
+
+  /**
+   * Searches the identities which first name starts with the first character of the filter, ordered by full name.
+   *
+   * @param providerId the identity provider
+   * @param profileFilter the filter
+   * @param offset the first result
+   * @param limit the maximum number of results
+   * @return the identity ids
+   */
+  public List<String> searchByFirstCharacter(String providerId, ProfileFilter profileFilter, long offset,
+                                             long limit) {
+
+    Set<String> excludes = excludes(profileFilter);
+    List<String> ids = new ArrayList<String>();
+
+    lock.readLock().lock();
+    try {
+      for (Entry entry : bucket(providerId, profileFilter)) {
+        if (!excludes.contains(entry.identityId) && offset-- <= 0) {
+          ids.add(entry.identityId);
+          if (ids.size() >= limit) {
+            break;
+          }
+        }
+      }
+    }
+    finally {
+      lock.readLock().unlock();
+    }
+
+    return ids;
+  }
+
+  /**
+   * Counts the identities which first name starts with the first character of the filter.
+   *
+   * @param providerId the identity provider
+   * @param profileFilter the filter
+   * @return the number of identities
+   */
+  public int countByFirstCharacter(String providerId, ProfileFilter profileFilter) {
+
+    Set<String> excludes = excludes(profileFilter);
+    int count = 0;
+
+    lock.readLock().lock();
+    try {
+      for (Entry entry : bucket(providerId, profileFilter)) {
+        if (!excludes.contains(entry.identityId)) {
+          ++count;
+        }
+      }
+    }
+    finally {
+      lock.readLock().unlock();
+    }
+
+    return count;
+  }
+
+  private Collection<Entry> bucket(String providerId, ProfileFilter profileFilter) {
+
+    ProviderIndex providerIndex = providers.get(providerId);
+    if (providerIndex == null) {
+      return Collections.emptySet();
+    }
+
+    Set<Entry> bucket = providerIndex.byFirstCharacter.get(Character.toLowerCase(profileFilter.getFirstCharacterOfName()));
+    return (bucket != null ? bucket : Collections.<Entry>emptySet());
+  }
+
+  private static Set<String> excludes(ProfileFilter profileFilter) {
+
+    Set<String> excludes = new HashSet<String>();
+    List<Identity> excludedIdentityList = profileFilter.getExcludedIdentityList();
+    if (excludedIdentityList != null) {
+      for (Identity identity : excludedIdentityList) {
+        excludes.add(identity.getId());
+      }
+    }
+    return excludes;
+  }
+
+  /**
+   * Matches a value against a JCR like pattern where '%' matches any sequence and '_' any character.
+   *
+   * @param value the value, never matches when null
+   * @param pattern the pattern
+   * @return true when the value matches
+   */
+  static boolean like(String value, String pattern) {
+
+    if (value == null) {
+      return false;
+    }
+
+    int v = 0;
+    int p = 0;
+    int anyAt = -1;
+    int anyFrom = 0;
+
+    while (v < value.length()) {
+      if (p < pattern.length() && pattern.charAt(p) == ANY) {
+        anyAt = p++;
+        anyFrom = v;
+      }
+      else if (p < pattern.length() && (pattern.charAt(p) == ONE || pattern.charAt(p) == value.charAt(v))) {
+        ++p;
+        ++v;
+      }
+      else if (anyAt >= 0) {
+        p = anyAt + 1;
+        v = ++anyFrom;
+      }
+      else {
+        return false;
+      }
+    }
+
+    while (p < pattern.length() && pattern.charAt(p) == ANY) {
+      ++p;
+    }
+
+    return p == pattern.length();
+  }
+
+  /**
+   * Returns the trigrams of the value.
+   */
+  static Set<String> grams(String value) {
+
+    Set<String> grams = new HashSet<String>();
+    for (int i = 0; i + GRAM_LENGTH <= value.length(); ++i) {
+      grams.add(value.substring(i, i + GRAM_LENGTH));
+    }
+    return grams;
+  }
+
+  private static String lower(String value) {
+    return (value != null ? value.toLowerCase() : null);
+  }
+
+  /**
+   * The indexed fields of a profile.
+   */
+  static class Entry {
+
+    private final String providerId;
+    private final String identityId;
+    private final String fullName;
+    private final String lowerFullName;
+    private final String lowerFirstName;
+    private final String lowerPosition;
+    private final String gender;
+
+    Entry(String providerId, String identityId, String fullName, String firstName, String position, String gender) {
+      this.providerId = providerId;
+      this.identityId = identityId;
+      this.fullName = (fullName != null ? fullName : "");
+      this.lowerFullName = lower(fullName);
+      this.lowerFirstName = lower(firstName);
+      this.lowerPosition = lower(position);
+      this.gender = gender;
+    }
+
+  }
+
+  /**
+   * The entries of one provider.
+   */
+  private static class ProviderIndex {
+
+    private final TreeSet<Entry> byFullName = new TreeSet<Entry>(BY_FULL_NAME);
+
+    private final Map<Character, Set<Entry>> byFirstCharacter = new HashMap<Character, Set<Entry>>();
+
+    private final Map<String, Set<Entry>> byGram = new HashMap<String, Set<Entry>>();
+
+    void add(Entry entry) {
+
+      byFullName.add(entry);
+
+      if (entry.lowerFirstName != null && entry.lowerFirstName.length() > 0) {
+        Character first = entry.lowerFirstName.charAt(0);
+        Set<Entry> bucket = byFirstCharacter.get(first);
+        if (bucket == null) {
+          bucket = new TreeSet<Entry>(BY_FULL_NAME);
+          byFirstCharacter.put(first, bucket);
+        }
+        bucket.add(entry);
+      }
+
+      if (entry.lowerFullName != null) {
+        for (String gram : grams(entry.lowerFullName)) {
+          Set<Entry> posting = byGram.get(gram);
+          if (posting == null) {
+            posting = new HashSet<Entry>();
+            byGram.put(gram, posting);
+          }
+          posting.add(entry);
+        }
+      }
+    }
+
+    void remove(Entry entry) {
+
+      byFullName.remove(entry);
+
+      if (entry.lowerFirstName != null && entry.lowerFirstName.length() > 0) {
+        Character first = entry.lowerFirstName.charAt(0);
+        Set<Entry> bucket = byFirstCharacter.get(first);
+        bucket.remove(entry);
+        if (bucket.isEmpty()) {
+          byFirstCharacter.remove(first);
+        }
+      }
+
+      if (entry.lowerFullName != null) {
+        for (String gram : grams(entry.lowerFullName)) {
+          Set<Entry> posting = byGram.get(gram);
+          posting.remove(entry);
+          if (posting.isEmpty()) {
+            byGram.remove(gram);
+          }
+        }
+      }
+    }
+
+  }
+
+  /**
+   * A profile filter translated to the like patterns used by {@link StorageUtils#applyFilter}.
+   */
+  private static class Query {
+
+    private final String namePattern;
+    private final String positionPattern;
+    private final String gender;
+    private final Set<String> excludes;
+
+    Query(ProfileFilter profileFilter) {
+
+      String inputName = profileFilter.getName().replace(StorageUtils.ASTERISK_STR, StorageUtils.PERCENT_STR);
+      StorageUtils.processUsernameSearchPattern(inputName.trim());
+      String position = StorageUtils.addPositionSearchPattern(profileFilter.getPosition().trim())
+          .replace(StorageUtils.ASTERISK_STR, StorageUtils.PERCENT_STR);
+      inputName = inputName.isEmpty() ? StorageUtils.ASTERISK_STR : inputName;
+      String nameForSearch = inputName.replace(StorageUtils.ASTERISK_STR, StorageUtils.SPACE_STR);
+
+      //
+      if (profileFilter.getFirstCharacterOfName() != '\u0000') {
+        namePattern = nameForSearch.toLowerCase() + StorageUtils.PERCENT_STR;
+      }
+      else if (nameForSearch.trim().length() != 0) {
+        namePattern = StorageUtils.PERCENT_STR + nameForSearch.toLowerCase() + StorageUtils.PERCENT_STR;
+      }
+      else {
+        namePattern = null;
+      }
+
+      positionPattern = (position.length() != 0 ? StorageUtils.PERCENT_STR + position.toLowerCase() + StorageUtils.PERCENT_STR : null);
+      gender = profileFilter.getGender().trim();
+      excludes = excludes(profileFilter);
+    }
+
+    /**
+     * Narrows the entries to the ones sharing the trigrams of the longest literal part of the name pattern.
+     */
+    Collection<Entry> candidates(ProviderIndex providerIndex) {
+
+      String literal = longestLiteral(namePattern);
+      if (literal.length() < GRAM_LENGTH) {
+        return providerIndex.byFullName;
+      }
+
+      Set<Entry> smallest = null;
+      for (String gram : grams(literal)) {
+        Set<Entry> posting = providerIndex.byGram.get(gram);
+        if (posting == null) {
+          return Collections.emptySet();
+        }
+        if (smallest == null || posting.size() < smallest.size()) {
+          smallest = posting;
+        }
+      }
+
+      TreeSet<Entry> candidates = new TreeSet<Entry>(BY_FULL_NAME);
+      candidates.addAll(smallest);
+      return candidates;
+    }
+
+    boolean matches(Entry entry) {
+
+      if (excludes.contains(entry.identityId)) {
+        return false;
+      }
+      if (namePattern != null && !like(entry.lowerFullName, namePattern)) {
+        return false;
+      }
+      if (positionPattern != null && !like(entry.lowerPosition, positionPattern)) {
+        return false;
+      }
+      return gender.length() == 0 || gender.equals(entry.gender);
+    }
+
+    private static String longestLiteral(String pattern) {
+
+      String longest = "";
+      if (pattern == null) {
+        return longest;
+      }
+
+      int start = 0;
+      for (int i = 0; i <= pattern.length(); ++i) {
+        if (i == pattern.length() || pattern.charAt(i) == ANY || pattern.charAt(i) == ONE) {
+          if (i - start > longest.length()) {
+            longest = pattern.substring(start, i);
+          }
+          start = i + 1;
+        }
+      }
+      return longest;
+    }
+
+  }
+
+}
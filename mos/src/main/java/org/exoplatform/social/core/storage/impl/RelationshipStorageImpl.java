@@ -21,12 +21,13 @@ import org.chromattic.api.query.QueryBuilder;
 import org.chromattic.api.query.QueryResult;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
+import org.exoplatform.social.core.chromattic.entity.ActivityEntity;
 import org.exoplatform.social.core.chromattic.entity.IdentityEntity;
 import org.exoplatform.social.core.chromattic.entity.ProfileEntity;
+import org.exoplatform.social.core.chromattic.entity.ProviderEntity;
 import org.exoplatform.social.core.chromattic.entity.RelationshipEntity;
 import org.exoplatform.social.core.chromattic.entity.RelationshipListEntity;
 import org.exoplatform.social.core.identity.model.Identity;
-import org.exoplatform.social.core.identity.model.Profile;
 import org.exoplatform.social.core.profile.ProfileFilter;
 import org.exoplatform.social.core.relationship.model.Relationship;
 import org.exoplatform.social.core.storage.RelationshipStorageException;
@@ -51,6 +52,8 @@ public class RelationshipStorageImpl extends AbstractStorage implements Relation
   /** Logger */
   private static final Log LOG = ExoLogger.getLogger(RelationshipStorage.class);
 
+  private static final int REPAIR_CHUNK_SIZE = 100;
+
   private final IdentityStorage identityStorage;
   private RelationshipStorage relationshipStorage;
 
@@ -62,6 +65,7 @@ public class RelationshipStorageImpl extends AbstractStorage implements Relation
 
   private void putRelationshipToList(List<Relationship> relationships, RelationshipListEntity list) {
     if (list != null) {
+      List<Identity> withProfiles = new ArrayList<Identity>();
       for (Map.Entry<String, RelationshipEntity> entry : list.getRelationships().entrySet()) {
         Relationship relationship = new Relationship(entry.getValue().getId());
 
@@ -75,7 +79,7 @@ public class RelationshipStorageImpl extends AbstractStorage implements Relation
         ProfileEntity senderProfileEntity = senderEntity.getProfile();
 
         if (senderProfileEntity != null) {
-          loadProfile(sender);
+          withProfiles.add(sender);
         }
 
         Identity receiver = new Identity(receiverEntity.getId());
@@ -84,7 +88,7 @@ public class RelationshipStorageImpl extends AbstractStorage implements Relation
         ProfileEntity receiverProfileEntity = receiverEntity.getProfile();
 
         if (receiverProfileEntity != null) {
-          loadProfile(receiver);
+          withProfiles.add(receiver);
         }
 
         if (relationshipEntity.isSender()) {
@@ -108,15 +112,10 @@ public class RelationshipStorageImpl extends AbstractStorage implements Relation
 
         relationships.add(relationship);
       }
+      identityStorage.loadProfiles(withProfiles);
     }
   }
 
-  private void loadProfile(Identity identity) {
-    Profile profile = new Profile(identity);
-    profile = identityStorage.loadProfile(profile);
-    identity.setProfile(profile);
-  }
-
   private List<Identity> getIdentitiesFromRelationship(Iterator<RelationshipEntity> it, Origin origin, long offset, long limit) {
 
     //
@@ -146,28 +145,82 @@ public class RelationshipStorageImpl extends AbstractStorage implements Relation
 
     }
 
+    //
+    identityStorage.loadProfiles(identities);
+
     return identities;
   }
 
   private Identity createIdentityFromEntity(IdentityEntity entity) {
 
-    Identity identity = identityStorage.findIdentityById(entity.getId());
-    loadProfile(identity);
+    // The profile is loaded by the caller
+    Identity identity = new Identity(entity.getId());
+    identity.setDeleted(entity.isDeleted());
+    identity.setRemoteId(entity.getRemoteId());
+    identity.setProviderId(entity.getProviderId());
 
     return identity;
 
   }
 
-  private List<Identity> getIdentitiesRelationsByFilter(final List<Identity> relations, final ProfileFilter filter, final long offset, final long limit) {
-    
-    if (relations.isEmpty()) return new ArrayList<Identity>();
+  private IdentityEntity findIdentityEntity(Identity identity) throws RelationshipStorageException {
+
+    try {
+      return _findById(IdentityEntity.class, identity.getId());
+    }
+    catch (NodeNotFoundException e) {
+      throw new RelationshipStorageException(RelationshipStorageException.Type.ILLEGAL_ARGUMENTS);
+    }
+
+  }
+
+  /**
+   * Gets the ids of the identities related through the list, without loading them.
+   */
+  private List<String> getIdsFromRelationship(RelationshipListEntity listEntity) {
+
+    List<String> ids = new ArrayList<String>();
+    for (RelationshipEntity relationshipEntity : listEntity.getRelationships().values()) {
+      ids.add(relationshipEntity.getTo().getId());
+    }
+    return ids;
+
+  }
+
+  /**
+   * Gets the ids of the profiles of the identities related through the list, without loading them.
+   */
+  private List<String> getProfileIdsFromRelationship(RelationshipListEntity listEntity) {
+
+    List<String> ids = new ArrayList<String>();
+    for (RelationshipEntity relationshipEntity : listEntity.getRelationships().values()) {
+      ProfileEntity profileEntity = relationshipEntity.getTo().getProfile();
+      if (profileEntity != null) {
+        ids.add(profileEntity.getId());
+      }
+    }
+    return ids;
+
+  }
+
+  private boolean isEmpty(final ProfileFilter filter) {
+    return filter.getName().replace(StorageUtils.ASTERISK_STR, StorageUtils.EMPTY_STR).trim().length() == 0
+        && filter.getPosition().trim().length() == 0
+        && filter.getGender().trim().length() == 0
+        && filter.getFirstCharacterOfName() == '\u0000';
+  }
+
+  private List<Identity> getIdentitiesRelationsByFilter(final RelationshipListEntity relations, final ProfileFilter filter, final long offset, final long limit) {
     
     //
     List<Identity> found = new ArrayList<Identity>();
-    if(relations.isEmpty()) return found ;
+    List<String> profileIds = getProfileIdsFromRelationship(relations);
+    if(profileIds.isEmpty()) return found ;
+
+    // Only the profiles of the requested page are loaded
     QueryBuilder<ProfileEntity> builder = getSession().createQueryBuilder(ProfileEntity.class);
     WhereExpression whereExpression = new WhereExpression();
-    StorageUtils.applyWhereFromIdentity(whereExpression, relations);
+    StorageUtils.applyWhereFromIds(whereExpression, profileIds);
 
     //
     StorageUtils.applyFilter(whereExpression, filter);
@@ -186,9 +239,15 @@ public class RelationshipStorageImpl extends AbstractStorage implements Relation
 
   }
 
-  private int getIdentitiesRelationsByFilterCount(final List<Identity> relations, final ProfileFilter filter) {
+  private int getIdentitiesRelationsByFilterCount(final RelationshipListEntity relations, final ProfileFilter filter) {
 
-    if (relations.size() == 0) {
+    // Nothing to match, the relations are counted as they are
+    if (isEmpty(filter)) {
+      return getIdsFromRelationship(relations).size();
+    }
+
+    List<String> profileIds = getProfileIdsFromRelationship(relations);
+    if (profileIds.size() == 0) {
       return 0;
     }
 
@@ -197,7 +256,7 @@ public class RelationshipStorageImpl extends AbstractStorage implements Relation
 
     //
     WhereExpression whereExpression = new WhereExpression();
-    StorageUtils.applyWhereFromIdentity(whereExpression, relations);
+    StorageUtils.applyWhereFromIds(whereExpression, profileIds);
 
     //
     StorageUtils.applyFilter(whereExpression, filter);
@@ -207,6 +266,46 @@ public class RelationshipStorageImpl extends AbstractStorage implements Relation
 
   }
 
+  private void updateCounters(RelationshipListEntity oldList, RelationshipListEntity newList) {
+
+    if (!oldList.getName().equals(newList.getName())) {
+      oldList.desc();
+      newList.inc();
+    }
+
+  }
+
+  private boolean isConnectionList(RelationshipListEntity list) {
+    return list.getName().equals(list.getParent().getRelationship().getName());
+  }
+
+  /**
+   * Whether moving a relationship between the lists changes the connections of the identities.
+   */
+  private boolean isConnectionMove(RelationshipListEntity oldList, RelationshipListEntity newList) {
+    return !oldList.getName().equals(newList.getName()) && (isConnectionList(oldList) || isConnectionList(newList));
+  }
+
+  /**
+   * Merges the activities of each identity in the feed of the other one when they get connected, or removes them when
+   * they get disconnected.
+   */
+  private void updateFeeds(IdentityEntity identity1, IdentityEntity identity2, boolean connected) {
+
+    List<ActivityEntity> activities1 = _getFeedActivities(identity1);
+    List<ActivityEntity> activities2 = _getFeedActivities(identity2);
+
+    if (connected) {
+      _mergeIntoFeed(identity1, identity2, activities2);
+      _mergeIntoFeed(identity2, identity1, activities1);
+    }
+    else {
+      _removeFromFeed(identity1, identity2, activities2);
+      _removeFromFeed(identity2, identity1, activities1);
+    }
+
+  }
+
   private RelationshipStorage getStorage() {
     return (relationshipStorage != null ? relationshipStorage : this);
   }
@@ -230,16 +329,23 @@ public class RelationshipStorageImpl extends AbstractStorage implements Relation
       case PENDING:
         identity1.getSender().getRelationships().put(identity2.getRemoteId(), createdRelationship);
         identity2.getReceiver().getRelationships().put(identity1.getRemoteId(), symmetricalRelationship);
+        identity1.getSender().inc();
+        identity2.getReceiver().inc();
         break;
 
       case CONFIRMED:
         identity1.getRelationship().getRelationships().put(identity2.getRemoteId(), createdRelationship);
         identity2.getRelationship().getRelationships().put(identity1.getRemoteId(), symmetricalRelationship);
+        identity1.getRelationship().inc();
+        identity2.getRelationship().inc();
+        updateFeeds(identity1, identity2, true);
         break;
 
       case IGNORED:
         identity1.getIgnore().getRelationships().put(identity2.getRemoteId(), createdRelationship);
-        identity2.getIgnored().getRelationships().put(identity2.getRemoteId(), symmetricalRelationship);
+        identity2.getIgnored().getRelationships().put(identity1.getRemoteId(), symmetricalRelationship);
+        identity1.getIgnore().inc();
+        identity2.getIgnored().inc();
         break;
 
     }
@@ -289,6 +395,9 @@ public class RelationshipStorageImpl extends AbstractStorage implements Relation
     RelationshipEntity savedRelationship = _findById(RelationshipEntity.class, relationship.getId());
     RelationshipEntity symmetricalRelationship = savedRelationship.getReciprocal();
 
+    RelationshipListEntity savedList = savedRelationship.getParent();
+    RelationshipListEntity symmetricalList = symmetricalRelationship.getParent();
+
     savedRelationship.setStatus(relationship.getStatus().toString());
     symmetricalRelationship.setStatus(relationship.getStatus().toString());
 
@@ -317,6 +426,16 @@ public class RelationshipStorageImpl extends AbstractStorage implements Relation
       // TODO : IGNORED
     }
 
+    // Update the counters of the lists when moved
+    updateCounters(savedList, savedRelationship.getParent());
+    updateCounters(symmetricalList, symmetricalRelationship.getParent());
+
+    // Connections changed
+    if (isConnectionMove(savedList, savedRelationship.getParent())) {
+      boolean connected = isConnectionList(savedRelationship.getParent());
+      updateFeeds(savedRelationship.getFrom(), savedRelationship.getTo(), connected);
+    }
+
     getSession().save();
 
     //
@@ -516,10 +635,19 @@ public class RelationshipStorageImpl extends AbstractStorage implements Relation
       RelationshipEntity symmetricalRelationship = toDeleteRelationship.getReciprocal();
 
       IdentityEntity from = toDeleteRelationship.getFrom();
-      IdentityEntity to = toDeleteRelationship.getFrom();
+      IdentityEntity to = toDeleteRelationship.getTo();
+      boolean connected = isConnectionList(toDeleteRelationship.getParent());
+
+      toDeleteRelationship.getParent().desc();
+      symmetricalRelationship.getParent().desc();
 
       _removeById(RelationshipEntity.class, symmetricalRelationship.getId());
       _removeById(RelationshipEntity.class, relationship.getId());
+
+      // Connections changed
+      if (connected) {
+        updateFeeds(from, to, false);
+      }
       
       getSession().save();
 
@@ -738,7 +866,7 @@ public class RelationshipStorageImpl extends AbstractStorage implements Relation
      try {
 
        IdentityEntity receiverEntity = _findById(IdentityEntity.class, receiver.getId());
-       return receiverEntity.getReceiver().getRelationships().size();
+       return receiverEntity.getReceiver().count();
        
      }
      catch (NodeNotFoundException e) {
@@ -778,7 +906,7 @@ public class RelationshipStorageImpl extends AbstractStorage implements Relation
     try {
 
        IdentityEntity receiverEntity = _findById(IdentityEntity.class, sender.getId());
-       return receiverEntity.getSender().getRelationships().size();
+       return receiverEntity.getSender().count();
 
      }
      catch (NodeNotFoundException e) {
@@ -800,10 +928,10 @@ public class RelationshipStorageImpl extends AbstractStorage implements Relation
      try {
 
        IdentityEntity identityEntity = _findById(IdentityEntity.class, identity.getId());
-       nb += identityEntity.getRelationship().getRelationships().size();
-       nb += identityEntity.getSender().getRelationships().size();
-       nb += identityEntity.getReceiver().getRelationships().size();
-       nb += identityEntity.getIgnore().getRelationships().size();
+       nb += identityEntity.getRelationship().count();
+       nb += identityEntity.getSender().count();
+       nb += identityEntity.getReceiver().count();
+       nb += identityEntity.getIgnore().count();
 
        return nb;
        
@@ -843,6 +971,15 @@ public class RelationshipStorageImpl extends AbstractStorage implements Relation
 
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  public List<String> getConnectionIds(Identity identity) throws RelationshipStorageException {
+
+    return getIdsFromRelationship(findIdentityEntity(identity).getRelationship());
+
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -850,10 +987,8 @@ public class RelationshipStorageImpl extends AbstractStorage implements Relation
 
     try {
 
-      // TODO : use property to improve the perfs
-
       IdentityEntity identityEntity = _findById(IdentityEntity.class, identity.getId());
-      return identityEntity.getRelationship().getRelationships().size();
+      return identityEntity.getRelationship().count();
     }
     catch (NodeNotFoundException e) {
       throw new RelationshipStorageException(RelationshipStorageException.Type.ILLEGAL_ARGUMENTS);
@@ -867,8 +1002,8 @@ public class RelationshipStorageImpl extends AbstractStorage implements Relation
       final Identity existingIdentity, final ProfileFilter profileFilter, final long offset, final long limit)
       throws RelationshipStorageException {
 
-    List<Identity> identities = getStorage().getConnections(existingIdentity);
-    return getIdentitiesRelationsByFilter(identities, profileFilter, offset, limit);
+    RelationshipListEntity relations = findIdentityEntity(existingIdentity).getRelationship();
+    return getIdentitiesRelationsByFilter(relations, profileFilter, offset, limit);
     
   }
 
@@ -879,8 +1014,8 @@ public class RelationshipStorageImpl extends AbstractStorage implements Relation
       final Identity existingIdentity, final ProfileFilter profileFilter, final long offset, final long limit)
       throws RelationshipStorageException {
 
-    List<Identity> identities = getStorage().getIncomingRelationships(existingIdentity, 0, -1);
-    return getIdentitiesRelationsByFilter(identities, profileFilter, offset, limit);
+    RelationshipListEntity relations = findIdentityEntity(existingIdentity).getReceiver();
+    return getIdentitiesRelationsByFilter(relations, profileFilter, offset, limit);
 
   }
   
@@ -891,8 +1026,8 @@ public class RelationshipStorageImpl extends AbstractStorage implements Relation
       final Identity existingIdentity, final ProfileFilter profileFilter, final long offset, final long limit)
       throws RelationshipStorageException {
 
-    List<Identity> identities = getStorage().getOutgoingRelationships(existingIdentity, 0, -1);
-    return getIdentitiesRelationsByFilter(identities, profileFilter, offset, limit);
+    RelationshipListEntity relations = findIdentityEntity(existingIdentity).getSender();
+    return getIdentitiesRelationsByFilter(relations, profileFilter, offset, limit);
 
   }
   /**
@@ -901,8 +1036,8 @@ public class RelationshipStorageImpl extends AbstractStorage implements Relation
   public int getIncomingCountByFilter(
       final Identity existingIdentity, final ProfileFilter profileFilter) throws RelationshipStorageException {
 
-    List<Identity> identities = getStorage().getIncomingRelationships(existingIdentity, 0, -1);
-    return getIdentitiesRelationsByFilterCount(identities, profileFilter);
+    RelationshipListEntity relations = findIdentityEntity(existingIdentity).getReceiver();
+    return getIdentitiesRelationsByFilterCount(relations, profileFilter);
 
   }
   
@@ -912,8 +1047,8 @@ public class RelationshipStorageImpl extends AbstractStorage implements Relation
   public int getConnectionsCountByFilter(
       final Identity existingIdentity, final ProfileFilter profileFilter) throws RelationshipStorageException {
 
-    List<Identity> identities = getStorage().getConnections(existingIdentity);
-    return getIdentitiesRelationsByFilterCount(identities, profileFilter);
+    RelationshipListEntity relations = findIdentityEntity(existingIdentity).getRelationship();
+    return getIdentitiesRelationsByFilterCount(relations, profileFilter);
 
   }
   
@@ -923,8 +1058,65 @@ public class RelationshipStorageImpl extends AbstractStorage implements Relation
   public int getOutgoingCountByFilter(
       final Identity existingIdentity, final ProfileFilter profileFilter) throws RelationshipStorageException {
 
-    List<Identity> identities = getStorage().getOutgoingRelationships(existingIdentity, 0, -1);
-    return getIdentitiesRelationsByFilterCount(identities, profileFilter);
+    RelationshipListEntity relations = findIdentityEntity(existingIdentity).getSender();
+    return getIdentitiesRelationsByFilterCount(relations, profileFilter);
+
+  }
+
+  /**
+   * Rebuilds the relationship counters of all identities from their lists.
+   *
+   * @return the number of counters which have been fixed
+   */
+  public int repairCounters() {
+    return repairCounters(REPAIR_CHUNK_SIZE);
+  }
+
+  /**
+   * Rebuilds the relationship counters of all identities from their lists, the changes are saved every chunkSize
+   * identities so that the session doesn't hold the whole directory.
+   *
+   * @param chunkSize the number of identities saved at once
+   * @return the number of counters which have been fixed
+   */
+  public int repairCounters(int chunkSize) {
+
+    int fixed = 0;
+    int walked = 0;
+
+    for (ProviderEntity providerEntity : getProviderRoot().getProviders().values()) {
+      for (IdentityEntity identityEntity : providerEntity.getIdentities().values()) {
+        fixed += repairCounter(identityEntity.getRelationship());
+        fixed += repairCounter(identityEntity.getSender());
+        fixed += repairCounter(identityEntity.getReceiver());
+        fixed += repairCounter(identityEntity.getIgnore());
+        fixed += repairCounter(identityEntity.getIgnored());
+        if (++walked % chunkSize == 0) {
+          getSession().save();
+        }
+      }
+    }
+
+    getSession().save();
+
+    //
+    LOG.info(String.format("%s relationship counters repaired", fixed));
+
+    return fixed;
+
+  }
+
+  private int repairCounter(RelationshipListEntity listEntity) {
+
+    int size = listEntity.getRelationships().size();
+    Integer number = listEntity.getNumber();
+
+    if (number == null || number != size) {
+      listEntity.setNumber(size);
+      return 1;
+    }
+
+    return 0;
 
   }
 
@@ -21,8 +21,15 @@ import org.chromattic.api.ChromatticSession;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.chromattic.api.query.Query;
 import org.chromattic.api.query.QueryBuilder;
@@ -30,7 +37,9 @@ import org.chromattic.api.query.QueryResult;
 import org.chromattic.ext.ntdef.NTFile;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
+import org.exoplatform.social.core.chromattic.entity.ActivityEntity;
 import org.exoplatform.social.core.chromattic.entity.IdentityEntity;
+import org.exoplatform.social.core.chromattic.entity.ProviderEntity;
 import org.exoplatform.social.core.chromattic.entity.SpaceEntity;
 import org.exoplatform.social.core.chromattic.entity.SpaceListEntity;
 import org.exoplatform.social.core.chromattic.entity.SpaceRef;
@@ -44,6 +53,7 @@ import org.exoplatform.social.core.storage.SpaceStorageException;
 import org.exoplatform.social.core.storage.api.SpaceStorage;
 import org.exoplatform.social.core.storage.exception.NodeNotFoundException;
 import org.exoplatform.social.core.storage.query.QueryFunction;
+import org.exoplatform.social.core.storage.query.QueryTemplate;
 import org.exoplatform.social.core.storage.query.WhereExpression;
 
 /**
@@ -57,6 +67,26 @@ public class SpaceStorageImpl extends AbstractStorage implements SpaceStorage {
   /** Logger */
   private static final Log LOG = ExoLogger.getLogger(SpaceStorageImpl.class);
 
+  //
+  private static final QueryTemplate SPACE_BY_DISPLAY_NAME = new QueryTemplate(
+      SpaceEntity.displayName.getName() + " = ? ");
+  private static final QueryTemplate SPACE_BY_GROUP_ID = new QueryTemplate(
+      SpaceEntity.groupId.getName() + " = ? ");
+  private static final QueryTemplate SPACE_BY_URL = new QueryTemplate(
+      SpaceEntity.url.getName() + " = ? ");
+  private static final QueryTemplate ACCESSIBLE_SPACES = new QueryTemplate(
+      SpaceEntity.membersId.getName() + " = ? OR " + SpaceEntity.managerMembersId.getName() + " = ? ");
+  private static final QueryTemplate PUBLIC_SPACES = new QueryTemplate(
+      "NOT " + SpaceEntity.membersId.getName() + " = ? AND NOT " + SpaceEntity.managerMembersId.getName()
+      + " = ? AND NOT " + SpaceEntity.invitedMembersId.getName() + " = ? AND NOT "
+      + SpaceEntity.pendingMembersId.getName() + " = ? ");
+  private static final QueryTemplate PENDING_SPACES = new QueryTemplate(
+      SpaceEntity.pendingMembersId.getName() + " = ? ");
+  private static final QueryTemplate INVITED_SPACES = new QueryTemplate(
+      SpaceEntity.invitedMembersId.getName() + " = ? ");
+  private static final QueryTemplate EDITABLE_SPACES = new QueryTemplate(
+      SpaceEntity.managerMembersId.getName() + " = ? ");
+
   /**
    * The identity storage
    */
@@ -164,6 +194,13 @@ public class SpaceStorageImpl extends AbstractStorage implements SpaceStorage {
       }};
 
     public abstract SpaceListEntity refsOf(IdentityEntity identityEntity);
+
+    /**
+     * Whether the ref gives access to the space, so to its activities in the activity feed.
+     */
+    public boolean isAccessible() {
+      return this == MEMBER || this == MANAGER;
+    }
   }
 
   private class UpdateContext {
@@ -194,55 +231,183 @@ public class SpaceStorageImpl extends AbstractStorage implements SpaceStorage {
       return l1;
     }
 
-    List<String> l = new ArrayList(Arrays.asList(l1));
-    l.removeAll(Arrays.asList(l2));
-    return l.toArray(new String[]{});
+    Set<String> excluded = new HashSet<String>(Arrays.asList(l2));
+    List<String> l = new ArrayList<String>();
+    for (String s : l1) {
+      if (!excluded.contains(s)) {
+        l.add(s);
+      }
+    }
+    return l.toArray(new String[l.size()]);
   }
 
-  private void createRefs(SpaceEntity spaceEntity, Space space) throws NodeNotFoundException {
+  /**
+   * Updates the refs of the users to the space and returns the users whose refs changed.
+   */
+  private Set<String> createRefs(SpaceEntity spaceEntity, Space space) throws NodeNotFoundException {
+
+    Map<RefType, UpdateContext> contexts = new EnumMap<RefType, UpdateContext>(RefType.class);
+
+    contexts.put(RefType.MEMBER, new UpdateContext(
+        sub(space.getMembers(), spaceEntity.getMembersId()),
+        sub(spaceEntity.getMembersId(), space.getMembers())));
+    contexts.put(RefType.MANAGER, new UpdateContext(
+        sub(space.getManagers(), spaceEntity.getManagerMembersId()),
+        sub(spaceEntity.getManagerMembersId(), space.getManagers())));
+    contexts.put(RefType.INVITED, new UpdateContext(
+        sub(space.getInvitedUsers(), spaceEntity.getInvitedMembersId()),
+        sub(spaceEntity.getInvitedMembersId(), space.getInvitedUsers())));
+    contexts.put(RefType.PENDING, new UpdateContext(
+        sub(space.getPendingUsers(), spaceEntity.getPendingMembersId()),
+        sub(spaceEntity.getPendingMembersId(), space.getPendingUsers())));
+
+    // Resolve each impacted user once, even when moved in several lists
+    Map<String, IdentityEntity> identities = findIdentityEntities(contexts.values());
 
-    String[] removedMembers = sub(spaceEntity.getMembersId(), space.getMembers());
-    String[] removedManagers = sub(spaceEntity.getManagerMembersId(), space.getManagers());
-    String[] removedInvited = sub(spaceEntity.getInvitedMembersId(), space.getInvitedUsers());
-    String[] removedPending = sub(spaceEntity.getPendingMembersId(), space.getPendingUsers());
+    //
+    Set<String> readers = new HashSet<String>();
+    for (Map.Entry<String, IdentityEntity> entry : identities.entrySet()) {
+      if (isAccessible(entry.getValue(), spaceEntity)) {
+        readers.add(entry.getKey());
+      }
+    }
+
+    //
+    for (Map.Entry<RefType, UpdateContext> entry : contexts.entrySet()) {
+      manageRefList(entry.getValue(), spaceEntity, entry.getKey(), identities);
+    }
 
-    String[] addedMembers = sub(space.getMembers(), spaceEntity.getMembersId());
-    String[] addedManagers = sub(space.getManagers(), spaceEntity.getManagerMembersId());
-    String[] addedInvited = sub(space.getInvitedUsers(), spaceEntity.getInvitedMembersId());
-    String[] addedPending = sub(space.getPendingUsers(), spaceEntity.getPendingMembersId());
+    // The activities of the space are loaded once for all the users who gained or lost the access
+    IdentityEntity spaceIdentity = findSpaceIdentity(spaceEntity);
+    List<ActivityEntity> activities = null;
+    for (Map.Entry<String, IdentityEntity> entry : identities.entrySet()) {
+      boolean reader = isAccessible(entry.getValue(), spaceEntity);
+      if (spaceIdentity == null || reader == readers.contains(entry.getKey())) {
+        continue;
+      }
+      if (activities == null) {
+        activities = _getFeedActivities(spaceIdentity);
+      }
+      if (reader) {
+        _mergeIntoFeed(entry.getValue(), spaceIdentity, activities);
+      }
+      else {
+        _removeFromFeed(entry.getValue(), spaceIdentity, activities);
+      }
+    }
 
-    manageRefList(new UpdateContext(addedMembers, removedMembers), spaceEntity, RefType.MEMBER);
-    manageRefList(new UpdateContext(addedManagers, removedManagers), spaceEntity, RefType.MANAGER);
-    manageRefList(new UpdateContext(addedInvited, removedInvited), spaceEntity, RefType.INVITED);
-    manageRefList(new UpdateContext(addedPending, removedPending), spaceEntity, RefType.PENDING);
+    //
+    return identities.keySet();
 
   }
 
-  private void manageRefList(UpdateContext context, SpaceEntity spaceEntity, RefType type) {
+  private Map<String, IdentityEntity> findIdentityEntities(Collection<UpdateContext> contexts) {
 
-    if (context.getAdded() != null) {
-      for (String userName : context.getAdded()) {
-        try {
-          IdentityEntity identityEntity = identityStorage._findIdentityEntity(OrganizationIdentityProvider.NAME, userName);
-          SpaceListEntity listRef = type.refsOf(identityEntity);
-          SpaceRef ref = listRef.getRef(spaceEntity.getName());
-          ref.setSpaceRef(spaceEntity);
-        }
-        catch (NodeNotFoundException e) {
-          LOG.warn(e.getMessage(), e);
-        }
+    Set<String> userNames = new HashSet<String>();
+    for (UpdateContext context : contexts) {
+      userNames.addAll(Arrays.asList(context.getAdded()));
+      userNames.addAll(Arrays.asList(context.getRemoved()));
+    }
+
+    Map<String, IdentityEntity> identities = new HashMap<String, IdentityEntity>();
+    if (userNames.isEmpty()) {
+      return identities;
+    }
+
+    ProviderEntity providerEntity = getProviderRoot().getProviders().get(OrganizationIdentityProvider.NAME);
+    Map<String, IdentityEntity> providerIdentities =
+        (providerEntity != null ? providerEntity.getIdentities() : Collections.<String, IdentityEntity>emptyMap());
+
+    for (String userName : userNames) {
+      IdentityEntity identityEntity = providerIdentities.get(userName);
+      if (identityEntity != null) {
+        identities.put(userName, identityEntity);
+      }
+      else {
+        LOG.warn("The node " + OrganizationIdentityProvider.NAME + "/" + userName + " doesn't be found");
       }
+    }
 
-      for (String userName : context.getRemoved()) {
-        try {
-          IdentityEntity identityEntity = identityStorage._findIdentityEntity(OrganizationIdentityProvider.NAME, userName);
-          SpaceListEntity listRef = type.refsOf(identityEntity);
-          SpaceRef ref = listRef.getRef(spaceEntity.getName());
-          getSession().remove(ref);
-        }
-        catch (NodeNotFoundException e) {
-          LOG.warn(e.getMessage(), e);
-        }
+    return identities;
+
+  }
+
+  private void manageRefList(UpdateContext context, SpaceEntity spaceEntity, RefType type,
+                             Map<String, IdentityEntity> identities) {
+
+    for (String userName : context.getAdded()) {
+      IdentityEntity identityEntity = identities.get(userName);
+      if (identityEntity == null) {
+        continue;
+      }
+      SpaceListEntity listRef = type.refsOf(identityEntity);
+      SpaceRef ref = listRef.getRef(spaceEntity.getName());
+      ref.setSpaceRef(spaceEntity);
+    }
+
+    for (String userName : context.getRemoved()) {
+      IdentityEntity identityEntity = identities.get(userName);
+      if (identityEntity == null) {
+        continue;
+      }
+      SpaceRef ref = type.refsOf(identityEntity).getRefs().get(spaceEntity.getName());
+      if (ref != null) {
+        getSession().remove(ref);
+      }
+    }
+  }
+
+  /**
+   * Whether the user can read the activities of the space, as a member or as a manager.
+   */
+  private boolean isAccessible(IdentityEntity identityEntity, SpaceEntity spaceEntity) {
+
+    for (RefType type : RefType.values()) {
+      if (type.isAccessible() && type.refsOf(identityEntity).getRefs().containsKey(spaceEntity.getName())) {
+        return true;
+      }
+    }
+    return false;
+
+  }
+
+  /**
+   * Gets the identity of the space, null when it is not created yet.
+   */
+  private IdentityEntity findSpaceIdentity(SpaceEntity spaceEntity) {
+
+    ProviderEntity providerEntity = getProviderRoot().getProviders().get(SpaceIdentityProvider.NAME);
+    return (providerEntity != null ? providerEntity.getIdentities().get(spaceEntity.getPrettyName()) : null);
+
+  }
+
+  /**
+   * Removes the activities of a space being removed from the feeds of its members.
+   */
+  private void removeFromFeeds(SpaceEntity spaceEntity) {
+
+    IdentityEntity spaceIdentity = findSpaceIdentity(spaceEntity);
+    if (spaceIdentity == null) {
+      return;
+    }
+
+    //
+    Set<String> userNames = new HashSet<String>();
+    for (String[] ids : new String[][]{spaceEntity.getMembersId(), spaceEntity.getManagerMembersId()}) {
+      if (ids != null) {
+        userNames.addAll(Arrays.asList(ids));
+      }
+    }
+
+    //
+    List<ActivityEntity> activities = _getFeedActivities(spaceIdentity);
+    for (String userName : userNames) {
+      try {
+        IdentityEntity identityEntity = identityStorage._findIdentityEntity(OrganizationIdentityProvider.NAME, userName);
+        _removeFromFeed(identityEntity, spaceIdentity, activities);
+      }
+      catch (NodeNotFoundException e) {
+        LOG.debug(e.getMessage(), e);
       }
     }
   }
@@ -373,14 +538,16 @@ public class SpaceStorageImpl extends AbstractStorage implements SpaceStorage {
   private Query<SpaceEntity> getAccessibleSpacesByFilterQuery(String userId, SpaceFilter spaceFilter) {
 
     QueryBuilder<SpaceEntity> builder = getSession().createQueryBuilder(SpaceEntity.class);
-    WhereExpression whereExpression = new WhereExpression();
 
-    if (validateFilter(spaceFilter)) {
-      _applyFilter(whereExpression, spaceFilter);
-      whereExpression.and();
-      whereExpression.startGroup();
+    if (!validateFilter(spaceFilter)) {
+      return builder.where(ACCESSIBLE_SPACES.bind(userId, userId)).get();
     }
 
+    WhereExpression whereExpression = new WhereExpression();
+    _applyFilter(whereExpression, spaceFilter);
+    whereExpression.and();
+    whereExpression.startGroup();
+
     whereExpression
         .equals(SpaceEntity.membersId, userId)
         .or()
@@ -400,13 +567,15 @@ public class SpaceStorageImpl extends AbstractStorage implements SpaceStorage {
   private Query<SpaceEntity> getPublicSpacesQuery(String userId, SpaceFilter spaceFilter) {
 
     QueryBuilder<SpaceEntity> builder = getSession().createQueryBuilder(SpaceEntity.class);
-    WhereExpression whereExpression = new WhereExpression();
 
-    if (validateFilter(spaceFilter)) {
-      _applyFilter(whereExpression, spaceFilter);
-      whereExpression.and();
+    if (!validateFilter(spaceFilter)) {
+      return builder.where(PUBLIC_SPACES.bind(userId, userId, userId, userId)).get();
     }
 
+    WhereExpression whereExpression = new WhereExpression();
+    _applyFilter(whereExpression, spaceFilter);
+    whereExpression.and();
+
     builder.where(whereExpression
         .not().equals(SpaceEntity.membersId, userId)
         .and().not().equals(SpaceEntity.managerMembersId, userId)
@@ -422,13 +591,15 @@ public class SpaceStorageImpl extends AbstractStorage implements SpaceStorage {
   private Query<SpaceEntity> getPendingSpacesFilterQuery(String userId, SpaceFilter spaceFilter) {
 
     QueryBuilder<SpaceEntity> builder = getSession().createQueryBuilder(SpaceEntity.class);
-    WhereExpression whereExpression = new WhereExpression();
 
-    if (validateFilter(spaceFilter)) {
-      _applyFilter(whereExpression, spaceFilter);
-      whereExpression.and();
+    if (!validateFilter(spaceFilter)) {
+      return builder.where(PENDING_SPACES.bind(userId)).get();
     }
 
+    WhereExpression whereExpression = new WhereExpression();
+    _applyFilter(whereExpression, spaceFilter);
+    whereExpression.and();
+
     builder.where(whereExpression
         .equals(SpaceEntity.pendingMembersId, userId)
         .toString()
@@ -441,13 +612,15 @@ public class SpaceStorageImpl extends AbstractStorage implements SpaceStorage {
   private Query<SpaceEntity> getInvitedSpacesFilterQuery(String userId, SpaceFilter spaceFilter) {
 
     QueryBuilder<SpaceEntity> builder = getSession().createQueryBuilder(SpaceEntity.class);
-    WhereExpression whereExpression = new WhereExpression();
 
-    if (validateFilter(spaceFilter)) {
-      _applyFilter(whereExpression, spaceFilter);
-      whereExpression.and();
+    if (!validateFilter(spaceFilter)) {
+      return builder.where(INVITED_SPACES.bind(userId)).get();
     }
 
+    WhereExpression whereExpression = new WhereExpression();
+    _applyFilter(whereExpression, spaceFilter);
+    whereExpression.and();
+
     builder.where(whereExpression
         .equals(SpaceEntity.invitedMembersId, userId)
         .toString()
@@ -460,13 +633,15 @@ public class SpaceStorageImpl extends AbstractStorage implements SpaceStorage {
   private Query<SpaceEntity> getEditableSpacesFilterQuery(String userId, SpaceFilter spaceFilter) {
 
     QueryBuilder<SpaceEntity> builder = getSession().createQueryBuilder(SpaceEntity.class);
-    WhereExpression whereExpression = new WhereExpression();
 
-    if (validateFilter(spaceFilter)) {
-      _applyFilter(whereExpression, spaceFilter);
-      whereExpression.and();
+    if (!validateFilter(spaceFilter)) {
+      return builder.where(EDITABLE_SPACES.bind(userId)).get();
     }
 
+    WhereExpression whereExpression = new WhereExpression();
+    _applyFilter(whereExpression, spaceFilter);
+    whereExpression.and();
+
     builder.where(whereExpression
         .equals(SpaceEntity.managerMembersId, userId)
         .toString()
@@ -491,11 +666,8 @@ public class SpaceStorageImpl extends AbstractStorage implements SpaceStorage {
     Space space = null;
 
     QueryBuilder<SpaceEntity> builder = getSession().createQueryBuilder(SpaceEntity.class);
-    WhereExpression whereExpression = new WhereExpression();
 
-    whereExpression.equals(SpaceEntity.displayName, spaceDisplayName);
-
-    QueryResult<SpaceEntity> result = builder.where(whereExpression.toString()).get().objects();
+    QueryResult<SpaceEntity> result = builder.where(SPACE_BY_DISPLAY_NAME.bind(spaceDisplayName)).get().objects();
     
     if (result.hasNext()) {
       space = new Space();
@@ -509,6 +681,19 @@ public class SpaceStorageImpl extends AbstractStorage implements SpaceStorage {
    * {@inheritDoc}
    */
   public void saveSpace(Space space, boolean isNew) throws SpaceStorageException {
+    saveSpace(space, isNew, new HashSet<String>());
+  }
+
+  /**
+   * Saves the space and collects the users whose memberships to the space changed, they are the only users
+   * whose space lists are impacted by the save.
+   *
+   * @param space the space to save
+   * @param isNew true if the space is created
+   * @param updatedUsers the set to which the names of the updated users are added
+   * @throws SpaceStorageException
+   */
+  public void saveSpace(Space space, boolean isNew, Set<String> updatedUsers) throws SpaceStorageException {
 
     SpaceEntity entity;
 
@@ -522,7 +707,7 @@ public class SpaceStorageImpl extends AbstractStorage implements SpaceStorage {
       }
 
       //
-      createRefs(entity, space);
+      updatedUsers.addAll(createRefs(entity, space));
       fillEntityFromSpace(space, entity);
 
       //
@@ -551,7 +736,11 @@ public class SpaceStorageImpl extends AbstractStorage implements SpaceStorage {
 
     //
     try {
-      name = _findById(SpaceEntity.class, id).getPrettyName();
+      SpaceEntity spaceEntity = _findById(SpaceEntity.class, id);
+      name = spaceEntity.getPrettyName();
+
+      //
+      removeFromFeeds(spaceEntity);
     }
     catch (NodeNotFoundException e) {
       throw new SpaceStorageException(SpaceStorageException.Type.FAILED_TO_DELETE_SPACE, e.getMessage());
@@ -1034,6 +1223,42 @@ public class SpaceStorageImpl extends AbstractStorage implements SpaceStorage {
     return spaces;
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  public List<String> getAccessibleSpacesIdentityIds(String userId) throws SpaceStorageException {
+
+    IdentityEntity identityEntity;
+    try {
+      identityEntity = identityStorage._findIdentityEntity(OrganizationIdentityProvider.NAME, userId);
+    }
+    catch (NodeNotFoundException e) {
+      return new ArrayList<String>();
+    }
+
+    //
+    Set<String> names = new LinkedHashSet<String>();
+    for (RefType type : RefType.values()) {
+      if (type.isAccessible()) {
+        names.addAll(type.refsOf(identityEntity).getRefs().keySet());
+      }
+    }
+
+    //
+    List<String> ids = new ArrayList<String>();
+    for (String name : names) {
+      try {
+        ids.add(identityStorage._findIdentityEntity(SpaceIdentityProvider.NAME, name).getId());
+      }
+      catch (NodeNotFoundException e) {
+        LOG.debug(e.getMessage(), e);
+      }
+    }
+
+    return ids;
+
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -1342,9 +1567,8 @@ public class SpaceStorageImpl extends AbstractStorage implements SpaceStorage {
     // TODO : avoid JCR query ?
 
     QueryBuilder<SpaceEntity> builder = getSession().createQueryBuilder(SpaceEntity.class);
-    WhereExpression whereExpression = new WhereExpression();
 
-    builder.where(whereExpression.equals(SpaceEntity.groupId, groupId).toString());
+    builder.where(SPACE_BY_GROUP_ID.bind(groupId));
 
     QueryResult<SpaceEntity> result = builder.get().objects();
 
@@ -1372,9 +1596,7 @@ public class SpaceStorageImpl extends AbstractStorage implements SpaceStorage {
     QueryBuilder<SpaceEntity> builder = getSession().createQueryBuilder(SpaceEntity.class);
 
     if (url != null) {
-      WhereExpression whereExpression = new WhereExpression();
-      whereExpression.equals(SpaceEntity.url, url);
-      builder.where(whereExpression.toString());
+      builder.where(SPACE_BY_URL.bind(url));
     }
 
     QueryResult<SpaceEntity> result = builder.get().objects();
@@ -1382,7 +1604,7 @@ public class SpaceStorageImpl extends AbstractStorage implements SpaceStorage {
     if (result.hasNext()) {
 
       Space space = new Space();
-      SpaceEntity entity =  builder.get().objects().next();
+      SpaceEntity entity =  result.next();
 
       fillSpaceFromEntity(entity, space);
 
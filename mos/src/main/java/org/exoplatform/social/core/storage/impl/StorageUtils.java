@@ -69,6 +69,20 @@ public class StorageUtils {
     }
   }
 
+  public static void applyWhereFromIds(final WhereExpression whereExpression, final List<String> ids) {
+
+    //
+    whereExpression.startGroup();
+    for (int i = 0; ids.size() > i; ++i) {
+      whereExpression.equals(JCRProperties.id, ids.get(i));
+      if (i + 1 < ids.size()) {
+        whereExpression.or();
+      }
+    }
+    whereExpression.endGroup();
+
+  }
+
   public static void applyWhereFromIdentity(final WhereExpression whereExpression, final List<Identity> identities) {
 
     //
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2003-2011 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.exoplatform.social.core.storage.query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A where statement whose shape is parsed once, the values are bound at each call.
+ * The parameters of the shape are marked with a '?', a Long value is bound as is and the other values are
+ * bound as quoted literals whose quotes are doubled, with the same escaping as {@link WhereExpression}.
+ *
+ * @version $Revision$
+ */
+public class QueryTemplate {
+
+  public static final char PARAMETER = '?';
+
+  private final String[] fragments;
+
+  private final int length;
+
+  public QueryTemplate(String shape) {
+
+    List<String> parts = new ArrayList<String>();
+    int start = 0;
+    int index;
+    while ((index = shape.indexOf(PARAMETER, start)) >= 0) {
+      parts.add(shape.substring(start, index));
+      start = index + 1;
+    }
+    parts.add(shape.substring(start));
+
+    this.fragments = parts.toArray(new String[parts.size()]);
+    this.length = shape.length();
+
+  }
+
+  public int getParameterCount() {
+    return fragments.length - 1;
+  }
+
+  /**
+   * Builds the statement with the values bound to the parameters of the shape.
+   *
+   * @param values the values of the parameters, in order
+   * @return the statement
+   */
+  public String bind(Object... values) {
+
+    if (values.length != getParameterCount()) {
+      throw new IllegalArgumentException(
+          "Expected " + getParameterCount() + " values but got " + values.length);
+    }
+
+    StringBuilder builder = new StringBuilder(length + 32 * values.length);
+    builder.append(fragments[0]);
+    for (int i = 0; i < values.length; ++i) {
+      appendLiteral(builder, values[i]);
+      builder.append(fragments[i + 1]);
+    }
+    return builder.toString();
+
+  }
+
+  private void appendLiteral(StringBuilder builder, Object value) {
+
+    if (value == null) {
+      throw new IllegalArgumentException();
+    }
+
+    if (value instanceof Long) {
+      builder.append(value);
+      return;
+    }
+
+    WhereExpression.appendLiteral(builder, value);
+
+  }
+
+}
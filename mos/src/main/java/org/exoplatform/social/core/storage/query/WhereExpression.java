@@ -25,9 +25,6 @@ import com.google.caja.parser.js.QuotedExpression;
  */
 public class WhereExpression {
 
-  private static final String QUOTED = "'%s'";
-  private static final String DIRECT = "%s";
-
   private final StringBuilder builder;
 
   private int openGroup = 0;
@@ -39,49 +36,54 @@ public class WhereExpression {
   public <T> WhereExpression equals(PropertyLiteralExpression<T> property, T value) {
     checkParam(property, value);
 
-    builder.append(String.format("%s = %s ", property.getName(), espace(property, value)));
+    builder.append(property.getName()).append(" = ");
+    espace(property, value).append(' ');
     return this;
   }
 
   public <T> WhereExpression lesser(PropertyLiteralExpression<T> property, T value) {
     checkParam(property, value);
 
-    builder.append(String.format("%s < %s ", property.getName(), value));
+    builder.append(property.getName()).append(" < ").append(value).append(' ');
     return this;
   }
 
   public <T> WhereExpression lessEq(PropertyLiteralExpression<T> property, T value) {
     checkParam(property, value);
 
-    builder.append(String.format("%s <= %s ", property.getName(), value));
+    builder.append(property.getName()).append(" <= ").append(value).append(' ');
     return this;
   }
 
   public <T> WhereExpression greater(PropertyLiteralExpression<T> property, T value) {
     checkParam(property, value);
 
-    builder.append(String.format("%s > %s ", property.getName(), espace(property, value)));
+    builder.append(property.getName()).append(" > ");
+    espace(property, value).append(' ');
     return this;
   }
 
   public <T> WhereExpression greaterEq(PropertyLiteralExpression<T> property, T value) {
     checkParam(property, value);
 
-    builder.append(String.format("%s >= '%s' ", property.getName(), value));
+    builder.append(property.getName()).append(" >= ");
+    appendLiteral(builder, value).append(' ');
     return this;
   }
 
   public <T> WhereExpression like(PropertyLiteralExpression<T> property, T value) {
     checkParam(property, value);
 
-    builder.append(String.format("%s LIKE '%s' ", property.getName(), value));
+    builder.append(property.getName()).append(" LIKE ");
+    appendLiteral(builder, value).append(' ');
     return this;
   }
 
   public <T> WhereExpression like(CallExpression<T> call, T value) {
     checkParam(call.getProperty(), value);
 
-    builder.append(String.format("%s(%s) LIKE '%s' ", call.getFunction(), call.getProperty().getName(), value));
+    builder.append(call.getFunction()).append('(').append(call.getProperty().getName()).append(") LIKE ");
+    appendLiteral(builder, value).append(' ');
     return this;
   }
 
@@ -89,12 +91,13 @@ public class WhereExpression {
 
     checkParam(property, value);
 
-    builder.append(String.format("CONTAINS (%s, '%s') ", property.getName(), value));
+    builder.append("CONTAINS (").append(property.getName()).append(", ");
+    appendLiteral(builder, value).append(") ");
     return this;
   }
 
   public <T> WhereExpression orderBy(PropertyLiteralExpression<T> property, Order order) {
-    builder.append(String.format("ORDER BY %s %s", property.getName(), order.toString()));
+    builder.append("ORDER BY ").append(property.getName()).append(' ').append(order.toString());
     return this;
   }
 
@@ -140,10 +143,31 @@ public class WhereExpression {
     return new CallExpression(function, property);
   }
 
-  private <T> String espace(PropertyLiteralExpression<T> property, T value) {
-    String format = (property.getType().equals(Long.class) ? DIRECT : QUOTED);
-
-    return String.format(format, value);
+  private <T> StringBuilder espace(PropertyLiteralExpression<T> property, T value) {
+    if (property.getType().equals(Long.class)) {
+      return builder.append(value);
+    }
+    return appendLiteral(builder, value);
+  }
+
+  /**
+   * Appends the value as a quoted literal, the quotes of the value are escaped by doubling them.
+   *
+   * @param builder the builder
+   * @param value the value
+   * @return the builder
+   */
+  static StringBuilder appendLiteral(StringBuilder builder, Object value) {
+    String literal = String.valueOf(value);
+    builder.append('\'');
+    for (int i = 0; i < literal.length(); ++i) {
+      char c = literal.charAt(i);
+      if (c == '\'') {
+        builder.append('\'');
+      }
+      builder.append(c);
+    }
+    return builder.append('\'');
   }
 
   private <T> void checkParam(PropertyLiteralExpression<T> property, T value) {
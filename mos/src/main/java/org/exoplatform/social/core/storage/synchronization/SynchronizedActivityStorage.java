@@ -26,6 +26,7 @@ import org.exoplatform.social.core.storage.api.IdentityStorage;
 import org.exoplatform.social.core.storage.api.RelationshipStorage;
 import org.exoplatform.social.core.storage.api.SpaceStorage;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.SortedSet;
 
@@ -60,6 +61,22 @@ public class SynchronizedActivityStorage extends ActivityStorageImpl {
 
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<ExoSocialActivity> getActivities(final Collection<String> activityIds) throws ActivityStorageException {
+
+    boolean created = startSynchronization();
+    try {
+      return super.getActivities(activityIds);
+    }
+    finally {
+      stopSynchronization(created);
+    }
+
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -715,4 +732,20 @@ public class SynchronizedActivityStorage extends ActivityStorageImpl {
     }
 
   }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int repairFeeds(final int chunkSize) {
+
+    boolean created = startSynchronization();
+    try {
+      return super.repairFeeds(chunkSize);
+    }
+    finally {
+      stopSynchronization(created);
+    }
+
+  }
 }
@@ -17,8 +17,10 @@
 
 package org.exoplatform.social.core.storage.synchronization;
 
+import java.util.Collection;
 import java.util.List;
 
+import org.exoplatform.container.xml.InitParams;
 import org.exoplatform.social.core.identity.model.Identity;
 import org.exoplatform.social.core.identity.model.Profile;
 import org.exoplatform.social.core.profile.ProfileFilter;
@@ -33,6 +35,10 @@ import org.exoplatform.social.core.storage.impl.IdentityStorageImpl;
  */
 public class SynchronizedIdentityStorage extends IdentityStorageImpl {
 
+  public SynchronizedIdentityStorage(final InitParams params) {
+    super(params);
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -114,6 +120,22 @@ public class SynchronizedIdentityStorage extends IdentityStorageImpl {
 
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<Profile> loadProfiles(final Collection<Identity> identities) throws IdentityStorageException {
+
+    boolean created = startSynchronization();
+    try {
+      return super.loadProfiles(identities);
+    }
+    finally {
+      stopSynchronization(created);
+    }
+
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -130,6 +152,39 @@ public class SynchronizedIdentityStorage extends IdentityStorageImpl {
 
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<Identity> findIdentities(final String providerId, final Collection<String> remoteIds)
+      throws IdentityStorageException {
+
+    boolean created = startSynchronization();
+    try {
+      return super.findIdentities(providerId, remoteIds);
+    }
+    finally {
+      stopSynchronization(created);
+    }
+
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<Identity> findIdentitiesById(final Collection<String> nodeIds) throws IdentityStorageException {
+
+    boolean created = startSynchronization();
+    try {
+      return super.findIdentitiesById(nodeIds);
+    }
+    finally {
+      stopSynchronization(created);
+    }
+
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -291,6 +291,22 @@ public class SynchronizedRelationshipStorage extends RelationshipStorageImpl {
 
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<String> getConnectionIds(final Identity identity) throws RelationshipStorageException {
+
+    boolean created = startSynchronization();
+    try {
+      return super.getConnectionIds(identity);
+    }
+    finally {
+      stopSynchronization(created);
+    }
+
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -306,4 +322,20 @@ public class SynchronizedRelationshipStorage extends RelationshipStorageImpl {
     }
 
   }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int repairCounters(final int chunkSize) {
+
+    boolean created = startSynchronization();
+    try {
+      return super.repairCounters(chunkSize);
+    }
+    finally {
+      stopSynchronization(created);
+    }
+
+  }
 }
@@ -18,6 +18,7 @@
 package org.exoplatform.social.core.storage.synchronization;
 
 import java.util.List;
+import java.util.Set;
 
 import org.exoplatform.social.core.space.SpaceFilter;
 import org.exoplatform.social.core.space.model.Space;
@@ -74,6 +75,23 @@ public class SynchronizedSpaceStorage extends SpaceStorageImpl {
 
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void saveSpace(final Space space, final boolean isNew, final Set<String> updatedUsers)
+      throws SpaceStorageException {
+
+    boolean created = startSynchronization();
+    try {
+      super.saveSpace(space, isNew, updatedUsers);
+    }
+    finally {
+      stopSynchronization(created);
+    }
+
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -466,6 +484,22 @@ public class SynchronizedSpaceStorage extends SpaceStorageImpl {
 
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<String> getAccessibleSpacesIdentityIds(final String userId) throws SpaceStorageException {
+
+    boolean created = startSynchronization();
+    try {
+      return super.getAccessibleSpacesIdentityIds(userId);
+    }
+    finally {
+      stopSynchronization(created);
+    }
+
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -76,4 +76,83 @@ public class MentionsProcessorTest extends AbstractCoreTest {
     assertEquals("Multiple substitution : ",activity.getTitle(), rootLink + " and " + johnLink + " title");
     assertEquals(activity.getBody(), "body with " + rootLink + " and " + johnLink);*/
   }
+
+  public void testNoMention() throws Exception {
+    MentionsProcessor processor = getProcessor();
+    processor.processActivity(null);
+
+    ExoSocialActivity activity = new ExoSocialActivityImpl();
+    processor.processActivity(activity);
+    assertNull(activity.getTitle());
+    assertNull(activity.getBody());
+
+    activity.setTitle("no mention");
+    processor.processActivity(activity);
+    assertEquals("no mention", activity.getTitle());
+    assertNull(activity.getBody());
+  }
+
+  public void testSeveralMentions() throws Exception {
+    String rootLink = LinkProvider.getProfileLink(rootIdentity, LinkProvider.DEFAULT_PORTAL_OWNER);
+    String johnLink = LinkProvider.getProfileLink(johnIdentity, LinkProvider.DEFAULT_PORTAL_OWNER);
+
+    ExoSocialActivity activity = new ExoSocialActivityImpl();
+    activity.setTitle("@root and @john title");
+    activity.setBody("body with @john");
+    getProcessor().processActivity(activity);
+    assertEquals(rootLink + " and " + johnLink + " title", activity.getTitle());
+    assertEquals("body with " + johnLink, activity.getBody());
+  }
+
+  public void testUnknownMention() throws Exception {
+    String rootLink = LinkProvider.getProfileLink(rootIdentity, LinkProvider.DEFAULT_PORTAL_OWNER);
+
+    ExoSocialActivity activity = new ExoSocialActivityImpl();
+    activity.setTitle("@root and @nobody");
+    activity.setBody("only @nobody");
+    getProcessor().processActivity(activity);
+    assertEquals(rootLink + " and @nobody", activity.getTitle());
+    assertEquals("only @nobody", activity.getBody());
+    assertNull(identityManager.getIdentityStorage().findIdentity(OrganizationIdentityProvider.NAME, "nobody"));
+  }
+
+  public void testMentionWithoutIdentity() throws Exception {
+    identityManager.deleteIdentity(johnIdentity);
+
+    ExoSocialActivity activity = new ExoSocialActivityImpl();
+    activity.setTitle("@john title");
+    getProcessor().processActivity(activity);
+    johnIdentity = identityManager.getIdentityStorage().findIdentity(OrganizationIdentityProvider.NAME, "john");
+    assertNotNull(johnIdentity);
+    String johnLink = LinkProvider.getProfileLink(johnIdentity, LinkProvider.DEFAULT_PORTAL_OWNER);
+    assertEquals(johnLink + " title", activity.getTitle());
+  }
+
+  public void testDeletedMention() throws Exception {
+    String rootLink = LinkProvider.getProfileLink(rootIdentity, LinkProvider.DEFAULT_PORTAL_OWNER);
+    johnIdentity.setDeleted(true);
+    identityManager.getIdentityStorage().updateIdentity(johnIdentity);
+
+    ExoSocialActivity activity = new ExoSocialActivityImpl();
+    activity.setTitle("@root and @john");
+    getProcessor().processActivity(activity);
+    assertEquals(rootLink + " and @john", activity.getTitle());
+  }
+
+  public void testDuplicateMentions() throws Exception {
+    String rootLink = LinkProvider.getProfileLink(rootIdentity, LinkProvider.DEFAULT_PORTAL_OWNER);
+
+    ExoSocialActivity activity = new ExoSocialActivityImpl();
+    activity.setTitle("@root @root");
+    activity.setBody("@root");
+    getProcessor().processActivity(activity);
+    assertEquals(rootLink + " " + rootLink, activity.getTitle());
+    assertEquals(rootLink, activity.getBody());
+  }
+
+  private MentionsProcessor getProcessor() {
+    MentionsProcessor processor = (MentionsProcessor) getContainer().getComponentInstanceOfType(MentionsProcessor.class);
+    assertNotNull("processor must not be null", processor);
+    return processor;
+  }
 }
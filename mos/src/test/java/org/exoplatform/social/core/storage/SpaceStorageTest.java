@@ -407,6 +407,74 @@ public class SpaceStorageTest extends AbstractCoreTest {
     assertEquals("accessibleSpaces.size() must return: " + countSpace, countSpace, accessibleSpaces.size());
   }
 
+  /**
+   * Test {@link org.exoplatform.social.core.storage.SpaceStorage#saveSpace(Space, boolean)} with a large membership change
+   *
+   * @throws Exception
+   */
+  public void testSaveSpaceWithLargeMembership() throws Exception {
+    int countUser = 200;
+    String[] users = new String[countUser];
+    for (int i = 0; i < countUser; i ++) {
+      Identity identity = new Identity("organization", "large" + i);
+      identityStorage.saveIdentity(identity);
+      tearDownIdentityList.add(identity);
+      users[i] = identity.getRemoteId();
+    }
+
+    Space space = this.getSpaceInstance(0);
+    String[] firstHalf = new String[countUser / 2];
+    System.arraycopy(users, 0, firstHalf, 0, firstHalf.length);
+    space.setMembers(firstHalf);
+    spaceStorage.saveSpace(space, true);
+    tearDownSpaceList.add(space);
+
+    assertEquals(1, spaceStorage.getMemberSpacesCount("large0"));
+    assertEquals(0, spaceStorage.getMemberSpacesCount("large" + (countUser - 1)));
+
+    String[] secondHalf = new String[countUser - firstHalf.length];
+    System.arraycopy(users, firstHalf.length, secondHalf, 0, secondHalf.length);
+    space.setMembers(secondHalf);
+    space.setManagers(firstHalf);
+    spaceStorage.saveSpace(space, false);
+
+    assertEquals(0, spaceStorage.getMemberSpacesCount("large0"));
+    assertEquals(1, spaceStorage.getMemberSpacesCount("large" + (countUser - 1)));
+    assertEquals(1, spaceStorage.getAccessibleSpacesCount("large0"));
+    assertEquals(1, spaceStorage.getAccessibleSpacesCount("large" + (countUser - 1)));
+  }
+
+  /**
+   * Test {@link org.exoplatform.social.core.storage.SpaceStorage#getAccessibleSpacesIdentityIds(String)}
+   *
+   * @throws Exception
+   */
+  public void testGetAccessibleSpacesIdentityIds() throws Exception {
+    int countSpace = 5;
+    List<String> spaceIdentityIds = new ArrayList<String>();
+    for (int i = 0; i < countSpace; i ++) {
+      Space space = this.getSpaceInstance(i);
+      spaceStorage.saveSpace(space, true);
+      tearDownSpaceList.add(space);
+
+      Identity identity = new Identity(SpaceIdentityProvider.NAME, space.getPrettyName());
+      identityStorage.saveIdentity(identity);
+      tearDownIdentityList.add(identity);
+      spaceIdentityIds.add(identity.getId());
+    }
+
+    List<String> managerIds = spaceStorage.getAccessibleSpacesIdentityIds("demo");
+    assertEquals(countSpace, managerIds.size());
+    assertTrue(managerIds.containsAll(spaceIdentityIds));
+
+    List<String> memberIds = spaceStorage.getAccessibleSpacesIdentityIds("raul");
+    assertEquals(countSpace, memberIds.size());
+    assertTrue(memberIds.containsAll(spaceIdentityIds));
+
+    assertEquals(0, spaceStorage.getAccessibleSpacesIdentityIds("jame").size());
+    assertEquals(0, spaceStorage.getAccessibleSpacesIdentityIds("nobody").size());
+  }
+
   /**
    * Test {@link org.exoplatform.social.core.storage.SpaceStorage#getAccessibleSpacesByFilter(String, org.exoplatform.social.core.space.SpaceFilter, long, long)}
    *
@@ -20,10 +20,16 @@ package org.exoplatform.social.core.storage.cache;
 import org.exoplatform.social.core.activity.model.ExoSocialActivity;
 import org.exoplatform.social.core.activity.model.ExoSocialActivityImpl;
 import org.exoplatform.social.core.identity.model.Identity;
+import org.exoplatform.social.core.storage.cache.model.data.IntegerData;
+import org.exoplatform.social.core.storage.cache.model.key.ActivityCountKey;
+import org.exoplatform.social.core.storage.cache.model.key.ActivityKey;
+import org.exoplatform.social.core.storage.cache.model.key.ActivityType;
+import org.exoplatform.social.core.storage.cache.model.key.IdentityKey;
 import org.exoplatform.social.core.storage.impl.IdentityStorageImpl;
 import org.exoplatform.social.core.test.AbstractCoreTest;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -54,6 +60,7 @@ public class CachedActivityStorageTestCase extends AbstractCoreTest {
     cacheService.getActivitiesCache().clearCache();
     cacheService.getActivitiesCountCache().clearCache();
     cacheService.getActivityCache().clearCache();
+    cacheService.getActivitiesGenerationCache().clearCache();
 
     //
     identity = new Identity("p", "r");
@@ -210,4 +217,108 @@ public class CachedActivityStorageTestCase extends AbstractCoreTest {
     assertEquals(0, activityStorage.getActivityFeed(identity, 0, 20).get(0).getReplyToId().length);
 
   }
+
+  public void testInvalidateOnlyImpactedIdentities() throws Exception {
+
+    //
+    Identity other = new Identity("p", "r2");
+    identityStorage.saveIdentity(other);
+    tearDownIdentityList.add(other.getId());
+
+    //
+    ExoSocialActivity activity = new ExoSocialActivityImpl();
+    activity.setTitle("hello");
+    activity.setUserId(identity.getId());
+    activityStorage.saveActivity(identity, activity);
+
+    //
+    activityStorage.getUserActivities(identity, 0, 20);
+    activityStorage.getUserActivities(other, 0, 20);
+    assertEquals(1, activityStorage.getNumberOfUserActivities(identity));
+    assertEquals(0, activityStorage.getNumberOfNewerOnUserActivities(identity, activity));
+
+    //
+    assertEquals(2, cacheService.getActivitiesCache().getCacheSize());
+    assertEquals(2, cacheService.getActivitiesCountCache().getCacheSize());
+    String generation = cacheService.getActivitiesGenerationCache().get(new IdentityKey(identity)).build();
+    String otherGeneration = cacheService.getActivitiesGenerationCache().get(new IdentityKey(other)).build();
+
+    //
+    ExoSocialActivity activity2 = new ExoSocialActivityImpl();
+    activity2.setTitle("hello 2");
+    activity2.setUserId(identity.getId());
+    activity2.setPostedTime(activity.getPostedTime() + 1);
+    activityStorage.saveActivity(identity, activity2);
+
+    // Only the generation of the impacted identity is renewed, the list of the other identity is kept
+    assertFalse(generation.equals(cacheService.getActivitiesGenerationCache().get(new IdentityKey(identity)).build()));
+    assertEquals(otherGeneration, cacheService.getActivitiesGenerationCache().get(new IdentityKey(other)).build());
+    assertEquals(1, cacheService.getActivitiesCache().getCacheSize());
+    assertEquals(0, cacheService.getActivitiesCountCache().getCacheSize());
+    assertEquals(2, activityStorage.getNumberOfUserActivities(identity));
+    assertEquals(1, activityStorage.getNumberOfNewerOnUserActivities(identity, activity));
+    assertEquals(2, activityStorage.getUserActivities(identity, 0, 20).size());
+    assertEquals(0, activityStorage.getUserActivities(other, 0, 20).size());
+
+    //
+    activityStorage.deleteActivity(activity2.getId());
+
+    //
+    assertEquals(1, cacheService.getActivitiesCache().getCacheSize());
+    assertEquals(0, cacheService.getActivitiesCountCache().getCacheSize());
+    assertEquals(1, activityStorage.getNumberOfUserActivities(identity));
+    assertEquals(0, activityStorage.getNumberOfNewerOnUserActivities(identity, activity));
+    assertEquals(otherGeneration, cacheService.getActivitiesGenerationCache().get(new IdentityKey(other)).build());
+
+  }
+
+  public void testLateLoadNotServed() throws Exception {
+
+    //
+    ExoSocialActivity activity = new ExoSocialActivityImpl();
+    activity.setTitle("hello");
+    activity.setUserId(identity.getId());
+    activityStorage.saveActivity(identity, activity);
+    assertEquals(1, activityStorage.getNumberOfUserActivities(identity));
+    String generation = cacheService.getActivitiesGenerationCache().get(new IdentityKey(identity)).build();
+
+    //
+    ExoSocialActivity activity2 = new ExoSocialActivityImpl();
+    activity2.setTitle("hello 2");
+    activity2.setUserId(identity.getId());
+    activityStorage.saveActivity(identity, activity2);
+
+    // A count loaded before the write and cached after it is not read anymore
+    ActivityCountKey key = new ActivityCountKey(new IdentityKey(identity), generation, null, ActivityType.USER);
+    cacheService.getActivitiesCountCache().put(key, new IntegerData(1));
+    assertEquals(2, activityStorage.getNumberOfUserActivities(identity));
+
+  }
+
+  public void testGetActivities() throws Exception {
+
+    //
+    ExoSocialActivity activity = new ExoSocialActivityImpl();
+    activity.setTitle("hello");
+    activity.setUserId(identity.getId());
+    activityStorage.saveActivity(identity, activity);
+
+    ExoSocialActivity activity2 = new ExoSocialActivityImpl();
+    activity2.setTitle("hello 2");
+    activity2.setUserId(identity.getId());
+    activityStorage.saveActivity(identity, activity2);
+
+    //
+    cacheService.getActivityCache().remove(new ActivityKey(activity2.getId()));
+    assertEquals(1, cacheService.getActivityCache().getCacheSize());
+
+    //
+    List<ExoSocialActivity> got = activityStorage.getActivities(Arrays.asList(activity2.getId(), activity.getId()));
+    assertEquals(2, got.size());
+    assertEquals("hello 2", got.get(0).getTitle());
+    assertEquals("hello", got.get(1).getTitle());
+    assertEquals(2, cacheService.getActivityCache().getCacheSize());
+
+  }
+
 }
@@ -21,9 +21,15 @@ import org.exoplatform.social.core.identity.model.Identity;
 import org.exoplatform.social.core.identity.model.Profile;
 import org.exoplatform.social.core.profile.ProfileFilter;
 import org.exoplatform.social.core.storage.api.IdentityStorage;
+import org.exoplatform.social.core.storage.cache.model.data.IdsData;
+import org.exoplatform.social.core.storage.cache.model.key.IdentityCompositeKey;
+import org.exoplatform.social.core.storage.cache.model.key.NotFoundKey;
+import org.exoplatform.social.core.storage.cache.model.key.SpaceFilterKey;
+import org.exoplatform.social.core.storage.cache.model.key.SpaceType;
 import org.exoplatform.social.core.test.AbstractCoreTest;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -49,6 +55,7 @@ public class CachedIdentityStorageTestCase extends AbstractCoreTest {
     cacheService.getCountIdentitiesCache().clearCache();
     cacheService.getIdentityIndexCache().clearCache();
     cacheService.getProfileCache().clearCache();
+    cacheService.getSpacesIdsCache().clearCache();
 
     tearDownIdentityList = new ArrayList<String>();
   }
@@ -89,6 +96,23 @@ public class CachedIdentityStorageTestCase extends AbstractCoreTest {
 
   }
 
+  public void testStatistics() throws Exception {
+
+    Identity i = new Identity("p", "id");
+    identityStorage.saveIdentity(i);
+    tearDownIdentityList.add(i.getId());
+    cacheService.getIdentityCache().clearCache();
+    cacheService.resetStatistics();
+
+    identityStorage.findIdentityById(i.getId());
+    identityStorage.findIdentityById(i.getId());
+    assertEquals(1, CacheType.IDENTITY.getStatistics().getMisses());
+    assertEquals(1, CacheType.IDENTITY.getStatistics().getHits());
+    assertEquals(CacheType.IDENTITY.getStatistics().toString(), cacheService.getStatistics("IdentityCache"));
+    assertNull(cacheService.getStatistics("unknown"));
+
+  }
+
   public void testFindIdentity() throws Exception {
 
     assertEquals(0, cacheService.getIdentityCache().getCacheSize());
@@ -108,6 +132,21 @@ public class CachedIdentityStorageTestCase extends AbstractCoreTest {
 
   }
 
+  public void testFindIdentityNotFound() throws Exception {
+
+    assertEquals(0, cacheService.getIdentityIndexCache().getCacheSize());
+    assertNull(identityStorage.findIdentity("p", "id"));
+    IdentityCompositeKey key = new IdentityCompositeKey("p", "id");
+    assertTrue(cacheService.getIdentityIndexCache().get(key) instanceof NotFoundKey);
+
+    Identity i = new Identity("p", "id");
+    identityStorage.saveIdentity(i);
+    tearDownIdentityList.add(i.getId());
+    assertNull(cacheService.getIdentityIndexCache().get(key));
+    assertEquals(i.getId(), identityStorage.findIdentity("p", "id").getId());
+
+  }
+
   public void testRemoveIdentity() throws Exception {
 
     assertEquals(0, cacheService.getIdentityCache().getCacheSize());
@@ -139,6 +178,33 @@ public class CachedIdentityStorageTestCase extends AbstractCoreTest {
 
   }
 
+  public void testSpacesIdsInvalidation() throws Exception {
+
+    SpaceFilterKey key1 = new SpaceFilterKey("u1", null, SpaceType.ACCESSIBLE);
+    SpaceFilterKey key2 = new SpaceFilterKey("u2", null, SpaceType.ACCESSIBLE);
+    cacheService.getSpacesIdsCache().put(key1, new IdsData(new ArrayList<String>()));
+    cacheService.getSpacesIdsCache().put(key2, new IdsData(new ArrayList<String>()));
+
+    // Only the ids of the created user are removed
+    Identity i = new Identity("organization", "u1");
+    identityStorage.saveIdentity(i);
+    assertNull(cacheService.getSpacesIdsCache().get(key1));
+    assertNotNull(cacheService.getSpacesIdsCache().get(key2));
+
+    // An update doesn't change the accessible spaces
+    cacheService.getSpacesIdsCache().put(key1, new IdsData(new ArrayList<String>()));
+    identityStorage.updateIdentity(i);
+    identityStorage.saveIdentity(i);
+    assertNotNull(cacheService.getSpacesIdsCache().get(key1));
+    assertNotNull(cacheService.getSpacesIdsCache().get(key2));
+
+    //
+    identityStorage.deleteIdentity(i);
+    assertNull(cacheService.getSpacesIdsCache().get(key1));
+    assertNotNull(cacheService.getSpacesIdsCache().get(key2));
+
+  }
+
   public void testLoadProfile() throws Exception {
 
     assertEquals(0, cacheService.getIdentityCache().getCacheSize());
@@ -155,6 +221,32 @@ public class CachedIdentityStorageTestCase extends AbstractCoreTest {
 
   }
 
+  public void testLoadProfiles() throws Exception {
+
+    assertEquals(0, cacheService.getProfileCache().getCacheSize());
+    Identity i1 = new Identity("p", "id1");
+    Identity i2 = new Identity("p", "id2");
+    identityStorage.saveIdentity(i1);
+    identityStorage.saveIdentity(i2);
+    tearDownIdentityList.add(i1.getId());
+    tearDownIdentityList.add(i2.getId());
+    assertEquals(0, cacheService.getProfileCache().getCacheSize());
+
+    identityStorage.loadProfile(new Profile(i1));
+    assertEquals(1, cacheService.getProfileCache().getCacheSize());
+
+    Identity got1 = new Identity(i1.getId());
+    Identity got2 = new Identity(i2.getId());
+    List<Profile> profiles = identityStorage.loadProfiles(Arrays.asList(got2, got1));
+    assertEquals(2, cacheService.getProfileCache().getCacheSize());
+    assertEquals(2, profiles.size());
+    assertEquals(i2.getId(), profiles.get(0).getIdentity().getId());
+    assertEquals(i1.getId(), profiles.get(1).getIdentity().getId());
+    assertNotNull(got1.getProfile().getId());
+    assertNotNull(got2.getProfile().getId());
+
+  }
+
   public void testSaveProfile() throws Exception {
 
     assertEquals(0, cacheService.getIdentityCache().getCacheSize());
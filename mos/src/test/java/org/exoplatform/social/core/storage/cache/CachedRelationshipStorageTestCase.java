@@ -19,6 +19,9 @@ package org.exoplatform.social.core.storage.cache;
 
 import org.exoplatform.social.core.identity.model.Identity;
 import org.exoplatform.social.core.relationship.model.Relationship;
+import org.exoplatform.social.core.storage.cache.model.key.NotFoundKey;
+import org.exoplatform.social.core.storage.cache.model.key.RelationshipIdentityKey;
+import org.exoplatform.social.core.storage.cache.model.key.RelationshipKey;
 import org.exoplatform.social.core.storage.impl.IdentityStorageImpl;
 import org.exoplatform.social.core.test.AbstractCoreTest;
 
@@ -49,6 +52,7 @@ public class CachedRelationshipStorageTestCase extends AbstractCoreTest {
     cacheService.getRelationshipCacheByIdentity().clearCache();
     cacheService.getRelationshipsCache().clearCache();
     cacheService.getRelationshipsCount().clearCache();
+    cacheService.getConnectionsCache().clearCache();
 
     tearDownIdentityList = new ArrayList<String>();
   }
@@ -141,4 +145,64 @@ public class CachedRelationshipStorageTestCase extends AbstractCoreTest {
 
   }
 
+
+  public void testGetRelationshipNotFound() throws Exception {
+
+    Identity i1 = new Identity("p", "i1");
+    identityStorage.saveIdentity(i1);
+    tearDownIdentityList.add(i1.getId());
+    Identity i2 = new Identity("p", "i2");
+    identityStorage.saveIdentity(i2);
+    tearDownIdentityList.add(i2.getId());
+
+    //
+    assertNull(relationshipStorage.getRelationship(i1, i2));
+    RelationshipIdentityKey key = new RelationshipIdentityKey(i1.getId(), i2.getId());
+    RelationshipKey notFound = cacheService.getRelationshipCacheByIdentity().get(key);
+    assertTrue(notFound instanceof NotFoundKey);
+    assertNull(relationshipStorage.getRelationship(i1, i2));
+    assertSame(notFound, cacheService.getRelationshipCacheByIdentity().get(key));
+
+    //
+    Relationship r = relationshipStorage.saveRelationship(new Relationship(i1, i2));
+    assertFalse(cacheService.getRelationshipCacheByIdentity().get(key) instanceof NotFoundKey);
+    assertEquals(r.getId(), relationshipStorage.getRelationship(i1, i2).getId());
+    assertEquals(r.getId(), relationshipStorage.getRelationship(i2, i1).getId());
+
+    //
+    relationshipStorage.removeRelationship(r);
+    assertNull(cacheService.getRelationshipCacheByIdentity().get(key));
+    assertNull(cacheService.getRelationshipCacheByIdentity().get(new RelationshipIdentityKey(i2.getId(), i1.getId())));
+    assertNull(relationshipStorage.getRelationship(i1, i2));
+    assertTrue(cacheService.getRelationshipCacheByIdentity().get(key) instanceof NotFoundKey);
+
+  }
+
+
+  public void testConnections() throws Exception {
+
+    Identity i1 = new Identity("p", "i1");
+    identityStorage.saveIdentity(i1);
+    tearDownIdentityList.add(i1.getId());
+    Identity i2 = new Identity("p", "i2");
+    identityStorage.saveIdentity(i2);
+    tearDownIdentityList.add(i2.getId());
+
+    Relationship r = relationshipStorage.saveRelationship(new Relationship(i1, i2, Relationship.Type.CONFIRMED));
+    assertEquals(0, cacheService.getConnectionsCache().getCacheSize());
+
+    assertEquals(1, relationshipStorage.getConnectionsCount(i1));
+    assertEquals(1, cacheService.getConnectionsCache().getCacheSize());
+    assertEquals(i2.getId(), relationshipStorage.getConnectionIds(i1).get(0));
+    assertEquals(i2.getId(), relationshipStorage.getConnections(i1, 0, 10).get(0).getId());
+    assertNotNull(relationshipStorage.getConnections(i1, 0, 10).get(0).getProfile());
+    assertEquals(0, relationshipStorage.getConnections(i1, 1, 10).size());
+    assertEquals(1, cacheService.getConnectionsCache().getCacheSize());
+
+    relationshipStorage.removeRelationship(r);
+    assertEquals(0, cacheService.getConnectionsCache().getCacheSize());
+    assertEquals(0, relationshipStorage.getConnectionsCount(i1));
+
+  }
+
 }
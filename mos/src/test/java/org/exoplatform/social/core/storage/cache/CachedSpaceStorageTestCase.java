@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2003-2011 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.exoplatform.social.core.storage.cache;
+
+import org.exoplatform.social.core.identity.model.Identity;
+import org.exoplatform.social.core.identity.provider.OrganizationIdentityProvider;
+import org.exoplatform.social.core.space.impl.DefaultSpaceApplicationHandler;
+import org.exoplatform.social.core.space.model.Space;
+import org.exoplatform.social.core.storage.api.IdentityStorage;
+import org.exoplatform.social.core.storage.api.SpaceStorage;
+import org.exoplatform.social.core.storage.cache.model.key.ListSpacesKey;
+import org.exoplatform.social.core.storage.cache.model.key.NotFoundKey;
+import org.exoplatform.social.core.storage.cache.model.key.SpaceFilterKey;
+import org.exoplatform.social.core.storage.cache.model.key.SpaceKey;
+import org.exoplatform.social.core.storage.cache.model.key.SpaceRefKey;
+import org.exoplatform.social.core.storage.cache.model.key.SpaceType;
+import org.exoplatform.social.core.test.AbstractCoreTest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class CachedSpaceStorageTestCase extends AbstractCoreTest {
+
+  private CachedSpaceStorage spaceStorage;
+  private IdentityStorage identityStorage;
+  private SocialStorageCacheService cacheService;
+
+  private List<Identity> tearDownIdentityList;
+  private List<String> tearDownSpaceList;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+
+    spaceStorage = (CachedSpaceStorage) getContainer().getComponentInstanceOfType(SpaceStorage.class);
+    identityStorage = (IdentityStorage) getContainer().getComponentInstanceOfType(IdentityStorage.class);
+
+    cacheService = (SocialStorageCacheService) getContainer().getComponentInstanceOfType(SocialStorageCacheService.class);
+    cacheService.getSpaceCache().clearCache();
+    cacheService.getSpaceRefCache().clearCache();
+    cacheService.getSpacesCache().clearCache();
+    cacheService.getSpacesCountCache().clearCache();
+
+    tearDownIdentityList = new ArrayList<Identity>();
+    tearDownSpaceList = new ArrayList<String>();
+  }
+
+  @Override
+  public void tearDown() throws Exception {
+    for (String id : tearDownSpaceList) {
+      spaceStorage.deleteSpace(id);
+    }
+    for (Identity identity : tearDownIdentityList) {
+      identityStorage.deleteIdentity(identity);
+    }
+    super.tearDown();
+  }
+
+  public void testSaveSpaceInvalidatesUpdatedUsers() throws Exception {
+
+    createIdentity("demo");
+    createIdentity("mary");
+    createIdentity("john");
+
+    Space space = new Space();
+    space.setApp("app");
+    space.setDisplayName("cached space");
+    space.setPrettyName(space.getDisplayName());
+    space.setRegistration(Space.OPEN);
+    space.setDescription("cached space");
+    space.setType(DefaultSpaceApplicationHandler.NAME);
+    space.setVisibility(Space.PUBLIC);
+    space.setPriority(Space.INTERMEDIATE_PRIORITY);
+    space.setGroupId("/space/cached");
+    space.setManagers(new String[] {"demo"});
+    space.setMembers(new String[] {"demo"});
+    spaceStorage.saveSpace(space, true);
+    tearDownSpaceList.add(space.getId());
+
+    //
+    assertEquals(1, spaceStorage.getMemberSpaces("demo", 0, 10).size());
+    assertEquals(0, spaceStorage.getMemberSpaces("mary", 0, 10).size());
+    assertEquals(0, spaceStorage.getMemberSpaces("john", 0, 10).size());
+    assertEquals(1, spaceStorage.getSpaces(0, 10).size());
+    spaceStorage.getPublicSpaces("mary", 0, 10);
+    spaceStorage.getPublicSpaces("john", 0, 10);
+    assertNotNull(cacheService.getSpacesCache().get(publicSpacesKey("mary")));
+
+    //
+    space.setMembers(new String[] {"demo", "mary"});
+    spaceStorage.saveSpace(space, false);
+
+    //
+    assertNotNull(cacheService.getSpacesCache().get(memberSpacesKey("demo")));
+    assertNotNull(cacheService.getSpacesCache().get(memberSpacesKey("john")));
+    assertNull(cacheService.getSpacesCache().get(memberSpacesKey("mary")));
+    assertNull(cacheService.getSpacesCache().get(publicSpacesKey("mary")));
+    assertNotNull(cacheService.getSpacesCache().get(publicSpacesKey("john")));
+    assertNotNull(cacheService.getSpacesCache().get(new ListSpacesKey(null, 0, 10)));
+    assertEquals(1, spaceStorage.getMemberSpaces("mary", 0, 10).size());
+
+    //
+    space.setDisplayName("renamed cached space");
+    spaceStorage.saveSpace(space, false);
+
+    //
+    assertNull(cacheService.getSpacesCache().get(memberSpacesKey("demo")));
+    assertNotNull(cacheService.getSpacesCache().get(memberSpacesKey("john")));
+    assertNull(cacheService.getSpacesCache().get(new ListSpacesKey(null, 0, 10)));
+
+  }
+
+  public void testGetSpaceNotFound() throws Exception {
+
+    SpaceRefKey displayNameKey = new SpaceRefKey("notfound");
+    SpaceRefKey prettyNameKey = new SpaceRefKey(null, "notfound");
+    SpaceRefKey groupIdKey = new SpaceRefKey(null, null, "/space/notfound");
+    SpaceRefKey urlKey = new SpaceRefKey(null, null, null, "notfound");
+
+    //
+    assertNull(spaceStorage.getSpaceByDisplayName("notfound"));
+    assertNull(spaceStorage.getSpaceByPrettyName("notfound"));
+    assertNull(spaceStorage.getSpaceByGroupId("/space/notfound"));
+    assertNull(spaceStorage.getSpaceByUrl("notfound"));
+    SpaceKey notFound = cacheService.getSpaceRefCache().get(displayNameKey);
+    assertTrue(notFound instanceof NotFoundKey);
+    assertTrue(cacheService.getSpaceRefCache().get(prettyNameKey) instanceof NotFoundKey);
+    assertTrue(cacheService.getSpaceRefCache().get(groupIdKey) instanceof NotFoundKey);
+    assertTrue(cacheService.getSpaceRefCache().get(urlKey) instanceof NotFoundKey);
+
+    //
+    assertNull(spaceStorage.getSpaceByDisplayName("notfound"));
+    assertSame(notFound, cacheService.getSpaceRefCache().get(displayNameKey));
+
+    //
+    Space space = new Space();
+    space.setApp("app");
+    space.setDisplayName("notfound");
+    space.setPrettyName(space.getDisplayName());
+    space.setRegistration(Space.OPEN);
+    space.setDescription("notfound");
+    space.setType(DefaultSpaceApplicationHandler.NAME);
+    space.setVisibility(Space.PUBLIC);
+    space.setPriority(Space.INTERMEDIATE_PRIORITY);
+    space.setGroupId("/space/notfound");
+    space.setUrl("notfound");
+    spaceStorage.saveSpace(space, true);
+    tearDownSpaceList.add(space.getId());
+
+    //
+    assertNull(cacheService.getSpaceRefCache().get(displayNameKey));
+    assertNull(cacheService.getSpaceRefCache().get(prettyNameKey));
+    assertNull(cacheService.getSpaceRefCache().get(groupIdKey));
+    assertNull(cacheService.getSpaceRefCache().get(urlKey));
+    assertEquals(space.getId(), spaceStorage.getSpaceByDisplayName("notfound").getId());
+    assertEquals(space.getId(), spaceStorage.getSpaceByPrettyName("notfound").getId());
+    assertEquals(space.getId(), spaceStorage.getSpaceByGroupId("/space/notfound").getId());
+    assertEquals(space.getId(), spaceStorage.getSpaceByUrl("notfound").getId());
+
+  }
+
+  private ListSpacesKey memberSpacesKey(String userId) {
+    return new ListSpacesKey(new SpaceFilterKey(userId, null, SpaceType.MEMBER), 0, 10);
+  }
+
+  private ListSpacesKey publicSpacesKey(String userId) {
+    return new ListSpacesKey(new SpaceFilterKey(userId, null, SpaceType.PUBLIC), 0, 10);
+  }
+
+  private void createIdentity(String remoteId) {
+    Identity identity = new Identity(OrganizationIdentityProvider.NAME, remoteId);
+    identityStorage.saveIdentity(identity);
+    tearDownIdentityList.add(identity);
+  }
+
+}
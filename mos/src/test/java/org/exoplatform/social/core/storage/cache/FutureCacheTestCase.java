@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2003-2011 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.exoplatform.social.core.storage.cache;
+
+import junit.framework.TestCase;
+import org.exoplatform.commons.cache.future.Loader;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class FutureCacheTestCase extends TestCase {
+
+  public void testStatistics() throws Exception {
+    MapFutureCache cache = new MapFutureCache(new ValueLoader());
+
+    //
+    assertEquals("value", cache.get(null, "key"));
+    assertEquals("value", cache.get(null, "key"));
+    assertEquals(1, cache.getStatistics().getHits());
+    assertEquals(1, cache.getStatistics().getMisses());
+    assertEquals(1, cache.getStatistics().getLoads());
+    assertEquals(0, cache.getStatistics().getCoalescedWaits());
+  }
+
+  public void testCoalescedWait() throws Exception {
+    final CountDownLatch loading = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final MapFutureCache cache = new MapFutureCache(new BlockingLoader(loading, release));
+
+    //
+    Thread loader = new Thread() {
+      @Override
+      public void run() {
+        cache.get(null, "key");
+      }
+    };
+    loader.start();
+    assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+    //
+    Future<String> waiting = cache.getAsync(null, "key", new FailingExecutor());
+    release.countDown();
+    assertEquals("value", waiting.get(5, TimeUnit.SECONDS));
+    loader.join();
+    assertEquals(1, cache.getStatistics().getCoalescedWaits());
+    assertEquals(1, cache.getStatistics().getLoads());
+  }
+
+  public void testWaitTimeout() throws Exception {
+    final CountDownLatch loading = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final BlockingLoader blockingLoader = new BlockingLoader(loading, release);
+    final MapFutureCache cache = new MapFutureCache(blockingLoader);
+    cache.setWaitTimeout(50);
+
+    //
+    Thread loader = new Thread() {
+      @Override
+      public void run() {
+        cache.get(null, "key");
+      }
+    };
+    loader.start();
+    assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+    //
+    blockingLoader.blocking = false;
+    assertEquals("value", cache.get(null, "key"));
+    assertEquals(1, cache.getStatistics().getWaitTimeouts());
+    release.countDown();
+    loader.join();
+  }
+
+  public void testSingleReload() throws Exception {
+    final CountDownLatch loading = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch reloading = new CountDownLatch(1);
+    final CountDownLatch releaseReload = new CountDownLatch(1);
+    final AtomicInteger retrievals = new AtomicInteger();
+    final MapFutureCache cache = new MapFutureCache(new Loader<String, String, Object>() {
+      public String retrieve(Object context, String key) throws Exception {
+        if (retrievals.incrementAndGet() == 1) {
+          loading.countDown();
+          release.await(5, TimeUnit.SECONDS);
+        }
+        else {
+          reloading.countDown();
+          releaseReload.await(5, TimeUnit.SECONDS);
+        }
+        return "value";
+      }
+    });
+    cache.setWaitTimeout(50);
+
+    //
+    Thread loader = new Thread() {
+      @Override
+      public void run() {
+        cache.get(null, "key");
+      }
+    };
+    loader.start();
+    assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+    //
+    final List<String> values = Collections.synchronizedList(new ArrayList<String>());
+    Thread[] waiters = new Thread[3];
+    for (int i = 0; i < waiters.length; i++) {
+      waiters[i] = new Thread() {
+        @Override
+        public void run() {
+          values.add(cache.get(null, "key"));
+        }
+      };
+      waiters[i].start();
+    }
+    assertTrue(reloading.await(5, TimeUnit.SECONDS));
+
+    //
+    releaseReload.countDown();
+    for (Thread waiter : waiters) {
+      waiter.join();
+    }
+    release.countDown();
+    loader.join();
+    assertEquals(Arrays.asList("value", "value", "value"), values);
+    assertEquals(waiters.length, cache.getStatistics().getWaitTimeouts());
+    assertEquals(2, retrievals.get());
+  }
+
+  public void testReloadTimeout() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch reloading = new CountDownLatch(1);
+    final AtomicInteger retrievals = new AtomicInteger();
+    final MapFutureCache cache = new MapFutureCache(new Loader<String, String, Object>() {
+      public String retrieve(Object context, String key) throws Exception {
+        int retrieval = retrievals.incrementAndGet();
+        if (retrieval == 2) {
+          reloading.countDown();
+        }
+        if (retrieval <= 2) {
+          release.await(5, TimeUnit.SECONDS);
+        }
+        return "value";
+      }
+    });
+    cache.setWaitTimeout(50);
+
+    //
+    Thread loader = new Thread() {
+      @Override
+      public void run() {
+        cache.get(null, "key");
+      }
+    };
+    loader.start();
+    while (retrievals.get() == 0) {
+      Thread.sleep(10);
+    }
+
+    // The first waiter reloads, the second one gives up waiting for the slow reloading too
+    final List<String> values = Collections.synchronizedList(new ArrayList<String>());
+    Thread[] waiters = new Thread[2];
+    for (int i = 0; i < waiters.length; i++) {
+      waiters[i] = new Thread() {
+        @Override
+        public void run() {
+          values.add(cache.get(null, "key"));
+        }
+      };
+      waiters[i].start();
+    }
+    assertTrue(reloading.await(5, TimeUnit.SECONDS));
+    long deadline = System.currentTimeMillis() + 5000;
+    while (values.isEmpty() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(Arrays.asList("value"), values);
+    assertEquals(3, retrievals.get());
+    assertEquals(3, cache.getStatistics().getWaitTimeouts());
+
+    //
+    release.countDown();
+    for (Thread waiter : waiters) {
+      waiter.join();
+    }
+    loader.join();
+    assertEquals(Arrays.asList("value", "value"), values);
+  }
+
+  public void testFailure() throws Exception {
+    MapFutureCache cache = new MapFutureCache(new Loader<String, String, Object>() {
+      public String retrieve(Object context, String key) throws Exception {
+        throw new IllegalStateException(key);
+      }
+    });
+
+    //
+    try {
+      cache.get(null, "key");
+      fail();
+    }
+    catch (IllegalStateException e) {
+      assertEquals("key", e.getMessage());
+    }
+    assertEquals(1, cache.getStatistics().getFailures());
+  }
+
+  static class MapFutureCache extends FutureCache<String, String, Object> {
+
+    private final Map<String, String> map = new HashMap<String, String>();
+
+    MapFutureCache(Loader<String, String, Object> loader) {
+      super(loader);
+    }
+
+    @Override
+    protected synchronized String get(String key) {
+      return map.get(key);
+    }
+
+    @Override
+    protected synchronized void put(String key, String value) {
+      map.put(key, value);
+    }
+  }
+
+  static class ValueLoader implements Loader<String, String, Object> {
+    public String retrieve(Object context, String key) throws Exception {
+      return "value";
+    }
+  }
+
+  static class BlockingLoader implements Loader<String, String, Object> {
+
+    private final CountDownLatch loading;
+
+    private final CountDownLatch release;
+
+    volatile boolean blocking = true;
+
+    BlockingLoader(CountDownLatch loading, CountDownLatch release) {
+      this.loading = loading;
+      this.release = release;
+    }
+
+    public String retrieve(Object context, String key) throws Exception {
+      if (blocking) {
+        loading.countDown();
+        release.await(5, TimeUnit.SECONDS);
+      }
+      return "value";
+    }
+  }
+
+  static class FailingExecutor implements Executor {
+    public void execute(Runnable command) {
+      throw new AssertionError("The value must be loaded by the pending loading");
+    }
+  }
+
+}
@@ -26,12 +26,20 @@ import java.util.List;
 import java.util.Map;
 
 import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.social.core.ActivityProcessor;
+import org.exoplatform.social.core.ActivityWriteProcessor;
 import org.exoplatform.social.core.BaseActivityProcessorPlugin;
 import org.exoplatform.social.core.activity.model.ExoSocialActivity;
 import org.exoplatform.social.core.activity.model.ExoSocialActivityImpl;
 import org.exoplatform.social.core.application.RelationshipPublisher.TitleId;
+import org.exoplatform.social.core.chromattic.entity.ActivityEntity;
+import org.exoplatform.social.core.chromattic.entity.ActivityFeedEntity;
+import org.exoplatform.social.core.chromattic.entity.IdentityEntity;
 import org.exoplatform.social.core.identity.model.Identity;
 import org.exoplatform.social.core.identity.provider.SpaceIdentityProvider;
+import org.exoplatform.social.core.manager.ActivityManager;
+import org.exoplatform.social.core.processor.OSHtmlSanitizerProcessor;
+import org.exoplatform.social.core.relationship.model.Relationship;
 import org.exoplatform.social.core.space.impl.DefaultSpaceApplicationHandler;
 import org.exoplatform.social.core.space.model.Space;
 import org.exoplatform.social.core.storage.ActivityStorageException;
@@ -113,7 +121,59 @@ public class ActivityStorageImplTestCase extends AbstractCoreTest {
     assertEquals(activity.getTitle(), got.getTitle());
 
   }
-  
+
+  public void testGetActivities() throws Exception {
+
+    //
+    List<String> ids = new ArrayList<String>();
+    for (int i = 0; i < 3; ++i) {
+      ExoSocialActivity activity = new ExoSocialActivityImpl();
+      activity.setTitle("title " + i);
+      activityStorage._createActivity(rootIdentity, activity);
+      ids.add(activity.getId());
+    }
+    activityStorage.deleteActivity(ids.get(1));
+
+    //
+    List<ExoSocialActivity> got = activityStorage.getActivities(Arrays.asList(ids.get(2), ids.get(1), ids.get(0)));
+    assertEquals(2, got.size());
+    assertEquals(ids.get(2), got.get(0).getId());
+    assertEquals(ids.get(0), got.get(1).getId());
+
+    //
+    assertEquals(0, activityStorage.getActivities(new ArrayList<String>()).size());
+
+    //
+    activityStorage.deleteActivity(ids.get(0));
+    activityStorage.deleteActivity(ids.get(2));
+
+  }
+
+  public void testGetActivitiesByChunks() throws Exception {
+
+    // More ids than a single query loads, not saved yet
+    List<String> ids = new ArrayList<String>();
+    for (int i = 0; i < 120; ++i) {
+      ExoSocialActivity activity = new ExoSocialActivityImpl();
+      activity.setTitle("title " + i);
+      activityStorage._createActivity(rootIdentity, activity);
+      ids.add(0, activity.getId());
+    }
+
+    //
+    List<ExoSocialActivity> got = activityStorage.getActivities(ids);
+    assertEquals(120, got.size());
+    for (int i = 0; i < 120; ++i) {
+      assertEquals(ids.get(i), got.get(i).getId());
+    }
+
+    //
+    for (String id : ids) {
+      activityStorage.deleteActivity(id);
+    }
+
+  }
+
   public void testUpdateActivity() throws Exception {
 
     //
@@ -496,6 +556,54 @@ public class ActivityStorageImplTestCase extends AbstractCoreTest {
     assertTrue(!ids.contains(maryIdentity.getId()));
   }
 
+  public void testActivityOfConnectionsCount() throws Exception {
+
+    Relationship relationship = new Relationship(rootIdentity, johnIdentity, Relationship.Type.CONFIRMED);
+    relationshipStorage.saveRelationship(relationship);
+
+    // Counted when the activities are created
+    List<ExoSocialActivity> rootActivities = new ArrayList<ExoSocialActivity>();
+    long postedTime = System.currentTimeMillis();
+    for (int i = 0; i < 2; ++i) {
+      ExoSocialActivity activity = new ExoSocialActivityImpl();
+      activity.setTitle("root activity " + i);
+      activity.setPostedTime(postedTime++);
+      activityStorage.saveActivity(rootIdentity, activity);
+      rootActivities.add(activity);
+    }
+    assertEquals(2, activityStorage.getNumberOfActivitiesOfConnections(johnIdentity));
+    assertFalse(activityStorage.getSession().getJCRSession().hasPendingChanges());
+
+    // The newer and older ones are counted from the marked refs of the feed
+    IdentityEntity johnEntity = activityStorage._findById(IdentityEntity.class, johnIdentity.getId());
+    assertTrue(johnEntity.getFeed().getRefs().get(rootActivities.get(0).getId()).isConnection());
+    assertFalse(johnEntity.getFeed().getRefs().get(rootActivities.get(0).getId()).isSpace());
+    assertEquals(1, activityStorage.getNumberOfNewerOnActivitiesOfConnections(johnIdentity, rootActivities.get(0)));
+    assertEquals(0, activityStorage.getNumberOfOlderOnActivitiesOfConnections(johnIdentity, rootActivities.get(0)));
+    assertEquals(1, activityStorage.getNumberOfOlderOnActivitiesOfConnections(johnIdentity, rootActivities.get(1)));
+    assertEquals(0, activityStorage.getNumberOfNewerOnUserSpacesActivities(johnIdentity, rootActivities.get(0)));
+
+    // Kept up to date afterwards, including the activities posted in other streams
+    ExoSocialActivity activity = new ExoSocialActivityImpl();
+    activity.setTitle("root activity in mary stream");
+    activity.setUserId(rootIdentity.getId());
+    activityStorage.saveActivity(maryIdentity, activity);
+    assertEquals(3, activityStorage.getNumberOfActivitiesOfConnections(johnIdentity));
+    assertEquals(0, activityStorage.getNumberOfActivitiesOfConnections(maryIdentity));
+
+    //
+    activityStorage.deleteActivity(activity.getId());
+    assertEquals(2, activityStorage.getNumberOfActivitiesOfConnections(johnIdentity));
+
+    // Counted again when the feeds are repaired
+    assertTrue(activityStorage.repairFeeds(1) >= 2);
+    assertEquals(2, activityStorage.getNumberOfActivitiesOfConnections(johnIdentity));
+    assertEquals(0, activityStorage.getNumberOfActivitiesOfConnections(maryIdentity));
+
+    relationshipStorage.removeRelationship(relationship);
+
+  }
+
   public void testContactActivities() throws Exception {
 
     //
@@ -534,6 +642,88 @@ public class ActivityStorageImplTestCase extends AbstractCoreTest {
 
   }
 
+  public void testActivityFeed() throws Exception {
+
+    long postedTime = System.currentTimeMillis();
+    for (int i = 0; i < 3; ++i) {
+      ExoSocialActivity activity = new ExoSocialActivityImpl();
+      activity.setTitle("root activity " + i);
+      activity.setPostedTime(postedTime++);
+      activityStorage.saveActivity(rootIdentity, activity);
+
+      ExoSocialActivity activity2 = new ExoSocialActivityImpl();
+      activity2.setTitle("john activity " + i);
+      activity2.setPostedTime(postedTime++);
+      activityStorage.saveActivity(johnIdentity, activity2);
+    }
+
+    // Feed built before the connection
+    assertEquals(3, activityStorage.getActivityFeed(rootIdentity, 0, 10).size());
+    assertEquals(3, activityStorage.getNumberOfActivitesOnActivityFeed(rootIdentity));
+
+    // Reading the feed leaves the session untouched
+    assertFalse(activityStorage.getSession().getJCRSession().hasPendingChanges());
+
+    // Activities of the connection merged in the feeds
+    Relationship relationship = new Relationship(rootIdentity, johnIdentity, Relationship.Type.CONFIRMED);
+    relationshipStorage.saveRelationship(relationship);
+    assertEquals(6, activityStorage.getActivityFeed(rootIdentity, 0, 10).size());
+    assertEquals(6, activityStorage.getNumberOfActivitesOnActivityFeed(johnIdentity));
+
+    // New activity fanned out to the built feeds
+    ExoSocialActivity newActivity = new ExoSocialActivityImpl();
+    newActivity.setTitle("john new activity");
+    newActivity.setPostedTime(postedTime++);
+    activityStorage.saveActivity(johnIdentity, newActivity);
+    List<ExoSocialActivity> feed = activityStorage.getActivityFeed(rootIdentity, 0, 10);
+    assertEquals(7, feed.size());
+    assertEquals("john new activity", feed.get(0).getTitle());
+    assertEquals(7, activityStorage.getNumberOfActivitesOnActivityFeed(rootIdentity));
+    assertEquals(6, activityStorage.getNumberOfOlderOnActivityFeed(rootIdentity, newActivity));
+    assertEquals(0, activityStorage.getNumberOfNewerOnActivityFeed(rootIdentity, newActivity));
+
+    // Deleted activity removed from the built feeds
+    activityStorage.deleteActivity(newActivity.getId());
+    assertEquals(6, activityStorage.getActivityFeed(rootIdentity, 0, 10).size());
+    assertEquals(6, activityStorage.getNumberOfActivitesOnActivityFeed(johnIdentity));
+
+    // And removed after the disconnection
+    relationshipStorage.removeRelationship(relationship);
+    assertEquals(3, activityStorage.getActivityFeed(rootIdentity, 0, 10).size());
+    assertEquals(3, activityStorage.getNumberOfActivitesOnActivityFeed(johnIdentity));
+
+  }
+
+  public void testFeedCapacity() throws Exception {
+
+    IdentityEntity identityEntity = activityStorage._findById(IdentityEntity.class, demoIdentity.getId());
+    ActivityFeedEntity feedEntity = identityEntity.getFeed();
+    long postedTime = 1000L;
+    for (int i = 0; i < ActivityFeedEntity.CAPACITY; ++i) {
+      feedEntity.append("activity" + i, postedTime + i);
+    }
+    activityStorage.getSession().save();
+
+    // A newer activity replaces the oldest ref
+    activityStorage._addToFeed(feedEntity, "newer", postedTime + ActivityFeedEntity.CAPACITY);
+    activityStorage.getSession().save();
+    assertEquals(ActivityFeedEntity.CAPACITY, (int) feedEntity.getRefNumber());
+    assertEquals(ActivityFeedEntity.CAPACITY + 1, (int) feedEntity.getNumber());
+    assertTrue(feedEntity.getRefs().containsKey("newer"));
+    assertFalse(feedEntity.getRefs().containsKey("activity0"));
+    assertTrue(feedEntity.isTrimmed(postedTime));
+    assertFalse(feedEntity.isTrimmed(postedTime + 1));
+
+    // An activity older than the kept ones is only counted
+    activityStorage._addToFeed(feedEntity, "older", postedTime - 1);
+    activityStorage.getSession().save();
+    assertEquals(ActivityFeedEntity.CAPACITY, (int) feedEntity.getRefNumber());
+    assertEquals(ActivityFeedEntity.CAPACITY + 2, (int) feedEntity.getNumber());
+    assertFalse(feedEntity.getRefs().containsKey("older"));
+    assertTrue(feedEntity.getRefs().containsKey("activity1"));
+
+  }
+
   public void testTimeStamp() throws Exception {
     ExoSocialActivity activity = new ExoSocialActivityImpl();
     activity.setTitle("activity title");
@@ -653,6 +843,121 @@ public class ActivityStorageImplTestCase extends AbstractCoreTest {
 
   }
 
+  public void testActivityWriteProcessing() throws Exception {
+
+    // Only the processor of the test
+    List<ActivityProcessor> configured = new ArrayList<ActivityProcessor>(activityStorage.getActivityProcessors());
+    activityStorage.getActivityProcessors().clear();
+    WriteProcessor processor = new WriteProcessor(null);
+    activityStorage.getActivityProcessors().add(processor);
+
+    //
+    ExoSocialActivity activity = new ExoSocialActivityImpl();
+    activity.setTitle("activity");
+    activityStorage._createActivity(rootIdentity, activity);
+    assertNotNull(activity.getId());
+    assertEquals(1, processor.count);
+
+    //
+    ExoSocialActivity got = activityStorage.getActivity(activity.getId());
+    assertEquals("activity processed", got.getTitle());
+    got = activityStorage.getActivity(activity.getId());
+    assertEquals("activity processed", got.getTitle());
+    assertEquals(1, processor.count);
+
+    //
+    ExoSocialActivity comment = new ExoSocialActivityImpl();
+    comment.setTitle("comment");
+    comment.setUserId(rootIdentity.getId());
+    activityStorage.saveComment(activity, comment);
+    assertEquals(2, processor.count);
+
+    //
+    ExoSocialActivity gotComment = activityStorage.getActivity(comment.getId());
+    assertEquals("comment processed", gotComment.getTitle());
+    assertEquals(2, processor.count);
+
+    // An activity saved without its processed title is processed in memory
+    ActivityEntity activityEntity = activityStorage._findById(ActivityEntity.class, activity.getId());
+    activityEntity.setProcessedTitle(null);
+    activityStorage.getSession().save();
+    got = activityStorage.getActivity(activity.getId());
+    assertEquals("activity processed", got.getTitle());
+    assertEquals(3, processor.count);
+    assertNull(activityEntity.getProcessedTitle());
+    assertFalse(activityStorage.getSession().getJCRSession().hasPendingChanges());
+
+    //
+    activityStorage.getActivityProcessors().clear();
+    activityStorage.getActivityProcessors().addAll(configured);
+
+  }
+
+  public void testActivityProcessingOrder() throws Exception {
+
+    //
+    List<ActivityProcessor> configured = new ArrayList<ActivityProcessor>(activityStorage.getActivityProcessors());
+    activityStorage.getActivityProcessors().clear();
+    WriteProcessor first = new WriteProcessor(null);
+    first.setPriority(1);
+    DummyProcessor read = new DummyProcessor(null);
+    read.setPriority(2);
+    WriteProcessor last = new WriteProcessor(null);
+    last.setPriority(3);
+    activityStorage.getActivityProcessors().add(first);
+    activityStorage.getActivityProcessors().add(read);
+    activityStorage.getActivityProcessors().add(last);
+
+    //
+    ExoSocialActivity activity = new ExoSocialActivityImpl();
+    activity.setTitle("activity");
+    activityStorage._createActivity(rootIdentity, activity);
+    assertEquals(1, first.count);
+    assertEquals(1, last.count);
+    ActivityEntity activityEntity = activityStorage._findById(ActivityEntity.class, activity.getId());
+    assertEquals("activity processed processed", activityEntity.getProcessedTitle());
+
+    // The read processor only runs on load, on the stored result of the write processors
+    ExoSocialActivity got = activityStorage.getActivity(activity.getId());
+    assertEquals("edited", got.getTitle());
+    assertEquals(1, first.count);
+    assertEquals(1, last.count);
+
+    //
+    activityStorage.getActivityProcessors().clear();
+    activityStorage.getActivityProcessors().addAll(configured);
+    activityStorage.deleteActivity(activity.getId());
+
+  }
+
+  public void testDefaultProcessorsSanitizeOnSave() throws Exception {
+
+    // The manager registers the configured processors
+    assertNotNull(getContainer().getComponentInstanceOfType(ActivityManager.class));
+    boolean sanitizer = false;
+    for (ActivityProcessor processor : activityStorage.getActivityProcessors()) {
+      sanitizer = sanitizer || processor instanceof OSHtmlSanitizerProcessor;
+    }
+    assertTrue(sanitizer);
+
+    //
+    ExoSocialActivity activity = new ExoSocialActivityImpl();
+    activity.setTitle("<script>foo</script>");
+    activityStorage._createActivity(rootIdentity, activity);
+    ActivityEntity activityEntity = activityStorage._findById(ActivityEntity.class, activity.getId());
+    assertEquals("&lt;script&gt;foo&lt;/script&gt;", activityEntity.getProcessedTitle());
+    assertEquals("&lt;script&gt;foo&lt;/script&gt;", activityStorage.getActivity(activity.getId()).getTitle());
+
+    // The stored title is returned as is, the sanitizer doesn't run on load
+    activityEntity.setProcessedTitle("<script>bar</script>");
+    activityStorage.getSession().save();
+    assertEquals("<script>bar</script>", activityStorage.getActivity(activity.getId()).getTitle());
+
+    //
+    activityStorage.deleteActivity(activity.getId());
+
+  }
+
   /**
    * Gets an instance of Space.
    *
@@ -684,5 +989,20 @@ public class ActivityStorageImplTestCase extends AbstractCoreTest {
     }
   }
 
+  class WriteProcessor extends BaseActivityProcessorPlugin implements ActivityWriteProcessor {
+
+    int count;
+
+    WriteProcessor(final InitParams params) {
+      super(params);
+    }
+
+    @Override
+    public void processActivity(final ExoSocialActivity activity) {
+      ++count;
+      activity.setTitle(activity.getTitle() + " processed");
+    }
+  }
+
   // TODO : test many days
 }
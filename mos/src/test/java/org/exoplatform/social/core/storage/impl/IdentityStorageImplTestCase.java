@@ -28,6 +28,7 @@ import org.exoplatform.social.core.identity.model.Identity;
 import org.exoplatform.social.core.identity.model.Profile;
 import org.exoplatform.social.core.model.AvatarAttachment;
 import org.exoplatform.social.core.profile.ProfileFilter;
+import org.exoplatform.social.core.storage.cache.SocialStorageCacheService;
 import org.exoplatform.social.core.storage.exception.NodeAlreadyExistsException;
 import org.exoplatform.social.core.storage.exception.NodeNotFoundException;
 import org.exoplatform.social.core.test.AbstractCoreTest;
@@ -231,6 +232,31 @@ public class IdentityStorageImplTestCase extends AbstractCoreTest {
     tearDownIdentityList.add(newIdentity.getId());
   }
 
+  public void testLoadProfiles() throws Exception {
+    Identity toto = addIdentity("organization", "toto", "male", "cadre");
+    Identity tata = addIdentity("organization", "tata", "female", "dev");
+    Identity noProfile = new Identity("organization", "identityWithoutProfile");
+    storage._createIdentity(noProfile);
+    tearDownIdentityList.add(noProfile.getId());
+
+    //
+    List<Identity> identities = new ArrayList<Identity>();
+    identities.add(new Identity(toto.getId()));
+    identities.add(new Identity(noProfile.getId()));
+    identities.add(new Identity(tata.getId()));
+    List<Profile> profiles = storage.loadProfiles(identities);
+    assertEquals(3, profiles.size());
+    assertEquals("toto", profiles.get(0).getFullName());
+    assertEquals(toto.getProfile().getId(), profiles.get(0).getId());
+    assertEquals("tata", profiles.get(2).getFullName());
+    assertEquals("female", profiles.get(2).getProperty(Profile.GENDER));
+    assertSame(profiles.get(2), identities.get(2).getProfile());
+
+    // Only the identity without profile gets one
+    assertNotNull(profiles.get(1).getId());
+    assertEquals(profiles.get(1).getId(), storage._loadProfile(new Profile(noProfile)).getId());
+  }
+
   public void testLoadProfileDoesntExists() throws Exception {
     Identity newIdentity = new Identity("organization", "identityForLoadProfile");
 
@@ -649,6 +675,29 @@ public class IdentityStorageImplTestCase extends AbstractCoreTest {
 
   }
 
+  public void testFindIdentityWithFilterRemovedOnOtherNode() throws Exception {
+
+    addIdentity("o", "toto", "male", "cadre");
+    Identity itata = addIdentity("o", "tata", "male", "cadre");
+    ProfileFilter t = createFilter('\u0000', "t", "", "", null);
+    assertEquals(2, storage.getIdentitiesByProfileFilter("o", t, 0, 10, false).size());
+
+    // The identity is removed without going through this storage, as it would be by another node
+    storage.getSession().remove(storage._findById(IdentityEntity.class, itata.getId()));
+    storage.getSession().save();
+    tearDownIdentityList.remove(itata.getId());
+    SocialStorageCacheService cacheService =
+        (SocialStorageCacheService) getContainer().getComponentInstanceOfType(SocialStorageCacheService.class);
+    cacheService.getIdentityCache().clearCache();
+
+    //
+    List<Identity> identities = storage.getIdentitiesByProfileFilter("o", t, 0, 10, false);
+    assertEquals(1, identities.size());
+    assertEquals("toto", identities.get(0).getRemoteId());
+    assertEquals(1, storage.getIdentitiesByProfileFilterCount("o", t));
+
+  }
+
   private Identity addIdentity(String provider, String name, String gender, String position) throws Exception {
     Identity newIdentity = new Identity(provider, name);
     storage._createIdentity(newIdentity);
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2003-2011 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.exoplatform.social.core.storage.impl;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import org.exoplatform.social.core.identity.model.Identity;
+import org.exoplatform.social.core.profile.ProfileFilter;
+
+public class ProfileSearchIndexTestCase extends TestCase {
+
+  private ProfileSearchIndex index;
+
+  @Override
+  public void setUp() throws Exception {
+    index = new ProfileSearchIndex();
+    index.put("organization", "1", "Mary Kelly", "Mary", "Developer", "female");
+    index.put("organization", "2", "John Anthony", "John", "Project manager", "male");
+    index.put("organization", "3", "Demo gtn", "Demo", "Developer", "male");
+    index.put("organization", "4", "Jack Miller", "Jack", null, null);
+    index.put("space", "5", "John Space", "John", null, null);
+  }
+
+  public void testLike() throws Exception {
+    assertTrue(ProfileSearchIndex.like("john anthony", "%ant%"));
+    assertTrue(ProfileSearchIndex.like("john anthony", "john%"));
+    assertTrue(ProfileSearchIndex.like("john anthony", "j_hn%y"));
+    assertTrue(ProfileSearchIndex.like("john anthony", "%%"));
+    assertFalse(ProfileSearchIndex.like("john anthony", "ant%"));
+    assertFalse(ProfileSearchIndex.like("john anthony", "%john"));
+    assertFalse(ProfileSearchIndex.like(null, "%"));
+  }
+
+  public void testSearchByName() throws Exception {
+
+    ProfileFilter filter = new ProfileFilter();
+    assertEquals(Arrays.asList("3", "4", "2", "1"), index.search("organization", filter, 0, 10));
+    assertEquals(4, index.count("organization", filter));
+
+    filter.setName("john");
+    assertEquals(Arrays.asList("2"), index.search("organization", filter, 0, 10));
+
+    filter.setName("ll");
+    assertEquals(Arrays.asList("4", "1"), index.search("organization", filter, 0, 10));
+
+    filter.setName("j*n");
+    assertEquals(Arrays.asList("2"), index.search("organization", filter, 0, 10));
+
+    filter.setName("nobody");
+    assertEquals(0, index.search("organization", filter, 0, 10).size());
+    assertEquals(0, index.count("organization", filter));
+
+  }
+
+  public void testSearchByPositionAndGender() throws Exception {
+
+    ProfileFilter filter = new ProfileFilter();
+    filter.setPosition("develop");
+    assertEquals(Arrays.asList("3", "1"), index.search("organization", filter, 0, 10));
+
+    filter.setGender("male");
+    assertEquals(Arrays.asList("3"), index.search("organization", filter, 0, 10));
+
+  }
+
+  public void testSearchPaging() throws Exception {
+
+    ProfileFilter filter = new ProfileFilter();
+    assertEquals(Arrays.asList("3", "4"), index.search("organization", filter, 0, 2));
+    assertEquals(Arrays.asList("2", "1"), index.search("organization", filter, 2, 2));
+    assertEquals(0, index.search("organization", filter, 4, 2).size());
+
+  }
+
+  public void testExcludes() throws Exception {
+
+    ProfileFilter filter = new ProfileFilter();
+    filter.setExcludedIdentityList(Arrays.asList(new Identity("3"), new Identity("1")));
+    assertEquals(Arrays.asList("4", "2"), index.search("organization", filter, 0, 10));
+    assertEquals(2, index.count("organization", filter));
+
+  }
+
+  public void testSearchByFirstCharacter() throws Exception {
+
+    ProfileFilter filter = new ProfileFilter();
+    filter.setFirstCharacterOfName('J');
+    assertEquals(Arrays.asList("4", "2"), index.searchByFirstCharacter("organization", filter, 0, 10));
+    assertEquals(2, index.countByFirstCharacter("organization", filter));
+    assertEquals(Arrays.asList("2"), index.searchByFirstCharacter("organization", filter, 1, 10));
+
+    filter.setFirstCharacterOfName('z');
+    assertEquals(0, index.countByFirstCharacter("organization", filter));
+
+  }
+
+  public void testUpdateAndRemove() throws Exception {
+
+    ProfileFilter filter = new ProfileFilter();
+    filter.setName("kelly");
+    assertEquals(Arrays.asList("1"), index.search("organization", filter, 0, 10));
+
+    index.put("organization", "1", "Mary Smith", "Mary", "Developer", "female");
+    assertEquals(0, index.count("organization", filter));
+    filter.setName("smith");
+    assertEquals(Arrays.asList("1"), index.search("organization", filter, 0, 10));
+
+    index.remove("1");
+    assertEquals(0, index.count("organization", filter));
+    assertEquals(3, index.count("organization", new ProfileFilter()));
+
+    ProfileFilter firstCharacter = new ProfileFilter();
+    firstCharacter.setFirstCharacterOfName('m');
+    assertEquals(0, index.countByFirstCharacter("organization", firstCharacter));
+
+  }
+
+  public void testLoadKeepsLocalChanges() throws Exception {
+
+    ProfileFilter filter = new ProfileFilter();
+    filter.setName("smith");
+
+    index.startLoading();
+    index.put("organization", "1", "Mary Smith", "Mary", "Developer", "female");
+    index.remove("3");
+    index.load("organization", "1", "Mary Kelly", "Mary", "Developer", "female");
+    index.load("organization", "3", "Demo gtn", "Demo", "Developer", "male");
+    index.load("organization", "6", "Paul Smith", "Paul", null, null);
+    index.stopLoading();
+
+    assertEquals(Arrays.asList("1", "6"), index.search("organization", filter, 0, 10));
+    assertEquals(Arrays.asList("4", "2", "1", "6"), index.search("organization", new ProfileFilter(), 0, 10));
+
+    index.remove("6");
+    index.load("organization", "6", "Paul Smith", "Paul", null, null);
+    assertEquals(Arrays.asList("1", "6"), index.search("organization", filter, 0, 10));
+
+  }
+
+  public void testLoaded() throws Exception {
+
+    assertFalse(index.isLoaded("organization"));
+    index.setLoaded("organization");
+    assertTrue(index.isLoaded("organization"));
+
+    index.clear();
+    assertFalse(index.isLoaded("organization"));
+    assertEquals(0, index.count("organization", new ProfileFilter()));
+
+  }
+
+}
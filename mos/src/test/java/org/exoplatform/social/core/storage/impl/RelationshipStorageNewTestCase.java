@@ -20,6 +20,7 @@ package org.exoplatform.social.core.storage.impl;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.exoplatform.social.core.chromattic.entity.IdentityEntity;
 import org.exoplatform.social.core.identity.model.Identity;
 import org.exoplatform.social.core.identity.model.Profile;
 import org.exoplatform.social.core.relationship.model.Relationship;
@@ -618,4 +619,67 @@ public class RelationshipStorageNewTestCase extends AbstractCoreTest {
     tearDownIdentityList.add(tmp4.getId());
     tearDownIdentityList.add(tmp5.getId());
   }
-}
\ No newline at end of file
+
+  public void testRelationshipCounters() throws Exception {
+
+    //
+    Identity tmp1 = new Identity("organization", "tmp1");
+    Identity tmp2 = new Identity("organization", "tmp2");
+
+    //
+    identityStorage.saveIdentity(tmp1);
+    identityStorage.saveIdentity(tmp2);
+
+    // New identities start with their counters
+    IdentityEntity entity1 = storage._findById(IdentityEntity.class, tmp1.getId());
+    assertEquals(Integer.valueOf(0), entity1.getRelationship().getNumber());
+    assertEquals(Integer.valueOf(0), entity1.getSender().getNumber());
+    assertEquals(Integer.valueOf(0), entity1.getReceiver().getNumber());
+    assertEquals(Integer.valueOf(0), entity1.getIgnore().getNumber());
+    assertEquals(Integer.valueOf(0), entity1.getIgnored().getNumber());
+
+    //
+    Relationship relationship = new Relationship(tmp1, tmp2, Relationship.Type.PENDING);
+    storage._createRelationship(relationship);
+
+    //
+    assertEquals(1, storage.getOutgoingRelationshipsCount(tmp1));
+    assertEquals(1, storage.getIncomingRelationshipsCount(tmp2));
+    assertEquals(0, storage.getConnectionsCount(tmp1));
+    assertEquals(Integer.valueOf(1), entity1.getSender().getNumber());
+
+    //
+    relationship.setStatus(Relationship.Type.CONFIRMED);
+    storage.saveRelationship(relationship);
+
+    //
+    assertEquals(0, storage.getOutgoingRelationshipsCount(tmp1));
+    assertEquals(0, storage.getIncomingRelationshipsCount(tmp2));
+    assertEquals(1, storage.getConnectionsCount(tmp1));
+    assertEquals(1, storage.getConnectionsCount(tmp2));
+
+    //
+    entity1.getRelationship().setNumber(5);
+    assertEquals(5, storage.getConnectionsCount(tmp1));
+    assertTrue(storage.repairCounters() >= 1);
+    assertEquals(1, storage.getConnectionsCount(tmp1));
+
+    // Reading a missing counter doesn't modify the list
+    entity1.getRelationship().setNumber(null);
+    storage.getSession().save();
+    assertEquals(1, storage.getConnectionsCount(tmp1));
+    assertNull(entity1.getRelationship().getNumber());
+    assertFalse(storage.getSession().getJCRSession().hasPendingChanges());
+    assertTrue(storage.repairCounters(1) >= 1);
+    assertEquals(Integer.valueOf(1), entity1.getRelationship().getNumber());
+
+    //
+    storage.removeRelationship(relationship);
+    assertEquals(0, storage.getConnectionsCount(tmp1));
+    assertEquals(0, storage.getConnectionsCount(tmp2));
+
+    //
+    tearDownIdentityList.add(tmp1.getId());
+    tearDownIdentityList.add(tmp2.getId());
+  }
+}
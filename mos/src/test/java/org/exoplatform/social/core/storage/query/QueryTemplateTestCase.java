@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2003-2011 eXo Platform SAS.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.exoplatform.social.core.storage.query;
+
+import junit.framework.TestCase;
+
+public class QueryTemplateTestCase extends TestCase {
+
+  public void testBindAsWhereExpression() throws Exception {
+
+    WhereExpression expression = new WhereExpression();
+    expression
+        .not().equals(FakeEntity.strProperty, "foo")
+        .and().equals(FakeEntity.intProperty, 42);
+
+    QueryTemplate template = new QueryTemplate("NOT strProperty = ? AND intProperty = ? ");
+    assertEquals(2, template.getParameterCount());
+    assertEquals(expression.toString(), template.bind("foo", 42));
+
+  }
+
+  public void testBindFunctionAsWhereExpression() throws Exception {
+
+    WhereExpression expression = new WhereExpression();
+    expression
+        .like(FakeEntity.strProperty, "/foo/%")
+        .and().like(expression.callFunction(QueryFunction.LOWER, FakeEntity.strProperty), "f%");
+
+    QueryTemplate template = new QueryTemplate("strProperty LIKE ? AND " + QueryFunction.LOWER + "(strProperty) LIKE ? ");
+    assertEquals(expression.toString(), template.bind("/foo/%", "f%"));
+
+  }
+
+  public void testBindLong() throws Exception {
+
+    QueryTemplate template = new QueryTemplate("longProperty > ? ");
+    assertEquals("longProperty > 42 ", template.bind(42L));
+
+  }
+
+  public void testBindQuote() throws Exception {
+
+    QueryTemplate template = new QueryTemplate("strProperty = ? ");
+    assertEquals("strProperty = 'o''neil' ", template.bind("o'neil"));
+
+    WhereExpression expression = new WhereExpression();
+    expression.equals(FakeEntity.strProperty, "o'neil");
+    assertEquals(expression.toString(), template.bind("o'neil"));
+
+  }
+
+  public void testBindWithoutParameter() throws Exception {
+
+    QueryTemplate template = new QueryTemplate("strProperty = 'foo' ");
+    assertEquals(0, template.getParameterCount());
+    assertEquals("strProperty = 'foo' ", template.bind());
+
+  }
+
+  public void testBindWrongValues() throws Exception {
+
+    QueryTemplate template = new QueryTemplate("strProperty = ? ");
+
+    try {
+      template.bind();
+      fail();
+    }
+    catch (IllegalArgumentException e) {
+      // ok
+    }
+
+    try {
+      template.bind("foo", "bar");
+      fail();
+    }
+    catch (IllegalArgumentException e) {
+      // ok
+    }
+
+    try {
+      template.bind((Object) null);
+      fail();
+    }
+    catch (IllegalArgumentException e) {
+      // ok
+    }
+
+  }
+
+}
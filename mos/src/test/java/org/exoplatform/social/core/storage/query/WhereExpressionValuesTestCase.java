@@ -57,6 +57,20 @@ public class WhereExpressionValuesTestCase extends TestCase {
 
   }
 
+  public void testStringQuote() throws Exception {
+
+    WhereExpression expression = new WhereExpression();
+    expression
+        .equals(FakeEntity.strProperty, "o'neil")
+        .or().like(FakeEntity.strProperty, "o'n%")
+        .or().contains(FakeEntity.strProperty, "o'neil");
+    assertEquals(
+        "strProperty = 'o''neil' OR strProperty LIKE 'o''n%' OR CONTAINS (strProperty, 'o''neil') ",
+        expression.toString()
+    );
+
+  }
+
   public void testStringContains() throws Exception {
 
     WhereExpression expression = new WhereExpression();